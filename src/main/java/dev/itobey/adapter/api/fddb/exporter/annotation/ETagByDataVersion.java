@@ -0,0 +1,18 @@
+package dev.itobey.adapter.api.fddb.exporter.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a read endpoint whose response depends on nothing but the diary, its parameters and the
+ * current date, so it can be tagged with the version of the data and answered with
+ * {@code 304 Not Modified} as long as that did not change.
+ *
+ * @see dev.itobey.adapter.api.fddb.exporter.aspect.DataVersionETagAspect
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface ETagByDataVersion {
+}
@@ -0,0 +1,94 @@
+package dev.itobey.adapter.api.fddb.exporter.aspect;
+
+import dev.itobey.adapter.api.fddb.exporter.service.cache.DataVersion;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.time.LocalDate;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Answers conditional requests to the endpoints marked {@link
+ * dev.itobey.adapter.api.fddb.exporter.annotation.ETagByDataVersion} from the {@link DataVersion}
+ * alone: a client sending back the ETag of an earlier response gets {@code 304 Not Modified}
+ * without the endpoint running, so unchanged data costs neither a query nor serializing the
+ * result.
+ * <p>
+ * The tag is weak and made of three parts. The data version, which moves on every write. The
+ * current date, as several endpoints default to ranges ending today and the statistics count
+ * days up to it, so their answer changes at midnight without a write. And an id of this run of
+ * the application, as the data version starts over with every restart and would otherwise
+ * repeat a tag for different data. The tag does not depend on the parameters; the client keeps
+ * it per URL anyway.
+ * <p>
+ * One URL can serve several representations - {@code /range} as a JSON array or as NDJSON, by the
+ * Accept header. The tag of an endpoint declaring what it produces names that media type, and
+ * every tagged response varies by Accept, so neither a client nor a cache can revalidate one
+ * representation with the tag of the other.
+ * <p>
+ * There is no {@code Last-Modified}: an HTTP date has whole seconds only, so a write in the same
+ * second as an earlier response would leave its date unchanged and a client revalidating by
+ * date alone would be told its stale copy is current.
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class DataVersionETagAspect {
+
+    private final DataVersion dataVersion;
+    private final String instanceId = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+
+    @Around("@annotation(dev.itobey.adapter.api.fddb.exporter.annotation.ETagByDataVersion)")
+    public Object tagWithDataVersion(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!(RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes)) {
+            return joinPoint.proceed();
+        }
+        // read before the endpoint runs: a write in between makes the tag older than the data,
+        // which costs the client one more full response but never serves it stale data
+        LocalDate today = LocalDate.now();
+        String eTag = "W/\"" + instanceId + "-" + dataVersion.current() + "-" + today
+                + producedMediaTypes(attributes.getRequest()) + "\"";
+
+        // without the response, so that an error the endpoint returns after all goes out untagged
+        ServletWebRequest webRequest = new ServletWebRequest(attributes.getRequest());
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .varyBy(HttpHeaders.ACCEPT)
+                    .build();
+        }
+        Object result = joinPoint.proceed();
+        if (result instanceof ResponseEntity<?> response && response.getStatusCode().is2xxSuccessful()) {
+            return ResponseEntity.status(response.getStatusCode())
+                    .headers(response.getHeaders())
+                    .eTag(eTag)
+                    .varyBy(HttpHeaders.ACCEPT)
+                    .body(response.getBody());
+        }
+        return result;
+    }
+
+    /**
+     * The media types the matched mapping declares it produces - set by the handler mapping only for
+     * mappings with a {@code produces} - as a suffix of the tag, or nothing for the default JSON.
+     */
+    private static String producedMediaTypes(HttpServletRequest request) {
+        if (request.getAttribute(HandlerMapping.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE) instanceof Set<?> mediaTypes
+                && !mediaTypes.isEmpty()) {
+            return "-" + mediaTypes.stream().map(Object::toString).sorted().collect(Collectors.joining("+"));
+        }
+        return "";
+    }
+}
@@ -15,6 +15,8 @@ public class FddbExporterProperties {
     private Notification notification;
     private Ui ui;
     private Mcp mcp;
+    private DownloadSnapshots downloadSnapshots;
+    private DiarySnapshot diarySnapshot;
 
     @Data
     public static class Fddb {
@@ -97,4 +99,26 @@ public class FddbExporterProperties {
         private boolean writeToolsEnabled;
     }
 
+    /**
+     * Pre-rendered, gzip-compressed copies of the full-history downloads, served instead of
+     * reading the whole diary again on every click. They are regenerated from the database whenever
+     * they are missing or stale, so the directory needs no backup and may be a temporary one.
+     */
+    @Data
+    public static class DownloadSnapshots {
+        private boolean enabled;
+        private String directory;
+    }
+
+    /**
+     * A binary copy of the whole diary the in-memory indexes are filled from at startup, instead of
+     * a scan of the collection. It is rewritten after every export and ignored while outdated, so
+     * losing it only costs the next start that scan.
+     */
+    @Data
+    public static class DiarySnapshot {
+        private boolean enabled;
+        private String file;
+    }
+
 }
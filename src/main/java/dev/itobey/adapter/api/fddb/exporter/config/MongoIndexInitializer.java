@@ -1,6 +1,7 @@
 package dev.itobey.adapter.api.fddb.exporter.config;
 
 import dev.itobey.adapter.api.fddb.exporter.domain.FddbData;
+import dev.itobey.adapter.api.fddb.exporter.dto.NutrientMetric;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -32,6 +33,19 @@ public class MongoIndexInitializer {
             IndexOperations indexOps = mongoTemplate.indexOps(FddbData.class);
             indexOps.createIndex(new Index().on("date", Sort.Direction.ASC).unique());
             indexOps.createIndex(new Index().on("products.name", Sort.Direction.ASC));
+            // serves the changes feed, which reads the entries written after a revision in revision order;
+            // the date only orders the entries stored before revisions were recorded
+            indexOps.createIndex(new Index()
+                    .on("revision", Sort.Direction.ASC)
+                    .on("date", Sort.Direction.ASC));
+            // metric first, date second: the extreme-days ranking walks the index in metric order, checks
+            // the date range against the index keys and stops after the requested number of days, instead
+            // of sorting the whole range in memory. Walked backwards, the same index serves the highest days.
+            for (NutrientMetric metric : NutrientMetric.values()) {
+                indexOps.createIndex(new Index()
+                        .on(metric.getFieldName(), Sort.Direction.ASC)
+                        .on("date", Sort.Direction.ASC));
+            }
         } catch (Exception e) {
             log.error("Failed to create MongoDB indexes. If this is the unique index on 'date', the collection "
                     + "likely already contains duplicate dates - see the upgrading docs to find and remove them, "
@@ -5,6 +5,7 @@ import lombok.EqualsAndHashCode;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -23,6 +24,17 @@ public class FddbData {
     private double totalSugar;
     private double totalProtein;
     private double totalFibre;
+    /**
+     * When the entry was last inserted or changed; null for entries stored before it was recorded.
+     */
+    @EqualsAndHashCode.Exclude
+    private Instant lastModified;
+    /**
+     * The value of a diary-wide counter at the last insert or change, so every write gets a higher
+     * revision than all before it; null for entries stored before it was recorded.
+     */
+    @EqualsAndHashCode.Exclude
+    private Long revision;
 
     public String toDailyTotalsString() {
         return "FddbData{" +
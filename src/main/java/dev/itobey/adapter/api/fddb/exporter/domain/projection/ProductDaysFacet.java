@@ -0,0 +1,20 @@
+package dev.itobey.adapter.api.fddb.exporter.domain.projection;
+
+import dev.itobey.adapter.api.fddb.exporter.dto.DayWithProductsDTO;
+import dev.itobey.adapter.api.fddb.exporter.dto.ProductDayTotalsDTO;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Result of the keyword day search {@code $facet}: one page of matching days, and the totals over
+ * every matching day the page was taken from. {@code totals} holds a single element, or none if
+ * nothing matched.
+ */
+@Data
+public class ProductDaysFacet {
+
+    private List<DayWithProductsDTO> days;
+    private List<ProductDayTotalsDTO> totals;
+
+}
@@ -0,0 +1,43 @@
+package dev.itobey.adapter.api.fddb.exporter.domain.projection;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Result of the product summary {@code $facet}: the totals over every matching occurrence, and how
+ * many of them fall on each day of the week. Each facet is a list, as {@code $facet} always yields
+ * arrays; {@code totals} holds a single element, or none if nothing matched.
+ */
+@Data
+public class ProductOccurrenceSummary {
+
+    private List<Totals> totals;
+    private List<WeekdayCount> weekdays;
+
+    @Data
+    public static class Totals {
+
+        private long timesEaten;
+        private List<String> matchedProductNames;
+        private LocalDate firstDate;
+        private LocalDate lastDate;
+        private double totalCalories;
+        private double totalFat;
+        private double totalCarbs;
+        private double totalProtein;
+
+    }
+
+    @Data
+    public static class WeekdayCount {
+
+        /**
+         * ISO day of the week, Monday=1 to Sunday=7, or null for occurrences on a day without a date.
+         */
+        private Integer weekday;
+        private long count;
+
+    }
+}
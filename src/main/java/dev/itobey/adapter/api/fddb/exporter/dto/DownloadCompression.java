@@ -0,0 +1,25 @@
+package dev.itobey.adapter.api.fddb.exporter.dto;
+
+import lombok.Getter;
+
+/**
+ * Enum representing how a download is compressed when it is asked for explicitly.
+ * <p>
+ * An explicitly compressed download is a file of its own - {@code .csv.gz} rather than
+ * {@code .csv} - which is kept compressed once saved. Without it, the download is compressed for
+ * the transfer only, whenever the client accepts it.
+ */
+@Getter
+public enum DownloadCompression {
+    NONE(null, ""),
+    GZIP("application/gzip", ".gz");
+
+    private final String contentType;
+    private final String fileExtension;
+
+    DownloadCompression(String contentType, String fileExtension) {
+        this.contentType = contentType;
+        this.fileExtension = fileExtension;
+    }
+
+}
@@ -4,11 +4,19 @@ import lombok.Getter;
 
 /**
  * Enum representing the supported download formats.
+ * <p>
+ * {@link #TABLES} is meant for analysis tools rather than spreadsheets: a ZIP of normalized CSV
+ * tables - one row per day, one row per product occurrence and a product dictionary - with ISO
+ * dates and dot decimals, so DuckDB, pandas or Polars read them with the right column types.
+ * {@link #NDJSON} writes one day per line, which a client can process as it arrives instead of
+ * parsing one large array at the end.
  */
 @Getter
 public enum DownloadFormat {
     CSV("text/csv", ".csv"),
-    JSON("application/json", ".json");
+    JSON("application/json", ".json"),
+    TABLES("application/zip", ".zip"),
+    NDJSON("application/x-ndjson", ".ndjson");
 
     private final String contentType;
     private final String fileExtension;
@@ -1,10 +1,12 @@
 package dev.itobey.adapter.api.fddb.exporter.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.time.Instant;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -41,4 +43,14 @@ public class FddbDataDTO {
     @Schema(description = "Total fibre in grams", example = "25.6")
     private double totalFibre;
 
+    @Schema(description = "When the entry was last inserted or changed, absent for entries stored before this was recorded",
+            example = "2024-12-23T03:00:12.345Z")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Instant lastModified;
+
+    @Schema(description = "Revision of the last insert or change, increasing with every write to the diary, absent for entries stored before this was recorded",
+            example = "1234")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long revision;
+
 }
@@ -0,0 +1,89 @@
+package dev.itobey.adapter.api.fddb.exporter.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * How the unlogged days of a range cluster: how many gaps there are, the longest of them and how
+ * they spread over the months.
+ * <p>
+ * The shape of the missing days rather than the days themselves. Thirty scattered missing days and
+ * one missing month are the same count but very different logging habits, and over a multi-year
+ * range this answers "when did I stop logging?" without listing hundreds of dates.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class GapStatsDTO {
+
+    private LocalDate fromDate;
+
+    private LocalDate toDate;
+
+    /**
+     * The number of days the range spans, both bounds inclusive.
+     */
+    private long daysChecked;
+
+    /**
+     * The number of days in the range without a usable entry.
+     */
+    private long missingCount;
+
+    /**
+     * The number of gaps - runs of consecutive missing days, however long each is.
+     */
+    private int gapCount;
+
+    /**
+     * The longest gap, clipped to the range - the earliest one if several are equally long. Null
+     * when no day is missing.
+     */
+    private Gap longestGap;
+
+    /**
+     * One entry per calendar month the range touches, oldest first.
+     */
+    private List<Month> months;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Gap {
+
+        private LocalDate fromDate;
+
+        private LocalDate toDate;
+
+        private long days;
+    }
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Month {
+
+        /**
+         * The month as {@code yyyy-MM}.
+         */
+        private String month;
+
+        /**
+         * The missing days of the month, counting only the days inside the range.
+         */
+        private long missingCount;
+
+        /**
+         * The gaps in the month. A gap that spans a month boundary counts in both months.
+         */
+        private int gapCount;
+    }
+}
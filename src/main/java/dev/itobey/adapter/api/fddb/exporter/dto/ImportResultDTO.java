@@ -0,0 +1,29 @@
+package dev.itobey.adapter.api.fddb.exporter.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "Result of an import of a download")
+public class ImportResultDTO {
+    @Schema(description = "Days read from the file", example = "1461")
+    private int importedDays;
+
+    @Schema(description = "Days that were new or differed from the stored entry and were written", example = "12")
+    private int writtenDays;
+
+    @Schema(description = "Days that were stored exactly like this already and left alone", example = "1449")
+    private int unchangedDays;
+
+    @Schema(description = "The first day in the file", example = "2021-01-01")
+    private LocalDate fromDate;
+
+    @Schema(description = "The last day in the file", example = "2024-12-31")
+    private LocalDate toDate;
+}
@@ -0,0 +1,37 @@
+package dev.itobey.adapter.api.fddb.exporter.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of a product keyword search, newest day first, together with what the search matches
+ * in total.
+ * <p>
+ * Both come out of the same pipeline, so reporting how many days there are costs no second scan,
+ * and the next page picks up before the oldest day of this one instead of skipping over it.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductDaysPageDTO {
+
+    /**
+     * The matching days, newest first, at most as many as were asked for.
+     */
+    private List<DayWithProductsDTO> days;
+
+    /**
+     * The number of distinct matching days the page was taken from, returned or not.
+     */
+    private long dayCount;
+
+    /**
+     * The number of individual matching occurrences across those days.
+     */
+    private long occurrenceCount;
+}
@@ -0,0 +1,49 @@
+package dev.itobey.adapter.api.fddb.exporter.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Two products eaten on the same days, with the market-basket measures of how strongly they go
+ * together.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "A pair of products eaten on the same days")
+public class ProductPairDTO {
+
+    @Schema(description = "The product searched for, or the one of the two eaten more often", example = "Kaffee, schwarz")
+    private String first;
+
+    @Schema(description = "The other product", example = "Milch 1,5 %")
+    private String second;
+
+    @Schema(description = "Days on which both were logged", example = "212")
+    private int daysTogether;
+
+    @Schema(description = "Days on which the first was logged", example = "340")
+    private int firstDays;
+
+    @Schema(description = "Days on which the second was logged", example = "230")
+    private int secondDays;
+
+    @Schema(description = "Share of all logged days on which both were logged, in percent", example = "51.5")
+    private double support;
+
+    @Schema(description = "Share of the first product's days on which the second was logged too, in percent",
+            example = "62.4")
+    private double confidence;
+
+    @Schema(description = "Share of the second product's days on which the first was logged too, in percent",
+            example = "92.2")
+    private double reverseConfidence;
+
+    @Schema(description = "How much more often the two share a day than if they were eaten independently; "
+            + "1 means no association", example = "1.1")
+    private double lift;
+}
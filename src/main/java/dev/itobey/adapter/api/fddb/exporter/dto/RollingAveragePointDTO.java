@@ -0,0 +1,37 @@
+package dev.itobey.adapter.api.fddb.exporter.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+/**
+ * One point of a rolling-average series: the averages of the window that ends on {@code date}.
+ * <p>
+ * {@code averages} is left out when fewer days than the requested minimum were logged inside the
+ * window, rather than reported over whatever few days there were - a "7-day average" that rests on
+ * a single day is that day, and plotting it as an average is what makes a chart lie.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Schema(description = "One point of a rolling-average series")
+public class RollingAveragePointDTO {
+
+    @Schema(description = "Last day of the window this point averages", example = "2024-01-07")
+    private LocalDate date;
+
+    @Schema(description = "Number of days with an entry inside the window", example = "6")
+    private int loggedDays;
+
+    @Schema(description = "Average per requested metric across the logged days of the window. Absent when "
+            + "fewer days than the minimum were logged")
+    private Map<NutrientMetric, Double> averages;
+}
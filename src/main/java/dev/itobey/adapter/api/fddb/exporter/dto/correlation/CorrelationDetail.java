@@ -19,6 +19,22 @@ public class CorrelationDetail {
     private double percentage;
     private List<String> matchedDates;
     private int matchedDays;
+    /**
+     * The share of all logged days that lie in the window, in percent - what {@code percentage}
+     * would be for a product eaten on random days.
+     */
+    private double baselinePercentage;
+    /**
+     * The share of the product days in the window divided by the baseline, or null if there are no
+     * product days or the window holds no logged day. Counted in days, also for the windows whose
+     * {@code matchedDays} are episodes.
+     */
+    private Double lift;
+    /**
+     * The chance of at least as many product days in the window if the product had been eaten on
+     * random logged days, from a one-sided Fisher exact test; null where {@code lift} is.
+     */
+    private Double fisherPValue;
 
     public void setPercentage(double percentage) {
         this.percentage = Double.parseDouble(df.format(percentage));
@@ -1,5 +1,7 @@
 package dev.itobey.adapter.api.fddb.exporter.dto.correlation;
 
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import lombok.Data;
 
 import java.util.List;
@@ -7,9 +9,18 @@ import java.util.List;
 @Data
 public class CorrelationInputDto {
 
+    public static final int MAX_LAG_DAYS = 90;
+
     private List<String> inclusionKeywords;
     private List<String> exclusionKeywords;
     private List<String> occurrenceDates;
     private String startDate;
 
+    /**
+     * Optional: also report every single lag from the event day up to this many days before it.
+     */
+    @Min(0)
+    @Max(MAX_LAG_DAYS)
+    private Integer maxLagDays;
+
 }
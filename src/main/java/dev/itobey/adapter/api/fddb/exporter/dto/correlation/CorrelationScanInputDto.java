@@ -0,0 +1,48 @@
+package dev.itobey.adapter.api.fddb.exporter.dto.correlation;
+
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Input of the correlation scan, which ranks every product of the diary against the event dates
+ * rather than correlating one keyword.
+ */
+@Data
+public class CorrelationScanInputDto {
+
+    public static final int MAX_LIMIT = 200;
+
+    private List<String> occurrenceDates;
+    private String startDate;
+
+    /**
+     * Optional: how many days before an event the window starts. Defaults to 0, the event day.
+     */
+    @Min(0)
+    @Max(CorrelationInputDto.MAX_LAG_DAYS)
+    private Integer lagDays;
+
+    /**
+     * Optional: how many days the window spans, counting back from {@code lagDays}. Defaults to 1.
+     */
+    @Min(1)
+    @Max(CorrelationInputDto.MAX_LAG_DAYS)
+    private Integer windowDays;
+
+    /**
+     * Optional: the fewest days a product must have been eaten on to be ranked. Defaults to 5.
+     */
+    @Min(1)
+    private Integer minDaysEaten;
+
+    /**
+     * Optional: how many products to return. Defaults to 20.
+     */
+    @Min(1)
+    @Max(MAX_LIMIT)
+    private Integer limit;
+
+}
@@ -0,0 +1,29 @@
+package dev.itobey.adapter.api.fddb.exporter.dto.correlation;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class CorrelationScanOutputDto {
+
+    private int eventDateCount;
+    private int lagDays;
+    private int windowDays;
+    /**
+     * The number of days anything was logged on - the population every rate is measured in.
+     */
+    private int loggedDays;
+    private int loggedDaysInWindow;
+    /**
+     * The share of logged days that fall into the window, in percent: what a product eaten at
+     * random would reach.
+     */
+    private double baselinePercentage;
+    /**
+     * How many products were eaten often enough and at least once in the window, before the limit.
+     */
+    private int matchingProducts;
+    private List<ProductCorrelation> products;
+
+}
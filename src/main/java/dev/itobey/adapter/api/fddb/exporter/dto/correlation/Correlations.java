@@ -2,6 +2,8 @@ package dev.itobey.adapter.api.fddb.exporter.dto.correlation;
 
 import lombok.Data;
 
+import java.util.Map;
+
 @Data
 public class Correlations {
 
@@ -10,5 +12,10 @@ public class Correlations {
     private CorrelationDetail sameDay;
     private CorrelationDetail oneDayBefore;
     private CorrelationDetail twoDaysBefore;
+    /**
+     * One entry per lag in days, from the event day up to the requested {@code maxLagDays}; null
+     * unless that was requested.
+     */
+    private Map<Integer, CorrelationDetail> byLag;
 
 }
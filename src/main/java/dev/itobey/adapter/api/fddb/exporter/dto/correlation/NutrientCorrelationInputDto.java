@@ -0,0 +1,39 @@
+package dev.itobey.adapter.api.fddb.exporter.dto.correlation;
+
+import dev.itobey.adapter.api.fddb.exporter.dto.NutrientMetric;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Input of the nutrient correlation, which lines up the daily totals rather than products with
+ * the event dates.
+ */
+@Data
+public class NutrientCorrelationInputDto {
+
+    private List<String> occurrenceDates;
+    private String startDate;
+
+    /**
+     * Optional: the largest lag to report, in days before an event. Defaults to 3.
+     */
+    @Min(0)
+    @Max(CorrelationInputDto.MAX_LAG_DAYS)
+    private Integer maxLagDays;
+
+    /**
+     * Optional: how many days each window spans, counting back from its lag. Defaults to 1.
+     */
+    @Min(1)
+    @Max(CorrelationInputDto.MAX_LAG_DAYS)
+    private Integer windowDays;
+
+    /**
+     * Optional: the metrics to correlate. Defaults to all of them.
+     */
+    private List<NutrientMetric> metrics;
+
+}
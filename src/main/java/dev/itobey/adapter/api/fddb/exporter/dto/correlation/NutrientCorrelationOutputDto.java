@@ -0,0 +1,24 @@
+package dev.itobey.adapter.api.fddb.exporter.dto.correlation;
+
+import dev.itobey.adapter.api.fddb.exporter.dto.NutrientMetric;
+import lombok.Data;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class NutrientCorrelationOutputDto {
+
+    private int eventDateCount;
+    /**
+     * The number of days with products - the days every mean is taken over.
+     */
+    private int loggedDays;
+    private int maxLagDays;
+    private int windowDays;
+    /**
+     * One effect per lag from 0 up to {@code maxLagDays}, for each metric in the order requested.
+     */
+    private Map<NutrientMetric, List<NutrientLagEffect>> effects;
+
+}
@@ -0,0 +1,31 @@
+package dev.itobey.adapter.api.fddb.exporter.dto.correlation;
+
+import lombok.Data;
+
+/**
+ * How a daily total differs in the window a given number of days before an event.
+ */
+@Data
+public class NutrientLagEffect {
+
+    private int lagDays;
+    /**
+     * The logged days inside the window.
+     */
+    private int daysInWindow;
+    /**
+     * The mean daily total inside the window, or null if it holds no logged day.
+     */
+    private Double meanInWindow;
+    /**
+     * The mean daily total on every other logged day, or null if there is none.
+     */
+    private Double meanOtherDays;
+    /**
+     * The point-biserial correlation between the daily total and lying in the window, from -1 to
+     * 1: positive means more than usual before an event. Null where a mean is, or if the metric
+     * never varies.
+     */
+    private Double correlation;
+
+}
@@ -0,0 +1,29 @@
+package dev.itobey.adapter.api.fddb.exporter.dto.correlation;
+
+import lombok.Data;
+
+/**
+ * One product of a correlation scan.
+ */
+@Data
+public class ProductCorrelation {
+
+    private String name;
+    private int daysEaten;
+    private int daysInWindow;
+    /**
+     * The share of {@code daysEaten} that falls into the window, in percent.
+     */
+    private double percentage;
+    /**
+     * {@code percentage} divided by the baseline: 1 is what eating the product at random would
+     * give, 2 means its days fall into the window twice as often as days in general.
+     */
+    private double lift;
+    /**
+     * The chance of at least {@code daysInWindow} days in the window if the product had been eaten
+     * on random logged days, from a one-sided Fisher exact test.
+     */
+    private double fisherPValue;
+
+}
@@ -138,6 +138,25 @@ public class CorrelationResultDTO {
          */
         private Double percentageOfEvents;
 
+        /**
+         * The share of all logged days inside this window, in percent: what
+         * {@code percentageOfProductDays} would be for a food eaten on random days.
+         */
+        private double baselinePercentage;
+
+        /**
+         * The share of product days in this window divided by the baseline - around 1 is chance,
+         * however high the percentages are. Counted in days for the {@code across} windows too.
+         * Null if the window holds no logged day.
+         */
+        private Double lift;
+
+        /**
+         * The chance of at least as many product days in this window had the product been eaten on
+         * random logged days, from a one-sided Fisher exact test. Null where {@code lift} is.
+         */
+        private Double fisherPValue;
+
         /**
          * The days the product was actually eaten - not the event days. For
          * {@code oneDayBefore} each of these is the day before an event.
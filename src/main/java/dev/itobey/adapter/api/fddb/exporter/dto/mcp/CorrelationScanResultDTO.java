@@ -0,0 +1,118 @@
+package dev.itobey.adapter.api.fddb.exporter.dto.mcp;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Every product of the diary ranked by how strongly eating it lines up with a set of event dates.
+ * <p>
+ * Where {@link CorrelationResultDTO} answers "does this food line up with my events", this answers
+ * "which foods do", so it leads with the baseline: a lift only means something next to the share
+ * of all logged days the window covers anyway.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CorrelationScanResultDTO {
+
+    /**
+     * The earliest day considered, or null when the whole diary was scanned.
+     */
+    private LocalDate startDate;
+
+    /**
+     * The number of distinct event dates the window was built from.
+     */
+    private int eventDateCount;
+
+    /**
+     * How many days before an event the window starts, 0 for the event day itself.
+     */
+    private int lagDays;
+
+    /**
+     * How many days the window spans, counting back from {@code lagDays}.
+     */
+    private int windowDays;
+
+    /**
+     * The number of days anything was logged on: the population every share is measured in.
+     */
+    private int loggedDays;
+
+    /**
+     * The share of {@code loggedDays} inside the window, in percent - what a product eaten at random
+     * would reach, and what every {@code percentageOfProductDays} below has to be compared with.
+     */
+    private double baselinePercentage;
+
+    /**
+     * How many products were eaten often enough and at least once in the window. Only the highest
+     * ranked of them are listed.
+     */
+    private int matchingProductCount;
+
+    /**
+     * The products with the highest lift, highest first.
+     */
+    private List<Product> products;
+
+    /**
+     * The standing caveat about what these numbers are and are not.
+     */
+    private String note;
+
+    /**
+     * Set when nothing could be ranked, e.g. because no product was eaten often enough.
+     */
+    private String message;
+
+    /**
+     * One ranked product.
+     */
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Product {
+
+        private String name;
+
+        /**
+         * The number of days the product was eaten.
+         */
+        private int daysEaten;
+
+        /**
+         * How many of those fall into the window before an event.
+         */
+        private int daysInWindow;
+
+        /**
+         * {@code daysInWindow} as a share of {@code daysEaten}, in percent.
+         */
+        private double percentageOfProductDays;
+
+        /**
+         * {@code percentageOfProductDays} divided by the baseline. Around 1 is what eating the
+         * product at random gives; a food eaten daily lands there however many events it lines up
+         * with.
+         */
+        private double lift;
+
+        /**
+         * The chance of at least {@code daysInWindow} days in the window had the product been eaten
+         * on random logged days, from a one-sided Fisher exact test. Not corrected for the number of
+         * products ranked.
+         */
+        private double fisherPValue;
+    }
+}
@@ -32,6 +32,11 @@ public class DaysWithProductsResultDTO {
      */
     private LocalDate startDate;
 
+    /**
+     * The continuation token this page was requested with, absent for the first page.
+     */
+    private String pageToken;
+
     /**
      * The number of days in {@code days}, i.e. how many were <em>returned</em>. Equal to
      * {@code matchedDayCount} unless {@code truncated} is set.
@@ -41,7 +46,8 @@ public class DaysWithProductsResultDTO {
     /**
      * The number of days that match in total, whether returned or not - the number to answer "on
      * how many days did I eat X?" with. Without it a truncated result cannot answer that question
-     * at all, and {@code dayCount} invites a wrong answer.
+     * at all, and {@code dayCount} invites a wrong answer. On a continuation page, only the days
+     * before the {@code pageToken} are counted.
      */
     private long matchedDayCount;
 
@@ -56,6 +62,13 @@ public class DaysWithProductsResultDTO {
      */
     private boolean truncated;
 
+    /**
+     * The token to pass as {@code pageToken} for the next, older page, absent unless
+     * {@code truncated} is set. It is the date of the oldest day returned, so paging on resumes
+     * right behind it instead of skipping the days already seen.
+     */
+    private String nextPageToken;
+
     /**
      * The matching days, newest first.
      */
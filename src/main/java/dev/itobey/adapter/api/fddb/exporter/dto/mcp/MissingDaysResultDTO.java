@@ -1,6 +1,7 @@
 package dev.itobey.adapter.api.fddb.exporter.dto.mcp;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import dev.itobey.adapter.api.fddb.exporter.dto.GapStatsDTO;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -43,6 +44,23 @@ public class MissingDaysResultDTO {
      */
     private long loggedCount;
 
+    /**
+     * The number of gaps - runs of consecutive missing days - in the range. Like the counts above,
+     * it covers the whole range even when the list is cut.
+     */
+    private int gapCount;
+
+    /**
+     * The longest gap in the range, null when no day is missing.
+     */
+    private GapStatsDTO.Gap longestGap;
+
+    /**
+     * The missing days and gaps per calendar month, so a long range shows when logging lapsed
+     * without reading the date list.
+     */
+    private List<GapStatsDTO.Month> months;
+
     /**
      * Whether more days are missing than {@code missingDays} lists. {@code missingCount} stays the
      * true total either way, so a "how many did I miss?" answer is never wrong - only the list of
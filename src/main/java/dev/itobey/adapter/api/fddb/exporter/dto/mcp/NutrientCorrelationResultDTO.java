@@ -0,0 +1,72 @@
+package dev.itobey.adapter.api.fddb.exporter.dto.mcp;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import dev.itobey.adapter.api.fddb.exporter.dto.NutrientMetric;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.NutrientLagEffect;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * How each daily total differed in the days before a set of event dates, lag by lag.
+ * <p>
+ * The companion of {@link CorrelationResultDTO} for nutrients rather than products: "more sugar
+ * than usual the day before" can show up without any single food standing out.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NutrientCorrelationResultDTO {
+
+    /**
+     * The earliest day considered, or null when the whole diary was used.
+     */
+    private LocalDate startDate;
+
+    /**
+     * The number of distinct event dates the windows were built from.
+     */
+    private int eventDateCount;
+
+    /**
+     * The number of days with products, which every mean is taken over.
+     */
+    private int loggedDays;
+
+    /**
+     * The largest lag reported, in days before an event.
+     */
+    private int maxLagDays;
+
+    /**
+     * How many days each window spans, counting back from its lag.
+     */
+    private int windowDays;
+
+    /**
+     * The unit of each metric: kcal for calories, grams for everything else.
+     */
+    private Map<NutrientMetric, String> units;
+
+    /**
+     * For each metric, one entry per lag from the event day on.
+     */
+    private Map<NutrientMetric, List<NutrientLagEffect>> effects;
+
+    /**
+     * The standing caveat about what these numbers are and are not.
+     */
+    private String note;
+
+    /**
+     * Set when there was nothing to correlate, e.g. because no day was logged since the start date.
+     */
+    private String message;
+}
@@ -0,0 +1,49 @@
+package dev.itobey.adapter.api.fddb.exporter.dto.mcp;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import dev.itobey.adapter.api.fddb.exporter.dto.ProductPairDTO;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * The result of an MCP "products eaten together" lookup.
+ * <p>
+ * The thresholds are echoed with the pairs: a pair missing from the list may simply have shared
+ * fewer days than asked for, and the agent should know that before calling two products unrelated.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ProductPairsResultDTO {
+
+    /**
+     * The fragment one of the two products had to contain, null for all pairs.
+     */
+    private String product;
+
+    private LocalDate fromDate;
+
+    private LocalDate toDate;
+
+    private int minDaysTogether;
+
+    private double minConfidence;
+
+    private int resultCount;
+
+    private int limit;
+
+    /**
+     * Whether more pairs met the thresholds than the limit allowed to be returned.
+     */
+    private boolean truncated;
+
+    private List<ProductPairDTO> results;
+}
@@ -0,0 +1,61 @@
+package dev.itobey.adapter.api.fddb.exporter.dto.mcp;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import dev.itobey.adapter.api.fddb.exporter.dto.NutrientMetric;
+import dev.itobey.adapter.api.fddb.exporter.dto.RollingAveragePointDTO;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The result of an MCP rolling-average query: a moving average with one point per day.
+ * <p>
+ * {@code averagedPoints} next to {@code pointCount} says how much of the series actually carries
+ * values. A point whose window had too few logged days has none, and a series that is mostly such
+ * points is a statement about logging, not about eating.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RollingAverageSeriesResultDTO {
+
+    private LocalDate fromDate;
+
+    private LocalDate toDate;
+
+    /**
+     * The number of days each point averages, the day itself included.
+     */
+    private int window;
+
+    /**
+     * The fewest logged days a window needed to be averaged.
+     */
+    private int minLoggedDays;
+
+    private List<NutrientMetric> metrics;
+
+    /**
+     * The unit of each metric: kcal for calories, grams for everything else.
+     */
+    private Map<NutrientMetric, String> units;
+
+    /**
+     * The number of points, one per day of the range.
+     */
+    private int pointCount;
+
+    /**
+     * How many of those points had enough logged days to carry averages.
+     */
+    private int averagedPoints;
+
+    private List<RollingAveragePointDTO> points;
+}
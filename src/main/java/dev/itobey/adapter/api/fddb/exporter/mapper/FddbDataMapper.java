@@ -25,14 +25,41 @@ public interface FddbDataMapper {
      * Used for data downloads when only daily summaries are needed.
      *
      * @param fddbData the full FDDB data
-     * @return a FddbDataDTO with only date and nutrition totals (id and products are null)
+     * @return a FddbDataDTO with only date and nutrition totals (id, products and revision are null)
      */
     @Mapping(target = "id", ignore = true)
     @Mapping(target = "products", ignore = true)
+    @Mapping(target = "lastModified", ignore = true)
+    @Mapping(target = "revision", ignore = true)
     FddbDataDTO toFddbDataDTOWithoutProducts(FddbDataDTO fddbData);
 
     List<FddbDataDTO> toFddbDataDTOWithoutProducts(List<FddbDataDTO> fddbData);
 
+    /**
+     * Converts an entry straight to its daily totals, in one step, for the totals-only downloads
+     * that read the entries without their products in the first place.
+     *
+     * @param fddbData the entry, products loaded or not
+     * @return a FddbDataDTO with only date and nutrition totals (id, products and revision are null)
+     */
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "products", ignore = true)
+    @Mapping(target = "lastModified", ignore = true)
+    @Mapping(target = "revision", ignore = true)
+    FddbDataDTO toDailyTotalsDTO(FddbData fddbData);
+
+    /**
+     * Converts an entry read back from a download into one to store. The id, the last change and
+     * the revision belong to the instance it was downloaded from and are assigned anew.
+     *
+     * @param fddbDataDTO the downloaded entry
+     * @return the entry to store, without id, last change and revision
+     */
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "lastModified", ignore = true)
+    @Mapping(target = "revision", ignore = true)
+    FddbData toFddbData(FddbDataDTO fddbDataDTO);
+
     ProductWithDateDTO toProductWithDateDto(ProductWithDate product);
 
     List<ProductWithDateDTO> toProductWithDateDto(List<ProductWithDate> product);
@@ -1,9 +1,16 @@
 package dev.itobey.adapter.api.fddb.exporter.mcp;
 
+import dev.itobey.adapter.api.fddb.exporter.dto.NutrientMetric;
 import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationDetail;
 import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationInputDto;
 import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationOutputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationScanInputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationScanOutputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.NutrientCorrelationInputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.NutrientCorrelationOutputDto;
 import dev.itobey.adapter.api.fddb.exporter.dto.mcp.CorrelationResultDTO;
+import dev.itobey.adapter.api.fddb.exporter.dto.mcp.CorrelationScanResultDTO;
+import dev.itobey.adapter.api.fddb.exporter.dto.mcp.NutrientCorrelationResultDTO;
 import dev.itobey.adapter.api.fddb.exporter.service.CorrelationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -13,20 +20,24 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
 import java.time.LocalDate;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 /**
- * The MCP tool that lines up what was eaten with dates the user reports something happened on.
+ * The MCP tools that line up what was eaten - products or daily totals - with dates the user
+ * reports something happened on.
  * <p>
- * This one goes through {@link CorrelationService} rather than {@code FddbDataService}, which every
+ * These go through {@link CorrelationService} rather than {@code FddbDataService}, which every
  * other tool uses: the correlation logic never had a delegate there, and both this class and the
  * service carry the same {@code mongodb.enabled} condition, so injecting it directly is safe and
  * keeps the service layer out of it - exactly what {@code CorrelationResourceV2} does.
  * <p>
- * The interesting work here is not the call but the reshaping of its result. The stored output
- * reports a bare {@code percentage} whose denominator is "days on which the product was eaten",
- * which reads like a probability of the event and is not one. Renaming it, putting the denominator
- * in the payload and adding the second, more intuitive ratio is the whole point of the wrapper.
+ * The interesting work in {@code correlate_products_with_dates} is not the call but the reshaping
+ * of its result. The stored output reports a bare {@code percentage} whose denominator is "days on
+ * which the product was eaten", which reads like a probability of the event and is not one.
+ * Renaming it, putting the denominator in the payload and adding the second, more intuitive ratio
+ * is the whole point of the wrapper.
  */
 @Component
 @RequiredArgsConstructor
@@ -50,8 +61,27 @@ public class FddbCorrelationTools {
 
     private static final String NOTE = "This counts co-occurrence, not causation. "
             + "percentageOfProductDays is the share of the days a matching product was eaten that line up "
-            + "with an event; percentageOfEvents is the share of events that had it beforehand. Neither is "
-            + "a statistical correlation, and over a handful of events either can be high by chance.";
+            + "with an event; percentageOfEvents is the share of events that had it beforehand. Either can "
+            + "be high by chance, above all for a food eaten most days - read them next to lift, which is 1 "
+            + "for chance, and fisherPValue, the probability of at least this many hits at random.";
+
+    /**
+     * How many products the scan lists. The ranking is computed over all of them; past the first
+     * few dozen the lifts are noise an agent should not be reading anyway.
+     */
+    private static final int MAX_RANKED_PRODUCTS = 50;
+
+    private static final String SCAN_NOTE = "This counts co-occurrence, not causation. A lift of 1 is "
+            + "what a food eaten at random would reach; the more products are ranked, the more of them "
+            + "land well above it by chance alone, above all those with few daysInWindow. fisherPValue "
+            + "weighs that for each product alone: out of a hundred products, about five reach 0.05 by "
+            + "chance.";
+
+    private static final String NUTRIENT_NOTE = "This compares averages, it does not show causation. "
+            + "correlation is the point-biserial r between a daily total and lying in the window: 0 is no "
+            + "difference, and over a handful of events anything below about 0.2 in either direction is "
+            + "indistinguishable from chance. Looking at many lags and metrics at once, one of them will "
+            + "always stand out a little.";
 
     private final CorrelationService correlationService;
 
@@ -108,6 +138,161 @@ public class FddbCorrelationTools {
         return toResult(output, inclusions, exclusions, start, events.size());
     }
 
+    @McpTool(
+            name = "rank_products_by_correlation",
+            description = """
+                    Ranks every product in the diary by how strongly eating it lines up with a set \
+                    of event dates, in one call - use it to find candidates before checking single \
+                    foods with correlate_products_with_dates, instead of guessing keywords. The \
+                    window is the event day by default; lagDays moves it further back and \
+                    windowDays widens it, e.g. lagDays 0 and windowDays 3 for "on the day or in the \
+                    two days before". Products are ranked by lift: the share of the days a product \
+                    was eaten that fall into the window, divided by baselinePercentage, the share \
+                    of all logged days that do. A lift near 1 is what chance gives. This counts \
+                    co-occurrence, not causation, and with many products some will rank high by \
+                    chance alone - report the daysEaten and daysInWindow each rests on, and leave \
+                    elimination decisions to the user and their doctor.""",
+            annotations = @McpTool.McpAnnotations(readOnlyHint = true, destructiveHint = false,
+                    idempotentHint = true, openWorldHint = false))
+    public CorrelationScanResultDTO rankProductsByCorrelation(
+            @McpToolParam(description = "The days the symptom or event occurred. Each one is "
+                    + McpDateParser.ACCEPTED_FORMATS + ". At least one, at most 366",
+                    required = true)
+            List<String> occurrenceDates,
+
+            @McpToolParam(description = "Optional earliest day: " + McpDateParser.ACCEPTED_FORMATS
+                    + ". Omit for the whole diary", required = false)
+            String startDate,
+
+            @McpToolParam(description = "Optional: how many days before an event the window starts, "
+                    + "0 to " + CorrelationInputDto.MAX_LAG_DAYS + ". Defaults to 0, the event day",
+                    required = false)
+            Integer lagDays,
+
+            @McpToolParam(description = "Optional: how many days the window spans, counting back from "
+                    + "lagDays. Defaults to 1", required = false)
+            Integer windowDays,
+
+            @McpToolParam(description = "Optional: the fewest days a product must have been eaten on "
+                    + "to be ranked. Defaults to 5; rarer products line up with events by chance too "
+                    + "easily", required = false)
+            Integer minDaysEaten,
+
+            @McpToolParam(description = "How many products to return, at most " + MAX_RANKED_PRODUCTS
+                    + ". Defaults to 20", required = false)
+            Integer limit) {
+        List<LocalDate> events = parseEventDates(occurrenceDates);
+        LocalDate start = McpDateParser.parseOptional(startDate);
+        log.debug("MCP: ranking products against {} event date(s) from {}", events.size(), start);
+
+        CorrelationScanInputDto input = new CorrelationScanInputDto();
+        input.setOccurrenceDates(events.stream().map(LocalDate::toString).toList());
+        input.setStartDate(start == null ? null : start.toString());
+        input.setLagDays(lagDays);
+        input.setWindowDays(windowDays);
+        input.setMinDaysEaten(minDaysEaten);
+        input.setLimit(limit == null ? null : Math.min(limit, MAX_RANKED_PRODUCTS));
+
+        CorrelationScanOutputDto output = correlationService.scanProducts(input);
+
+        CorrelationScanResultDTO.CorrelationScanResultDTOBuilder result = CorrelationScanResultDTO.builder()
+                .startDate(start)
+                .eventDateCount(output.getEventDateCount())
+                .lagDays(output.getLagDays())
+                .windowDays(output.getWindowDays())
+                .loggedDays(output.getLoggedDays())
+                .baselinePercentage(McpMetrics.roundToOneDecimal(output.getBaselinePercentage()))
+                .matchingProductCount(output.getMatchingProducts())
+                .products(output.getProducts().stream()
+                        .map(product -> CorrelationScanResultDTO.Product.builder()
+                                .name(product.getName())
+                                .daysEaten(product.getDaysEaten())
+                                .daysInWindow(product.getDaysInWindow())
+                                .percentageOfProductDays(McpMetrics.roundToOneDecimal(product.getPercentage()))
+                                .lift(product.getLift())
+                                .fisherPValue(product.getFisherPValue())
+                                .build())
+                        .toList());
+
+        if (output.getProducts().isEmpty()) {
+            return result
+                    .message("No product was eaten often enough and inside the window to be ranked - "
+                            + "lower minDaysEaten, widen windowDays or drop startDate")
+                    .build();
+        }
+        return result.note(SCAN_NOTE).build();
+    }
+
+    @McpTool(
+            name = "correlate_nutrients_with_dates",
+            description = """
+                    Compares each daily total - calories, fat, carbs, sugar, protein, fibre - in the \
+                    days before a set of event dates with all other logged days: "do I eat more \
+                    sugar the day before a migraine?". For every lag from the event day up to \
+                    maxLagDays it reports the mean in the window, the mean on the other days and \
+                    their point-biserial correlation, so one call covers every lag and metric. Use \
+                    it alongside rank_products_by_correlation when no single food stands out. This \
+                    compares averages, not causes; report the means and the number of days they \
+                    rest on, and leave conclusions to the user and their doctor.""",
+            annotations = @McpTool.McpAnnotations(readOnlyHint = true, destructiveHint = false,
+                    idempotentHint = true, openWorldHint = false))
+    public NutrientCorrelationResultDTO correlateNutrientsWithDates(
+            @McpToolParam(description = "The days the symptom or event occurred. Each one is "
+                    + McpDateParser.ACCEPTED_FORMATS + ". At least one, at most 366",
+                    required = true)
+            List<String> occurrenceDates,
+
+            @McpToolParam(description = "Optional earliest day: " + McpDateParser.ACCEPTED_FORMATS
+                    + ". Omit for the whole diary", required = false)
+            String startDate,
+
+            @McpToolParam(description = "Optional: the largest lag to report, in days before an event, "
+                    + "0 to " + CorrelationInputDto.MAX_LAG_DAYS + ". Defaults to 3", required = false)
+            Integer maxLagDays,
+
+            @McpToolParam(description = "Optional: how many days each window spans, counting back from "
+                    + "its lag. Defaults to 1", required = false)
+            Integer windowDays,
+
+            @McpToolParam(description = "The nutrients to correlate: CALORIES, FAT, CARBS, SUGAR, PROTEIN "
+                    + "and/or FIBRE. Defaults to all of them", required = false)
+            List<NutrientMetric> metrics) {
+        List<LocalDate> events = parseEventDates(occurrenceDates);
+        LocalDate start = McpDateParser.parseOptional(startDate);
+        log.debug("MCP: correlating daily totals with {} event date(s) from {}", events.size(), start);
+
+        NutrientCorrelationInputDto input = new NutrientCorrelationInputDto();
+        input.setOccurrenceDates(events.stream().map(LocalDate::toString).toList());
+        input.setStartDate(start == null ? null : start.toString());
+        input.setMaxLagDays(maxLagDays);
+        input.setWindowDays(windowDays);
+        input.setMetrics(metrics);
+
+        NutrientCorrelationOutputDto output = correlationService.correlateNutrients(input);
+
+        Map<NutrientMetric, String> units = new EnumMap<>(NutrientMetric.class);
+        output.getEffects().keySet().forEach(metric -> units.put(metric, McpMetrics.unitOf(metric)));
+
+        NutrientCorrelationResultDTO.NutrientCorrelationResultDTOBuilder result = NutrientCorrelationResultDTO.builder()
+                .startDate(start)
+                .eventDateCount(output.getEventDateCount())
+                .loggedDays(output.getLoggedDays())
+                .maxLagDays(output.getMaxLagDays())
+                .windowDays(output.getWindowDays());
+
+        if (output.getLoggedDays() == 0) {
+            return result
+                    .message("No day with any products was logged" + (start == null ? "" : " since " + start)
+                            + ", so there is nothing to compare - drop or move startDate")
+                    .build();
+        }
+        return result
+                .units(units)
+                .effects(output.getEffects())
+                .note(NUTRIENT_NOTE)
+                .build();
+    }
+
     private CorrelationResultDTO toResult(CorrelationOutputDto output, List<String> inclusions,
                                           List<String> exclusions, LocalDate start, int eventDateCount) {
         List<String> matchedProducts = output.getMatchedProducts();
@@ -156,6 +341,9 @@ public class FddbCorrelationTools {
                 .percentageOfEvents(eventDateCount == null || eventDateCount == 0
                         ? null
                         : McpMetrics.roundToOneDecimal((double) detail.getMatchedDays() / eventDateCount * 100))
+                .baselinePercentage(McpMetrics.roundToOneDecimal(detail.getBaselinePercentage()))
+                .lift(detail.getLift())
+                .fisherPValue(detail.getFisherPValue())
                 .matchedDates(detail.getMatchedDates().stream().map(LocalDate::parse).toList())
                 .build();
     }
@@ -135,9 +135,10 @@ public class FddbPrompts {
         log.debug("MCP: trigger food prompt for {} event date(s)", events.size());
 
         String candidates = suspects.isEmpty()
-                ? "No suspect named. Call list_top_products ranked by FREQUENCY to see what I eat often "
-                + "enough for this to be measurable at all, and pick three or four candidates from it - "
-                + "or ask me which foods to check before you start."
+                ? "No suspect named. Call rank_products_by_correlation with the dates above and windowDays 3 "
+                + "to rank everything I eat at once, and pick three or four candidates with a high lift that "
+                + "rest on a fair number of days - or ask me which foods to check before you start. For the "
+                + "control, list_top_products ranked by FREQUENCY shows what I eat often."
                 : "Start with these suspects: " + String.join(", ", suspects) + ".";
 
         return promptFor("Trigger food analysis for " + what, """
@@ -155,8 +156,12 @@ public class FddbPrompts {
                 3. Also run one food I eat often but that nobody suspects, as a control. Without it there is \
                 nothing to judge the numbers against.
 
-                Then report, per candidate: the same-day, one-day-before and two-day-before figures, how many \
-                of the %2$d events each rests on, and how it compares to the control.
+                Once, for all candidates together: call correlate_nutrients_with_dates with the dates above. \
+                The pattern may lie in a nutrient - sugar, fat, fibre - rather than in any one food.
+
+                Then report, per candidate: the same-day, one-day-before and two-day-before figures with their \
+                lift, how many of the %2$d events each rests on, and how it compares to the control. Mention \
+                any nutrient whose correlation stands out at some lag.
 
                 Be explicit about what this cannot do. It counts co-occurrence, not causation. %2$d events is \
                 a small sample and a food I eat most days will line up with almost anything. Do not tell me to \
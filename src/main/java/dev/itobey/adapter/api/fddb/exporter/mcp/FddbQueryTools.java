@@ -56,6 +56,16 @@ public class FddbQueryTools {
 
     private static final int MAX_TOP_PRODUCTS_LIMIT = 100;
 
+    /**
+     * Default cap for the product pairs. Like the ranking, read from the top down; the defaults for
+     * the thresholds keep one-off coincidences out of it.
+     */
+    private static final int DEFAULT_PRODUCT_PAIRS_LIMIT = 20;
+
+    private static final int MAX_PRODUCT_PAIRS_LIMIT = 100;
+
+    private static final int DEFAULT_MIN_DAYS_TOGETHER = 5;
+
     /**
      * Default cap for the vocabulary lookup. Enough to see the variants of a search term, and a
      * plain name is cheap enough that a caller wanting the whole list can ask for it.
@@ -237,6 +247,68 @@ public class FddbQueryTools {
                 .build();
     }
 
+    @McpTool(
+            name = "list_product_pairs",
+            description = """
+                    Finds the products logged on the same days - "what do I have with my coffee", \
+                    "which foods go together". Each pair carries daysTogether, support (the share of \
+                    logged days with both), confidence (the share of the first product's days that \
+                    also have the second), reverseConfidence, and lift: 1 means the two share no more \
+                    days than two independent products would, above 1 they go together, below 1 they \
+                    exclude each other. Two daily staples always share many days at a lift of about \
+                    1, so rank associations by lift, not by daysTogether. With a product fragment, \
+                    only its pairs are listed and it is always reported first.""",
+            annotations = @McpTool.McpAnnotations(readOnlyHint = true, destructiveHint = false,
+                    idempotentHint = true, openWorldHint = false))
+    public ProductPairsResultDTO listProductPairs(
+            @McpToolParam(description = "Optional case-insensitive fragment one of the two products has to "
+                    + "contain, e.g. 'kaffee'", required = false)
+            String product,
+
+            @McpToolParam(description = "Optional first day: " + McpDateParser.ACCEPTED_FORMATS,
+                    required = false)
+            String fromDate,
+
+            @McpToolParam(description = "Optional last day: " + McpDateParser.ACCEPTED_FORMATS,
+                    required = false)
+            String toDate,
+
+            @McpToolParam(description = "Fewest days the two have to share. Defaults to 5", required = false)
+            Integer minDaysTogether,
+
+            @McpToolParam(description = "Smallest confidence in percent, in either direction, 0 to 100. "
+                    + "Defaults to 0", required = false)
+            Double minConfidence,
+
+            @McpToolParam(description = "How many pairs to return, at most 100. Defaults to 20",
+                    required = false)
+            Integer limit) {
+        LocalDate from = McpDateParser.parseOptional(fromDate);
+        LocalDate to = McpDateParser.parseOptional(toDate);
+        int effectiveMinDays = minDaysTogether == null || minDaysTogether < 1
+                ? DEFAULT_MIN_DAYS_TOGETHER : minDaysTogether;
+        double effectiveMinConfidence = minConfidence == null ? 0 : Math.clamp(minConfidence, 0.0, 100.0);
+        int effectiveLimit = McpPage.boundedLimit(limit, DEFAULT_PRODUCT_PAIRS_LIMIT, MAX_PRODUCT_PAIRS_LIMIT);
+        log.debug("MCP: listing product pairs for '{}' in {} to {} (minDaysTogether={}, minConfidence={}, limit={})",
+                product, from, to, effectiveMinDays, effectiveMinConfidence, effectiveLimit);
+
+        McpPage<ProductPairDTO> page = McpPage.fetch(effectiveLimit,
+                max -> fddbDataService.getProductPairs(product, from, to, effectiveMinDays, effectiveMinConfidence,
+                        max));
+
+        return ProductPairsResultDTO.builder()
+                .product(product)
+                .fromDate(from)
+                .toDate(to)
+                .minDaysTogether(effectiveMinDays)
+                .minConfidence(effectiveMinConfidence)
+                .resultCount(page.size())
+                .limit(effectiveLimit)
+                .truncated(page.truncated())
+                .results(page.items())
+                .build();
+    }
+
     @McpTool(
             name = "get_product_summary",
             description = """
@@ -327,7 +399,8 @@ public class FddbQueryTools {
                     them up with correlate_products_with_dates or pull individual days with get_day. \
                     Grouped by day, newest first. Answer "on how many days did I eat X?" with \
                     matchedDayCount, which is how many exist, not with dayCount, which is how many \
-                    came back.""",
+                    came back. When truncated, pass nextPageToken back as pageToken for the older \
+                    days; matchedDayCount on such a page counts from the token back.""",
             annotations = @McpTool.McpAnnotations(readOnlyHint = true, destructiveHint = false,
                     idempotentHint = true, openWorldHint = false))
     public DaysWithProductsResultDTO findDaysWithProducts(
@@ -345,37 +418,39 @@ public class FddbQueryTools {
 
             @McpToolParam(description = "How many days to return, at most 366. Defaults to 100",
                     required = false)
-            Integer limit) {
+            Integer limit,
+
+            @McpToolParam(description = "Optional nextPageToken of a previous call with the same keywords, "
+                    + "to continue with the days before its last one", required = false)
+            String pageToken) {
         if (includeKeywords == null || includeKeywords.isEmpty()) {
             throw new IllegalArgumentException("At least one include keyword is required - without one "
                     + "this would return every day in the diary");
         }
         LocalDate start = McpDateParser.parseOptional(startDate);
+        // the token is the oldest day of the previous page, so a continuation never rescans newer days
+        LocalDate before = McpDateParser.parseOptional(pageToken);
         int effectiveLimit = McpPage.boundedLimit(limit, DEFAULT_MATCHED_DAYS_LIMIT, MAX_MATCHED_DAYS_LIMIT);
-        log.debug("MCP: finding days with {} (excluding {}) from {}", includeKeywords, excludeKeywords, start);
-
-        // grouped and capped in the database already
-        McpPage<DayWithProductsDTO> page = McpPage.fetch(effectiveLimit,
-                max -> fddbDataService.findDaysWithProducts(includeKeywords, excludeKeywords, start, max));
-
-        // an untruncated result already holds every match, so the totals cost a second query only
-        // when the answer would otherwise be a guess
-        ProductDayTotalsDTO totals = page.truncated()
-                ? fddbDataService.countDaysWithProducts(includeKeywords, excludeKeywords, start)
-                : ProductDayTotalsDTO.builder()
-                .dayCount(page.size())
-                .occurrenceCount(page.items().stream().mapToLong(DayWithProductsDTO::getOccurrences).sum())
-                .build();
+        log.debug("MCP: finding days with {} (excluding {}) from {} before {}", includeKeywords, excludeKeywords,
+                start, before);
+
+        // grouped, capped and counted in the database, in one pipeline - the totals say whether
+        // anything was cut, so no extra day has to be fetched to find out
+        ProductDaysPageDTO page = fddbDataService.findDaysWithProducts(includeKeywords, excludeKeywords, start,
+                before, effectiveLimit);
+        boolean truncated = page.getDayCount() > page.getDays().size();
 
         return DaysWithProductsResultDTO.builder()
                 .includeKeywords(includeKeywords)
                 .excludeKeywords(excludeKeywords == null || excludeKeywords.isEmpty() ? null : excludeKeywords)
                 .startDate(start)
-                .dayCount(page.size())
-                .matchedDayCount(totals.getDayCount())
-                .occurrenceCount(totals.getOccurrenceCount())
-                .truncated(page.truncated())
-                .days(page.items().stream()
+                .pageToken(before == null ? null : before.toString())
+                .dayCount(page.getDays().size())
+                .matchedDayCount(page.getDayCount())
+                .occurrenceCount(page.getOccurrenceCount())
+                .truncated(truncated)
+                .nextPageToken(truncated ? page.getDays().getLast().getDate().toString() : null)
+                .days(page.getDays().stream()
                         .map(day -> DaysWithProductsResultDTO.MatchedDay.builder()
                                 .date(day.getDate())
                                 .products(day.getProducts())
@@ -13,7 +13,9 @@ import org.springframework.stereotype.Component;
 import java.time.DateTimeException;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 import static java.time.temporal.ChronoUnit.MONTHS;
 import static java.time.temporal.ChronoUnit.WEEKS;
@@ -63,6 +65,12 @@ public class FddbStatsTools {
      */
     private static final int MAX_TREND_BUCKETS = FddbDataService.MAX_RANGE_DAYS;
 
+    /**
+     * Default window of a rolling average: a week evens out the weekday/weekend swing, which is
+     * what most "is my intake creeping up" questions are about.
+     */
+    private static final int DEFAULT_ROLLING_WINDOW = 7;
+
     private final FddbDataService fddbDataService;
 
     @McpTool(
@@ -230,6 +238,66 @@ public class FddbStatsTools {
                 .build();
     }
 
+    @McpTool(
+            name = "get_rolling_averages",
+            description = """
+                    Returns a moving average with one point per day: each point averages the window \
+                    of days ending on it - "plot my 7-day calorie average over the last year". One \
+                    call covers the whole range; do not call get_averages once per day. At most 366 \
+                    points. A point whose window had fewer logged days than minLoggedDays carries \
+                    no averages at all rather than an average over one or two days, so read \
+                    averagedPoints against pointCount before describing the curve.""",
+            annotations = @McpTool.McpAnnotations(readOnlyHint = true, destructiveHint = false,
+                    idempotentHint = true, openWorldHint = false))
+    public RollingAverageSeriesResultDTO getRollingAverages(
+            @McpToolParam(description = "Day of the first point: " + McpDateParser.ACCEPTED_FORMATS,
+                    required = true)
+            String fromDate,
+
+            @McpToolParam(description = "Day of the last point: " + McpDateParser.ACCEPTED_FORMATS,
+                    required = true)
+            String toDate,
+
+            @McpToolParam(description = "How many days each point averages, the day itself included, "
+                    + "at most 90. Defaults to 7", required = false)
+            Integer window,
+
+            @McpToolParam(description = "The nutrients to average: CALORIES, FAT, CARBS, SUGAR, PROTEIN "
+                    + "and/or FIBRE. Defaults to all of them", required = false)
+            List<NutrientMetric> metrics,
+
+            @McpToolParam(description = "The fewest logged days a window needs to be averaged, between "
+                    + "1 and the window. Defaults to more than half of the window", required = false)
+            Integer minLoggedDays) {
+        LocalDate from = McpDateParser.parse(fromDate);
+        LocalDate to = McpDateParser.parse(toDate);
+        McpRange.of(from, to).capped(FddbDataService.MAX_RANGE_DAYS);
+        int effectiveWindow = window == null ? DEFAULT_ROLLING_WINDOW : window;
+        log.debug("MCP: retrieving the {}-day rolling averages of {} for {} to {}",
+                effectiveWindow, metrics, from, to);
+
+        List<RollingAveragePointDTO> points = fddbDataService.getRollingAverageSeries(
+                from, to, effectiveWindow, metrics, minLoggedDays);
+        // reported as the service applied them
+        List<NutrientMetric> effectiveMetrics = FddbDataService.rollingAverageMetrics(metrics);
+        int effectiveMinLoggedDays = FddbDataService.rollingAverageMinLoggedDays(effectiveWindow, minLoggedDays);
+
+        Map<NutrientMetric, String> units = new EnumMap<>(NutrientMetric.class);
+        effectiveMetrics.forEach(metric -> units.put(metric, McpMetrics.unitOf(metric)));
+
+        return RollingAverageSeriesResultDTO.builder()
+                .fromDate(from)
+                .toDate(to)
+                .window(effectiveWindow)
+                .minLoggedDays(effectiveMinLoggedDays)
+                .metrics(effectiveMetrics)
+                .units(units)
+                .pointCount(points.size())
+                .averagedPoints((int) points.stream().filter(point -> point.getAverages() != null).count())
+                .points(points)
+                .build();
+    }
+
     @McpTool(
             name = "get_weekday_breakdown",
             description = """
@@ -308,9 +376,10 @@ public class FddbStatsTools {
                     Lists the days in a range that were never logged - "when did I forget to log?". \
                     A day with an entry but no calories at all counts as missing too, since that is \
                     what an aborted export looks like. The range itself is unlimited but at most 366 \
-                    dates are listed; missingCount and loggedCount always cover the whole range, so \
-                    answer "how many did I miss?" from those and narrow the range if the dates \
-                    themselves are needed.""",
+                    dates are listed; missingCount, loggedCount, gapCount, longestGap and the \
+                    per-month breakdown always cover the whole range, so answer "how many did I \
+                    miss?" or "when did I stop logging?" from those and narrow the range if the \
+                    dates themselves are needed.""",
             annotations = @McpTool.McpAnnotations(readOnlyHint = true, destructiveHint = false,
                     idempotentHint = true, openWorldHint = false))
     public MissingDaysResultDTO listMissingDays(
@@ -329,6 +398,7 @@ public class FddbStatsTools {
         List<LocalDate> missingDays = fddbDataService.getMissingDays(from, to);
         // the full list is needed for the counts either way, so it is capped rather than queried short
         McpPage<LocalDate> page = McpPage.of(missingDays, MAX_MISSING_DAYS_LISTED);
+        GapStatsDTO gapStats = fddbDataService.getGapStats(from, to);
 
         return MissingDaysResultDTO.builder()
                 .fromDate(from)
@@ -337,6 +407,9 @@ public class FddbStatsTools {
                 // the counts describe the whole range even when the list below does not
                 .missingCount(missingDays.size())
                 .loggedCount(daysChecked - missingDays.size())
+                .gapCount(gapStats.getGapCount())
+                .longestGap(gapStats.getLongestGap())
+                .months(gapStats.getMonths())
                 .truncated(page.truncated())
                 .limit(page.truncated() ? MAX_MISSING_DAYS_LISTED : null)
                 .missingDays(page.items())
@@ -2,6 +2,10 @@ package dev.itobey.adapter.api.fddb.exporter.rest.v2;
 
 import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationInputDto;
 import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationOutputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationScanInputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationScanOutputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.NutrientCorrelationInputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.NutrientCorrelationOutputDto;
 import dev.itobey.adapter.api.fddb.exporter.service.CorrelationService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
@@ -9,9 +13,11 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
@@ -50,9 +56,57 @@ public class CorrelationResourceV2 {
                     content = @Content(mediaType = "application/json", schema = @Schema(implementation = CorrelationOutputDto.class)))
     })
     @PostMapping
-    public CorrelationOutputDto createCorrelation(@RequestBody CorrelationInputDto correlationInputDto) {
+    public CorrelationOutputDto createCorrelation(@Valid @RequestBody CorrelationInputDto correlationInputDto) {
         log.debug("V2: Creating correlation analysis");
         return correlationService.createCorrelation(correlationInputDto);
     }
-}
 
+    /**
+     * Rank every product in the diary by how strongly eating it lines up with the given dates.
+     *
+     * @param correlationScanInputDto the event dates, the window and the ranking limits
+     * @return the baseline of the window and the products with the highest lift
+     */
+    @Operation(summary = "Rank all products by correlation",
+            description = "Rank every product in the diary by its lift: the share of the days it was eaten that "
+                    + "fall into the window before an event, relative to the share of all logged days that do")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Products ranked successfully",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = CorrelationScanOutputDto.class))),
+            @ApiResponse(responseCode = "400", description = "No event dates, or a parameter out of range", content = @Content)
+    })
+    @PostMapping("/products")
+    public ResponseEntity<?> scanProducts(@Valid @RequestBody CorrelationScanInputDto correlationScanInputDto) {
+        log.debug("V2: Ranking all products by correlation");
+        try {
+            return ResponseEntity.ok(correlationService.scanProducts(correlationScanInputDto));
+        } catch (IllegalArgumentException illegalArgumentException) {
+            return ResponseEntity.badRequest().body(illegalArgumentException.getMessage());
+        }
+    }
+
+    /**
+     * Line up every daily total with the given dates, at each lag from the event day on.
+     *
+     * @param nutrientCorrelationInputDto the event dates, the lags and the metrics
+     * @return for each metric, how its daily total differs before an event at each lag
+     */
+    @Operation(summary = "Correlate daily totals with dates",
+            description = "For each nutrient and each lag up to maxLagDays, compare the mean daily total in the "
+                    + "window before an event with the mean of all other logged days, and report the "
+                    + "point-biserial correlation between the two")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Correlation calculated successfully",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = NutrientCorrelationOutputDto.class))),
+            @ApiResponse(responseCode = "400", description = "No event dates, or a parameter out of range", content = @Content)
+    })
+    @PostMapping("/nutrients")
+    public ResponseEntity<?> correlateNutrients(@Valid @RequestBody NutrientCorrelationInputDto nutrientCorrelationInputDto) {
+        log.debug("V2: Correlating daily totals with dates");
+        try {
+            return ResponseEntity.ok(correlationService.correlateNutrients(nutrientCorrelationInputDto));
+        } catch (IllegalArgumentException illegalArgumentException) {
+            return ResponseEntity.badRequest().body(illegalArgumentException.getMessage());
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package dev.itobey.adapter.api.fddb.exporter.rest.v2;
 
 import dev.itobey.adapter.api.fddb.exporter.annotation.RequiresMongoDb;
+import dev.itobey.adapter.api.fddb.exporter.dto.DownloadCompression;
 import dev.itobey.adapter.api.fddb.exporter.dto.DownloadFormat;
 import dev.itobey.adapter.api.fddb.exporter.service.DataDownloadService;
+import dev.itobey.adapter.api.fddb.exporter.service.snapshot.DownloadSnapshotService;
 import dev.itobey.adapter.api.fddb.exporter.ui.service.DataDownloadClient;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -10,29 +12,41 @@ import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.validation.constraints.Min;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * V2 REST API for downloading FDDB data in various formats.
  * <p>
  * Provides endpoints for:
- * - Downloading data as CSV or JSON
+ * - Downloading data as CSV, JSON, newline-delimited JSON or a ZIP of CSV tables for analysis tools
  * - Filtering by date range
  * - Including or excluding product details
+ * - Compressing the download with gzip, as a .gz file or negotiated via Accept-Encoding
+ * - Streaming the entries changed since a revision, for incremental syncs
+ * - Serving the gzip-compressed full history from a snapshot on disk while it is current, with
+ *   ETag and Range support for conditional and resumed downloads
  * <p>
- * The API endpoint is mapped to "/api/v2/fddbdata/download".
+ * The API endpoints are mapped to "/api/v2/fddbdata/download" and "/api/v2/fddbdata/changes".
  *
  * @since 2.0.0
  */
@@ -44,48 +58,73 @@ import java.time.LocalDate;
 @Tag(name = "FDDB Data Download", description = "Download FDDB data in various formats")
 public class DataDownloadResourceV2 {
 
+    private static final String GZIP_ENCODING = "gzip";
+
+    /**
+     * The buffer of the gzip encoder, large enough that the deflater works on whole blocks rather
+     * than the small writes of the CSV and JSON writers.
+     */
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
     private final DataDownloadService dataDownloadService;
 
+    @Autowired(required = false)
+    private DownloadSnapshotService downloadSnapshotService;
+
     /**
      * Download FDDB data in the specified format.
      *
      * @param fromDate         optional start date for filtering (inclusive)
      * @param toDate           optional end date for filtering (inclusive)
-     * @param format           the download format (CSV or JSON)
+     * @param format           the download format (CSV, JSON, TABLES or NDJSON)
      * @param includeProducts  whether to include product details (true) or just daily totals (false)
      * @param decimalSeparator the decimal separator for CSV format (comma or dot)
-     * @return the data as a downloadable file
+     * @param compression      optional compression of the file itself; if absent, the transfer is
+     *                         gzip-encoded whenever {@code acceptEncoding} allows it
+     * @param acceptEncoding   the content codings the client accepts
+     * @return the data as a downloadable file, streamed as it is read from the database - or, for
+     * the whole history compressed with gzip, read from a current snapshot
      */
     @Operation(summary = "Download FDDB data",
-            description = "Download FDDB data as CSV or JSON. Optionally filter by date range and choose whether to include product details or just daily totals.")
+            description = "Download FDDB data as CSV, JSON, NDJSON - one day per line - or TABLES - a ZIP of normalized CSV tables (days, product occurrences and a product dictionary) for DuckDB, pandas and the like. Optionally filter by date range and choose whether to include product details or just daily totals.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Data downloaded successfully",
                     content = {
                             @Content(mediaType = "text/csv"),
-                            @Content(mediaType = "application/json")
+                            @Content(mediaType = "application/json"),
+                            @Content(mediaType = "application/zip"),
+                            @Content(mediaType = "application/x-ndjson")
                     }),
+            @ApiResponse(responseCode = "206", description = "Part of a snapshot, for a Range request", content = @Content),
+            @ApiResponse(responseCode = "304", description = "The snapshot matches If-None-Match", content = @Content),
             @ApiResponse(responseCode = "400", description = "Invalid parameters, or MongoDB is disabled", content = @Content)
     })
     @GetMapping("/download")
     @RequiresMongoDb
-    public ResponseEntity<byte[]> downloadData(
+    public ResponseEntity<?> downloadData(
             @Parameter(description = "Start date for filtering (inclusive), format: YYYY-MM-DD. If not provided, downloads from the beginning.", example = "2024-01-01")
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
 
             @Parameter(description = "End date for filtering (inclusive), format: YYYY-MM-DD. If not provided, downloads until the most recent entry.", example = "2024-12-31")
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate toDate,
 
-            @Parameter(description = "Download format: CSV or JSON", example = "CSV", required = true)
+            @Parameter(description = "Download format: CSV, JSON, TABLES or NDJSON", example = "CSV", required = true)
             @RequestParam DownloadFormat format,
 
             @Parameter(description = "Whether to include product details (true) or just daily totals (false)", example = "false")
             @RequestParam(defaultValue = "false") boolean includeProducts,
 
-            @Parameter(description = "Decimal separator for CSV format: comma or dot", example = "comma")
-            @RequestParam(defaultValue = "comma") String decimalSeparator) {
+            @Parameter(description = "Decimal separator for CSV format: comma or dot; TABLES always uses dot", example = "comma")
+            @RequestParam(defaultValue = "comma") String decimalSeparator,
+
+            @Parameter(description = "Compression of the file: GZIP for a .gz file, NONE for none. If not provided, the transfer is gzip-encoded when the Accept-Encoding header allows it.", example = "GZIP")
+            @RequestParam(required = false) DownloadCompression compression,
 
-        log.info("V2: Downloading data: fromDate={}, toDate={}, format={}, includeProducts={}, decimalSeparator={}",
-                fromDate, toDate, format, includeProducts, decimalSeparator);
+            @Parameter(hidden = true)
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        log.info("V2: Downloading data: fromDate={}, toDate={}, format={}, includeProducts={}, decimalSeparator={}, compression={}",
+                fromDate, toDate, format, includeProducts, decimalSeparator, compression);
 
         // Validate date range if both are provided
         if (fromDate != null && toDate != null && fromDate.isAfter(toDate)) {
@@ -102,22 +141,137 @@ public class DataDownloadResourceV2 {
             return ResponseEntity.badRequest().build();
         }
 
-        byte[] data = dataDownloadService.downloadData(fromDate, toDate, format, includeProducts, actualDecimalSeparator);
         String filename = DataDownloadClient.generateDownloadFilename(fromDate, toDate, format, includeProducts);
 
         HttpHeaders headers = new HttpHeaders();
+        boolean gzip;
+        if (compression == null) {
+            // the ZIP of the tables is deflated already, another pass would only cost CPU
+            gzip = format != DownloadFormat.TABLES && acceptsGzip(acceptEncoding);
+            headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+            if (gzip) {
+                headers.set(HttpHeaders.CONTENT_ENCODING, GZIP_ENCODING);
+            }
+        } else {
+            gzip = compression == DownloadCompression.GZIP;
+            filename += compression.getFileExtension();
+        }
+
         // Set content type with UTF-8 charset for proper encoding
         String contentType = format.getContentType();
-        if (format == DownloadFormat.CSV) {
+        if (compression == DownloadCompression.GZIP) {
+            contentType = compression.getContentType();
+        } else if (format == DownloadFormat.CSV) {
             contentType += "; charset=UTF-8";
         }
         headers.setContentType(MediaType.parseMediaType(contentType));
         headers.setContentDispositionFormData("attachment", filename);
-        headers.setContentLength(data.length);
+
+        // the whole history is kept compressed on disk; served as a resource, the file gets a
+        // Content-Length, and Spring answers If-None-Match with 304 and Range with 206
+        if (gzip && fromDate == null && toDate == null && downloadSnapshotService != null) {
+            Optional<DownloadSnapshotService.Snapshot> snapshot = downloadSnapshotService.find(format, includeProducts, actualDecimalSeparator);
+            if (snapshot.isPresent()) {
+                return ResponseEntity.ok()
+                        .headers(headers)
+                        .eTag(snapshot.get().eTag())
+                        .body(new FileSystemResource(snapshot.get().file()));
+            }
+        }
+
+        // no Content-Length: the body is written from the database cursor as it is read, so its
+        // size is only known at the end, and the response is sent chunked
+        StreamingResponseBody body = outputStream -> dataDownloadService.downloadData(
+                fromDate, toDate, format, includeProducts, actualDecimalSeparator, outputStream);
 
         return ResponseEntity.ok()
                 .headers(headers)
-                .body(data);
+                .body(gzip ? gzipped(body) : body);
     }
-}
 
+    /**
+     * Stream the entries inserted or changed after a revision, for keeping a downstream copy in sync.
+     *
+     * @param sinceRevision  the highest revision the caller has already read, or null for every entry
+     * @param acceptEncoding the content codings the client accepts
+     * @return the changed entries as newline-delimited JSON, lowest revision first
+     */
+    @Operation(summary = "Stream the changes since a revision",
+            description = "Returns every entry inserted or changed after the given revision as newline-delimited JSON, one entry with its products per line, lowest revision first. Keep the highest revision read and pass it as sinceRevision on the next call to receive only later changes. Without sinceRevision, every entry is returned.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Changes streamed successfully",
+                    content = @Content(mediaType = "application/x-ndjson")),
+            @ApiResponse(responseCode = "400", description = "Invalid revision, or MongoDB is disabled", content = @Content)
+    })
+    @GetMapping("/changes")
+    @RequiresMongoDb
+    public ResponseEntity<StreamingResponseBody> downloadChanges(
+            @Parameter(description = "The highest revision already read. If not provided, every entry is returned, starting with those stored before revisions were recorded.", example = "1234")
+            @RequestParam(required = false) @Min(0) Long sinceRevision,
+
+            @Parameter(hidden = true)
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        log.info("V2: Downloading changes: sinceRevision={}", sinceRevision);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_NDJSON);
+        headers.setVary(List.of(HttpHeaders.ACCEPT_ENCODING));
+        boolean gzip = acceptsGzip(acceptEncoding);
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, GZIP_ENCODING);
+        }
+
+        StreamingResponseBody body = outputStream -> dataDownloadService.downloadChanges(sinceRevision, outputStream);
+
+        return ResponseEntity.ok()
+                .headers(headers)
+                .body(gzip ? gzipped(body) : body);
+    }
+
+    /**
+     * Compresses a body block by block as it is written; the encoder is finished rather than
+     * closed, as the response stream belongs to the servlet container.
+     */
+    private static StreamingResponseBody gzipped(StreamingResponseBody body) {
+        return outputStream -> {
+            GZIPOutputStream gzipStream = new GZIPOutputStream(outputStream, GZIP_BUFFER_SIZE);
+            body.writeTo(gzipStream);
+            gzipStream.finish();
+        };
+    }
+
+    /**
+     * Whether an Accept-Encoding header allows gzip with a quality above 0 - by name, or through
+     * {@code *} if gzip is not named.
+     */
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Double gzipQuality = null;
+        Double anyQuality = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (GZIP_ENCODING.equalsIgnoreCase(name)) {
+                gzipQuality = quality;
+            } else if ("*".equals(name)) {
+                anyQuality = quality;
+            }
+        }
+        Double quality = gzipQuality != null ? gzipQuality : anyQuality;
+        return quality != null && quality > 0;
+    }
+}
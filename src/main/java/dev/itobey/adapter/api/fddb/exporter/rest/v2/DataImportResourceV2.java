@@ -0,0 +1,83 @@
+package dev.itobey.adapter.api.fddb.exporter.rest.v2;
+
+import dev.itobey.adapter.api.fddb.exporter.annotation.RequiresMongoDb;
+import dev.itobey.adapter.api.fddb.exporter.dto.DownloadFormat;
+import dev.itobey.adapter.api.fddb.exporter.dto.ImportResultDTO;
+import dev.itobey.adapter.api.fddb.exporter.service.DataImportService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * V2 REST API for importing a download back into the database.
+ * <p>
+ * Provides endpoints for:
+ * - Restoring the diary from a CSV, JSON or NDJSON download with products, gzip-compressed or not
+ * <p>
+ * The API endpoints are mapped to the "/api/v2/fddbdata/import" path.
+ *
+ * @since 2.5.0
+ */
+@RestController
+@RequestMapping("/api/v2/fddbdata")
+@Slf4j
+@Validated
+@RequiredArgsConstructor
+@Tag(name = "FDDB Data Import", description = "Import FDDB data from a previous download")
+public class DataImportResourceV2 {
+
+    private final DataImportService dataImportService;
+
+    /**
+     * Import a download with products, read from the request body as it arrives.
+     *
+     * @param format      the format of the download (CSV, JSON or NDJSON)
+     * @param requestBody the download, optionally gzip-compressed
+     * @return how many days were read and written, or HTTP 400 naming what is wrong with the file
+     * @throws IOException if reading the request fails
+     */
+    @Operation(summary = "Import a download",
+            description = "Import a previous download with products - CSV with either decimal separator, JSON or NDJSON, optionally gzip-compressed - as the request body. Days are inserted or replaced by their date; days stored exactly like this already are left alone, so importing the same file twice writes nothing the second time. Totals-only downloads are refused, as they would remove the products of the days they contain.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Import completed successfully",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ImportResultDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Not a download with products in the given format, or MongoDB is disabled", content = @Content),
+            @ApiResponse(responseCode = "409", description = "An export is running", content = @Content),
+            @ApiResponse(responseCode = "415", description = "The file was sent as a form rather than as the request body", content = @Content)
+    })
+    // a form post would have its body read as form parameters when the format is resolved,
+    // leaving nothing to import; a request without a content type counts as octet-stream
+    @PostMapping(value = "/import", consumes = {MediaType.APPLICATION_OCTET_STREAM_VALUE, "text/csv",
+            MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE, "application/gzip"})
+    @RequiresMongoDb
+    public ResponseEntity<?> importData(
+            @Parameter(description = "Format of the download: CSV, JSON or NDJSON", example = "CSV", required = true)
+            @RequestParam DownloadFormat format,
+
+            @Parameter(hidden = true)
+            InputStream requestBody) throws IOException {
+
+        log.info("V2: Importing data: format={}", format);
+        try {
+            return ResponseEntity.ok(dataImportService.importData(format, requestBody));
+        } catch (IllegalArgumentException illegalArgumentException) {
+            return ResponseEntity.badRequest().body(illegalArgumentException.getMessage());
+        }
+    }
+}
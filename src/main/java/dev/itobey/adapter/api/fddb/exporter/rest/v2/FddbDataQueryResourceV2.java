@@ -1,7 +1,9 @@
 package dev.itobey.adapter.api.fddb.exporter.rest.v2;
 
+import dev.itobey.adapter.api.fddb.exporter.annotation.ETagByDataVersion;
 import dev.itobey.adapter.api.fddb.exporter.annotation.RequiresMongoDb;
 import dev.itobey.adapter.api.fddb.exporter.dto.*;
+import dev.itobey.adapter.api.fddb.exporter.service.DataDownloadService;
 import dev.itobey.adapter.api.fddb.exporter.service.FddbDataService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
@@ -15,9 +17,13 @@ import jakarta.validation.constraints.Min;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.DayOfWeek;
 import java.time.LocalDate;
@@ -31,6 +37,7 @@ import java.util.regex.Pattern;
  * Provides endpoints for:
  * - Retrieving all FDDB data entries
  * - Retrieving FDDB data by date
+ * - Retrieving FDDB data for a date range, as one array or streamed as one day per line
  * - Searching for products by name
  * <p>
  * The API endpoints are mapped to the "/api/v2/fddbdata" path.
@@ -46,6 +53,7 @@ import java.util.regex.Pattern;
 public class FddbDataQueryResourceV2 {
 
     private final FddbDataService fddbDataService;
+    private final DataDownloadService dataDownloadService;
     private static final String DATE_PATTERN = "\\d{4}-\\d{2}-\\d{2}";
 
     /**
@@ -61,6 +69,7 @@ public class FddbDataQueryResourceV2 {
     })
     @GetMapping
     @RequiresMongoDb
+    @ETagByDataVersion
     public ResponseEntity<List<FddbDataDTO>> findAllEntries() {
         log.debug("V2: Retrieving all FDDB data entries");
         List<FddbDataDTO> entries = fddbDataService.findAllEntries();
@@ -70,15 +79,24 @@ public class FddbDataQueryResourceV2 {
     /**
      * Retrieves FDDB data entries for the specified date.
      *
-     * @param date the date for which to retrieve FDDB data entries, in the format YYYY-MM-DD
+     * <p>
+     * Tagged with the revision of the day rather than the version of the whole diary, so a client
+     * keeping single days only fetches one again once that day changed. Telling requires looking
+     * the day up, but not sending it.
+     *
+     * @param date       the date for which to retrieve FDDB data entries, in the format YYYY-MM-DD
+     * @param webRequest the request, checked for the ETag of the entry
      * @return a ResponseEntity containing FDDB data entries for the specified date,
+     * or 304 Not Modified if the client has the entry like this already,
      * or a 400 Bad Request response if the date format is invalid,
      * or 404 Not Found if no data exists for the date
      */
-    @Operation(summary = "Get FDDB data for a specific date", description = "Retrieves FDDB data entries for the specified date")
+    @Operation(summary = "Get FDDB data for a specific date", description = "Retrieves FDDB data entries for the specified date. "
+            + "The response carries an ETag of the day; sending it back as If-None-Match returns 304 until the day changes.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Data found for the specified date",
                     content = @Content(mediaType = "application/json", schema = @Schema(implementation = FddbDataDTO.class))),
+            @ApiResponse(responseCode = "304", description = "The entry did not change since the given ETag", content = @Content),
             @ApiResponse(responseCode = "400", description = "Invalid date format, or MongoDB is disabled", content = @Content),
             @ApiResponse(responseCode = "404", description = "No data found for the specified date", content = @Content)
     })
@@ -86,13 +104,22 @@ public class FddbDataQueryResourceV2 {
     @RequiresMongoDb
     public ResponseEntity<?> findByDate(
             @Parameter(description = "Date in YYYY-MM-DD format", example = "2024-12-22", required = true)
-            @PathVariable String date) {
+            @PathVariable String date,
+
+            WebRequest webRequest) {
         log.debug("V2: Retrieving FDDB data for date: {}", date);
         if (!isValidDate(date)) {
             return ResponseEntity.badRequest().body("Date must be in the format YYYY-MM-DD");
         }
         Optional<FddbDataDTO> entry = fddbDataService.findByDate(date);
-        return entry.isPresent() ? ResponseEntity.ok(entry) : ResponseEntity.notFound().build();
+        if (entry.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        String eTag = eTagOf(entry.get());
+        if (webRequest.checkNotModified(eTag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(eTag).build();
+        }
+        return ResponseEntity.ok().eTag(eTag).body(entry);
     }
 
     /**
@@ -106,7 +133,8 @@ public class FddbDataQueryResourceV2 {
     @Operation(summary = "Get FDDB data for a date range",
             description = "Retrieves all entries between two dates (both inclusive), oldest first. Product lists are "
                     + "omitted unless explicitly requested, since a long range with products is a very large response. "
-                    + "The range is limited to " + FddbDataService.MAX_RANGE_DAYS + " days.")
+                    + "The range is limited to " + FddbDataService.MAX_RANGE_DAYS + " days; request "
+                    + "application/x-ndjson for a streamed response without that limit.")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Entries for the specified range",
                     content = @Content(mediaType = "application/json", schema = @Schema(implementation = FddbDataDTO.class))),
@@ -114,6 +142,7 @@ public class FddbDataQueryResourceV2 {
     })
     @GetMapping("/range")
     @RequiresMongoDb
+    @ETagByDataVersion
     public ResponseEntity<List<FddbDataDTO>> findByDateRange(
             @Parameter(description = "Start date (inclusive), format: YYYY-MM-DD", example = "2024-12-01", required = true)
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
@@ -127,6 +156,51 @@ public class FddbDataQueryResourceV2 {
         return ResponseEntity.ok(fddbDataService.findByDateRange(fromDate, toDate, includeProducts));
     }
 
+    /**
+     * Streams all FDDB data entries within a date range as newline-delimited JSON, chosen with an
+     * {@code Accept: application/x-ndjson} header.
+     * <p>
+     * The entries are written one day per line from a database cursor, so unlike the JSON array
+     * the range is not limited: memory stays flat however long it is, and a client can process
+     * the first days before the last ones are read.
+     *
+     * @param fromDate        the first date to include (inclusive)
+     * @param toDate          the last date to include (inclusive)
+     * @param includeProducts whether the product lists should be part of the response
+     * @return the matching entries, oldest first, or 400 without a body for an inverted range
+     */
+    @Operation(summary = "Stream FDDB data for a date range",
+            description = "Streams all entries between two dates (both inclusive), oldest first, as newline-delimited "
+                    + "JSON - one day per line. Selected with the header Accept: application/x-ndjson. The range is not limited.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Entries for the specified range, one per line",
+                    content = @Content(mediaType = MediaType.APPLICATION_NDJSON_VALUE)),
+            @ApiResponse(responseCode = "400", description = "Invalid date range, or MongoDB is disabled", content = @Content)
+    })
+    @GetMapping(value = "/range", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @RequiresMongoDb
+    @ETagByDataVersion
+    public ResponseEntity<StreamingResponseBody> streamByDateRange(
+            @Parameter(description = "Start date (inclusive), format: YYYY-MM-DD", example = "2020-01-01", required = true)
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
+
+            @Parameter(description = "End date (inclusive), format: YYYY-MM-DD", example = "2024-12-31", required = true)
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate toDate,
+
+            @Parameter(description = "Whether to include the product list of each day", example = "false")
+            @RequestParam(defaultValue = "false") boolean includeProducts) {
+        log.debug("V2: Streaming FDDB data for range {} to {} (includeProducts={})", fromDate, toDate, includeProducts);
+        // no error body: the client only accepts NDJSON, which an error map cannot be written as
+        if (fromDate.isAfter(toDate)) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = outputStream -> dataDownloadService.downloadData(
+                fromDate, toDate, DownloadFormat.NDJSON, includeProducts, ".", outputStream);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
     /**
      * Search for FDDB data products by name, optionally filtered by days of the week.
      *
@@ -142,6 +216,7 @@ public class FddbDataQueryResourceV2 {
     })
     @GetMapping("/products")
     @RequiresMongoDb
+    @ETagByDataVersion
     public ResponseEntity<List<ProductWithDateDTO>> findByProduct(
             @Parameter(description = "Product name to search for", example = "Banana", required = true)
             @RequestParam String name,
@@ -176,6 +251,7 @@ public class FddbDataQueryResourceV2 {
     })
     @GetMapping("/products/distinct")
     @RequiresMongoDb
+    @ETagByDataVersion
     public ResponseEntity<List<String>> findDistinctProductNames(
             @Parameter(description = "Optional case-insensitive substring the name has to contain", example = "hafer")
             @RequestParam(required = false) String search,
@@ -203,6 +279,7 @@ public class FddbDataQueryResourceV2 {
     })
     @GetMapping("/products/summary")
     @RequiresMongoDb
+    @ETagByDataVersion
     public ResponseEntity<ProductSummaryDTO> getProductSummary(
             @Parameter(description = "Product name to search for", example = "Haferflocken", required = true)
             @RequestParam String name,
@@ -233,6 +310,7 @@ public class FddbDataQueryResourceV2 {
     })
     @GetMapping("/products/top")
     @RequiresMongoDb
+    @ETagByDataVersion
     public ResponseEntity<List<TopProductDTO>> getTopProducts(
             @Parameter(description = "Ranking criterion", example = "FREQUENCY")
             @RequestParam(defaultValue = "FREQUENCY") ProductRanking by,
@@ -246,6 +324,60 @@ public class FddbDataQueryResourceV2 {
         return ResponseEntity.ok(fddbDataService.getTopProducts(by, fromDate, toDate, limit));
     }
 
+    /**
+     * Finds the pairs of products that were logged on the same days.
+     *
+     * @param product         optional fragment one of the two products has to contain
+     * @param fromDate        optional start date (inclusive)
+     * @param toDate          optional end date (inclusive)
+     * @param minDaysTogether the fewest days the two have to share
+     * @param minConfidence   the smallest share in percent of one product's days on which the other was
+     *                        logged too
+     * @param limit           the maximum number of pairs to return
+     * @return a ResponseEntity containing the pairs shared on the most days first
+     */
+    @Operation(summary = "List products eaten together",
+            description = "Finds the pairs of products logged on the same days - \"what do I have with my coffee?\" - "
+                    + "with the support, the confidence in either direction and the lift of every pair. A lift "
+                    + "of 1 means the two share no more days than chance would give them")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Pairs of products, most shared days first",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = ProductPairDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid parameters, or MongoDB is disabled", content = @Content)
+    })
+    @GetMapping("/products/pairs")
+    @RequiresMongoDb
+    @ETagByDataVersion
+    public ResponseEntity<List<ProductPairDTO>> getProductPairs(
+            @Parameter(description = "Optional fragment one of the two products has to contain", example = "Kaffee")
+            @RequestParam(required = false) String product,
+            @Parameter(description = "Optional start date (inclusive), format: YYYY-MM-DD", example = "2024-01-01")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
+            @Parameter(description = "Optional end date (inclusive), format: YYYY-MM-DD", example = "2024-12-31")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate toDate,
+            @Parameter(description = "Fewest days the two products have to share", example = "5")
+            @RequestParam(defaultValue = "5") @Min(1) int minDaysTogether,
+            @Parameter(description = "Smallest share in percent of one product's days on which the other was "
+                    + "logged too, in either direction", example = "50")
+            @RequestParam(defaultValue = "0") @Min(0) @Max(100) double minConfidence,
+            @Parameter(description = "Maximum number of pairs to return", example = "20")
+            @RequestParam(defaultValue = "20") @Min(1) @Max(500) int limit) {
+        log.debug("V2: Listing {} product pairs for '{}' in {} to {} (minDaysTogether={}, minConfidence={})",
+                limit, product, fromDate, toDate, minDaysTogether, minConfidence);
+        return ResponseEntity.ok(fddbDataService.getProductPairs(product, fromDate, toDate, minDaysTogether,
+                minConfidence, limit));
+    }
+
+    /**
+     * The revision of an entry changes with every write to it, so it identifies its content. Entries
+     * stored before revisions were recorded are tagged by a hash of their content instead.
+     */
+    private static String eTagOf(FddbDataDTO entry) {
+        return entry.getRevision() != null
+                ? "W/\"r" + entry.getRevision() + "\""
+                : "W/\"h" + Integer.toHexString(entry.hashCode()) + "\"";
+    }
+
     private boolean isValidDate(String date) {
         return Pattern.matches(DATE_PATTERN, date);
     }
@@ -1,5 +1,6 @@
 package dev.itobey.adapter.api.fddb.exporter.rest.v2;
 
+import dev.itobey.adapter.api.fddb.exporter.annotation.ETagByDataVersion;
 import dev.itobey.adapter.api.fddb.exporter.annotation.RequiresMongoDb;
 import dev.itobey.adapter.api.fddb.exporter.dto.*;
 import dev.itobey.adapter.api.fddb.exporter.service.FddbDataService;
@@ -22,6 +23,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.time.LocalDate;
+import java.util.List;
 
 /**
  * V2 REST API for FDDB data statistics.
@@ -29,6 +31,7 @@ import java.time.LocalDate;
  * Provides endpoints for:
  * - Retrieving overall statistics
  * - Calculating rolling averages for a date range
+ * - Building a rolling-average series over a date range
  * <p>
  * The API endpoints are mapped to the "/api/v2/stats" path.
  *
@@ -57,6 +60,7 @@ public class FddbDataStatsResourceV2 {
     })
     @GetMapping
     @RequiresMongoDb
+    @ETagByDataVersion
     public ResponseEntity<StatsDTO> getStats() {
         log.debug("V2: Retrieving FDDB data statistics");
         return ResponseEntity.ok(fddbDataService.getStats());
@@ -78,6 +82,7 @@ public class FddbDataStatsResourceV2 {
     })
     @GetMapping("/averages")
     @RequiresMongoDb
+    @ETagByDataVersion
     public ResponseEntity<?> getRollingAverages(@Valid DateRangeDTO dateRangeDTO) {
         log.debug("V2: Calculating rolling averages for date range: {} to {}",
                 dateRangeDTO.getFromDate(), dateRangeDTO.getToDate());
@@ -108,6 +113,7 @@ public class FddbDataStatsResourceV2 {
     })
     @GetMapping("/trend")
     @RequiresMongoDb
+    @ETagByDataVersion
     public ResponseEntity<?> getTrend(
             @Parameter(description = "Metric to trend", example = "CALORIES")
             @RequestParam(defaultValue = "CALORIES") NutrientMetric metric,
@@ -125,6 +131,51 @@ public class FddbDataStatsResourceV2 {
         }
     }
 
+    /**
+     * Get a rolling-average series: one point per day, each averaging the window ending on it.
+     * <p>
+     * Example: /api/v2/stats/rolling-averages?fromDate=2024-01-01&toDate=2024-12-31&window=7&metrics=CALORIES,PROTEIN
+     *
+     * @param fromDate      the day of the first point
+     * @param toDate        the day of the last point
+     * @param window        the number of days each point averages
+     * @param metrics       optional metrics to average, all of them when omitted
+     * @param minLoggedDays optional fewest logged days a window needs to be averaged
+     * @return the points in chronological order
+     */
+    @Operation(summary = "Get a rolling-average series",
+            description = "Builds a moving average with one point per day, each averaging the window of days ending "
+                    + "on it. Unlogged days are left out of a window's average; a window with fewer logged days than "
+                    + "minLoggedDays (default: more than half the window) has no averages. The range is limited to "
+                    + FddbDataService.MAX_RANGE_DAYS + " days.")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Rolling-average series",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = RollingAveragePointDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid date range or window, or MongoDB is disabled", content = @Content)
+    })
+    @GetMapping("/rolling-averages")
+    @RequiresMongoDb
+    @ETagByDataVersion
+    public ResponseEntity<?> getRollingAverageSeries(
+            @Parameter(description = "Day of the first point, format: YYYY-MM-DD", example = "2024-01-01", required = true)
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
+            @Parameter(description = "Day of the last point, format: YYYY-MM-DD", example = "2024-12-31", required = true)
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate toDate,
+            @Parameter(description = "Number of days each point averages, the day itself included", example = "7")
+            @RequestParam(defaultValue = "7") int window,
+            @Parameter(description = "Optional metrics to average, all of them when omitted", example = "CALORIES,PROTEIN")
+            @RequestParam(required = false) List<NutrientMetric> metrics,
+            @Parameter(description = "Optional fewest logged days a window needs to be averaged", example = "4")
+            @RequestParam(required = false) Integer minLoggedDays) {
+        log.debug("V2: Retrieving {}-day rolling averages of {} from {} to {}", window, metrics, fromDate, toDate);
+        try {
+            return ResponseEntity.ok(fddbDataService.getRollingAverageSeries(fromDate, toDate, window, metrics,
+                    minLoggedDays));
+        } catch (IllegalArgumentException illegalArgumentException) {
+            return ResponseEntity.badRequest().body(illegalArgumentException.getMessage());
+        }
+    }
+
     /**
      * Get averages grouped by day of the week.
      *
@@ -142,6 +193,7 @@ public class FddbDataStatsResourceV2 {
     })
     @GetMapping("/weekdays")
     @RequiresMongoDb
+    @ETagByDataVersion
     public ResponseEntity<?> getWeekdayBreakdown(
             @Parameter(description = "Optional start date (inclusive), format: YYYY-MM-DD", example = "2024-01-01")
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
@@ -172,6 +224,7 @@ public class FddbDataStatsResourceV2 {
     })
     @GetMapping("/macro-split")
     @RequiresMongoDb
+    @ETagByDataVersion
     public ResponseEntity<?> getMacroSplit(
             @Parameter(description = "Start date (inclusive), format: YYYY-MM-DD", example = "2024-01-01", required = true)
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
@@ -202,6 +255,7 @@ public class FddbDataStatsResourceV2 {
     })
     @GetMapping("/missing-days")
     @RequiresMongoDb
+    @ETagByDataVersion
     public ResponseEntity<?> getMissingDays(
             @Parameter(description = "Start date (inclusive), format: YYYY-MM-DD", example = "2024-01-01", required = true)
             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
@@ -214,5 +268,37 @@ public class FddbDataStatsResourceV2 {
             return ResponseEntity.badRequest().body(illegalArgumentException.getMessage());
         }
     }
+
+    /**
+     * Describe how the missing days in a range cluster into gaps: the gap count, the longest gap
+     * and a per-month breakdown.
+     *
+     * @param fromDate the first date to check
+     * @param toDate   the last date to check
+     * @return the gap statistics
+     */
+    @Operation(summary = "Get gap statistics",
+            description = "Counts the gaps - runs of consecutive days without a usable entry - in the range, reports the "
+                    + "longest one and breaks the missing days and gaps down per month")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Gap statistics",
+                    content = @Content(mediaType = "application/json", schema = @Schema(implementation = GapStatsDTO.class))),
+            @ApiResponse(responseCode = "400", description = "Invalid date range, or MongoDB is disabled", content = @Content)
+    })
+    @GetMapping("/missing-days/gaps")
+    @RequiresMongoDb
+    @ETagByDataVersion
+    public ResponseEntity<?> getGapStats(
+            @Parameter(description = "Start date (inclusive), format: YYYY-MM-DD", example = "2024-01-01", required = true)
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
+            @Parameter(description = "End date (inclusive), format: YYYY-MM-DD", example = "2024-12-31", required = true)
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate toDate) {
+        log.debug("V2: Retrieving gap statistics for range {} to {}", fromDate, toDate);
+        try {
+            return ResponseEntity.ok(fddbDataService.getGapStats(fromDate, toDate));
+        } catch (IllegalArgumentException illegalArgumentException) {
+            return ResponseEntity.badRequest().body(illegalArgumentException.getMessage());
+        }
+    }
 }
 
@@ -1,10 +1,22 @@
 package dev.itobey.adapter.api.fddb.exporter.service;
 
 import dev.itobey.adapter.api.fddb.exporter.domain.projection.ProductWithDate;
+import dev.itobey.adapter.api.fddb.exporter.dto.NutrientMetric;
 import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationDetail;
 import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationInputDto;
 import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationOutputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationScanInputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationScanOutputDto;
 import dev.itobey.adapter.api.fddb.exporter.dto.correlation.Correlations;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.NutrientCorrelationInputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.NutrientCorrelationOutputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.NutrientLagEffect;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.ProductCorrelation;
+import dev.itobey.adapter.api.fddb.exporter.service.correlation.DayCorrelation;
+import dev.itobey.adapter.api.fddb.exporter.service.correlation.NutrientLagCorrelation;
+import dev.itobey.adapter.api.fddb.exporter.service.correlation.ProductCorrelationScan;
+import dev.itobey.adapter.api.fddb.exporter.service.correlation.ProductDayMatrix;
+import dev.itobey.adapter.api.fddb.exporter.service.correlation.WindowSignificance;
 import dev.itobey.adapter.api.fddb.exporter.service.persistence.MongoDBService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -12,8 +24,12 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDate;
-import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
 
 @Service
 @Slf4j
@@ -21,24 +37,172 @@ import java.util.List;
 @ConditionalOnProperty(name = "fddb-exporter.persistence.mongodb.enabled", havingValue = "true")
 public class CorrelationService {
 
+    private static final int DEFAULT_LAG_DAYS = 0;
+    private static final int DEFAULT_WINDOW_DAYS = 1;
+    /**
+     * A product eaten on only one or two days lines up with an event by chance alone far too
+     * easily, and would top every ranking by lift.
+     */
+    private static final int DEFAULT_MIN_DAYS_EATEN = 5;
+    private static final int DEFAULT_SCAN_LIMIT = 20;
+    /**
+     * The event day and the three days before it: the span a dietary trigger is usually looked for in.
+     */
+    private static final int DEFAULT_NUTRIENT_MAX_LAG_DAYS = 3;
+
     private final MongoDBService mongoDBService;
 
     public CorrelationOutputDto createCorrelation(CorrelationInputDto input) {
-        List<ProductWithDate> productMatches = getProductMatches(input);
+        Integer maxLagDays = validateMaxLagDays(input.getMaxLagDays());
+        LocalDate startDate = parseStartDate(input.getStartDate());
+        List<ProductWithDate> productMatches = getProductMatches(input, startDate);
         List<LocalDate> occurrenceDates = parseOccurrenceDates(input);
 
+        List<LocalDate> productDates = productMatches.stream()
+                .map(ProductWithDate::getDate)
+                .filter(Objects::nonNull)
+                .toList();
+        DayCorrelation days = new DayCorrelation(productDates, occurrenceDates);
+        WindowSignificance significance = new WindowSignificance(
+                mongoDBService.getProductDayMatrix(startDate, null), productDates, occurrenceDates);
+
         CorrelationOutputDto output = new CorrelationOutputDto();
-        output.setCorrelations(calculateAllCorrelations(productMatches, occurrenceDates));
+        output.setCorrelations(calculateAllCorrelations(days, significance, maxLagDays));
 
         setMatchedProductsAndDates(output, productMatches);
 
         return output;
     }
 
-    private List<ProductWithDate> getProductMatches(CorrelationInputDto input) {
-        LocalDate startDate = (input.getStartDate() != null && !input.getStartDate().isEmpty()) ?
-                LocalDate.parse(input.getStartDate()) : null;
+    /**
+     * Ranks every product of the diary by how strongly eating it lines up with the event dates, in
+     * a single pass over the product x day matrix. See {@link ProductCorrelationScan}.
+     *
+     * @param input the event dates, the window and the ranking limits
+     * @return the baseline of the window and the products with the highest lift
+     * @throws IllegalArgumentException if no event date is given or a parameter is out of range
+     */
+    public CorrelationScanOutputDto scanProducts(CorrelationScanInputDto input) {
+        int lagDays = withDefault(input.getLagDays(), DEFAULT_LAG_DAYS);
+        int windowDays = withDefault(input.getWindowDays(), DEFAULT_WINDOW_DAYS);
+        int minDaysEaten = withDefault(input.getMinDaysEaten(), DEFAULT_MIN_DAYS_EATEN);
+        int limit = withDefault(input.getLimit(), DEFAULT_SCAN_LIMIT);
+        if (lagDays < 0 || windowDays < 1 || lagDays + windowDays - 1 > CorrelationInputDto.MAX_LAG_DAYS) {
+            throw new IllegalArgumentException("The window must lie within " + CorrelationInputDto.MAX_LAG_DAYS
+                    + " days before an event, but was lagDays=" + lagDays + ", windowDays=" + windowDays);
+        }
+        if (minDaysEaten < 1 || limit < 1 || limit > CorrelationScanInputDto.MAX_LIMIT) {
+            throw new IllegalArgumentException("minDaysEaten must be at least 1 and limit between 1 and "
+                    + CorrelationScanInputDto.MAX_LIMIT);
+        }
+        if (input.getOccurrenceDates() == null || input.getOccurrenceDates().isEmpty()) {
+            throw new IllegalArgumentException("At least one occurrence date is required");
+        }
+
+        List<LocalDate> occurrenceDates = input.getOccurrenceDates().stream()
+                .map(LocalDate::parse)
+                .distinct()
+                .toList();
+        LocalDate startDate = parseStartDate(input.getStartDate());
+
+        ProductDayMatrix matrix = mongoDBService.getProductDayMatrix(startDate, null);
+        ProductCorrelationScan.Result result = ProductCorrelationScan.scan(
+                matrix, occurrenceDates, lagDays, windowDays, minDaysEaten, limit);
+
+        CorrelationScanOutputDto output = new CorrelationScanOutputDto();
+        output.setEventDateCount(occurrenceDates.size());
+        output.setLagDays(lagDays);
+        output.setWindowDays(windowDays);
+        output.setLoggedDays(result.loggedDays());
+        output.setLoggedDaysInWindow(result.loggedDaysInWindow());
+        output.setBaselinePercentage(roundToTwoDecimals(result.baselineRate() * 100));
+        output.setMatchingProducts(result.matchingProducts());
+        output.setProducts(result.products().stream().map(CorrelationService::toProductCorrelation).toList());
+        return output;
+    }
+
+    /**
+     * Lines up every daily total with the event dates, at each lag from the event day up to
+     * {@code maxLagDays}. The totals are read once; see {@link NutrientLagCorrelation}.
+     *
+     * @param input the event dates, the lags and the metrics
+     * @return for each metric, the effect of each lag
+     * @throws IllegalArgumentException if no event date is given or a parameter is out of range
+     */
+    public NutrientCorrelationOutputDto correlateNutrients(NutrientCorrelationInputDto input) {
+        int maxLagDays = withDefault(input.getMaxLagDays(), DEFAULT_NUTRIENT_MAX_LAG_DAYS);
+        int windowDays = withDefault(input.getWindowDays(), DEFAULT_WINDOW_DAYS);
+        if (maxLagDays < 0 || windowDays < 1 || maxLagDays + windowDays - 1 > CorrelationInputDto.MAX_LAG_DAYS) {
+            throw new IllegalArgumentException("The windows must lie within " + CorrelationInputDto.MAX_LAG_DAYS
+                    + " days before an event, but were maxLagDays=" + maxLagDays + ", windowDays=" + windowDays);
+        }
+        if (input.getOccurrenceDates() == null || input.getOccurrenceDates().isEmpty()) {
+            throw new IllegalArgumentException("At least one occurrence date is required");
+        }
+
+        List<LocalDate> occurrenceDates = input.getOccurrenceDates().stream()
+                .map(LocalDate::parse)
+                .distinct()
+                .toList();
+        List<NutrientMetric> metrics = input.getMetrics() == null || input.getMetrics().isEmpty()
+                ? List.of(NutrientMetric.values())
+                : input.getMetrics().stream().distinct().toList();
+
+        LocalDate startDate = parseStartDate(input.getStartDate());
+        NutrientLagCorrelation correlation = new NutrientLagCorrelation(mongoDBService.findDailyTotals(startDate, null),
+                mongoDBService.getProductDayMatrix(startDate, null), metrics);
+
+        Map<NutrientMetric, List<NutrientLagEffect>> effects = new LinkedHashMap<>();
+        correlation.effects(occurrenceDates, maxLagDays, windowDays).forEach((metric, lags) ->
+                effects.put(metric, lags.stream().map(CorrelationService::toNutrientLagEffect).toList()));
+
+        NutrientCorrelationOutputDto output = new NutrientCorrelationOutputDto();
+        output.setEventDateCount(occurrenceDates.size());
+        output.setLoggedDays(correlation.loggedDays());
+        output.setMaxLagDays(maxLagDays);
+        output.setWindowDays(windowDays);
+        output.setEffects(effects);
+        return output;
+    }
+
+    private static NutrientLagEffect toNutrientLagEffect(NutrientLagCorrelation.LagEffect lag) {
+        NutrientLagEffect effect = new NutrientLagEffect();
+        effect.setLagDays(lag.lagDays());
+        effect.setDaysInWindow(lag.daysInWindow());
+        effect.setMeanInWindow(roundToTwoDecimalsOrNull(lag.meanInWindow()));
+        effect.setMeanOtherDays(roundToTwoDecimalsOrNull(lag.meanOtherDays()));
+        effect.setCorrelation(roundToTwoDecimalsOrNull(lag.correlation()));
+        return effect;
+    }
+
+    private static Double roundToTwoDecimalsOrNull(Double value) {
+        return value == null ? null : roundToTwoDecimals(value);
+    }
+
+    private static ProductCorrelation toProductCorrelation(ProductCorrelationScan.RankedProduct ranked) {
+        ProductCorrelation product = new ProductCorrelation();
+        product.setName(ranked.name());
+        product.setDaysEaten(ranked.daysEaten());
+        product.setDaysInWindow(ranked.daysInWindow());
+        product.setPercentage(roundToTwoDecimals(ranked.rate() * 100));
+        product.setLift(roundToTwoDecimals(ranked.lift()));
+        product.setFisherPValue(ranked.pValue());
+        return product;
+    }
+
+    private static int withDefault(Integer value, int defaultValue) {
+        return value == null ? defaultValue : value;
+    }
+
+    private static double roundToTwoDecimals(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static LocalDate parseStartDate(String startDate) {
+        return (startDate != null && !startDate.isEmpty()) ? LocalDate.parse(startDate) : null;
+    }
 
+    private List<ProductWithDate> getProductMatches(CorrelationInputDto input, LocalDate startDate) {
         return mongoDBService.findByProductsWithExclusions(
                 input.getInclusionKeywords(),
                 input.getExclusionKeywords(),
@@ -46,23 +210,38 @@ public class CorrelationService {
         );
     }
 
+    private Integer validateMaxLagDays(Integer maxLagDays) {
+        if (maxLagDays != null && (maxLagDays < 0 || maxLagDays > CorrelationInputDto.MAX_LAG_DAYS)) {
+            throw new IllegalArgumentException("maxLagDays must be between 0 and "
+                    + CorrelationInputDto.MAX_LAG_DAYS + ", but was " + maxLagDays);
+        }
+        return maxLagDays;
+    }
+
     private List<LocalDate> parseOccurrenceDates(CorrelationInputDto input) {
         return input.getOccurrenceDates().stream()
                 .map(LocalDate::parse)
                 .toList();
     }
 
-    private Correlations calculateAllCorrelations(List<ProductWithDate> products, List<LocalDate> occurrenceDates) {
+    private Correlations calculateAllCorrelations(DayCorrelation days, WindowSignificance significance,
+                                                  Integer maxLagDays) {
         Correlations correlations = new Correlations();
 
-        correlations.setSameDay(calculateCorrelation(products, occurrenceDates, 0));
-        correlations.setOneDayBefore(calculateCorrelation(products, occurrenceDates, 1));
-        correlations.setTwoDaysBefore(calculateCorrelation(products, occurrenceDates, 2));
+        correlations.setSameDay(calculateCorrelation(days, significance, 0));
+        correlations.setOneDayBefore(calculateCorrelation(days, significance, 1));
+        correlations.setTwoDaysBefore(calculateCorrelation(days, significance, 2));
 
-        correlations.setAcross2Days(calculateAcrossNDaysCorrelation(products,
-                List.of(correlations.getSameDay(), correlations.getOneDayBefore())));
-        correlations.setAcross3Days(calculateAcrossNDaysCorrelation(products,
-                List.of(correlations.getSameDay(), correlations.getOneDayBefore(), correlations.getTwoDaysBefore())));
+        correlations.setAcross2Days(calculateAcrossNDaysCorrelation(days, significance, 2));
+        correlations.setAcross3Days(calculateAcrossNDaysCorrelation(days, significance, 3));
+
+        if (maxLagDays != null) {
+            Map<Integer, CorrelationDetail> byLag = new TreeMap<>();
+            for (int lagDays = 0; lagDays <= maxLagDays; lagDays++) {
+                byLag.put(lagDays, calculateCorrelation(days, significance, lagDays));
+            }
+            correlations.setByLag(byLag);
+        }
 
         return correlations;
     }
@@ -83,80 +262,48 @@ public class CorrelationService {
         output.setAmountMatchedDates(matchedDates.size());
     }
 
-    private CorrelationDetail calculateAcrossNDaysCorrelation(List<ProductWithDate> products,
-                                                              List<CorrelationDetail> correlations) {
-
-        List<String> filteredDates = new ArrayList<>();
-        List<String> allDates = correlations.stream()
-                .map(CorrelationDetail::getMatchedDates)
-                .flatMap(List::stream)
-                .sorted()
-                .distinct()
-                .toList();
-
-        for (String date : allDates) {
-            boolean hasConsecutiveDate = isHasConsecutiveDate(correlations, date, filteredDates);
-
-            if (!hasConsecutiveDate) {
-                filteredDates.add(date);
-            }
-        }
-
-        long uniqueDatesCount = products.stream()
-                .map(ProductWithDate::getDate)
-                .distinct()
-                .count();
-
-        List<String> filteredDistinctDates = filteredDates.stream().distinct().toList();
-        double percentage = uniqueDatesCount == 0 ? 0 :
-                (double) filteredDistinctDates.size() / uniqueDatesCount * 100;
+    private CorrelationDetail calculateAcrossNDaysCorrelation(DayCorrelation days, WindowSignificance significance,
+                                                              int windowDays) {
+        BitSet matched = days.matchedWithin(windowDays);
+        // consecutive days before the same event count once, so this is a count of episodes
+        int episodes = days.countEpisodes(matched, windowDays);
 
         CorrelationDetail acrossDays = new CorrelationDetail();
-        acrossDays.setMatchedDays(filteredDistinctDates.size());
-        acrossDays.setPercentage(percentage);
-        acrossDays.setMatchedDates(allDates);
+        acrossDays.setMatchedDays(episodes);
+        acrossDays.setPercentage(percentageOfProductDays(episodes, days));
+        acrossDays.setMatchedDates(toStrings(days.toDates(matched)));
+        setSignificance(acrossDays, significance.window(0, windowDays - 1));
 
         return acrossDays;
     }
 
-    private static boolean isHasConsecutiveDate(List<CorrelationDetail> correlations, String date, List<String> filteredDates) {
-        LocalDate currentDate = LocalDate.parse(date);
-        boolean hasConsecutiveDate = false;
-
-        // Check for consecutive dates based on correlation size (2 or 3 days)
-        if (correlations.size() == 2) {
-            hasConsecutiveDate = filteredDates.contains(currentDate.minusDays(1).toString());
-        } else if (correlations.size() == 3) {
-            hasConsecutiveDate = filteredDates.contains(currentDate.minusDays(1).toString())
-                    || filteredDates.contains(currentDate.minusDays(2).toString());
-        }
-        return hasConsecutiveDate;
-    }
-
+    private CorrelationDetail calculateCorrelation(DayCorrelation days, WindowSignificance significance,
+                                                   int daysOffset) {
+        BitSet matched = days.matchedAt(daysOffset);
+        int matchedDays = matched.cardinality();
 
-    private CorrelationDetail calculateCorrelation(List<ProductWithDate> products, List<LocalDate> occurrenceDates, int daysOffset) {
-        List<String> matchedDates = occurrenceDates.stream()
-                .map(occurrenceDate -> occurrenceDate.minusDays(daysOffset))
-                .filter(targetDate -> products.stream()
-                        .anyMatch(product -> product.getDate().equals(targetDate)))
-                .map(LocalDate::toString)
-                .distinct()
-                .toList();
+        CorrelationDetail detail = new CorrelationDetail();
+        detail.setPercentage(percentageOfProductDays(matchedDays, days));
+        detail.setMatchedDates(toStrings(days.toDates(matched)));
+        detail.setMatchedDays(matchedDays);
+        setSignificance(detail, significance.window(daysOffset, daysOffset));
 
-        long uniqueDatesCount = products.stream()
-                .map(ProductWithDate::getDate)
-                .distinct()
-                .count();
+        return detail;
+    }
 
-        double percentage = uniqueDatesCount == 0 ? 0 :
-                (double) matchedDates.size() / uniqueDatesCount * 100;
+    private static void setSignificance(CorrelationDetail detail, WindowSignificance.Window window) {
+        detail.setBaselinePercentage(roundToTwoDecimals(window.baselineRate() * 100));
+        detail.setLift(roundToTwoDecimalsOrNull(window.lift()));
+        detail.setFisherPValue(window.pValue());
+    }
 
-        CorrelationDetail detail = new CorrelationDetail();
-        detail.setPercentage(percentage);
-        detail.setMatchedDates(matchedDates);
-        detail.setMatchedDays(matchedDates.size());
+    private static double percentageOfProductDays(int matchedDays, DayCorrelation days) {
+        int productDayCount = days.productDayCount();
+        return productDayCount == 0 ? 0 : (double) matchedDays / productDayCount * 100;
+    }
 
-        return detail;
+    private static List<String> toStrings(List<LocalDate> dates) {
+        return dates.stream().map(LocalDate::toString).toList();
     }
 
 }
@@ -1,6 +1,7 @@
 package dev.itobey.adapter.api.fddb.exporter.service;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
@@ -16,14 +17,24 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.io.StringWriter;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 /**
- * Service for downloading FDDB data in various formats (CSV, JSON).
+ * Service for downloading FDDB data in various formats (CSV, JSON, newline-delimited JSON, a ZIP of CSV tables).
  * Supports downloading all data or data within a specific date range,
  * and can include full product details or just daily totals.
  */
@@ -32,93 +43,228 @@ import java.util.List;
 @Slf4j
 public class DataDownloadService {
 
-    private static final char CSV_SEPARATOR = ';';
+    static final char CSV_SEPARATOR = ';';
     private static final String COMMA_DECIMAL_SEPARATOR = ",";
     private static final String EMPTY_FIELD = "";
 
-    private static final String[] TOTALS_CSV_HEADER = {
+    // read back by the import, which accepts what these downloads wrote
+    static final String[] TOTALS_CSV_HEADER = {
             "Date", "Calories", "Fat", "Carbs", "Sugar", "Protein", "Fibre"
     };
 
-    private static final String[] FULL_DATA_CSV_HEADER = {
+    static final String[] FULL_DATA_CSV_HEADER = {
             "Date", "Product Name", "Amount", "Calories", "Fat", "Carbs", "Protein", "Link",
             "Day Total Calories", "Day Total Fat", "Day Total Carbs", "Day Total Sugar",
             "Day Total Protein", "Day Total Fibre"
     };
 
+    private static final char TABLE_SEPARATOR = ',';
+    private static final String DAYS_TABLE = "days.csv";
+    private static final String OCCURRENCES_TABLE = "occurrences.csv";
+    private static final String PRODUCTS_TABLE = "products.csv";
+
+    private static final String[] DAYS_TABLE_HEADER = {
+            "date", "calories", "fat", "carbs", "sugar", "protein", "fibre"
+    };
+
+    private static final String[] OCCURRENCES_TABLE_HEADER = {
+            "date", "product_id", "amount", "calories", "fat", "carbs", "protein"
+    };
+
+    private static final String[] PRODUCTS_TABLE_HEADER = {
+            "product_id", "name", "link"
+    };
+
     private final PersistenceService persistenceService;
     private final FddbDataMapper fddbDataMapper;
     private final ObjectMapper objectMapper;
 
     private ObjectMapper jsonExportMapper;
+    private ObjectMapper ndjsonExportMapper;
 
     @PostConstruct
     void initJsonExportMapper() {
+        // the entries are written one by one, and flushing after each would send a chunk per day
         jsonExportMapper = objectMapper.copy()
                 .registerModule(new JavaTimeModule())
                 .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
                 .enable(SerializationFeature.INDENT_OUTPUT);
+        // one entry per line, so nothing may be indented
+        ndjsonExportMapper = jsonExportMapper.copy()
+                .disable(SerializationFeature.INDENT_OUTPUT);
     }
 
     /**
-     * Downloads data in the specified format.
+     * Writes the data in the specified format to a stream.
+     * <p>
+     * The entries are read from a date-ordered cursor and written one at a time, so only the day
+     * being written is held in memory, whether the download covers a week or ten years. The stream
+     * is flushed but not closed - it belongs to the caller.
      *
      * @param fromDate         optional start date (null for all data)
      * @param toDate           optional end date (null for all data)
-     * @param format           the download format (CSV or JSON)
+     * @param format           the download format (CSV, JSON, TABLES or NDJSON)
      * @param includeProducts  whether to include product details
-     * @param decimalSeparator the decimal separator for CSV format (. or ,)
-     * @return the data as a byte array in the specified format
+     * @param decimalSeparator the decimal separator for CSV format (. or ,); TABLES always uses .
+     * @param outputStream     the stream to write the download to
+     * @throws IOException if writing to the stream fails
      */
-    public byte[] downloadData(LocalDate fromDate, LocalDate toDate, DownloadFormat format,
-                               boolean includeProducts, String decimalSeparator) {
+    public void downloadData(LocalDate fromDate, LocalDate toDate, DownloadFormat format,
+                             boolean includeProducts, String decimalSeparator, OutputStream outputStream)
+            throws IOException {
         log.info("Downloading data: fromDate={}, toDate={}, format={}, includeProducts={}, decimalSeparator={}",
                 fromDate, toDate, format, includeProducts, decimalSeparator);
 
-        List<FddbDataDTO> data = fetchData(fromDate, toDate);
-
-        return includeProducts
-                ? exportFullData(data, format, decimalSeparator)
-                : exportTotalsOnly(data, format, decimalSeparator);
+        // without products, they are left out of the query rather than read and then dropped
+        try (Stream<FddbData> entries = includeProducts
+                ? persistenceService.streamByDateBetween(fromDate, toDate)
+                : persistenceService.streamDailyTotals(fromDate, toDate)) {
+            Function<FddbData, FddbDataDTO> toDto = includeProducts
+                    ? fddbDataMapper::toFddbDataDTO
+                    : fddbDataMapper::toDailyTotalsDTO;
+            Stream<FddbDataDTO> data = entries.map(toDto);
+            switch (format) {
+                case CSV -> writeCsv(data, includeProducts, decimalSeparator, outputStream);
+                case JSON -> writeJson(data, outputStream);
+                case TABLES -> writeTables(data, includeProducts, outputStream);
+                case NDJSON -> writeNdjson(data, outputStream);
+            }
+        }
     }
 
-    private byte[] exportFullData(List<FddbDataDTO> data, DownloadFormat format, String decimalSeparator) {
-        return format == DownloadFormat.CSV
-                ? convertFullDataToCsv(data, decimalSeparator)
-                : convertToJson(data);
+    /**
+     * Writes the entries inserted or changed after a revision as newline-delimited JSON, one entry
+     * with its products per line, in the order they were written.
+     * <p>
+     * A client that keeps the highest {@code revision} it has read and passes it on the next call
+     * receives every later write exactly once: a write still under way is held back for the next
+     * call rather than overtaken by a later one. The entries are streamed from a cursor like the
+     * downloads, so the first sync of the whole diary costs no more memory than a nightly one. The
+     * stream is flushed but not closed - it belongs to the caller.
+     *
+     * @param sinceRevision the highest revision the caller has seen, or null for every entry
+     * @param outputStream  the stream to write the changes to
+     * @throws IOException if writing to the stream fails
+     */
+    public void downloadChanges(Long sinceRevision, OutputStream outputStream) throws IOException {
+        log.info("Downloading changes: sinceRevision={}", sinceRevision);
+
+        try (Stream<FddbData> entries = persistenceService.streamChangedSince(sinceRevision)) {
+            writeNdjson(entries.map(fddbDataMapper::toFddbDataDTO), outputStream);
+        }
     }
 
-    private byte[] exportTotalsOnly(List<FddbDataDTO> data, DownloadFormat format, String decimalSeparator) {
-        List<FddbDataDTO> totals = fddbDataMapper.toFddbDataDTOWithoutProducts(data);
-        return format == DownloadFormat.CSV
-                ? convertTotalsToCsv(totals, decimalSeparator)
-                : convertToJson(totals);
+    private void writeCsv(Stream<FddbDataDTO> data, boolean includeProducts, String decimalSeparator,
+                          OutputStream outputStream) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        // not closed, as that would close the caller's stream
+        CSVWriter csvWriter = createCsvWriter(writer);
+        csvWriter.writeNext(includeProducts ? FULL_DATA_CSV_HEADER : TOTALS_CSV_HEADER);
+        data.forEach(entry -> {
+            if (includeProducts) {
+                writeEntryRows(csvWriter, entry, decimalSeparator);
+            } else {
+                csvWriter.writeNext(createTotalsRow(entry, decimalSeparator));
+            }
+        });
+        csvWriter.flush();
+        if (csvWriter.checkError()) {
+            throw new IOException("Failed to write CSV", csvWriter.getException());
+        }
     }
 
-    private List<FddbDataDTO> fetchData(LocalDate fromDate, LocalDate toDate) {
-        List<FddbData> entries = fromDate == null && toDate == null
-                ? persistenceService.findAllEntries()
-                : persistenceService.findByDateBetween(fromDate, toDate);
+    private void writeJson(Stream<FddbDataDTO> data, OutputStream outputStream) throws IOException {
+        try (JsonGenerator generator = jsonExportMapper.createGenerator(outputStream, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartArray();
+            for (FddbDataDTO entry : (Iterable<FddbDataDTO>) data::iterator) {
+                jsonExportMapper.writeValue(generator, entry);
+            }
+            generator.writeEndArray();
+        }
+    }
 
-        List<FddbDataDTO> data = fddbDataMapper.toFddbDataDTO(entries);
-        data.sort(Comparator.comparing(FddbDataDTO::getDate));
-        log.debug("Fetched {} entries for download", data.size());
-        return data;
+    private void writeNdjson(Stream<FddbDataDTO> data, OutputStream outputStream) throws IOException {
+        try (JsonGenerator generator = ndjsonExportMapper.createGenerator(outputStream, JsonEncoding.UTF8)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // every line ends with its own newline instead of the space Jackson puts between root values
+            generator.setRootValueSeparator(null);
+            for (FddbDataDTO entry : (Iterable<FddbDataDTO>) data::iterator) {
+                ndjsonExportMapper.writeValue(generator, entry);
+                generator.writeRaw('\n');
+            }
+        }
     }
 
-    private byte[] convertTotalsToCsv(List<FddbDataDTO> totals, String decimalSeparator) {
-        StringWriter stringWriter = new StringWriter();
-        try (CSVWriter csvWriter = createCsvWriter(stringWriter)) {
-            csvWriter.writeNext(TOTALS_CSV_HEADER);
+    /**
+     * Writes the tables as entries of one ZIP in a single pass over the cursor.
+     * <p>
+     * The occurrences - by far the largest table - are streamed first, while the days and the
+     * product dictionary, a few thousand rows each even for a decade of diary, are collected and
+     * written after them. Products are identified by name, as everywhere else, and numbered in the
+     * order they first appear; the link is the first one seen for the name.
+     */
+    private void writeTables(Stream<FddbDataDTO> data, boolean includeProducts, OutputStream outputStream)
+            throws IOException {
+        // finished rather than closed, which would close the caller's stream
+        ZipOutputStream zip = new ZipOutputStream(outputStream, StandardCharsets.UTF_8);
+        List<String[]> dayRows = new ArrayList<>();
+        Map<String, String[]> productRows = new LinkedHashMap<>();
+
+        if (includeProducts) {
+            writeTable(zip, OCCURRENCES_TABLE, OCCURRENCES_TABLE_HEADER, csvWriter -> data.forEach(entry -> {
+                dayRows.add(createTotalsRow(entry, "."));
+                if (hasProducts(entry)) {
+                    for (ProductDTO product : entry.getProducts()) {
+                        String productId = productRows.computeIfAbsent(product.getName(), name -> new String[]{
+                                String.valueOf(productRows.size()), name, product.getLink()})[0];
+                        csvWriter.writeNext(createOccurrenceRow(entry, product, productId), false);
+                    }
+                }
+            }));
+            writeTable(zip, DAYS_TABLE, DAYS_TABLE_HEADER, csvWriter -> dayRows.forEach(row ->
+                    csvWriter.writeNext(row, false)));
+            writeTable(zip, PRODUCTS_TABLE, PRODUCTS_TABLE_HEADER, csvWriter -> productRows.values().forEach(row ->
+                    csvWriter.writeNext(row, false)));
+        } else {
+            writeTable(zip, DAYS_TABLE, DAYS_TABLE_HEADER, csvWriter -> data.forEach(entry ->
+                    csvWriter.writeNext(createTotalsRow(entry, "."), false)));
+        }
+        zip.finish();
+        zip.flush();
+    }
 
-            for (FddbDataDTO total : totals) {
-                csvWriter.writeNext(createTotalsRow(total, decimalSeparator));
-            }
-        } catch (Exception exception) {
-            log.error("Error generating CSV for totals", exception);
-            throw new RuntimeException("Failed to generate CSV", exception);
+    private void writeTable(ZipOutputStream zip, String name, String[] header, TableRows rows) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8));
+        // not closed, as that would close the ZIP
+        CSVWriter csvWriter = new CSVWriter(writer, TABLE_SEPARATOR, CSVWriter.DEFAULT_QUOTE_CHARACTER,
+                CSVWriter.DEFAULT_ESCAPE_CHARACTER, CSVWriter.DEFAULT_LINE_END);
+        csvWriter.writeNext(header, false);
+        rows.writeTo(csvWriter);
+        csvWriter.flush();
+        if (csvWriter.checkError()) {
+            throw new IOException("Failed to write " + name, csvWriter.getException());
         }
-        return stringWriter.toString().getBytes(StandardCharsets.UTF_8);
+        zip.closeEntry();
+    }
+
+    private String[] createOccurrenceRow(FddbDataDTO entry, ProductDTO product, String productId) {
+        return new String[]{
+                entry.getDate().toString(),
+                productId,
+                product.getAmount(),
+                String.valueOf(product.getCalories()),
+                String.valueOf(product.getFat()),
+                String.valueOf(product.getCarbs()),
+                String.valueOf(product.getProtein())
+        };
+    }
+
+    @FunctionalInterface
+    private interface TableRows {
+        void writeTo(CSVWriter csvWriter);
     }
 
     private String[] createTotalsRow(FddbDataDTO total, String decimalSeparator) {
@@ -133,21 +279,6 @@ public class DataDownloadService {
         };
     }
 
-    private byte[] convertFullDataToCsv(List<FddbDataDTO> data, String decimalSeparator) {
-        StringWriter stringWriter = new StringWriter();
-        try (CSVWriter csvWriter = createCsvWriter(stringWriter)) {
-            csvWriter.writeNext(FULL_DATA_CSV_HEADER);
-
-            for (FddbDataDTO entry : data) {
-                writeEntryRows(csvWriter, entry, decimalSeparator);
-            }
-        } catch (Exception exception) {
-            log.error("Error generating CSV for full data", exception);
-            throw new RuntimeException("Failed to generate CSV", exception);
-        }
-        return stringWriter.toString().getBytes(StandardCharsets.UTF_8);
-    }
-
     private void writeEntryRows(CSVWriter csvWriter, FddbDataDTO entry, String decimalSeparator) {
         if (hasProducts(entry)) {
             for (ProductDTO product : entry.getProducts()) {
@@ -197,20 +328,11 @@ public class DataDownloadService {
         };
     }
 
-    private CSVWriter createCsvWriter(StringWriter stringWriter) {
-        return new CSVWriter(stringWriter, CSV_SEPARATOR, CSVWriter.DEFAULT_QUOTE_CHARACTER,
+    private CSVWriter createCsvWriter(Writer writer) {
+        return new CSVWriter(writer, CSV_SEPARATOR, CSVWriter.DEFAULT_QUOTE_CHARACTER,
                 CSVWriter.DEFAULT_ESCAPE_CHARACTER, CSVWriter.DEFAULT_LINE_END);
     }
 
-    private byte[] convertToJson(Object data) {
-        try {
-            return jsonExportMapper.writeValueAsBytes(data);
-        } catch (JsonProcessingException jsonProcessingException) {
-            log.error("Error generating JSON", jsonProcessingException);
-            throw new RuntimeException("Failed to generate JSON", jsonProcessingException);
-        }
-    }
-
     private String formatNumber(double value, String decimalSeparator) {
         String formatted = String.valueOf(value);
         return COMMA_DECIMAL_SEPARATOR.equals(decimalSeparator)
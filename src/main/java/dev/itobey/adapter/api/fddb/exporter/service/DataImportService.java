@@ -0,0 +1,279 @@
+package dev.itobey.adapter.api.fddb.exporter.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.exceptions.CsvValidationException;
+import dev.itobey.adapter.api.fddb.exporter.domain.FddbData;
+import dev.itobey.adapter.api.fddb.exporter.domain.Product;
+import dev.itobey.adapter.api.fddb.exporter.dto.DownloadFormat;
+import dev.itobey.adapter.api.fddb.exporter.dto.FddbDataDTO;
+import dev.itobey.adapter.api.fddb.exporter.dto.ImportResultDTO;
+import dev.itobey.adapter.api.fddb.exporter.exception.ExportInProgressException;
+import dev.itobey.adapter.api.fddb.exporter.mapper.FddbDataMapper;
+import dev.itobey.adapter.api.fddb.exporter.service.persistence.PersistenceService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads a download of {@link DataDownloadService} back into the database, to restore an instance
+ * without scraping years of history from fddb.info one day at a time.
+ * <p>
+ * The file is parsed as it arrives and written in batches of {@value #BATCH_SIZE} days, each one
+ * bulk write, so a decade of diary neither sits in memory nor costs a round trip per day. Days are
+ * inserted or replaced by their date; days stored exactly like this already are left alone. A
+ * file that turns out to be broken halfway keeps the batches written before - importing it again
+ * once fixed is harmless, as the days already there are skipped.
+ * <p>
+ * Only downloads with the products can be imported. A totals-only download would replace every
+ * stored day with one without products, which is never what restoring a backup means.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DataImportService {
+
+    static final int BATCH_SIZE = 500;
+
+    private static final int GZIP_MAGIC_FIRST_BYTE = 0x1f;
+    private static final int GZIP_MAGIC_SECOND_BYTE = 0x8b;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final PersistenceService persistenceService;
+    private final FddbDataMapper fddbDataMapper;
+    private final FddbDataService fddbDataService;
+    private final ObjectMapper objectMapper;
+
+    private ObjectReader entryReader;
+
+    @PostConstruct
+    void initEntryReader() {
+        entryReader = objectMapper.copy()
+                .registerModule(new JavaTimeModule())
+                .readerFor(FddbDataDTO.class);
+    }
+
+    /**
+     * Imports a download with products, gzip-compressed or not.
+     * <p>
+     * Runs under the export lock, so it neither interleaves with a scraping run writing the same
+     * days nor starts while one is running, and finishes like one - the download snapshots are
+     * rendered again afterwards.
+     *
+     * @param format      the format of the download: CSV, with either decimal separator, JSON or NDJSON
+     * @param inputStream the download; read to the end but not closed
+     * @return how many days were read and how many of them written
+     * @throws IllegalArgumentException  if the format cannot be imported or the file is not a
+     *                                   download with products
+     * @throws ExportInProgressException if an export is running
+     * @throws IOException               if reading the file fails
+     */
+    public ImportResultDTO importData(DownloadFormat format, InputStream inputStream) throws IOException {
+        log.info("Importing data: format={}", format);
+        if (format == DownloadFormat.TABLES) {
+            throw new IllegalArgumentException("TABLES cannot be imported, use a CSV or JSON download with products");
+        }
+        InputStream input = decompressIfGzipped(inputStream);
+        try {
+            return fddbDataService.withExportLock(() -> {
+                Batch batch = new Batch();
+                try {
+                    if (format == DownloadFormat.CSV) {
+                        readCsv(input, batch);
+                    } else {
+                        readJson(input, batch);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                batch.flush();
+                log.info("Imported {} days from {} to {}, {} written", batch.days, batch.fromDate, batch.toDate,
+                        batch.written);
+                return new ImportResultDTO(batch.days, batch.written, batch.days - batch.written, batch.fromDate,
+                        batch.toDate);
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Reads the CSV with products, one row per product and a row with empty product columns for a
+     * day without any. The rows of a day are consecutive, as the download writes them; the day totals
+     * repeated on each of them are taken from the first.
+     */
+    private void readCsv(InputStream input, Batch batch) throws IOException {
+        // not closed, as that would close the request's stream
+        CSVReader csvReader = new CSVReaderBuilder(new InputStreamReader(input, StandardCharsets.UTF_8))
+                .withCSVParser(new CSVParserBuilder().withSeparator(DataDownloadService.CSV_SEPARATOR).build())
+                .build();
+        String[] header = readCsvRow(csvReader);
+        if (Arrays.equals(header, DataDownloadService.TOTALS_CSV_HEADER)) {
+            throw new IllegalArgumentException("This is a totals-only download. Importing it would remove the "
+                    + "products of every day it contains - download with includeProducts=true instead");
+        }
+        if (!Arrays.equals(header, DataDownloadService.FULL_DATA_CSV_HEADER)) {
+            throw new IllegalArgumentException("Not a CSV download with products, expected the header "
+                    + String.join(String.valueOf(DataDownloadService.CSV_SEPARATOR),
+                    DataDownloadService.FULL_DATA_CSV_HEADER));
+        }
+
+        FddbData day = null;
+        String[] row;
+        while ((row = readCsvRow(csvReader)) != null) {
+            if (row.length == 1 && row[0].isBlank()) {
+                continue;
+            }
+            long line = csvReader.getLinesRead();
+            if (row.length != DataDownloadService.FULL_DATA_CSV_HEADER.length) {
+                throw new IllegalArgumentException("Line " + line + ": expected "
+                        + DataDownloadService.FULL_DATA_CSV_HEADER.length + " columns, found " + row.length);
+            }
+            LocalDate date = parseDate(row[0], line);
+            if (day == null || !day.getDate().equals(date)) {
+                if (day != null) {
+                    batch.add(day);
+                }
+                day = new FddbData();
+                day.setDate(date);
+                day.setProducts(new ArrayList<>());
+                day.setTotalCalories(parseNumber(row[8], line));
+                day.setTotalFat(parseNumber(row[9], line));
+                day.setTotalCarbs(parseNumber(row[10], line));
+                day.setTotalSugar(parseNumber(row[11], line));
+                day.setTotalProtein(parseNumber(row[12], line));
+                day.setTotalFibre(parseNumber(row[13], line));
+            }
+            if (!row[1].isEmpty()) {
+                day.getProducts().add(new Product(row[1], row[2], parseNumber(row[3], line),
+                        parseNumber(row[4], line), parseNumber(row[5], line), parseNumber(row[6], line),
+                        row[7].isEmpty() ? null : row[7]));
+            }
+        }
+        if (day != null) {
+            batch.add(day);
+        }
+    }
+
+    private String[] readCsvRow(CSVReader csvReader) throws IOException {
+        try {
+            return csvReader.readNext();
+        } catch (CsvValidationException e) {
+            throw new IllegalArgumentException("Line " + csvReader.getLinesRead() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads the JSON download - one array of entries - or the NDJSON one, an entry per line; the
+     * reader takes the array apart element by element either way.
+     */
+    private void readJson(InputStream input, Batch batch) throws IOException {
+        try {
+            // not closed, as that would close the request's stream
+            MappingIterator<FddbDataDTO> entries = entryReader.readValues(input);
+            while (entries.hasNextValue()) {
+                FddbDataDTO entry = entries.nextValue();
+                if (entry.getDate() == null) {
+                    throw new IllegalArgumentException("An entry without a date: " + entry);
+                }
+                if (entry.getProducts() == null) {
+                    throw new IllegalArgumentException("The entry of " + entry.getDate() + " has no products. "
+                            + "Importing a totals-only download would remove the products of every day it "
+                            + "contains - download with includeProducts=true instead");
+                }
+                batch.add(fddbDataMapper.toFddbData(entry));
+            }
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Not a JSON download: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    private static LocalDate parseDate(String value, long line) {
+        try {
+            return LocalDate.parse(value);
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Line " + line + ": not a date: " + value, e);
+        }
+    }
+
+    /**
+     * Parses a number with either decimal separator; the column separator is a semicolon, so a
+     * comma in a field can only be one.
+     */
+    private static double parseNumber(String value, long line) {
+        try {
+            return Double.parseDouble(value.replace(',', '.'));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Line " + line + ": not a number: " + value, e);
+        }
+    }
+
+    /**
+     * Unpacks a gzip-compressed download - a {@code .gz} file or a saved snapshot - recognized by
+     * its first two bytes, so the caller does not have to say.
+     */
+    private static InputStream decompressIfGzipped(InputStream inputStream) throws IOException {
+        BufferedInputStream input = new BufferedInputStream(inputStream, BUFFER_SIZE);
+        input.mark(2);
+        boolean gzipped = input.read() == GZIP_MAGIC_FIRST_BYTE && input.read() == GZIP_MAGIC_SECOND_BYTE;
+        input.reset();
+        return gzipped ? new GZIPInputStream(input, BUFFER_SIZE) : input;
+    }
+
+    /**
+     * Collects the days of the file and writes them {@value #BATCH_SIZE} at a time. A date that
+     * comes up twice within a batch is written once, as it came last.
+     */
+    private class Batch {
+
+        private final Map<LocalDate, FddbData> entries = new LinkedHashMap<>();
+        private int days;
+        private int written;
+        private LocalDate fromDate;
+        private LocalDate toDate;
+
+        void add(FddbData entry) {
+            if (fromDate == null || entry.getDate().isBefore(fromDate)) {
+                fromDate = entry.getDate();
+            }
+            if (toDate == null || entry.getDate().isAfter(toDate)) {
+                toDate = entry.getDate();
+            }
+            // a date repeated within the batch replaces its day rather than adding one
+            if (entries.put(entry.getDate(), entry) == null) {
+                days++;
+            }
+            if (entries.size() == BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        void flush() {
+            if (!entries.isEmpty()) {
+                written += persistenceService.importEntries(new ArrayList<>(entries.values()));
+                entries.clear();
+            }
+        }
+    }
+}
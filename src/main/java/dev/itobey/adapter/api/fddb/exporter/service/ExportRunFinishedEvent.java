@@ -0,0 +1,10 @@
+package dev.itobey.adapter.api.fddb.exporter.service;
+
+/**
+ * Published once a scraping run has finished, successful or not, so whatever is derived from the
+ * whole diary can be brought up to date in one go rather than after every single day it wrote.
+ * <p>
+ * Nested runs - an MCP tool exporting gap after gap under one lock - publish it once, at the end.
+ */
+public record ExportRunFinishedEvent() {
+}
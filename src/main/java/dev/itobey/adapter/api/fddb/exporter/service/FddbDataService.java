@@ -8,9 +8,11 @@ import dev.itobey.adapter.api.fddb.exporter.exception.AuthenticationException;
 import dev.itobey.adapter.api.fddb.exporter.exception.ExportInProgressException;
 import dev.itobey.adapter.api.fddb.exporter.exception.ParseException;
 import dev.itobey.adapter.api.fddb.exporter.mapper.FddbDataMapper;
+import dev.itobey.adapter.api.fddb.exporter.service.cache.ResultCache;
 import dev.itobey.adapter.api.fddb.exporter.service.persistence.PersistenceService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.time.DateTimeException;
@@ -35,6 +37,8 @@ public class FddbDataService {
     private final FddbDataMapper fddbDataMapper;
     private final StatsService statsService;
     private final FddbExporterProperties properties;
+    private final ResultCache resultCache;
+    private final ApplicationEventPublisher eventPublisher;
 
     /**
      * Guards every scraping run in this application against every other one: the scheduler, the
@@ -57,6 +61,12 @@ public class FddbDataService {
      */
     public static final int MAX_RANGE_DAYS = 366;
 
+    /**
+     * Upper bound for the window of a rolling average. A quarter is already a very slow curve; past
+     * that the "average" is the diary's overall mean with extra steps.
+     */
+    public static final int MAX_ROLLING_WINDOW = 90;
+
     public List<FddbDataDTO> findAllEntries() {
         List<FddbData> allEntries = persistenceService.findAllEntries();
         return fddbDataMapper.toFddbDataDTO(allEntries);
@@ -114,12 +124,22 @@ public class FddbDataService {
 
     public ProductSummaryDTO getProductSummary(String name, LocalDate fromDate, LocalDate toDate) {
         validateRange(fromDate, toDate);
-        return persistenceService.getProductSummary(name, fromDate, toDate);
+        return resultCache.get("getProductSummary",
+                () -> persistenceService.getProductSummary(name, fromDate, toDate), name, fromDate, toDate);
     }
 
     public List<TopProductDTO> getTopProducts(ProductRanking ranking, LocalDate fromDate, LocalDate toDate, int limit) {
         validateRange(fromDate, toDate);
-        return persistenceService.getTopProducts(ranking, fromDate, toDate, limit);
+        return resultCache.get("getTopProducts",
+                () -> persistenceService.getTopProducts(ranking, fromDate, toDate, limit), ranking, fromDate, toDate, limit);
+    }
+
+    public List<ProductPairDTO> getProductPairs(String product, LocalDate fromDate, LocalDate toDate,
+                                                int minDaysTogether, double minConfidence, int limit) {
+        validateRange(fromDate, toDate);
+        return resultCache.get("getProductPairs",
+                () -> persistenceService.getProductPairs(product, fromDate, toDate, minDaysTogether, minConfidence, limit),
+                product, fromDate, toDate, minDaysTogether, minConfidence, limit);
     }
 
     public List<String> findDistinctProductNames(String search, int limit) {
@@ -128,65 +148,60 @@ public class FddbDataService {
 
     /**
      * Finds the most recent days on which a product matching at least one of the include keywords
-     * and none of the exclude ones was logged - "on which days did I eat X but not Y".
+     * and none of the exclude ones was logged - "on which days did I eat X but not Y" - and how many
+     * such days there are in total.
      * <p>
-     * Grouping and capping both happen in the database. Returning the individual occurrences and
-     * collapsing them here would mean loading every match in the diary for a broad keyword, only to
-     * discard almost all of them.
+     * Grouping, capping and counting all happen in the database, in one pipeline. Returning the
+     * individual occurrences and collapsing them here would mean loading every match in the diary
+     * for a broad keyword, only to discard almost all of them.
      *
      * @param includeKeywords case-insensitive substrings of the product name, at least one must match
      * @param excludeKeywords case-insensitive substrings that disqualify an occurrence, may be empty
      * @param startDate       the earliest date to consider, or null for the whole diary
+     * @param beforeDate      the day to continue before, exclusive - the oldest day of the previous
+     *                        page - or null to start at the newest
      * @param limit           the maximum number of days to return
-     * @return the matching days, newest first
-     */
-    public List<DayWithProductsDTO> findDaysWithProducts(List<String> includeKeywords, List<String> excludeKeywords,
-                                                         LocalDate startDate, int limit) {
-        return persistenceService.findDaysWithProducts(
-                includeKeywords == null ? List.of() : includeKeywords,
-                excludeKeywords == null ? List.of() : excludeKeywords,
-                startDate,
-                limit);
-    }
-
-    /**
-     * Counts what the same search matches in total, for a caller that returned only part of it.
-     *
-     * @param includeKeywords case-insensitive substrings of the product name, at least one must match
-     * @param excludeKeywords case-insensitive substrings that disqualify an occurrence, may be empty
-     * @param startDate       the earliest date to consider, or null for the whole diary
-     * @return the total number of matching days and occurrences
+     * @return the matching days, newest first, with the totals from {@code beforeDate} back
      */
-    public ProductDayTotalsDTO countDaysWithProducts(List<String> includeKeywords, List<String> excludeKeywords,
-                                                     LocalDate startDate) {
-        return persistenceService.countDaysWithProducts(
-                includeKeywords == null ? List.of() : includeKeywords,
-                excludeKeywords == null ? List.of() : excludeKeywords,
-                startDate);
+    public ProductDaysPageDTO findDaysWithProducts(List<String> includeKeywords, List<String> excludeKeywords,
+                                                   LocalDate startDate, LocalDate beforeDate, int limit) {
+        List<String> includes = includeKeywords == null ? List.of() : includeKeywords;
+        List<String> excludes = excludeKeywords == null ? List.of() : excludeKeywords;
+        return resultCache.get("findDaysWithProducts",
+                () -> persistenceService.findDaysWithProducts(includes, excludes, startDate, beforeDate, limit),
+                includes, excludes, startDate, beforeDate, limit);
     }
 
     public List<StatsDTO.DayStats> getExtremeDays(NutrientMetric metric, ExtremeDirection direction, int limit,
                                                   LocalDate fromDate, LocalDate toDate) {
-        return statsService.getExtremeDays(metric, direction, limit, fromDate, toDate);
+        return resultCache.get("getExtremeDays",
+                () -> statsService.getExtremeDays(metric, direction, limit, fromDate, toDate),
+                metric, direction, limit, fromDate, toDate);
     }
 
     public List<TrendPointDTO> getTrend(NutrientMetric metric, LocalDate fromDate, LocalDate toDate,
                                         TrendGranularity granularity) {
-        return statsService.getTrend(metric, fromDate, toDate, granularity);
+        return resultCache.get("getTrend",
+                () -> statsService.getTrend(metric, fromDate, toDate, granularity), metric, fromDate, toDate, granularity);
     }
 
     public List<WeekdayStatsDTO> getWeekdayBreakdown(LocalDate fromDate, LocalDate toDate) {
-        return statsService.getWeekdayBreakdown(fromDate, toDate);
+        return resultCache.get("getWeekdayBreakdown",
+                () -> statsService.getWeekdayBreakdown(fromDate, toDate), fromDate, toDate);
     }
 
     public MacroSplitDTO getMacroSplit(LocalDate fromDate, LocalDate toDate) {
-        return statsService.getMacroSplit(fromDate, toDate);
+        return resultCache.get("getMacroSplit", () -> statsService.getMacroSplit(fromDate, toDate), fromDate, toDate);
     }
 
     public List<LocalDate> getMissingDays(LocalDate fromDate, LocalDate toDate) {
         return statsService.getMissingDays(fromDate, toDate);
     }
 
+    public GapStatsDTO getGapStats(LocalDate fromDate, LocalDate toDate) {
+        return resultCache.get("getGapStats", () -> statsService.getGapStats(fromDate, toDate), fromDate, toDate);
+    }
+
     /**
      * Counts the days in a range that have an entry, without loading them.
      *
@@ -272,8 +287,14 @@ public class FddbDataService {
         return exportForTimerange(timeframe);
     }
 
+    /**
+     * Returns the overall statistics, computed at most once per day and per change to the data.
+     *
+     * @return the statistics over the whole diary
+     */
     public StatsDTO getStats() {
-        return statsService.getStats();
+        // keyed by today as well: the streaks and the most recent gap move at midnight without any write
+        return resultCache.get("getStats", statsService::getStats, LocalDate.now());
     }
 
     /**
@@ -289,7 +310,8 @@ public class FddbDataService {
         LocalDate fromDate = LocalDate.parse(dateRangeDTO.getFromDate());
         LocalDate toDate = LocalDate.parse(dateRangeDTO.getToDate());
 
-        StatsDTO.Averages averages = statsService.getAveragesForDateRange(fromDate, toDate);
+        StatsDTO.Averages averages = resultCache.get("getAveragesForDateRange",
+                () -> statsService.getAveragesForDateRange(fromDate, toDate), fromDate, toDate);
         return RollingAveragesDTO.builder()
                 .fromDate(dateRangeDTO.getFromDate())
                 .toDate(dateRangeDTO.getToDate())
@@ -297,13 +319,70 @@ public class FddbDataService {
                 .build();
     }
 
+    /**
+     * Builds a moving average with one point per day of the range, each averaging the {@code window}
+     * days ending on it - the series behind a "7-day average over the year" chart, in one call.
+     *
+     * @param fromDate      the day of the first point
+     * @param toDate        the day of the last point
+     * @param window        the number of days each point averages, between 1 and {@link #MAX_ROLLING_WINDOW}
+     * @param metrics       the metrics to average, or null/empty for all of them
+     * @param minLoggedDays the fewest logged days a window needs to be averaged, or null for more than
+     *                      half of the window
+     * @return one point per day, in chronological order
+     * @throws DateTimeException if the range is inverted or longer than {@link #MAX_RANGE_DAYS}
+     */
+    public List<RollingAveragePointDTO> getRollingAverageSeries(LocalDate fromDate, LocalDate toDate, int window,
+                                                                List<NutrientMetric> metrics,
+                                                                Integer minLoggedDays) {
+        validateRange(fromDate, toDate);
+
+        long amountDays = DAYS.between(fromDate, toDate) + 1;
+        if (amountDays > MAX_RANGE_DAYS) {
+            throw new DateTimeException("The date range must not exceed " + MAX_RANGE_DAYS
+                    + " days, but " + amountDays + " were requested - please narrow the range");
+        }
+        if (window < 1 || window > MAX_ROLLING_WINDOW) {
+            throw new IllegalArgumentException("The window must be between 1 and " + MAX_ROLLING_WINDOW
+                    + " days, but was " + window);
+        }
+
+        List<NutrientMetric> effectiveMetrics = rollingAverageMetrics(metrics);
+        int effectiveMinLoggedDays = rollingAverageMinLoggedDays(window, minLoggedDays);
+
+        return resultCache.get("getRollingAverageSeries",
+                () -> statsService.getRollingAverageSeries(fromDate, toDate, window, effectiveMetrics,
+                        effectiveMinLoggedDays),
+                fromDate, toDate, window, effectiveMetrics, effectiveMinLoggedDays);
+    }
+
+    /**
+     * @param metrics the metrics asked for, or null/empty for all of them
+     * @return the metrics {@link #getRollingAverageSeries} averages for them
+     */
+    public static List<NutrientMetric> rollingAverageMetrics(List<NutrientMetric> metrics) {
+        return metrics == null || metrics.isEmpty()
+                ? List.of(NutrientMetric.values())
+                : metrics.stream().distinct().toList();
+    }
+
+    /**
+     * @param window        the number of days each point averages
+     * @param minLoggedDays the fewest logged days asked for, or null for the default
+     * @return the fewest logged days {@link #getRollingAverageSeries} requires of a window
+     */
+    public static int rollingAverageMinLoggedDays(int window, Integer minLoggedDays) {
+        return minLoggedDays == null ? window / 2 + 1 : minLoggedDays;
+    }
+
     /**
      * Runs an action as the only export in this application, or refuses it.
      * <p>
      * Public because a caller that scrapes in several steps - {@code export_missing_days} fetches
      * one day per gap - has to hold the lock across all of them, not re-take it between days.
      * Nested calls from the same thread are free, so such a caller can wrap a loop that itself
-     * calls {@link #exportForTimerange}.
+     * calls {@link #exportForTimerange}. Once the outermost run has released the lock, an
+     * {@link ExportRunFinishedEvent} is published.
      *
      * @param export the scraping run to perform
      * @return whatever the run returns
@@ -318,7 +397,11 @@ public class FddbDataService {
         try {
             return export.get();
         } finally {
+            boolean outermost = exportLock.getHoldCount() == 1;
             exportLock.unlock();
+            if (outermost) {
+                eventPublisher.publishEvent(new ExportRunFinishedEvent());
+            }
         }
     }
 
@@ -2,6 +2,7 @@ package dev.itobey.adapter.api.fddb.exporter.service;
 
 import dev.itobey.adapter.api.fddb.exporter.domain.FddbData;
 import dev.itobey.adapter.api.fddb.exporter.dto.*;
+import dev.itobey.adapter.api.fddb.exporter.service.index.CoverageIndex;
 import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Sort;
@@ -35,6 +36,9 @@ public class StatsService {
     @Autowired(required = false)
     private MongoTemplate mongoTemplate;
 
+    @Autowired
+    private CoverageIndex coverageIndex;
+
     public StatsDTO getStats() {
         long amountEntries = getAmountEntries();
 
@@ -194,9 +198,12 @@ public class StatsService {
         if (criteria != null) {
             operations.add(match(criteria));
         }
-        operations.add(sort(sortDirection, metric.getFieldName()));
+        // sorted exactly like the {metric, date} index MongoIndexInitializer creates, so the ranking is an
+        // index walk that stops after limit days - and ties come back in a stable order
+        operations.add(sort(sortDirection, metric.getFieldName(), "date"));
         operations.add(limit(limit));
-        operations.add(project("date").and(metric.getFieldName()).as("total"));
+        // without _id, everything the pipeline reads is in the index keys and no document is fetched
+        operations.add(project("date").and(metric.getFieldName()).as("total").andExclude("_id"));
 
         AggregationResults<StatsDTO.DayStats> results =
                 mongoTemplate.aggregate(newAggregation(operations), COLLECTION_NAME, StatsDTO.DayStats.class);
@@ -242,6 +249,88 @@ public class StatsService {
         return trend;
     }
 
+    /**
+     * Builds a moving average over a date range: one point per calendar day, each averaging the
+     * {@code window} days that end on it.
+     * <p>
+     * The daily totals are loaded once, starting {@code window - 1} days before {@code fromDate} so
+     * the first point already has a full window behind it, and the series is then produced in a
+     * single sliding pass - every day is added to the running sums once and taken out once. Asking
+     * {@link #getAveragesForDateRange} per point instead is one aggregation per day of the chart.
+     * <p>
+     * Unlogged days are left out of a window's average rather than counted as zero, the same rule
+     * every other aggregation here follows. A window with fewer than {@code minLoggedDays} logged
+     * days gets no averages at all.
+     *
+     * @param fromDate      the day of the first point
+     * @param toDate        the day of the last point
+     * @param window        the number of days each point averages, the day itself included
+     * @param metrics       the metrics to average, in the order they should be reported
+     * @param minLoggedDays the fewest logged days a window needs to be averaged
+     * @return one point per day from {@code fromDate} to {@code toDate}, in chronological order
+     */
+    public List<RollingAveragePointDTO> getRollingAverageSeries(LocalDate fromDate, LocalDate toDate, int window,
+                                                                List<NutrientMetric> metrics, int minLoggedDays) {
+        validateDateRange(fromDate, toDate);
+        if (window < 1) {
+            throw new IllegalArgumentException("The window must be at least one day");
+        }
+        if (minLoggedDays < 1 || minLoggedDays > window) {
+            throw new IllegalArgumentException("The minimum of logged days must be between 1 and the window of "
+                    + window + " days");
+        }
+
+        LocalDate windowStart = fromDate.minusDays(window - 1L);
+        int span = (int) ChronoUnit.DAYS.between(windowStart, toDate) + 1;
+        List<ToDoubleFunction<FddbData>> accessors = metrics.stream().map(this::metricAccessor).toList();
+
+        // one column per metric, indexed by the day's offset from the start of the first window
+        double[][] values = new double[metrics.size()][span];
+        boolean[] logged = new boolean[span];
+        for (FddbData entry : findDailyTotals(windowStart, toDate)) {
+            int day = (int) ChronoUnit.DAYS.between(windowStart, entry.getDate());
+            logged[day] = true;
+            for (int metric = 0; metric < accessors.size(); metric++) {
+                values[metric][day] = accessors.get(metric).applyAsDouble(entry);
+            }
+        }
+
+        double[] sums = new double[metrics.size()];
+        int loggedDays = 0;
+        List<RollingAveragePointDTO> series = new ArrayList<>(span - window + 1);
+        for (int day = 0; day < span; day++) {
+            if (logged[day]) {
+                loggedDays++;
+                for (int metric = 0; metric < sums.length; metric++) {
+                    sums[metric] += values[metric][day];
+                }
+            }
+            int leaving = day - window;
+            if (leaving >= 0 && logged[leaving]) {
+                loggedDays--;
+                for (int metric = 0; metric < sums.length; metric++) {
+                    sums[metric] -= values[metric][leaving];
+                }
+            }
+            if (day >= window - 1) {
+                series.add(RollingAveragePointDTO.builder()
+                        .date(windowStart.plusDays(day))
+                        .loggedDays(loggedDays)
+                        .averages(loggedDays < minLoggedDays ? null : averagesOf(metrics, sums, loggedDays))
+                        .build());
+            }
+        }
+        return series;
+    }
+
+    private Map<NutrientMetric, Double> averagesOf(List<NutrientMetric> metrics, double[] sums, int loggedDays) {
+        Map<NutrientMetric, Double> averages = new LinkedHashMap<>();
+        for (int metric = 0; metric < sums.length; metric++) {
+            averages.put(metrics.get(metric), roundToOneDecimal(sums[metric] / loggedDays));
+        }
+        return averages;
+    }
+
     /**
      * Averages the daily totals grouped by day of the week, so weekday and weekend patterns
      * become visible. Days of the week without a single entry are omitted.
@@ -308,41 +397,84 @@ public class StatsService {
      */
     public List<LocalDate> getMissingDays(LocalDate fromDate, LocalDate toDate) {
         validateDateRange(fromDate, toDate);
+        validateIndexedRange(toDate);
 
-        return collectMissingDays(findLoggedDates(fromDate, toDate), fromDate, toDate);
+        return coverageIndex().missingDays(fromDate, toDate);
     }
 
     /**
-     * Loads the dates in a range that have an entry with at least one calorie. A day with an entry
-     * but no calories counts as unlogged, since that is what an aborted or empty export looks like.
+     * Describes how the missing days of a range cluster into gaps, overall and per month. Read off
+     * the coverage index a run at a time, so a multi-year range costs no more than the number of
+     * gaps in it.
      *
-     * @param fromDate the first date to load
-     * @param toDate   the last date to load
-     * @return the logged dates, for cheap membership checks
+     * @param fromDate the first date to check
+     * @param toDate   the last date to check
+     * @return the gap count, the longest gap and the per-month breakdown
+     */
+    public GapStatsDTO getGapStats(LocalDate fromDate, LocalDate toDate) {
+        validateDateRange(fromDate, toDate);
+        validateIndexedRange(toDate);
+
+        CoverageIndex index = coverageIndex();
+        long daysChecked = ChronoUnit.DAYS.between(fromDate, toDate) + 1;
+
+        List<GapStatsDTO.Month> months = new ArrayList<>();
+        for (YearMonth month = YearMonth.from(fromDate); !month.isAfter(YearMonth.from(toDate)); month = month.plusMonths(1)) {
+            LocalDate monthFrom = month.atDay(1).isBefore(fromDate) ? fromDate : month.atDay(1);
+            LocalDate monthTo = month.atEndOfMonth().isAfter(toDate) ? toDate : month.atEndOfMonth();
+            months.add(GapStatsDTO.Month.builder()
+                    .month(month.toString())
+                    .missingCount(ChronoUnit.DAYS.between(monthFrom, monthTo) + 1 - index.countLogged(monthFrom, monthTo))
+                    .gapCount(index.countGaps(monthFrom, monthTo))
+                    .build());
+        }
+
+        CoverageIndex.Gap longestGap = index.longestGap(fromDate, toDate);
+        return GapStatsDTO.builder()
+                .fromDate(fromDate)
+                .toDate(toDate)
+                .daysChecked(daysChecked)
+                .missingCount(daysChecked - index.countLogged(fromDate, toDate))
+                .gapCount(index.countGaps(fromDate, toDate))
+                .longestGap(longestGap == null ? null : GapStatsDTO.Gap.builder()
+                        .fromDate(longestGap.fromDate())
+                        .toDate(longestGap.toDate())
+                        .days(longestGap.days())
+                        .build())
+                .months(months)
+                .build();
+    }
+
+    /**
+     * Returns the coverage index, building it first if no read has needed it since startup or the
+     * last delete.
      */
-    private Set<LocalDate> findLoggedDates(LocalDate fromDate, LocalDate toDate) {
+    private CoverageIndex coverageIndex() {
         requireMongoTemplate();
 
-        Query query = new Query(Criteria.where("date").gte(fromDate).lte(toDate).and("totalCalories").gt(0));
-        query.fields().exclude("products");
+        coverageIndex.buildIfAbsent(this::findAllLoggedDates);
+        return coverageIndex;
+    }
 
-        Set<LocalDate> loggedDates = new HashSet<>();
+    /**
+     * Loads every date that has an entry with at least one calorie. A day with an entry but no
+     * calories counts as unlogged, since that is what an aborted or empty export looks like. Only
+     * the date is read, so even a diary of many years is a cheap load - and it only happens when
+     * the index is built.
+     *
+     * @return the logged dates of the whole diary
+     */
+    private List<LocalDate> findAllLoggedDates() {
+        Query query = new Query(Criteria.where("totalCalories").gt(0));
+        query.fields().include("date");
+
+        List<LocalDate> loggedDates = new ArrayList<>();
         for (FddbData entry : mongoTemplate.find(query, FddbData.class, COLLECTION_NAME)) {
             loggedDates.add(entry.getDate());
         }
         return loggedDates;
     }
 
-    private List<LocalDate> collectMissingDays(Set<LocalDate> loggedDates, LocalDate fromDate, LocalDate toDate) {
-        List<LocalDate> missingDays = new ArrayList<>();
-        for (LocalDate date = fromDate; !date.isAfter(toDate); date = date.plusDays(1)) {
-            if (!loggedDates.contains(date)) {
-                missingDays.add(date);
-            }
-        }
-        return missingDays;
-    }
-
     private StatsDTO.DayStats getDayWithHighestTotal(NutrientMetric metric) {
         List<StatsDTO.DayStats> extremes = getExtremeDays(metric, ExtremeDirection.HIGHEST, 1, null, null);
         return extremes.isEmpty() ? null : extremes.getFirst();
@@ -442,9 +574,9 @@ public class StatsService {
     }
 
     /**
-     * Walks the logged and unlogged days between the first entry and today a single time, so the
-     * overall statistics can report the most recent gap, the total number of gaps and both streaks
-     * from one query.
+     * Reads the most recent gap, the total number of gaps and both streaks between the first entry
+     * and today off the coverage index, so the overall statistics do not have to load and walk every
+     * logged date on each call.
      *
      * @param firstEntryDate the date of the first entry, or null for an empty database
      * @return the coverage figures, with null values if they cannot be determined
@@ -461,49 +593,23 @@ public class StatsService {
             }
 
             LocalDate today = LocalDate.now();
-            Set<LocalDate> loggedDates = findLoggedDates(firstEntryDate, today);
+            CoverageIndex index = coverageIndex();
 
             // today is deliberately left out of the gaps: a day still in progress is not a missing day
             LocalDate lastCompleteDay = today.minusDays(1);
-            List<LocalDate> missingDays = lastCompleteDay.isBefore(firstEntryDate)
-                    ? List.of()
-                    : collectMissingDays(loggedDates, firstEntryDate, lastCompleteDay);
+            boolean hasCompleteDays = !lastCompleteDay.isBefore(firstEntryDate);
+            long completeDays = hasCompleteDays ? ChronoUnit.DAYS.between(firstEntryDate, today) : 0;
 
             return new Coverage(
-                    missingDays.isEmpty() ? null : missingDays.getLast(),
-                    (long) missingDays.size(),
-                    currentStreak(loggedDates, firstEntryDate, today),
-                    longestStreak(loggedDates, firstEntryDate, today));
+                    hasCompleteDays ? index.lastMissingDay(firstEntryDate, lastCompleteDay) : null,
+                    hasCompleteDays ? completeDays - index.countLogged(firstEntryDate, lastCompleteDay) : 0L,
+                    index.currentStreak(firstEntryDate, today),
+                    index.longestStreak(firstEntryDate, today));
         } catch (Exception e) {
             return Coverage.unavailable();
         }
     }
 
-    /**
-     * Counts the logged days in a row up to now. Today only counts once it has an entry, but its
-     * absence does not end the streak either - otherwise every streak would look broken until the
-     * scheduler runs.
-     */
-    private int currentStreak(Set<LocalDate> loggedDates, LocalDate firstEntryDate, LocalDate today) {
-        int streak = 0;
-        for (LocalDate date = loggedDates.contains(today) ? today : today.minusDays(1);
-             !date.isBefore(firstEntryDate) && loggedDates.contains(date);
-             date = date.minusDays(1)) {
-            streak++;
-        }
-        return streak;
-    }
-
-    private int longestStreak(Set<LocalDate> loggedDates, LocalDate firstEntryDate, LocalDate today) {
-        int longest = 0;
-        int running = 0;
-        for (LocalDate date = firstEntryDate; !date.isAfter(today); date = date.plusDays(1)) {
-            running = loggedDates.contains(date) ? running + 1 : 0;
-            longest = Math.max(longest, running);
-        }
-        return longest;
-    }
-
     /**
      * How completely the diary is filled in: the most recent gap, the number of gaps and the
      * streaks. Every value is null when it cannot be determined without MongoDB.
@@ -593,6 +699,15 @@ public class StatsService {
         }
     }
 
+    /**
+     * Rejects a range the coverage index has no bits for, rather than failing on it halfway.
+     */
+    private void validateIndexedRange(LocalDate toDate) {
+        if (toDate.isAfter(CoverageIndex.LAST_DAY)) {
+            throw new IllegalArgumentException("The 'to' date cannot be after " + CoverageIndex.LAST_DAY);
+        }
+    }
+
     private void requireMongoTemplate() {
         if (mongoTemplate == null) {
             throw new IllegalStateException("MongoDB is not configured");
@@ -0,0 +1,32 @@
+package dev.itobey.adapter.api.fddb.exporter.service.cache;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A counter that moves on every write to the diary, so anything derived from the data can tell
+ * whether it is still current by comparing a single number.
+ * <p>
+ * Bumped by {@code FddbDataWriteListener} after each save and delete. The value itself means
+ * nothing and starts over with every restart; only whether it changed does.
+ */
+@Component
+public class DataVersion {
+
+    private final AtomicLong version = new AtomicLong();
+
+    /**
+     * @return the current version of the data
+     */
+    public long current() {
+        return version.get();
+    }
+
+    /**
+     * Marks the data as changed, making everything derived from an earlier version stale.
+     */
+    public void bump() {
+        version.incrementAndGet();
+    }
+}
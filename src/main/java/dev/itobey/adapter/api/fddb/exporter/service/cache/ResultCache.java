@@ -0,0 +1,85 @@
+package dev.itobey.adapter.api.fddb.exporter.service.cache;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the results of the stats and analytics queries until the diary changes.
+ * <p>
+ * The data changes once a night, when the scheduled export writes yesterday, and otherwise only
+ * when someone exports or edits by hand. In between, the dashboard, the {@code diary_stats} MCP
+ * resource and an agent calling {@code get_stats} three times in one conversation all recompute
+ * the same aggregations over the same documents. Every result here is stamped with the
+ * {@link DataVersion} it was computed from and only served while that is still the current one,
+ * so a write invalidates exactly everything and nothing has to know which result depends on which
+ * day.
+ * <p>
+ * Bounded to {@link #MAX_ENTRIES} results, least recently used out first. Results are handed out
+ * as they are, not copied - callers only read them.
+ */
+@Component
+@RequiredArgsConstructor
+public class ResultCache {
+
+    /**
+     * Upper bound on the cached results. Generous for one user clicking through the dashboard and
+     * an agent working through a conversation, and small enough that a year-long rolling series per
+     * entry still fits comfortably in memory.
+     */
+    static final int MAX_ENTRIES = 256;
+
+    private final DataVersion dataVersion;
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * Returns the cached result of a query, or runs it and caches what it returns. A query that
+     * throws caches nothing.
+     *
+     * @param query     the name of the query, unique per method
+     * @param loader    computes the result
+     * @param arguments everything the result depends on besides the data, compared by equals
+     * @return the result, computed from the current data
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String query, Supplier<T> loader, Object... arguments) {
+        Key key = new Key(query, Arrays.asList(arguments));
+        // read before computing: a write that lands while the query runs leaves the result stamped
+        // with the older version, so it is recomputed on the next call instead of served stale
+        long version = dataVersion.current();
+        synchronized (entries) {
+            Entry cached = entries.get(key);
+            if (cached != null && cached.version() == version) {
+                return (T) cached.value();
+            }
+        }
+
+        // computed outside the lock, so a slow aggregation does not hold up every other read
+        T value = loader.get();
+        synchronized (entries) {
+            Entry current = entries.get(key);
+            // a concurrent call may already have stored a result from newer data
+            if (current == null || current.version() <= version) {
+                entries.put(key, new Entry(version, value));
+            }
+        }
+        return value;
+    }
+
+    private record Key(String query, List<Object> arguments) {
+    }
+
+    private record Entry(long version, Object value) {
+    }
+}
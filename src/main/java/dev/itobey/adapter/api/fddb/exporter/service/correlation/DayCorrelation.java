@@ -0,0 +1,140 @@
+package dev.itobey.adapter.api.fddb.exporter.service.correlation;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Lines up the days a product was eaten with the days an event occurred, at any lag between the
+ * two.
+ * <p>
+ * Both sets of days are bitmaps with one bit per day, counted from the earliest day in either of
+ * them. "Eaten {@code n} days before an event" is then the event bitmap shifted down by {@code n}
+ * and ANDed with the product bitmap, and counting the hits is a popcount - a handful of word
+ * operations per lag rather than a search through every occurrence for every event date. A lag of
+ * thirty days costs exactly what the same day does.
+ * <p>
+ * Instances are immutable and cheap; build one per question.
+ */
+public final class DayCorrelation {
+
+    /**
+     * The epoch day of bit 0.
+     */
+    private final long origin;
+
+    private final BitSet productDays;
+
+    private final BitSet eventDays;
+
+    /**
+     * @param productDays the days a product was eaten, duplicates allowed
+     * @param eventDays   the days the event occurred, duplicates allowed
+     * @throws java.time.DateTimeException if the days lie further apart than a bitmap may span, see
+     *                                     {@link ProductDayMatrix#dayCount(long, long)}
+     */
+    public DayCorrelation(Collection<LocalDate> productDays, Collection<LocalDate> eventDays) {
+        this.origin = earliestEpochDay(productDays, eventDays);
+        // checked before the first bit is set, which would allocate the whole span
+        ProductDayMatrix.dayCount(origin, latestEpochDay(productDays, eventDays));
+        this.productDays = toBitmap(productDays);
+        this.eventDays = toBitmap(eventDays);
+    }
+
+    /**
+     * @return the number of distinct days the product was eaten
+     */
+    public int productDayCount() {
+        return productDays.cardinality();
+    }
+
+    /**
+     * @param lagDays how many days before an event the product was eaten, 0 for the event day itself
+     * @return the product days that lie exactly {@code lagDays} before an event
+     */
+    public BitSet matchedAt(int lagDays) {
+        if (lagDays < 0) {
+            throw new IllegalArgumentException("The lag must not be negative, but was " + lagDays);
+        }
+        // bit i of the shifted bitmap is bit i + lagDays of the events: the day lagDays later
+        BitSet matched = eventDays.get(lagDays, Math.max(lagDays, eventDays.length()));
+        matched.and(productDays);
+        return matched;
+    }
+
+    /**
+     * @param windowDays the length of the window leading up to and including an event day
+     * @return the product days that lie anywhere in the window before an event
+     */
+    public BitSet matchedWithin(int windowDays) {
+        BitSet matched = new BitSet();
+        for (int lagDays = 0; lagDays < windowDays; lagDays++) {
+            matched.or(matchedAt(lagDays));
+        }
+        return matched;
+    }
+
+    /**
+     * Counts the matched days as episodes: a day within {@code windowDays - 1} days after a day
+     * already counted belongs to the same episode, so a product eaten on three consecutive days
+     * before one event is one hit of a 3-day window, not three.
+     *
+     * @param matched    the matched days, as returned by {@link #matchedWithin(int)}
+     * @param windowDays the length of the window the days were matched with
+     * @return the number of episodes
+     */
+    public int countEpisodes(BitSet matched, int windowDays) {
+        BitSet counted = new BitSet();
+        for (int day = matched.nextSetBit(0); day >= 0; day = matched.nextSetBit(day + 1)) {
+            int previous = day == 0 ? -1 : counted.previousSetBit(day - 1);
+            if (previous < 0 || previous <= day - windowDays) {
+                counted.set(day);
+            }
+        }
+        return counted.cardinality();
+    }
+
+    /**
+     * @param days days as returned by this instance
+     * @return the days as dates, in ascending order
+     */
+    public List<LocalDate> toDates(BitSet days) {
+        List<LocalDate> dates = new ArrayList<>(days.cardinality());
+        for (int day = days.nextSetBit(0); day >= 0; day = days.nextSetBit(day + 1)) {
+            dates.add(LocalDate.ofEpochDay(origin + day));
+        }
+        return dates;
+    }
+
+    private BitSet toBitmap(Collection<LocalDate> dates) {
+        BitSet bitmap = new BitSet();
+        for (LocalDate date : dates) {
+            bitmap.set((int) (date.toEpochDay() - origin));
+        }
+        return bitmap;
+    }
+
+    private static long earliestEpochDay(Collection<LocalDate> productDays, Collection<LocalDate> eventDays) {
+        long earliest = Long.MAX_VALUE;
+        for (LocalDate date : productDays) {
+            earliest = Math.min(earliest, date.toEpochDay());
+        }
+        for (LocalDate date : eventDays) {
+            earliest = Math.min(earliest, date.toEpochDay());
+        }
+        return earliest == Long.MAX_VALUE ? 0 : earliest;
+    }
+
+    private static long latestEpochDay(Collection<LocalDate> productDays, Collection<LocalDate> eventDays) {
+        long latest = Long.MIN_VALUE;
+        for (LocalDate date : productDays) {
+            latest = Math.max(latest, date.toEpochDay());
+        }
+        for (LocalDate date : eventDays) {
+            latest = Math.max(latest, date.toEpochDay());
+        }
+        return latest == Long.MIN_VALUE ? 0 : latest;
+    }
+}
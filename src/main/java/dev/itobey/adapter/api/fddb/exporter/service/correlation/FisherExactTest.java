@@ -0,0 +1,68 @@
+package dev.itobey.adapter.api.fddb.exporter.service.correlation;
+
+/**
+ * The one-sided Fisher exact test over the logged days of the diary: how likely it is that a
+ * product eaten on {@code n} of the {@code N} logged days lands on at least {@code k} of the
+ * {@code K} days inside a window by chance alone.
+ * <p>
+ * Under that null hypothesis the hits follow the hypergeometric distribution, and the p-value is
+ * its upper tail - summed exactly, term by term, so it needs neither shuffling nor a random seed
+ * and gives the same answer on every call. A permutation test that relabels the product days would
+ * converge on the very same number, only after thousands of rounds.
+ * <p>
+ * The log factorials of the population are computed once, so each test is one pass over at most
+ * {@code min(n, K)} terms. Instances are immutable and can be shared between threads.
+ */
+public final class FisherExactTest {
+
+    private final int population;
+
+    /**
+     * {@code ln(i!)} for every {@code i} up to the population.
+     */
+    private final double[] logFactorials;
+
+    /**
+     * @param population the number of logged days, {@code N}
+     */
+    public FisherExactTest(int population) {
+        if (population < 0) {
+            throw new IllegalArgumentException("The population must not be negative, but was " + population);
+        }
+        this.population = population;
+        this.logFactorials = new double[population + 1];
+        for (int i = 1; i <= population; i++) {
+            logFactorials[i] = logFactorials[i - 1] + Math.log(i);
+        }
+    }
+
+    /**
+     * @param windowDays  the logged days inside the window, {@code K}
+     * @param productDays the logged days the product was eaten, {@code n}
+     * @param hits        the days that are both, {@code k}
+     * @return the probability of at least {@code hits} such days by chance, 1 for no hits at all
+     * @throws IllegalArgumentException if the counts cannot stem from the same population
+     */
+    public double upperTail(int windowDays, int productDays, int hits) {
+        if (windowDays < 0 || windowDays > population || productDays < 0 || productDays > population
+                || hits < 0 || hits > Math.min(windowDays, productDays)) {
+            throw new IllegalArgumentException("Inconsistent counts: population=" + population + ", windowDays="
+                    + windowDays + ", productDays=" + productDays + ", hits=" + hits);
+        }
+        // fewer hits than this are impossible, so their tail is the whole distribution
+        if (hits <= Math.max(0, windowDays + productDays - population)) {
+            return 1;
+        }
+        double logTotal = logChoose(population, productDays);
+        double tail = 0;
+        for (int i = hits; i <= Math.min(windowDays, productDays); i++) {
+            tail += Math.exp(logChoose(windowDays, i) + logChoose(population - windowDays, productDays - i) - logTotal);
+        }
+        // the rounding of a few dozen terms can nudge a near-certain tail just past 1
+        return Math.min(1, tail);
+    }
+
+    private double logChoose(int n, int k) {
+        return logFactorials[n] - logFactorials[k] - logFactorials[n - k];
+    }
+}
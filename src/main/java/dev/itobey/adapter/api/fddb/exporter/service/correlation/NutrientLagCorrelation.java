@@ -0,0 +1,190 @@
+package dev.itobey.adapter.api.fddb.exporter.service.correlation;
+
+import dev.itobey.adapter.api.fddb.exporter.domain.FddbData;
+import dev.itobey.adapter.api.fddb.exporter.dto.NutrientMetric;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lines up the daily totals of the diary with the days an event occurred, at every lag up to a
+ * maximum: "was I eating more sugar than usual in the days before a migraine?".
+ * <p>
+ * The daily totals are laid out once as one {@code double[]} column per metric, indexed by day,
+ * together with the mean and the spread of every column over the logged days. A lag then only has
+ * to visit the days in its window - a few per event - and everything outside the window follows
+ * from the column totals. Thirty lags over six metrics cost one read of the diary and a few
+ * thousand additions, not thirty queries.
+ * <p>
+ * The effect of a window is reported as the mean inside it, the mean on all other logged days, and
+ * the point-biserial correlation between the metric and being in the window - Pearson's r against
+ * a 0/1 variable, so it is signed and lies between -1 and 1 whatever the unit of the metric.
+ * <p>
+ * A day counts as logged when it has products, as in the {@link ProductDayMatrix} the product
+ * correlations run over, so that all of them measure against the same days. A day with products
+ * but no calories still counts, with totals of zero. Instances are immutable; build one per
+ * question.
+ */
+public final class NutrientLagCorrelation {
+
+    /**
+     * The epoch day of index 0 of every column.
+     */
+    private final long origin;
+
+    private final List<NutrientMetric> metrics;
+
+    /**
+     * The daily totals, by metric and then by day; 0 on unlogged days.
+     */
+    private final double[][] columns;
+
+    private final boolean[] logged;
+
+    private final int loggedDays;
+
+    private final double[] sums;
+
+    /**
+     * The population standard deviation of each column over the logged days.
+     */
+    private final double[] deviations;
+
+    /**
+     * @param dailyTotals the days to correlate, in any order, products not needed
+     * @param matrix      the matrix whose logged days the totals are taken from
+     * @param metrics     the metrics to correlate, in the order they should be reported
+     */
+    public NutrientLagCorrelation(Collection<FddbData> dailyTotals, ProductDayMatrix matrix,
+                                  List<NutrientMetric> metrics) {
+        this.metrics = List.copyOf(metrics);
+        List<FddbData> loggedEntries = dailyTotals.stream()
+                .filter(entry -> entry.getDate() != null && matrix.isLogged(entry.getDate()))
+                .toList();
+        this.origin = loggedEntries.stream().mapToLong(entry -> entry.getDate().toEpochDay()).min().orElse(0);
+        int dayCount = ProductDayMatrix.dayCount(origin,
+                loggedEntries.stream().mapToLong(entry -> entry.getDate().toEpochDay()).max().orElse(origin - 1));
+
+        this.columns = new double[metrics.size()][dayCount];
+        this.logged = new boolean[dayCount];
+        this.sums = new double[metrics.size()];
+        for (FddbData entry : loggedEntries) {
+            int day = (int) (entry.getDate().toEpochDay() - origin);
+            if (logged[day]) {
+                continue;
+            }
+            logged[day] = true;
+            for (int metric = 0; metric < columns.length; metric++) {
+                columns[metric][day] = valueOf(entry, metrics.get(metric));
+                sums[metric] += columns[metric][day];
+            }
+        }
+        int count = 0;
+        for (boolean isLogged : logged) {
+            count += isLogged ? 1 : 0;
+        }
+        this.loggedDays = count;
+
+        // around the mean rather than from the sum of squares, which cancels badly for kcal
+        this.deviations = new double[metrics.size()];
+        for (int metric = 0; metric < columns.length; metric++) {
+            double mean = sums[metric] / Math.max(loggedDays, 1);
+            double squares = 0;
+            for (int day = 0; day < dayCount; day++) {
+                if (logged[day]) {
+                    double delta = columns[metric][day] - mean;
+                    squares += delta * delta;
+                }
+            }
+            deviations[metric] = Math.sqrt(squares / Math.max(loggedDays, 1));
+        }
+    }
+
+    /**
+     * @return the number of logged days the correlation runs over
+     */
+    public int loggedDays() {
+        return loggedDays;
+    }
+
+    /**
+     * @param eventDates the days the event occurred
+     * @param maxLagDays the largest lag to report, 0 for the event day only
+     * @param windowDays how many days each window spans, counting back from its lag
+     * @return for each metric, one effect per lag from 0 up to {@code maxLagDays}
+     */
+    public Map<NutrientMetric, List<LagEffect>> effects(Collection<LocalDate> eventDates, int maxLagDays,
+                                                        int windowDays) {
+        long[] events = eventDates.stream().mapToLong(LocalDate::toEpochDay).distinct().toArray();
+        Map<NutrientMetric, List<LagEffect>> effects = new LinkedHashMap<>();
+        metrics.forEach(metric -> effects.put(metric, new ArrayList<>(maxLagDays + 1)));
+
+        // the lag a day was last counted for, so a day inside the windows of two events counts once
+        int[] countedAt = new int[logged.length];
+        double[] windowSums = new double[metrics.size()];
+        for (int lagDays = 0; lagDays <= maxLagDays; lagDays++) {
+            Arrays.fill(windowSums, 0);
+            int daysInWindow = 0;
+            for (long event : events) {
+                for (int offset = lagDays; offset < lagDays + windowDays; offset++) {
+                    long index = event - offset - origin;
+                    if (index < 0 || index >= logged.length) {
+                        continue;
+                    }
+                    int day = (int) index;
+                    if (!logged[day] || countedAt[day] == lagDays + 1) {
+                        continue;
+                    }
+                    countedAt[day] = lagDays + 1;
+                    daysInWindow++;
+                    for (int metric = 0; metric < columns.length; metric++) {
+                        windowSums[metric] += columns[metric][day];
+                    }
+                }
+            }
+            for (int metric = 0; metric < columns.length; metric++) {
+                effects.get(metrics.get(metric)).add(effect(metric, lagDays, daysInWindow, windowSums[metric]));
+            }
+        }
+        return effects;
+    }
+
+    private LagEffect effect(int metric, int lagDays, int daysInWindow, double windowSum) {
+        int otherDays = loggedDays - daysInWindow;
+        Double meanInWindow = daysInWindow == 0 ? null : windowSum / daysInWindow;
+        Double meanOtherDays = otherDays == 0 ? null : (sums[metric] - windowSum) / otherDays;
+        Double correlation = meanInWindow == null || meanOtherDays == null || deviations[metric] == 0
+                ? null
+                : (meanInWindow - meanOtherDays) / deviations[metric]
+                * Math.sqrt((double) daysInWindow * otherDays) / loggedDays;
+        return new LagEffect(lagDays, daysInWindow, meanInWindow, meanOtherDays, correlation);
+    }
+
+    private static double valueOf(FddbData entry, NutrientMetric metric) {
+        return switch (metric) {
+            case CALORIES -> entry.getTotalCalories();
+            case FAT -> entry.getTotalFat();
+            case CARBS -> entry.getTotalCarbs();
+            case SUGAR -> entry.getTotalSugar();
+            case PROTEIN -> entry.getTotalProtein();
+            case FIBRE -> entry.getTotalFibre();
+        };
+    }
+
+    /**
+     * @param lagDays       how many days before an event the window starts
+     * @param daysInWindow  the logged days inside the window
+     * @param meanInWindow  the mean daily total inside it, null if it holds no logged day
+     * @param meanOtherDays the mean daily total on every other logged day, null if there is none
+     * @param correlation   the point-biserial correlation between the daily total and lying in the
+     *                      window, null where a mean is or the metric never varies
+     */
+    public record LagEffect(int lagDays, int daysInWindow, Double meanInWindow, Double meanOtherDays,
+                            Double correlation) {
+    }
+}
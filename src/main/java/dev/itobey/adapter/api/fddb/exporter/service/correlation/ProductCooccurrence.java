@@ -0,0 +1,113 @@
+package dev.itobey.adapter.api.fddb.exporter.service.correlation;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * Finds the pairs of products that are eaten on the same day - "what do I have with my coffee?" -
+ * over the {@link ProductDayMatrix}.
+ * <p>
+ * Two products cannot share more days than either of them was eaten on, so only products eaten on
+ * at least {@code minDaysTogether} days take part at all; that alone leaves a few hundred of a
+ * diary's thousands. Each remaining pair is one AND-and-count of two day bitmaps, and the pairs are
+ * spread over all cores by their first product.
+ * <p>
+ * Every pair carries the usual market-basket measures: its support - the days the two were eaten
+ * together - the confidence in either direction, and the lift, which is 1 for two products that
+ * are eaten independently of each other. Coffee and bread eaten daily share every day and still
+ * have a lift of 1; a lift of 3 means together three times as often as chance would put them.
+ */
+public final class ProductCooccurrence {
+
+    private ProductCooccurrence() {
+    }
+
+    /**
+     * @param matrix          which product was eaten on which day
+     * @param products        the names one of the two products has to have, which is then reported
+     *                        first; null for all pairs
+     * @param minDaysTogether the fewest days the two have to share to be reported
+     * @param minConfidence   the smallest share, from 0 to 1, of the days of one product on which
+     *                        the other was eaten too, in either direction
+     * @param limit           the maximum number of pairs to return
+     * @return the pairs shared on the most days first
+     */
+    public static Result pairs(ProductDayMatrix matrix, Set<String> products, int minDaysTogether,
+                               double minConfidence, int limit) {
+        int loggedDays = ProductDayMatrix.count(matrix.loggedDays());
+
+        int[] candidates = IntStream.range(0, matrix.productCount())
+                .filter(id -> matrix.productDays(id) != null)
+                .filter(id -> ProductDayMatrix.count(matrix.productDays(id)) >= minDaysTogether)
+                .toArray();
+        int[] dayCounts = new int[candidates.length];
+        boolean[] matching = new boolean[candidates.length];
+        for (int i = 0; i < candidates.length; i++) {
+            dayCounts[i] = ProductDayMatrix.count(matrix.productDays(candidates[i]));
+            matching[i] = products == null || products.contains(matrix.nameOf(candidates[i]));
+        }
+
+        List<Pair> pairs = IntStream.range(0, candidates.length)
+                .parallel()
+                .boxed()
+                .flatMap(i -> IntStream.range(i + 1, candidates.length)
+                        .filter(j -> matching[i] || matching[j])
+                        .mapToObj(j -> pair(matrix, candidates, dayCounts, matching, i, j, loggedDays,
+                                minDaysTogether, minConfidence))
+                        .filter(Objects::nonNull))
+                .sorted(Comparator.comparingInt(Pair::daysTogether).reversed()
+                        .thenComparing(Comparator.comparingDouble(Pair::lift).reversed())
+                        .thenComparing(Pair::first)
+                        .thenComparing(Pair::second))
+                .toList();
+
+        return new Result(loggedDays, pairs.size(), pairs.stream().limit(limit).toList());
+    }
+
+    private static Pair pair(ProductDayMatrix matrix, int[] candidates, int[] dayCounts, boolean[] matching,
+                             int i, int j, int loggedDays, int minDaysTogether, double minConfidence) {
+        int daysTogether = ProductDayMatrix.countBoth(matrix.productDays(candidates[i]),
+                matrix.productDays(candidates[j]));
+        if (daysTogether < minDaysTogether) {
+            return null;
+        }
+        // the product searched for goes first, otherwise the one eaten more often
+        boolean iFirst = matching[i] != matching[j] ? matching[i] : dayCounts[i] >= dayCounts[j];
+        int first = iFirst ? i : j;
+        int second = iFirst ? j : i;
+        double confidence = (double) daysTogether / dayCounts[first];
+        double reverseConfidence = (double) daysTogether / dayCounts[second];
+        if (Math.max(confidence, reverseConfidence) < minConfidence) {
+            return null;
+        }
+        double lift = (double) daysTogether * loggedDays / ((double) dayCounts[first] * dayCounts[second]);
+        return new Pair(matrix.nameOf(candidates[first]), matrix.nameOf(candidates[second]), daysTogether,
+                dayCounts[first], dayCounts[second], confidence, reverseConfidence, lift);
+    }
+
+    /**
+     * @param loggedDays    the number of days anything was logged on
+     * @param matchingPairs how many pairs met the thresholds, before the limit was applied
+     * @param pairs         the pairs shared on the most days
+     */
+    public record Result(int loggedDays, int matchingPairs, List<Pair> pairs) {
+    }
+
+    /**
+     * @param first             the product searched for, or the one eaten more often
+     * @param second            the other product
+     * @param daysTogether      the days both were eaten on
+     * @param firstDays         the days the first was eaten on
+     * @param secondDays        the days the second was eaten on
+     * @param confidence        the share of the first's days on which the second was eaten too
+     * @param reverseConfidence the share of the second's days on which the first was eaten too
+     * @param lift              how much more often the two share a day than if they were eaten
+     *                          independently, 1 for no association
+     */
+    public record Pair(String first, String second, int daysTogether, int firstDays, int secondDays,
+                       double confidence, double reverseConfidence, double lift) {
+    }
+}
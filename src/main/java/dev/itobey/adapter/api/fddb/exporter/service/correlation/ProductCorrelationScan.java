@@ -0,0 +1,106 @@
+package dev.itobey.adapter.api.fddb.exporter.service.correlation;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.IntStream;
+
+/**
+ * Ranks every product of the diary by how strongly eating it lines up with a set of event dates.
+ * <p>
+ * The window - the days that lie the given number of days before an event - is built once as a
+ * bitmap. Each product is then one AND-and-count of its own day bitmap against it, spread over all
+ * cores, so asking "which of my two thousand products goes with my migraines" is a single pass
+ * over the {@link ProductDayMatrix} instead of two thousand keyword correlations.
+ * <p>
+ * A product is ranked by its <em>lift</em>: the share of the days it was eaten that fall into the
+ * window, divided by the share of all logged days that do. Eaten daily, a product lines up with
+ * every event and still has a lift of about 1, since the window covers just as much of the rest of
+ * the diary - that is what a raw percentage cannot tell apart from a real pattern.
+ * <p>
+ * Next to the lift, each product gets the p-value of a {@link FisherExactTest} over the logged
+ * days: a lift of 4 from two days in the window is a coin toss, from twenty it is not.
+ */
+public final class ProductCorrelationScan {
+
+    private ProductCorrelationScan() {
+    }
+
+    /**
+     * @param matrix       which product was eaten on which day
+     * @param eventDates   the days the event occurred
+     * @param lagDays      how many days before an event the window starts, 0 for the event day
+     * @param windowDays   how many days the window spans, going further back from there
+     * @param minDaysEaten the fewest days a product has to have been eaten on to be ranked at all
+     * @param limit        the maximum number of products to return
+     * @return the baseline of the window and the products with the highest lift
+     */
+    public static Result scan(ProductDayMatrix matrix, Collection<LocalDate> eventDates, int lagDays, int windowDays,
+                              int minDaysEaten, int limit) {
+        long[] logged = matrix.loggedDays();
+        long[] window = matrix.daysBefore(eventDates, lagDays, lagDays + windowDays - 1);
+        int loggedDays = ProductDayMatrix.count(logged);
+        int loggedDaysInWindow = ProductDayMatrix.countBoth(logged, window);
+        double baselineRate = loggedDays == 0 ? 0 : (double) loggedDaysInWindow / loggedDays;
+        FisherExactTest test = new FisherExactTest(loggedDays);
+
+        List<RankedProduct> ranked = IntStream.range(0, matrix.productCount())
+                .parallel()
+                .mapToObj(productId -> rank(matrix, productId, window, loggedDaysInWindow, baselineRate, test,
+                        minDaysEaten))
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparingDouble(RankedProduct::lift).reversed()
+                        .thenComparing(Comparator.comparingInt(RankedProduct::daysInWindow).reversed())
+                        .thenComparing(RankedProduct::name))
+                .toList();
+
+        return new Result(loggedDays, loggedDaysInWindow, baselineRate, ranked.size(),
+                ranked.stream().limit(limit).toList());
+    }
+
+    private static RankedProduct rank(ProductDayMatrix matrix, int productId, long[] window, int loggedDaysInWindow,
+                                      double baselineRate, FisherExactTest test, int minDaysEaten) {
+        long[] days = matrix.productDays(productId);
+        if (days == null) {
+            return null;
+        }
+        int daysEaten = ProductDayMatrix.count(days);
+        int daysInWindow = ProductDayMatrix.countBoth(days, window);
+        if (daysEaten < minDaysEaten || daysInWindow == 0) {
+            return null;
+        }
+        double rate = (double) daysInWindow / daysEaten;
+        // every day a product was eaten on is a logged day, so the counts share one population
+        return new RankedProduct(productId, matrix.nameOf(productId), daysEaten, daysInWindow, rate,
+                rate / baselineRate, test.upperTail(loggedDaysInWindow, daysEaten, daysInWindow));
+    }
+
+    /**
+     * @param loggedDays         the number of days anything was logged on
+     * @param loggedDaysInWindow how many of those fall into the window
+     * @param baselineRate       the share of logged days in the window, what a product eaten at
+     *                           random would reach
+     * @param matchingProducts   how many products were eaten often enough and at least once in the
+     *                           window, before the limit was applied
+     * @param products           the highest ranked of them, by lift
+     */
+    public record Result(int loggedDays, int loggedDaysInWindow, double baselineRate, int matchingProducts,
+                         List<RankedProduct> products) {
+    }
+
+    /**
+     * @param productId    the id of the product in the matrix
+     * @param name         its name
+     * @param daysEaten    the number of days it was eaten
+     * @param daysInWindow how many of those fall into the window
+     * @param rate         {@code daysInWindow / daysEaten}
+     * @param lift         {@code rate} relative to the baseline rate
+     * @param pValue       the chance of at least {@code daysInWindow} such days if the product had
+     *                     been eaten on random logged days
+     */
+    public record RankedProduct(int productId, String name, int daysEaten, int daysInWindow, double rate,
+                                double lift, double pValue) {
+    }
+}
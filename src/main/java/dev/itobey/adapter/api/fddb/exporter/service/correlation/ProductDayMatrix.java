@@ -0,0 +1,160 @@
+package dev.itobey.adapter.api.fddb.exporter.service.correlation;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Which product was eaten on which day, as one bitmap of days per product - the product x day
+ * incidence matrix the correlation scans run over.
+ * <p>
+ * The bitmaps are plain {@code long[]} words over the same span of days, so intersecting a product
+ * with a set of days is a loop of ANDs and bit counts that allocates nothing. That matters when the
+ * same window is intersected with every product of the diary, on as many cores as there are.
+ * <p>
+ * A snapshot: it does not change when days are saved afterwards, so it can be read from any
+ * number of threads without locking.
+ */
+public final class ProductDayMatrix {
+
+    /**
+     * The most days a bitmap may span: the years 1 to 9999. Dates further apart than that are a
+     * typo rather than a diary, and would ask for bitmaps of up to 256 MB each.
+     */
+    public static final int MAX_DAY_COUNT = (int) (LocalDate.of(9999, 12, 31).toEpochDay()
+            - LocalDate.of(1, 1, 1).toEpochDay() + 1);
+
+    /**
+     * The epoch day of bit 0.
+     */
+    private final long origin;
+
+    private final int dayCount;
+
+    private final List<String> names;
+
+    /**
+     * The days each product was eaten, by product id; null for a product not eaten in the span.
+     */
+    private final long[][] productDays;
+
+    private final long[] loggedDays;
+
+    /**
+     * @param origin      the epoch day of bit 0
+     * @param dayCount    the number of days the bitmaps span
+     * @param names       the product names, by product id
+     * @param productDays the days each product was eaten, by product id, null for none
+     * @param loggedDays  the days on which anything at all was logged
+     */
+    public ProductDayMatrix(long origin, int dayCount, List<String> names, long[][] productDays, long[] loggedDays) {
+        this.origin = origin;
+        this.dayCount = dayCount;
+        this.names = names;
+        this.productDays = productDays;
+        this.loggedDays = loggedDays;
+    }
+
+    /**
+     * @param firstEpochDay the epoch day of bit 0
+     * @param lastEpochDay  the epoch day of the last bit
+     * @return the number of days a bitmap from the one to the other spans
+     * @throws DateTimeException if that is more than {@link #MAX_DAY_COUNT}
+     */
+    public static int dayCount(long firstEpochDay, long lastEpochDay) {
+        long dayCount = lastEpochDay - firstEpochDay + 1;
+        if (dayCount > MAX_DAY_COUNT) {
+            throw new DateTimeException("The dates " + LocalDate.ofEpochDay(firstEpochDay) + " and "
+                    + LocalDate.ofEpochDay(lastEpochDay) + " lie too far apart to be correlated");
+        }
+        return (int) dayCount;
+    }
+
+    /**
+     * @return the number of bitmap words needed to span {@code dayCount} days
+     */
+    public static int wordCount(int dayCount) {
+        return (dayCount + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * @return how many bits both bitmaps have set
+     */
+    public static int countBoth(long[] first, long[] second) {
+        int count = 0;
+        int length = Math.min(first.length, second.length);
+        for (int word = 0; word < length; word++) {
+            count += Long.bitCount(first[word] & second[word]);
+        }
+        return count;
+    }
+
+    /**
+     * @return how many bits the bitmap has set
+     */
+    public static int count(long[] bitmap) {
+        int count = 0;
+        for (long word : bitmap) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    public int productCount() {
+        return productDays.length;
+    }
+
+    public String nameOf(int productId) {
+        return names.get(productId);
+    }
+
+    /**
+     * @param productId the id of a product
+     * @return the days it was eaten, or null if it was not eaten in the span; not to be modified
+     */
+    public long[] productDays(int productId) {
+        return productDays[productId];
+    }
+
+    /**
+     * @return the days on which anything at all was logged; not to be modified
+     */
+    public long[] loggedDays() {
+        return loggedDays;
+    }
+
+    /**
+     * The one definition of a logged day the correlations share, so that their baselines count
+     * the same days.
+     *
+     * @param date any date
+     * @return whether anything was logged on it; false outside the span of this matrix
+     */
+    public boolean isLogged(LocalDate date) {
+        long day = date.toEpochDay() - origin;
+        return day >= 0 && day < dayCount && (loggedDays[(int) (day / Long.SIZE)] & 1L << day) != 0;
+    }
+
+    /**
+     * Marks the days that lie between {@code fromLagDays} and {@code toLagDays} days before one of
+     * the given dates - the window in which eating something counts as lining up with an event.
+     *
+     * @param dates       the event dates
+     * @param fromLagDays the fewest days before an event, 0 for the event day itself
+     * @param toLagDays   the most days before an event, inclusive
+     * @return the window as a bitmap over the span of this matrix
+     */
+    public long[] daysBefore(Collection<LocalDate> dates, int fromLagDays, int toLagDays) {
+        long[] window = new long[wordCount(dayCount)];
+        for (LocalDate date : dates) {
+            for (int lagDays = fromLagDays; lagDays <= toLagDays; lagDays++) {
+                long day = date.toEpochDay() - lagDays - origin;
+                if (day >= 0 && day < dayCount) {
+                    window[(int) (day / Long.SIZE)] |= 1L << day;
+                }
+            }
+        }
+        return window;
+    }
+}
@@ -0,0 +1,79 @@
+package dev.itobey.adapter.api.fddb.exporter.service.correlation;
+
+import java.time.LocalDate;
+import java.util.Collection;
+
+/**
+ * Measures the windows of a single correlation against the logged days of the diary: the share of
+ * logged days a window covers anyway, the lift of the product over that baseline, and the
+ * {@link FisherExactTest} p-value of its hits.
+ * <p>
+ * A product eaten almost daily lines up with nearly every event, so its raw percentage says
+ * nothing; measured against the baseline, it has a lift of about 1 and a p-value near 1. The counts
+ * are all taken from the {@link ProductDayMatrix}, so a product day outside the logged days - a day
+ * saved between reading the matches and the matrix - cannot make them inconsistent.
+ */
+public final class WindowSignificance {
+
+    private final ProductDayMatrix matrix;
+
+    private final Collection<LocalDate> eventDates;
+
+    /**
+     * The logged days the product was eaten.
+     */
+    private final long[] productDays;
+
+    private final int productDayCount;
+
+    private final int loggedDayCount;
+
+    private final FisherExactTest test;
+
+    /**
+     * @param matrix       the diary over the span of the correlation
+     * @param productDates the days a matching product was eaten
+     * @param eventDates   the days the event occurred
+     */
+    public WindowSignificance(ProductDayMatrix matrix, Collection<LocalDate> productDates,
+                              Collection<LocalDate> eventDates) {
+        this.matrix = matrix;
+        this.eventDates = eventDates;
+        long[] logged = matrix.loggedDays();
+        this.productDays = matrix.daysBefore(productDates, 0, 0);
+        for (int word = 0; word < productDays.length; word++) {
+            productDays[word] &= logged[word];
+        }
+        this.productDayCount = ProductDayMatrix.count(productDays);
+        this.loggedDayCount = ProductDayMatrix.count(logged);
+        this.test = new FisherExactTest(loggedDayCount);
+    }
+
+    /**
+     * @param fromLagDays the fewest days before an event, 0 for the event day itself
+     * @param toLagDays   the most days before an event, inclusive
+     * @return the window measured against the logged days
+     */
+    public Window window(int fromLagDays, int toLagDays) {
+        long[] window = matrix.daysBefore(eventDates, fromLagDays, toLagDays);
+        int loggedDaysInWindow = ProductDayMatrix.countBoth(matrix.loggedDays(), window);
+        int productDaysInWindow = ProductDayMatrix.countBoth(productDays, window);
+        double baselineRate = loggedDayCount == 0 ? 0 : (double) loggedDaysInWindow / loggedDayCount;
+        if (productDayCount == 0 || loggedDaysInWindow == 0) {
+            return new Window(baselineRate, null, null);
+        }
+        double rate = (double) productDaysInWindow / productDayCount;
+        return new Window(baselineRate, rate / baselineRate,
+                test.upperTail(loggedDaysInWindow, productDayCount, productDaysInWindow));
+    }
+
+    /**
+     * @param baselineRate the share of logged days inside the window
+     * @param lift         the share of product days inside it relative to the baseline, or null if
+     *                     there are no product days or the window holds no logged day
+     * @param pValue       the chance of at least as many product days inside it at random, null
+     *                     where {@code lift} is
+     */
+    public record Window(double baselineRate, Double lift, Double pValue) {
+    }
+}
@@ -0,0 +1,231 @@
+package dev.itobey.adapter.api.fddb.exporter.service.index;
+
+import org.springframework.stereotype.Component;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Which days of the diary are logged, kept as a bitmap with one bit per epoch day.
+ * <p>
+ * The coverage figures of the stats - missing days, gaps, the most recent gap, both streaks - used
+ * to load every logged date of the range into a set and walk it one calendar day at a time, on
+ * every single call. As a bitmap, a decade of diary is about 2.5 KB, and every query is answered by
+ * jumping from one set or clear bit to the next, which {@link BitSet} does a 64-day word at a time.
+ * A fully logged year is six word scans rather than 365 lookups.
+ * <p>
+ * The index is built once from the store, on the first read, and then kept current by
+ * {@code FddbDataWriteListener} as days are saved. It is deliberately not a collection of its own:
+ * it is derived entirely from the {@code date} and {@code totalCalories} of the entries, so a
+ * persisted copy would only be a second place for the truth to drift from. A delete - which the
+ * application itself never does - marks it stale, and the next read rebuilds it.
+ * <p>
+ * A day counts as logged when its entry has at least one calorie; an entry without any is what an
+ * aborted or empty export looks like. Days before 1970 have no bit and always count as unlogged -
+ * FDDB itself is decades younger than that. Neither do days after {@link #LAST_DAY}: a bit for
+ * every epoch day an {@code int} holds would let a single entry in the year five million grow the
+ * bitmap to 256 MB, so such entries are ignored and the stats only query ranges up to it.
+ */
+@Component
+public class CoverageIndex {
+
+    /**
+     * The last day that has a bit, the last one an ISO date with a four-digit year can name.
+     */
+    public static final LocalDate LAST_DAY = LocalDate.of(9999, 12, 31);
+
+    private static final long LAST_BIT = LAST_DAY.toEpochDay();
+
+    private final BitSet logged = new BitSet();
+
+    private boolean built;
+
+    /**
+     * Builds the index from the store unless it is already current.
+     *
+     * @param loggedDates loads every logged date of the diary, only called when a build is due
+     */
+    public synchronized void buildIfAbsent(Supplier<? extends Collection<LocalDate>> loggedDates) {
+        if (built) {
+            return;
+        }
+        logged.clear();
+        loggedDates.get().forEach(date -> set(date.toEpochDay(), true));
+        built = true;
+    }
+
+    /**
+     * Records that a day was written. Ignored while the index is not built yet, since the build
+     * then reads the day from the store anyway.
+     *
+     * @param date   the day that was written
+     * @param logged whether it now has an entry with at least one calorie
+     */
+    public synchronized void record(LocalDate date, boolean logged) {
+        if (!built || date == null) {
+            return;
+        }
+        set(date.toEpochDay(), logged);
+    }
+
+    /**
+     * Marks the index stale, for a change that cannot be applied day by day.
+     */
+    public synchronized void invalidate() {
+        built = false;
+    }
+
+    /**
+     * @param fromDate the first day to count
+     * @param toDate   the last day to count
+     * @return how many days in the range are logged
+     */
+    public synchronized long countLogged(LocalDate fromDate, LocalDate toDate) {
+        long[] count = {0};
+        forEachRun(fromDate.toEpochDay(), toDate.toEpochDay(), true, (first, last) -> count[0] += last - first + 1);
+        return count[0];
+    }
+
+    /**
+     * @param fromDate the first day to check
+     * @param toDate   the last day to check
+     * @return the unlogged days in the range, in chronological order
+     */
+    public synchronized List<LocalDate> missingDays(LocalDate fromDate, LocalDate toDate) {
+        List<LocalDate> missingDays = new ArrayList<>();
+        forEachRun(fromDate.toEpochDay(), toDate.toEpochDay(), false, (first, last) -> {
+            for (long day = first; day <= last; day++) {
+                missingDays.add(LocalDate.ofEpochDay(day));
+            }
+        });
+        return missingDays;
+    }
+
+    /**
+     * @param fromDate the first day to check
+     * @param toDate   the last day to check
+     * @return the number of gaps in the range - runs of unlogged days, however long each is
+     */
+    public synchronized int countGaps(LocalDate fromDate, LocalDate toDate) {
+        int[] count = {0};
+        forEachRun(fromDate.toEpochDay(), toDate.toEpochDay(), false, (first, last) -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * @param fromDate the first day to check
+     * @param toDate   the last day to check
+     * @return the longest run of unlogged days in the range, clipped to it - the earliest one if
+     * several are equally long - or null if every day is logged
+     */
+    public synchronized Gap longestGap(LocalDate fromDate, LocalDate toDate) {
+        long[] longest = {0, -1};
+        forEachRun(fromDate.toEpochDay(), toDate.toEpochDay(), false, (first, last) -> {
+            if (last - first > longest[1] - longest[0]) {
+                longest[0] = first;
+                longest[1] = last;
+            }
+        });
+        return longest[1] < longest[0] ? null : new Gap(LocalDate.ofEpochDay(longest[0]), LocalDate.ofEpochDay(longest[1]));
+    }
+
+    /**
+     * @param fromDate the first day to check
+     * @param toDate   the last day to check
+     * @return the last unlogged day in the range, or null if every day is logged
+     */
+    public synchronized LocalDate lastMissingDay(LocalDate fromDate, LocalDate toDate) {
+        long to = toDate.toEpochDay();
+        // previousClearBit answers -1 when bit 0 is set too - which is the day before 1970, unlogged as well
+        long candidate = to < 0 ? to : logged.previousClearBit(bit(to));
+        return candidate < fromDate.toEpochDay() ? null : LocalDate.ofEpochDay(candidate);
+    }
+
+    /**
+     * Counts the logged days in a row up to now. Today only counts once it has an entry, but its
+     * absence does not end the streak either - otherwise every streak would look broken until the
+     * scheduler runs.
+     *
+     * @param firstDate the first day a streak may reach back to
+     * @param today     the current day
+     * @return the length of the current streak
+     */
+    public synchronized int currentStreak(LocalDate firstDate, LocalDate today) {
+        long anchor = isLogged(today.toEpochDay()) ? today.toEpochDay() : today.toEpochDay() - 1;
+        if (anchor < firstDate.toEpochDay() || !isLogged(anchor)) {
+            return 0;
+        }
+        long streakStart = logged.previousClearBit(bit(anchor)) + 1;
+        return (int) (anchor - Math.max(streakStart, firstDate.toEpochDay()) + 1);
+    }
+
+    /**
+     * @param firstDate the first day a streak may reach back to
+     * @param today     the last day a streak may reach up to
+     * @return the length of the longest run of logged days in between
+     */
+    public synchronized int longestStreak(LocalDate firstDate, LocalDate today) {
+        long[] longest = {0};
+        forEachRun(firstDate.toEpochDay(), today.toEpochDay(), true,
+                (first, last) -> longest[0] = Math.max(longest[0], last - first + 1));
+        return (int) longest[0];
+    }
+
+    /**
+     * A run of unlogged days, both bounds inclusive.
+     */
+    public record Gap(LocalDate fromDate, LocalDate toDate) {
+
+        public long days() {
+            return toDate.toEpochDay() - fromDate.toEpochDay() + 1;
+        }
+    }
+
+    /**
+     * Hands every run of logged - or unlogged - days in the range to the consumer, clipped to the
+     * range, in chronological order. Each run costs two word-level scans, however long it is.
+     */
+    private void forEachRun(long from, long to, boolean loggedRuns, RunConsumer consumer) {
+        long day = loggedRuns ? Math.max(from, 0) : from;
+        while (day <= to) {
+            long first = loggedRuns ? logged.nextSetBit(bit(day))
+                    : day < 0 ? day : logged.nextClearBit(bit(day));
+            // nextSetBit answers -1 when no logged day follows
+            if ((loggedRuns && first < 0) || first > to) {
+                return;
+            }
+            long next = loggedRuns ? logged.nextClearBit(bit(first)) : logged.nextSetBit(bit(Math.max(first, 0)));
+            long last = next < 0 ? to : Math.min(next - 1, to);
+            consumer.accept(first, last);
+            // the day after the run has the opposite state, so the next run starts two days on at the earliest
+            day = last + 2;
+        }
+    }
+
+    private boolean isLogged(long day) {
+        return day >= 0 && day <= LAST_BIT && logged.get(bit(day));
+    }
+
+    private void set(long day, boolean value) {
+        if (day >= 0 && day <= LAST_BIT) {
+            logged.set(bit(day), value);
+        }
+    }
+
+    private static int bit(long day) {
+        if (day > LAST_BIT) {
+            throw new DateTimeException("The coverage is only kept up to " + LAST_DAY);
+        }
+        return (int) day;
+    }
+
+    @FunctionalInterface
+    private interface RunConsumer {
+        void accept(long first, long last);
+    }
+}
@@ -0,0 +1,231 @@
+package dev.itobey.adapter.api.fddb.exporter.service.index;
+
+import dev.itobey.adapter.api.fddb.exporter.domain.FddbData;
+import dev.itobey.adapter.api.fddb.exporter.domain.Product;
+import dev.itobey.adapter.api.fddb.exporter.dto.ProductRanking;
+import dev.itobey.adapter.api.fddb.exporter.dto.TopProductDTO;
+import dev.itobey.adapter.api.fddb.exporter.service.correlation.ProductDayMatrix;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * Every product of the diary under a small integer id, plus a compact table of which product was
+ * logged on which day with which macros.
+ * <p>
+ * In the day documents a product is its full name, repeated in every {@code products} array it
+ * appears in, and every ranking grouped on those strings - unwinding and hashing hundreds of
+ * thousands of them per call. Here each distinct name is stored once, and a day is a few primitive
+ * columns of ids and macros. Ranking the products of any range is a pass over those columns into
+ * arrays indexed by id, with no string touched until the winners are named.
+ * <p>
+ * A product is identified by its name, the key every existing ranking and summary groups on. Ids
+ * are handed out in the order names are first seen and stay fixed for the life of the application.
+ * <p>
+ * Like the other indexes this is derived from the day documents, built on first use and kept
+ * current by {@code FddbDataWriteListener}; the documents themselves stay the single, complete
+ * record - they are also what the downloads and the InfluxDB migration read.
+ */
+@Component
+public class ProductDictionary {
+
+    private final List<String> names = new ArrayList<>();
+
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    /**
+     * The occurrences of each day, by epoch day.
+     */
+    private final TreeMap<Long, DayOccurrences> days = new TreeMap<>();
+
+    private boolean built;
+
+    /**
+     * Builds the dictionary from the store unless it is already current.
+     *
+     * @param entries loads every day with its products, only called when a build is due
+     */
+    public synchronized void buildIfAbsent(Supplier<? extends Collection<FddbData>> entries) {
+        if (built) {
+            return;
+        }
+        // the names are kept, so a product keeps its id across rebuilds
+        days.clear();
+        entries.get().forEach(this::put);
+        built = true;
+    }
+
+    /**
+     * Records a day that was written, replacing whatever the table held for it. Ignored while the
+     * dictionary is not built yet, since the build then reads the day from the store anyway.
+     *
+     * @param entry the day as it was saved
+     */
+    public synchronized void record(FddbData entry) {
+        if (built && entry.getDate() != null) {
+            put(entry);
+        }
+    }
+
+    /**
+     * Marks the dictionary stale, for a change that cannot be applied day by day.
+     */
+    public synchronized void invalidate() {
+        built = false;
+    }
+
+    /**
+     * Ranks the products logged in a range by how often they were logged or by the nutrient totals
+     * they contributed. Ties are broken by name, so the ranking is stable.
+     *
+     * @param ranking  the criterion to rank by
+     * @param fromDate the earliest date to include, or null for no lower bound
+     * @param toDate   the latest date to include, or null for no upper bound
+     * @param limit    the maximum number of products to return
+     * @return the ranked products, highest first, with unrounded totals
+     */
+    public synchronized List<TopProductDTO> topProducts(ProductRanking ranking, LocalDate fromDate, LocalDate toDate,
+                                                        int limit) {
+        int productCount = names.size();
+        long[] timesEaten = new long[productCount];
+        double[] calories = new double[productCount];
+        double[] fat = new double[productCount];
+        double[] carbs = new double[productCount];
+        double[] protein = new double[productCount];
+
+        for (DayOccurrences day : daysBetween(fromDate, toDate).values()) {
+            for (int i = 0; i < day.productIds().length; i++) {
+                int id = day.productIds()[i];
+                timesEaten[id]++;
+                calories[id] += day.calories()[i];
+                fat[id] += day.fat()[i];
+                carbs[id] += day.carbs()[i];
+                protein[id] += day.protein()[i];
+            }
+        }
+
+        double[] rankedBy = switch (ranking) {
+            case FREQUENCY -> null;
+            case CALORIES -> calories;
+            case FAT -> fat;
+            case CARBS -> carbs;
+            case PROTEIN -> protein;
+        };
+        Comparator<Integer> order = rankedBy == null
+                ? Comparator.comparingLong((Integer id) -> timesEaten[id]).reversed()
+                : Comparator.comparingDouble((Integer id) -> rankedBy[id]).reversed();
+
+        List<Integer> logged = new ArrayList<>();
+        for (int id = 0; id < productCount; id++) {
+            if (timesEaten[id] > 0) {
+                logged.add(id);
+            }
+        }
+
+        return logged.stream()
+                .sorted(order.thenComparing(names::get))
+                .limit(limit)
+                .map(id -> TopProductDTO.builder()
+                        .name(names.get(id))
+                        .timesEaten(timesEaten[id])
+                        .totalCalories(calories[id])
+                        .totalFat(fat[id])
+                        .totalCarbs(carbs[id])
+                        .totalProtein(protein[id])
+                        .averageCalories(calories[id] / timesEaten[id])
+                        .build())
+                .toList();
+    }
+
+    /**
+     * Takes a snapshot of which product was eaten on which day of a range, for the correlation
+     * scans. One pass over the occurrences of the range.
+     *
+     * @param fromDate the earliest date to include, or null for no lower bound
+     * @param toDate   the latest date to include, or null for no upper bound
+     * @return the product x day matrix of the range, indexed by the ids of this dictionary
+     * @throws java.time.DateTimeException if the logged days of the range lie further apart than a
+     *                                     bitmap may span
+     */
+    public synchronized ProductDayMatrix incidenceMatrix(LocalDate fromDate, LocalDate toDate) {
+        long[][] productDays = new long[names.size()][];
+        NavigableMap<Long, DayOccurrences> range = daysBetween(fromDate, toDate);
+        if (range.isEmpty()) {
+            return new ProductDayMatrix(0, 0, List.copyOf(names), productDays, new long[0]);
+        }
+
+        long origin = range.firstKey();
+        int dayCount = ProductDayMatrix.dayCount(origin, range.lastKey());
+        int wordCount = ProductDayMatrix.wordCount(dayCount);
+        long[] loggedDays = new long[wordCount];
+        range.forEach((epochDay, day) -> {
+            if (day.productIds().length == 0) {
+                return;
+            }
+            int index = (int) (epochDay - origin);
+            long bit = 1L << index;
+            loggedDays[index / Long.SIZE] |= bit;
+            for (int id : day.productIds()) {
+                if (productDays[id] == null) {
+                    productDays[id] = new long[wordCount];
+                }
+                productDays[id][index / Long.SIZE] |= bit;
+            }
+        });
+        return new ProductDayMatrix(origin, dayCount, List.copyOf(names), productDays, loggedDays);
+    }
+
+    private NavigableMap<Long, DayOccurrences> daysBetween(LocalDate fromDate, LocalDate toDate) {
+        long from = fromDate == null ? Long.MIN_VALUE : fromDate.toEpochDay();
+        long to = toDate == null ? Long.MAX_VALUE : toDate.toEpochDay();
+        return from > to ? Collections.emptyNavigableMap() : days.subMap(from, true, to, true);
+    }
+
+    private void put(FddbData entry) {
+        List<Product> products = entry.getProducts() == null ? List.of() : entry.getProducts().stream()
+                .filter(product -> product != null && product.getName() != null)
+                .toList();
+
+        int[] productIds = new int[products.size()];
+        double[] calories = new double[products.size()];
+        double[] fat = new double[products.size()];
+        double[] carbs = new double[products.size()];
+        double[] protein = new double[products.size()];
+        for (int i = 0; i < products.size(); i++) {
+            Product product = products.get(i);
+            productIds[i] = idFor(product.getName());
+            calories[i] = product.getCalories();
+            fat[i] = product.getFat();
+            carbs[i] = product.getCarbs();
+            protein[i] = product.getProtein();
+        }
+        days.put(entry.getDate().toEpochDay(), new DayOccurrences(productIds, calories, fat, carbs, protein));
+    }
+
+    private int idFor(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            names.add(name);
+            ids.put(name, id);
+        }
+        return id;
+    }
+
+    /**
+     * The products of one day as parallel columns, one element per occurrence.
+     */
+    private record DayOccurrences(int[] productIds, double[] calories, double[] fat, double[] carbs,
+                                  double[] protein) {
+    }
+}
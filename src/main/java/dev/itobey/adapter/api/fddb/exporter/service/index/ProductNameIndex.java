@@ -0,0 +1,167 @@
+package dev.itobey.adapter.api.fddb.exporter.service.index;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * The distinct product names of the diary, with a trigram index to resolve a search keyword to the
+ * exact names it matches.
+ * <p>
+ * Every product search used to match {@code products.name} against the keyword as a
+ * case-insensitive, unanchored regex. No index can serve that, so each search scanned every day of
+ * the diary and unwound every product of it. A diary holds a few thousand distinct names across
+ * hundreds of thousands of occurrences, though. Resolving the keyword against the names first
+ * turns the search into an exact {@code $in} on names, which the {@code products.name} index
+ * answers by touching only the days that hold one of them.
+ * <p>
+ * A keyword of three or more plain characters is narrowed down through the trigram postings - the
+ * names containing every three-letter window of it - and only those candidates are checked for the
+ * substring. Anything shorter, or a keyword using regex syntax, is matched against every name
+ * instead, just as Mongo would have matched it: still a scan over thousands of strings in memory
+ * rather than over the whole collection.
+ * <p>
+ * Built from the distinct names on the first search, then extended by {@code FddbDataWriteListener}
+ * as days are saved. Names are only ever added: one that no day holds any more just resolves to
+ * nothing in the store, so the worst a stale name costs is a wasted entry in an {@code $in}.
+ */
+@Component
+public class ProductNameIndex {
+
+    private static final int GRAM_LENGTH = 3;
+
+    private static final Pattern REGEX_SYNTAX = Pattern.compile("[\\\\.\\[\\]{}()*+?^$|]");
+
+    private final List<String> names = new ArrayList<>();
+
+    private final List<String> lowerCaseNames = new ArrayList<>();
+
+    private final Map<String, Integer> ids = new HashMap<>();
+
+    /**
+     * Which names contain a trigram, by name id.
+     */
+    private final Map<String, BitSet> postings = new HashMap<>();
+
+    private boolean built;
+
+    /**
+     * Builds the index from the store unless it is already current.
+     *
+     * @param productNames loads every distinct product name, only called when a build is due
+     */
+    public synchronized void buildIfAbsent(Supplier<? extends Collection<String>> productNames) {
+        if (built) {
+            return;
+        }
+        names.clear();
+        lowerCaseNames.clear();
+        ids.clear();
+        postings.clear();
+        productNames.get().forEach(this::add);
+        built = true;
+    }
+
+    /**
+     * Records the product names of a day that was written. Ignored while the index is not built
+     * yet, since the build then reads them from the store anyway.
+     *
+     * @param productNames the names of the day's products
+     */
+    public synchronized void record(Collection<String> productNames) {
+        if (built) {
+            productNames.forEach(this::add);
+        }
+    }
+
+    /**
+     * Marks the index stale, for a change that cannot be applied name by name.
+     */
+    public synchronized void invalidate() {
+        built = false;
+    }
+
+    /**
+     * Resolves a keyword the way the regex search used to: every name it matches case-insensitively,
+     * anywhere in the name.
+     *
+     * @param keyword a substring of the name, or a regular expression
+     * @return the matching names, in no particular order
+     * @throws java.util.regex.PatternSyntaxException if the keyword is neither a plain substring nor
+     *                                                a valid regular expression
+     */
+    public synchronized Set<String> resolve(String keyword) {
+        Set<String> matches = new LinkedHashSet<>();
+        if (REGEX_SYNTAX.matcher(keyword).find()) {
+            Pattern pattern = Pattern.compile(keyword, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            for (String name : names) {
+                if (pattern.matcher(name).find()) {
+                    matches.add(name);
+                }
+            }
+            return matches;
+        }
+
+        String lowerCaseKeyword = keyword.toLowerCase(Locale.ROOT);
+        BitSet candidates = candidates(lowerCaseKeyword);
+        for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+            if (lowerCaseNames.get(id).contains(lowerCaseKeyword)) {
+                matches.add(names.get(id));
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Resolves several keywords at once.
+     *
+     * @param keywords substrings of the name, or regular expressions
+     * @return every name that at least one of them matches
+     */
+    public synchronized Set<String> resolveAny(Collection<String> keywords) {
+        Set<String> matches = new LinkedHashSet<>();
+        keywords.forEach(keyword -> matches.addAll(resolve(keyword)));
+        return matches;
+    }
+
+    /**
+     * The names that can contain the keyword: those holding every trigram of it, or all of them for
+     * a keyword too short to have one.
+     */
+    private BitSet candidates(String lowerCaseKeyword) {
+        BitSet candidates = new BitSet(names.size());
+        candidates.set(0, names.size());
+        for (int start = 0; start + GRAM_LENGTH <= lowerCaseKeyword.length(); start++) {
+            BitSet posting = postings.get(lowerCaseKeyword.substring(start, start + GRAM_LENGTH));
+            if (posting == null) {
+                return new BitSet();
+            }
+            candidates.and(posting);
+        }
+        return candidates;
+    }
+
+    private void add(String name) {
+        if (name == null || ids.containsKey(name)) {
+            return;
+        }
+        int id = names.size();
+        String lowerCaseName = name.toLowerCase(Locale.ROOT);
+        names.add(name);
+        lowerCaseNames.add(lowerCaseName);
+        ids.put(name, id);
+        for (int start = 0; start + GRAM_LENGTH <= lowerCaseName.length(); start++) {
+            postings.computeIfAbsent(lowerCaseName.substring(start, start + GRAM_LENGTH), gram -> new BitSet()).set(id);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package dev.itobey.adapter.api.fddb.exporter.service.persistence;
+
+import dev.itobey.adapter.api.fddb.exporter.domain.FddbData;
+import dev.itobey.adapter.api.fddb.exporter.domain.Product;
+import dev.itobey.adapter.api.fddb.exporter.service.cache.DataVersion;
+import dev.itobey.adapter.api.fddb.exporter.service.index.CoverageIndex;
+import dev.itobey.adapter.api.fddb.exporter.service.index.ProductDictionary;
+import dev.itobey.adapter.api.fddb.exporter.service.index.ProductNameIndex;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+// Listens on the mapping events rather than hooking into PersistenceService: every save of an entry
+// goes through them, whether it comes from an export, a manual update, the bulk write of an import
+// or a test writing straight through the repository, so the in-memory indexes and the result cache cannot miss a write that
+// PersistenceService did not see.
+@Component
+@ConditionalOnProperty(name = "fddb-exporter.persistence.mongodb.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class FddbDataWriteListener extends AbstractMongoEventListener<FddbData> {
+
+    private final CoverageIndex coverageIndex;
+    private final ProductNameIndex productNameIndex;
+    private final ProductDictionary productDictionary;
+    private final DataVersion dataVersion;
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<FddbData> event) {
+        FddbData entry = event.getSource();
+        coverageIndex.record(entry.getDate(), entry.getTotalCalories() > 0);
+        if (entry.getProducts() != null) {
+            productNameIndex.record(entry.getProducts().stream().map(Product::getName).toList());
+        }
+        productDictionary.record(entry);
+        // after the indexes, so a reader that sees the new version also sees the day in it
+        dataVersion.bump();
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<FddbData> event) {
+        // a delete only carries the query, not the dates it removed
+        invalidate();
+    }
+
+    private void invalidate() {
+        coverageIndex.invalidate();
+        productNameIndex.invalidate();
+        productDictionary.invalidate();
+        dataVersion.bump();
+    }
+}
@@ -1,24 +1,37 @@
 package dev.itobey.adapter.api.fddb.exporter.service.persistence;
 
 import dev.itobey.adapter.api.fddb.exporter.domain.FddbData;
+import dev.itobey.adapter.api.fddb.exporter.domain.projection.ProductDaysFacet;
+import dev.itobey.adapter.api.fddb.exporter.domain.projection.ProductOccurrenceSummary;
 import dev.itobey.adapter.api.fddb.exporter.domain.projection.ProductWithDate;
 import dev.itobey.adapter.api.fddb.exporter.dto.*;
 import dev.itobey.adapter.api.fddb.exporter.repository.FddbDataRepository;
+import dev.itobey.adapter.api.fddb.exporter.service.correlation.ProductCooccurrence;
+import dev.itobey.adapter.api.fddb.exporter.service.correlation.ProductDayMatrix;
+import dev.itobey.adapter.api.fddb.exporter.service.index.ProductDictionary;
+import dev.itobey.adapter.api.fddb.exporter.service.index.ProductNameIndex;
 import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
 import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import java.time.DayOfWeek;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.stream.Stream;
 
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
 
@@ -32,11 +45,17 @@ import static org.springframework.data.mongodb.core.aggregation.Aggregation.*;
 public class MongoDBService {
 
     private static final String COLLECTION_NAME = "fddb";
+    private static final String COUNTERS_COLLECTION_NAME = "counters";
+    private static final String REVISION_COUNTER_ID = "fddb-revision";
 
     @Autowired(required = false)
     private FddbDataRepository fddbDataRepository;
     @Autowired(required = false)
     private MongoTemplate mongoTemplate;
+    @Autowired
+    private ProductNameIndex productNameIndex;
+    @Autowired
+    private ProductDictionary productDictionary;
 
     public long countAllEntries() {
         return fddbDataRepository.count();
@@ -61,6 +80,36 @@ public class MongoDBService {
         return fddbDataRepository.findFirstByDate(date);
     }
 
+    /**
+     * Retrieves the entries stored for any of the given dates, in a single query.
+     *
+     * @param dates the dates to look up
+     * @return the entries found, in no particular order
+     */
+    public List<FddbData> findByDates(Collection<LocalDate> dates) {
+        return mongoTemplate.find(Query.query(Criteria.where("date").in(dates)), FddbData.class, COLLECTION_NAME);
+    }
+
+    /**
+     * Inserts or replaces entries by their date in one unordered bulk write, for the import. An
+     * entry replacing a stored one keeps its id.
+     * <p>
+     * Like a save, the bulk write raises the mapping events for every entry it replaces, once it has
+     * been executed, so {@link FddbDataWriteListener} keeps the indexes and the data version current
+     * day by day.
+     *
+     * @param entries the entries to write, at most one per date
+     */
+    public void bulkUpsert(List<FddbData> entries) {
+        BulkOperations bulkOperations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, FddbData.class,
+                COLLECTION_NAME);
+        for (FddbData entry : entries) {
+            bulkOperations.replaceOne(Query.query(Criteria.where("date").is(entry.getDate())), entry,
+                    FindAndReplaceOptions.options().upsert());
+        }
+        bulkOperations.execute();
+    }
+
     /**
      * Retrieves all entries between two dates, both bounds inclusive, oldest first.
      * Either bound may be null to leave that side of the range open.
@@ -83,6 +132,122 @@ public class MongoDBService {
         return mongoTemplate.find(query, FddbData.class, COLLECTION_NAME);
     }
 
+    /**
+     * Streams the entries between two dates from a cursor, oldest first, for the downloads. Only the
+     * batch the cursor currently holds is in memory, however many years the range spans; the sort is
+     * served by the date index. The caller has to close the stream, which closes the cursor.
+     *
+     * @param fromDate the first date to include, or null for no lower bound
+     * @param toDate   the last date to include, or null for no upper bound
+     * @return the matching entries, oldest first
+     */
+    public Stream<FddbData> streamByDateBetween(LocalDate fromDate, LocalDate toDate) {
+        Query query = new Query();
+        Criteria criteria = buildDateCriteria(fromDate, toDate);
+        if (criteria != null) {
+            query.addCriteria(criteria);
+        }
+        query.with(Sort.by(Sort.Direction.ASC, "date"));
+        return mongoTemplate.stream(query, FddbData.class, COLLECTION_NAME);
+    }
+
+    /**
+     * Streams the daily totals between two dates from a cursor, oldest first, without the products
+     * array, for the totals-only downloads. The products are most of every entry, and projecting
+     * them out in the query means they are neither transferred nor decoded just to be dropped. The
+     * caller has to close the stream, which closes the cursor.
+     *
+     * @param fromDate the first date to include, or null for no lower bound
+     * @param toDate   the last date to include, or null for no upper bound
+     * @return the matching entries, oldest first, their products left empty
+     */
+    public Stream<FddbData> streamDailyTotals(LocalDate fromDate, LocalDate toDate) {
+        Query query = new Query();
+        Criteria criteria = buildDateCriteria(fromDate, toDate);
+        if (criteria != null) {
+            query.addCriteria(criteria);
+        }
+        query.fields().exclude("products");
+        query.with(Sort.by(Sort.Direction.ASC, "date"));
+        return mongoTemplate.stream(query, FddbData.class, COLLECTION_NAME);
+    }
+
+    /**
+     * Streams the entries written in a range of revisions from a cursor, in the order they were
+     * written, for the changes feed. The caller has to close the stream, which closes the cursor.
+     *
+     * @param sinceRevision the last revision the caller has seen, or null for every entry -
+     *                      including those stored before revisions were recorded, which come first
+     * @param upToRevision  the highest revision to include
+     * @return the entries with a higher revision, lowest revision first
+     */
+    public Stream<FddbData> streamChangedSince(Long sinceRevision, long upToRevision) {
+        Query query = new Query();
+        if (sinceRevision != null) {
+            query.addCriteria(Criteria.where("revision").gt(sinceRevision).lte(upToRevision));
+        } else {
+            // $not keeps the entries without a revision, which a plain $lte would leave out
+            query.addCriteria(Criteria.where("revision").not().gt(upToRevision));
+        }
+        query.with(Sort.by(Sort.Direction.ASC, "revision", "date"));
+        return mongoTemplate.stream(query, FddbData.class, COLLECTION_NAME);
+    }
+
+    /**
+     * Draws the next revision from a counter document, atomically, so revisions keep increasing
+     * across restarts and concurrent writers never share one.
+     *
+     * @return a revision higher than every one drawn before
+     */
+    public long nextRevision() {
+        return nextRevisions(1);
+    }
+
+    /**
+     * Draws a block of consecutive revisions in one step, for a bulk write that needs one per entry.
+     *
+     * @param count the number of revisions to draw
+     * @return the highest revision of the block; the block starts {@code count - 1} below it
+     */
+    public long nextRevisions(int count) {
+        Document counter = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(REVISION_COUNTER_ID)),
+                new Update().inc("value", (long) count),
+                FindAndModifyOptions.options().returnNew(true).upsert(true),
+                Document.class,
+                COUNTERS_COLLECTION_NAME);
+        return counter.get("value", Number.class).longValue();
+    }
+
+    /**
+     * Reads the revision counter without moving it.
+     *
+     * @return the highest revision drawn so far, or 0 if none was
+     */
+    public long currentRevision() {
+        Document counter = mongoTemplate.findById(REVISION_COUNTER_ID, Document.class, COUNTERS_COLLECTION_NAME);
+        return counter == null ? 0 : counter.get("value", Number.class).longValue();
+    }
+
+    /**
+     * Retrieves the daily totals between two dates without the products array, oldest first - a
+     * tenth of the size of the full entries, for analyses that only read the totals.
+     *
+     * @param fromDate the first date to include, or null for no lower bound
+     * @param toDate   the last date to include, or null for no upper bound
+     * @return the matching entries, their products left empty
+     */
+    public List<FddbData> findDailyTotals(LocalDate fromDate, LocalDate toDate) {
+        Query query = new Query();
+        Criteria criteria = buildDateCriteria(fromDate, toDate);
+        if (criteria != null) {
+            query.addCriteria(criteria);
+        }
+        query.fields().exclude("products");
+        query.with(Sort.by(Sort.Direction.ASC, "date"));
+        return mongoTemplate.find(query, FddbData.class, COLLECTION_NAME);
+    }
+
     /**
      * Searches for a product name and returns the date with the product details.
      * Unfortunately an aggregation annotation query did not work, maybe because I'm stuck with Mongo 4.4.
@@ -109,6 +274,9 @@ public class MongoDBService {
     /**
      * Searches for a product name and returns the date with the product details, optionally narrowed
      * down by days of the week, a date range and a maximum number of results.
+     * <p>
+     * All of the filtering happens in the pipeline, so a broad keyword only ever transfers the
+     * occurrences that are actually returned.
      *
      * @param name       the name of the product
      * @param daysOfWeek list of days to filter by (e.g., MONDAY, WEDNESDAY). If null or empty, no day filtering is applied.
@@ -119,25 +287,16 @@ public class MongoDBService {
      */
     public List<ProductWithDate> findByProduct(String name, List<DayOfWeek> daysOfWeek,
                                                LocalDate fromDate, LocalDate toDate, Integer limit) {
-        List<ProductWithDate> results = findProductOccurrences(name, fromDate, toDate);
-
-        if (daysOfWeek != null && !daysOfWeek.isEmpty()) {
-            results = results.stream()
-                    .filter(result -> result.getDate() != null && daysOfWeek.contains(result.getDate().getDayOfWeek()))
-                    .toList();
-        }
-
-        if (limit != null && limit > 0 && results.size() > limit) {
-            return List.copyOf(results.subList(0, limit));
-        }
-
-        return results;
+        return findProductOccurrences(name, daysOfWeek, fromDate, toDate, limit);
     }
 
     /**
      * Aggregates every occurrence of the products matching a search term into a single summary:
      * how often they were logged, first and last date, the totals they contributed and how the
      * occurrences distribute over the days of the week.
+     * <p>
+     * Computed by a single {@code $facet} - one branch grouping the totals, one counting the
+     * weekdays - so only the summary crosses the wire, however long the history of a product is.
      *
      * @param name     the product name to search for (case-insensitive substring)
      * @param fromDate the earliest date to include, or null for no lower bound
@@ -145,9 +304,36 @@ public class MongoDBService {
      * @return the summary, with zeroed counters and null dates if nothing matched
      */
     public ProductSummaryDTO getProductSummary(String name, LocalDate fromDate, LocalDate toDate) {
-        List<ProductWithDate> occurrences = findProductOccurrences(name, fromDate, toDate);
+        List<AggregationOperation> operations = new ArrayList<>();
+
+        Set<String> names = resolveProductNames(List.of(name));
 
-        if (occurrences.isEmpty()) {
+        addDateRangeMatch(operations, fromDate, toDate);
+        operations.add(match(Criteria.where("products.name").in(names)));
+        operations.add(unwind("products"));
+        operations.add(match(Criteria.where("products.name").in(names)));
+        operations.add(facet(
+                group()
+                        .count().as("timesEaten")
+                        .addToSet("products.name").as("matchedProductNames")
+                        .min("date").as("firstDate")
+                        .max("date").as("lastDate")
+                        .sum("products.calories").as("totalCalories")
+                        .sum("products.fat").as("totalFat")
+                        .sum("products.carbs").as("totalCarbs")
+                        .sum("products.protein").as("totalProtein"))
+                .as("totals")
+                .and(
+                        project().and(DateOperators.dateOf("date").withTimezone(diaryTimezone()).isoDayOfWeek())
+                                .as("weekday"),
+                        group("weekday").count().as("count"),
+                        project("count").and("_id").as("weekday").andExclude("_id"))
+                .as("weekdays"));
+
+        ProductOccurrenceSummary summary = mongoTemplate.aggregate(
+                newAggregation(operations), COLLECTION_NAME, ProductOccurrenceSummary.class).getUniqueMappedResult();
+
+        if (summary == null || summary.getTotals() == null || summary.getTotals().isEmpty()) {
             return ProductSummaryDTO.builder()
                     .searchTerm(name)
                     .timesEaten(0)
@@ -156,68 +342,38 @@ public class MongoDBService {
                     .build();
         }
 
-        ProductOccurrenceAggregate aggregate = aggregateOccurrences(occurrences);
-
-        return ProductSummaryDTO.builder()
-                .searchTerm(name)
-                .timesEaten(occurrences.size())
-                .matchedProductNames(aggregate.sortedNames())
-                .firstDate(aggregate.firstDate())
-                .lastDate(aggregate.lastDate())
-                .totalCalories(round(aggregate.totalCalories()))
-                .totalFat(round(aggregate.totalFat()))
-                .totalCarbs(round(aggregate.totalCarbs()))
-                .totalProtein(round(aggregate.totalProtein()))
-                .averageCalories(round(aggregate.totalCalories() / occurrences.size()))
-                .weekdayDistribution(aggregate.weekdayDistribution())
-                .build();
-    }
-
-    /**
-     * Intermediate result of a single pass over product occurrences, before it's shaped into
-     * a {@link ProductSummaryDTO}.
-     */
-    private record ProductOccurrenceAggregate(List<String> sortedNames, Map<DayOfWeek, Long> weekdayDistribution,
-                                              LocalDate firstDate, LocalDate lastDate,
-                                              double totalCalories, double totalFat,
-                                              double totalCarbs, double totalProtein) {
-    }
+        ProductOccurrenceSummary.Totals totals = summary.getTotals().getFirst();
+        List<String> sortedNames = new ArrayList<>(totals.getMatchedProductNames());
+        sortedNames.sort(Comparator.naturalOrder());
 
-    private ProductOccurrenceAggregate aggregateOccurrences(List<ProductWithDate> occurrences) {
-        LinkedHashSet<String> matchedNames = new LinkedHashSet<>();
         Map<DayOfWeek, Long> weekdayDistribution = new EnumMap<>(DayOfWeek.class);
-        LocalDate firstDate = null;
-        LocalDate lastDate = null;
-        double totalCalories = 0;
-        double totalFat = 0;
-        double totalCarbs = 0;
-        double totalProtein = 0;
-
-        for (ProductWithDate occurrence : occurrences) {
-            if (occurrence.getProduct() != null) {
-                matchedNames.add(occurrence.getProduct().getName());
-                totalCalories += occurrence.getProduct().getCalories();
-                totalFat += occurrence.getProduct().getFat();
-                totalCarbs += occurrence.getProduct().getCarbs();
-                totalProtein += occurrence.getProduct().getProtein();
-            }
-            LocalDate date = occurrence.getDate();
-            if (date != null) {
-                firstDate = firstDate == null || date.isBefore(firstDate) ? date : firstDate;
-                lastDate = lastDate == null || date.isAfter(lastDate) ? date : lastDate;
-                weekdayDistribution.merge(date.getDayOfWeek(), 1L, Long::sum);
+        for (ProductOccurrenceSummary.WeekdayCount weekday : summary.getWeekdays()) {
+            // a day without a date has no weekday to count it under
+            if (weekday.getWeekday() != null) {
+                weekdayDistribution.put(DayOfWeek.of(weekday.getWeekday()), weekday.getCount());
             }
         }
 
-        List<String> sortedNames = new ArrayList<>(matchedNames);
-        sortedNames.sort(Comparator.naturalOrder());
-
-        return new ProductOccurrenceAggregate(sortedNames, weekdayDistribution, firstDate, lastDate,
-                totalCalories, totalFat, totalCarbs, totalProtein);
+        return ProductSummaryDTO.builder()
+                .searchTerm(name)
+                .timesEaten(totals.getTimesEaten())
+                .matchedProductNames(sortedNames)
+                .firstDate(totals.getFirstDate())
+                .lastDate(totals.getLastDate())
+                .totalCalories(round(totals.getTotalCalories()))
+                .totalFat(round(totals.getTotalFat()))
+                .totalCarbs(round(totals.getTotalCarbs()))
+                .totalProtein(round(totals.getTotalProtein()))
+                .averageCalories(round(totals.getTotalCalories() / totals.getTimesEaten()))
+                .weekdayDistribution(weekdayDistribution)
+                .build();
     }
 
     /**
      * Ranks products by how often they were logged or by the nutrient totals they contributed.
+     * <p>
+     * Served from the {@link ProductDictionary}, which holds every occurrence as a product id with
+     * its macros, instead of unwinding and grouping the product names of every day in range.
      *
      * @param ranking  the criterion to rank by
      * @param fromDate the earliest date to include, or null for no lower bound
@@ -226,28 +382,56 @@ public class MongoDBService {
      * @return the ranked products, highest first
      */
     public List<TopProductDTO> getTopProducts(ProductRanking ranking, LocalDate fromDate, LocalDate toDate, int limit) {
-        List<AggregationOperation> operations = new ArrayList<>();
-
-        addDateRangeMatch(operations, fromDate, toDate);
-        operations.add(unwind("products"));
-        operations.add(group("products.name")
-                .count().as("timesEaten")
-                .sum("products.calories").as("totalCalories")
-                .sum("products.fat").as("totalFat")
-                .sum("products.carbs").as("totalCarbs")
-                .sum("products.protein").as("totalProtein")
-                .avg("products.calories").as("averageCalories"));
-        operations.add(project("timesEaten", "totalCalories", "totalFat", "totalCarbs", "totalProtein", "averageCalories")
-                .and("_id").as("name")
-                .andExclude("_id"));
-        operations.add(sort(Sort.Direction.DESC, ranking.getFieldName()));
-        operations.add(limit(limit));
+        productDictionary.buildIfAbsent(this::findAllDaysWithProducts);
+        return productDictionary.topProducts(ranking, fromDate, toDate, limit).stream()
+                .map(this::round)
+                .toList();
+    }
 
-        AggregationResults<TopProductDTO> results = mongoTemplate.aggregate(
-                newAggregation(operations), COLLECTION_NAME, TopProductDTO.class);
+    /**
+     * Takes a snapshot of which product was eaten on which day, for the correlation scans. Served
+     * from the {@link ProductDictionary} like the top products.
+     *
+     * @param fromDate the earliest date to include, or null for no lower bound
+     * @param toDate   the latest date to include, or null for no upper bound
+     * @return the product x day matrix of the range
+     */
+    public ProductDayMatrix getProductDayMatrix(LocalDate fromDate, LocalDate toDate) {
+        productDictionary.buildIfAbsent(this::findAllDaysWithProducts);
+        return productDictionary.incidenceMatrix(fromDate, toDate);
+    }
 
-        return results.getMappedResults().stream()
-                .map(this::round)
+    /**
+     * Finds the pairs of products eaten on the same days, from the day bitmaps of the
+     * {@link ProductDictionary}, which follow every save, so the pairs never need a rebuild. The
+     * product is resolved to the names it matches just like the keyword of a product search.
+     *
+     * @param product         an optional case-insensitive fragment one of the two has to contain
+     * @param fromDate        the earliest date to include, or null for no lower bound
+     * @param toDate          the latest date to include, or null for no upper bound
+     * @param minDaysTogether the fewest days the two have to share
+     * @param minConfidence   the smallest share in percent of one product's days on which the other
+     *                        was eaten too, in either direction
+     * @param limit           the maximum number of pairs to return
+     * @return the pairs shared on the most days first
+     */
+    public List<ProductPairDTO> getProductPairs(String product, LocalDate fromDate, LocalDate toDate,
+                                                int minDaysTogether, double minConfidence, int limit) {
+        Set<String> products = product == null || product.isBlank() ? null : resolveProductNames(List.of(product));
+        ProductCooccurrence.Result result = ProductCooccurrence.pairs(getProductDayMatrix(fromDate, toDate), products,
+                minDaysTogether, minConfidence / 100, limit);
+        return result.pairs().stream()
+                .map(pair -> ProductPairDTO.builder()
+                        .first(pair.first())
+                        .second(pair.second())
+                        .daysTogether(pair.daysTogether())
+                        .firstDays(pair.firstDays())
+                        .secondDays(pair.secondDays())
+                        .support(round(100.0 * pair.daysTogether() / result.loggedDays()))
+                        .confidence(round(100 * pair.confidence()))
+                        .reverseConfidence(round(100 * pair.reverseConfidence()))
+                        .lift(Math.round(pair.lift() * 100.0) / 100.0)
+                        .build())
                 .toList();
     }
 
@@ -262,9 +446,14 @@ public class MongoDBService {
     public List<String> findDistinctProductNames(String search, int limit) {
         List<AggregationOperation> operations = new ArrayList<>();
 
-        operations.add(unwind("products"));
         if (search != null && !search.isBlank()) {
-            operations.add(match(Criteria.where("products.name").regex(search, "i")));
+            Set<String> names = resolveProductNames(List.of(search));
+            // narrow to days that hold a match before unwinding, then drop their other products
+            operations.add(match(Criteria.where("products.name").in(names)));
+            operations.add(unwind("products"));
+            operations.add(match(Criteria.where("products.name").in(names)));
+        } else {
+            operations.add(unwind("products"));
         }
         operations.add(group("products.name"));
         operations.add(sort(Sort.Direction.ASC, "_id"));
@@ -280,7 +469,7 @@ public class MongoDBService {
     }
 
     public List<ProductWithDate> findByProductsWithExclusions(List<String> includeNames, List<String> excludeNames, LocalDate startDate) {
-        List<AggregationOperation> operations = matchingOccurrences(includeNames, excludeNames, startDate);
+        List<AggregationOperation> operations = matchingOccurrences(includeNames, excludeNames, startDate, null);
 
         // Project required fields
         operations.add(project()
@@ -296,68 +485,62 @@ public class MongoDBService {
     }
 
     /**
-     * Returns the most recent days on which a matching product was logged, grouped in the database.
+     * Returns the most recent days on which a matching product was logged, grouped in the database,
+     * together with how many days and occurrences match in total.
      * <p>
      * The grouped counterpart of {@link #findByProductsWithExclusions}, which returns every single
      * occurrence: a broad keyword over years of data matches tens of thousands of them, and a
      * caller that only wants the dates would load all of them just to collapse them into a list of
-     * days. Here the collapsing and the cap happen server-side.
+     * days. Here the collapsing and the cap happen server-side, and a single {@code $facet} over the
+     * grouped days yields both the page and the totals, so the matching occurrences are unwound and
+     * filtered once rather than once per figure.
+     * <p>
+     * The page is keyed by date: the next one starts strictly before the oldest day of this one, a
+     * condition the date index serves before anything is unwound, so paging back never rescans the
+     * newer days. The totals then cover the days from there back.
      *
      * @param includeNames case-insensitive substrings of the product name, at least one must match
      * @param excludeNames case-insensitive substrings that disqualify an occurrence, may be empty
      * @param startDate    the earliest date to consider, or null for the whole diary
+     * @param beforeDate   the day to continue before, exclusive, or null to start at the newest
      * @param limit        the maximum number of days to return
-     * @return the matching days, newest first, at most {@code limit} of them
+     * @return the matching days, newest first, at most {@code limit} of them, and the totals
      */
-    public List<DayWithProductsDTO> findDaysWithProducts(List<String> includeNames, List<String> excludeNames,
-                                                         LocalDate startDate, int limit) {
-        List<AggregationOperation> operations = matchingOccurrences(includeNames, excludeNames, startDate);
+    public ProductDaysPageDTO findDaysWithProducts(List<String> includeNames, List<String> excludeNames,
+                                                   LocalDate startDate, LocalDate beforeDate, int limit) {
+        List<AggregationOperation> operations = matchingOccurrences(includeNames, excludeNames, startDate, beforeDate);
 
         operations.add(group("date")
                 .addToSet("products.name").as("products")
                 .count().as("occurrences"));
-        operations.add(sort(Sort.Direction.DESC, "_id"));
-        operations.add(limit(limit));
-        operations.add(project("products", "occurrences")
-                .and("_id").as("date")
-                .andExclude("_id"));
-
-        AggregationResults<DayWithProductsDTO> results = mongoTemplate.aggregate(
-                newAggregation(operations), COLLECTION_NAME, DayWithProductsDTO.class);
-
+        operations.add(facet(
+                sort(Sort.Direction.DESC, "_id"),
+                limit(limit),
+                project("products", "occurrences").and("_id").as("date").andExclude("_id"))
+                .as("days")
+                .and(group().count().as("dayCount").sum("occurrences").as("occurrenceCount"),
+                        project("dayCount", "occurrenceCount").andExclude("_id"))
+                .as("totals"));
+
+        ProductDaysFacet result = mongoTemplate.aggregate(
+                newAggregation(operations), COLLECTION_NAME, ProductDaysFacet.class).getUniqueMappedResult();
+
+        if (result == null || result.getTotals() == null || result.getTotals().isEmpty()) {
+            return ProductDaysPageDTO.builder().days(List.of()).build();
+        }
+        ProductDayTotalsDTO totals = result.getTotals().getFirst();
         // $addToSet has no defined order, so the names are sorted here rather than left arbitrary
-        return results.getMappedResults().stream()
-                .map(day -> DayWithProductsDTO.builder()
-                        .date(day.getDate())
-                        .products(day.getProducts().stream().sorted().toList())
-                        .occurrences(day.getOccurrences())
-                        .build())
-                .toList();
-    }
-
-    /**
-     * Counts how many days and how many individual occurrences a keyword search matches, without
-     * returning any of them - what {@link #findDaysWithProducts} needs to report the size of a
-     * result it deliberately cut.
-     *
-     * @param includeNames case-insensitive substrings of the product name, at least one must match
-     * @param excludeNames case-insensitive substrings that disqualify an occurrence, may be empty
-     * @param startDate    the earliest date to consider, or null for the whole diary
-     * @return the totals over the whole matching set
-     */
-    public ProductDayTotalsDTO countDaysWithProducts(List<String> includeNames, List<String> excludeNames,
-                                                     LocalDate startDate) {
-        List<AggregationOperation> operations = matchingOccurrences(includeNames, excludeNames, startDate);
-
-        operations.add(group("date").count().as("occurrences"));
-        operations.add(group().count().as("dayCount").sum("occurrences").as("occurrenceCount"));
-        operations.add(project("dayCount", "occurrenceCount").andExclude("_id"));
-
-        AggregationResults<ProductDayTotalsDTO> results = mongoTemplate.aggregate(
-                newAggregation(operations), COLLECTION_NAME, ProductDayTotalsDTO.class);
-
-        ProductDayTotalsDTO totals = results.getUniqueMappedResult();
-        return totals == null ? ProductDayTotalsDTO.builder().build() : totals;
+        return ProductDaysPageDTO.builder()
+                .days(result.getDays().stream()
+                        .map(day -> DayWithProductsDTO.builder()
+                                .date(day.getDate())
+                                .products(day.getProducts().stream().sorted().toList())
+                                .occurrences(day.getOccurrences())
+                                .build())
+                        .toList())
+                .dayCount(totals.getDayCount())
+                .occurrenceCount(totals.getOccurrenceCount())
+                .build();
     }
 
     /**
@@ -365,17 +548,26 @@ public class MongoDBService {
      * least one include keyword and none of the exclude ones.
      */
     private List<AggregationOperation> matchingOccurrences(List<String> includeNames, List<String> excludeNames,
-                                                           LocalDate startDate) {
+                                                           LocalDate startDate, LocalDate beforeDate) {
         List<AggregationOperation> operations = new ArrayList<>();
 
         // Add date filter first
-        if (startDate != null) {
-            operations.add(match(Criteria.where("date").gte(startDate)));
+        if (startDate != null || beforeDate != null) {
+            Criteria criteria = Criteria.where("date");
+            if (startDate != null) {
+                criteria = criteria.gte(startDate);
+            }
+            if (beforeDate != null) {
+                criteria = criteria.lt(beforeDate);
+            }
+            operations.add(match(criteria));
         }
 
+        Set<String> includedNames = includeNames.isEmpty() ? Set.of() : resolveProductNames(includeNames);
+
         // narrow to days that hold a match before unwinding, so the rest is never expanded at all
         if (!includeNames.isEmpty()) {
-            operations.add(match(anyNameMatches(includeNames)));
+            operations.add(match(Criteria.where("products.name").in(includedNames)));
         }
 
         // Unwind products array
@@ -383,47 +575,90 @@ public class MongoDBService {
 
         // Match stage after unwind to filter individual products
         if (!includeNames.isEmpty()) {
-            operations.add(match(anyNameMatches(includeNames)));
+            operations.add(match(Criteria.where("products.name").in(includedNames)));
         }
 
         if (!excludeNames.isEmpty()) {
-            List<Criteria> excludeList = excludeNames.stream()
-                    .map(name -> Criteria.where("products.name").regex(name, "i"))
-                    .toList();
-            operations.add(match(new Criteria().norOperator(excludeList.toArray(new Criteria[0]))));
+            operations.add(match(Criteria.where("products.name").nin(resolveProductNames(excludeNames))));
         }
 
         return operations;
     }
 
-    private Criteria anyNameMatches(List<String> names) {
-        List<Criteria> criteria = names.stream()
-                .map(name -> Criteria.where("products.name").regex(name, "i"))
-                .toList();
-        return new Criteria().orOperator(criteria.toArray(new Criteria[0]));
+    /**
+     * Resolves search keywords to the exact product names they match, so the pipelines can filter
+     * with an {@code $in} the {@code products.name} index serves instead of an unanchored regex that
+     * scans every day. See {@link ProductNameIndex}.
+     */
+    private Set<String> resolveProductNames(List<String> keywords) {
+        productNameIndex.buildIfAbsent(this::findAllProductNames);
+        return productNameIndex.resolveAny(keywords);
+    }
+
+    private List<String> findAllProductNames() {
+        return mongoTemplate.findDistinct(new Query(), "products.name", COLLECTION_NAME, String.class);
+    }
+
+    private List<FddbData> findAllDaysWithProducts() {
+        Query query = new Query();
+        query.fields().include("date", "products");
+        return mongoTemplate.find(query, FddbData.class, COLLECTION_NAME);
     }
 
     /**
-     * Unwinds the products array and returns every single occurrence of a product matching the
-     * given name, newest first. Shared by the product search and the product summary.
+     * Unwinds the products array and returns every occurrence of a product matching the given name,
+     * newest first.
+     * <p>
+     * The weekday filter is applied to the days before they are unwound, and sort and limit fuse into
+     * a top-k sort on the server, so only the occurrences that are returned ever leave the database.
+     * They are read off the cursor batch by batch rather than collected into an aggregation result
+     * first.
      */
-    private List<ProductWithDate> findProductOccurrences(String name, LocalDate fromDate, LocalDate toDate) {
+    private List<ProductWithDate> findProductOccurrences(String name, List<DayOfWeek> daysOfWeek,
+                                                         LocalDate fromDate, LocalDate toDate, Integer limit) {
         List<AggregationOperation> operations = new ArrayList<>();
 
+        Set<String> names = resolveProductNames(List.of(name));
+
         addDateRangeMatch(operations, fromDate, toDate);
         // match before unwinding so days without the product never get expanded
-        operations.add(match(Criteria.where("products.name").regex(name, "i")));
+        operations.add(match(Criteria.where("products.name").in(names)));
+        if (daysOfWeek != null && !daysOfWeek.isEmpty()) {
+            addWeekdayMatch(operations, daysOfWeek);
+        }
         operations.add(unwind("products"));
-        operations.add(match(Criteria.where("products.name").regex(name, "i")));
+        operations.add(match(Criteria.where("products.name").in(names)));
         operations.add(sort(Sort.Direction.DESC, "date"));
+        if (limit != null && limit > 0) {
+            operations.add(limit(limit));
+        }
         operations.add(project()
                 .andExpression("date").as("date")
                 .and("products").as("product"));
 
-        AggregationResults<ProductWithDate> results = mongoTemplate.aggregate(
-                newAggregation(operations), COLLECTION_NAME, ProductWithDate.class);
+        try (Stream<ProductWithDate> results = mongoTemplate.aggregateStream(
+                newAggregation(operations), COLLECTION_NAME, ProductWithDate.class)) {
+            return results.toList();
+        }
+    }
 
-        return results.getMappedResults();
+    /**
+     * Keeps only the days falling on one of the given weekdays. {@code $isoDayOfWeek} numbers them
+     * Monday=1 to Sunday=7 like {@link DayOfWeek#getValue()}.
+     */
+    private void addWeekdayMatch(List<AggregationOperation> operations, List<DayOfWeek> daysOfWeek) {
+        operations.add(addFields()
+                .addFieldWithValue("weekday", DateOperators.dateOf("date").withTimezone(diaryTimezone()).isoDayOfWeek())
+                .build());
+        operations.add(match(Criteria.where("weekday").in(daysOfWeek.stream().map(DayOfWeek::getValue).toList())));
+    }
+
+    /**
+     * The zone to evaluate date operators in: the JVM's, which the {@code LocalDate} values were
+     * converted in when they were written.
+     */
+    private DateOperators.Timezone diaryTimezone() {
+        return DateOperators.Timezone.valueOf(ZoneId.systemDefault().getId());
     }
 
     private void addDateRangeMatch(List<AggregationOperation> operations, LocalDate fromDate, LocalDate toDate) {
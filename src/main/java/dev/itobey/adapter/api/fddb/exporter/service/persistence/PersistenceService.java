@@ -10,9 +10,14 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
 
 /**
  * Provides persistence-related services for managing {@link FddbData} objects.
@@ -36,6 +41,16 @@ public class PersistenceService {
     @Autowired
     private FddbExporterProperties properties;
 
+    /**
+     * Held from drawing a revision until the write carrying it is stored. The counter hands out
+     * revisions in order, but two writers could store theirs the other way round - and a changes
+     * client that has already read the later one would never see the earlier. With every write
+     * between the two steps excluded, a revision read under this lock is one whose writes, and
+     * those of every revision below it, are all stored. A lock in memory is enough since this
+     * application is the only writer of the diary, just as its export lock assumes.
+     */
+    private final ReentrantLock revisionLock = new ReentrantLock();
+
     public long countAllEntries() {
         return mongoDBService.countAllEntries();
     }
@@ -69,6 +84,11 @@ public class PersistenceService {
         return mongoDBService.getTopProducts(ranking, fromDate, toDate, limit);
     }
 
+    public List<ProductPairDTO> getProductPairs(String product, LocalDate fromDate, LocalDate toDate,
+                                                int minDaysTogether, double minConfidence, int limit) {
+        return mongoDBService.getProductPairs(product, fromDate, toDate, minDaysTogether, minConfidence, limit);
+    }
+
     public List<String> findDistinctProductNames(String search, int limit) {
         return mongoDBService.findDistinctProductNames(search, limit);
     }
@@ -78,14 +98,9 @@ public class PersistenceService {
         return mongoDBService.findByProductsWithExclusions(includeNames, excludeNames, startDate);
     }
 
-    public List<DayWithProductsDTO> findDaysWithProducts(List<String> includeNames, List<String> excludeNames,
-                                                         LocalDate startDate, int limit) {
-        return mongoDBService.findDaysWithProducts(includeNames, excludeNames, startDate, limit);
-    }
-
-    public ProductDayTotalsDTO countDaysWithProducts(List<String> includeNames, List<String> excludeNames,
-                                                     LocalDate startDate) {
-        return mongoDBService.countDaysWithProducts(includeNames, excludeNames, startDate);
+    public ProductDaysPageDTO findDaysWithProducts(List<String> includeNames, List<String> excludeNames,
+                                                   LocalDate startDate, LocalDate beforeDate, int limit) {
+        return mongoDBService.findDaysWithProducts(includeNames, excludeNames, startDate, beforeDate, limit);
     }
 
     public Optional<FddbData> findByDate(LocalDate date) {
@@ -96,11 +111,80 @@ public class PersistenceService {
         return mongoDBService.findByDateBetween(fromDate, toDate);
     }
 
+    public Stream<FddbData> streamByDateBetween(LocalDate fromDate, LocalDate toDate) {
+        return mongoDBService.streamByDateBetween(fromDate, toDate);
+    }
+
+    public Stream<FddbData> streamDailyTotals(LocalDate fromDate, LocalDate toDate) {
+        return mongoDBService.streamDailyTotals(fromDate, toDate);
+    }
+
+    /**
+     * Streams the entries written after a revision, up to the last revision whose write is
+     * complete, so a write still under way is left for the next call rather than skipped by it.
+     *
+     * @param sinceRevision the last revision the caller has seen, or null for every entry
+     * @return the entries with a higher revision, lowest revision first
+     */
+    public Stream<FddbData> streamChangedSince(Long sinceRevision) {
+        return mongoDBService.streamChangedSince(sinceRevision, currentRevision());
+    }
+
+    /**
+     * @return the highest revision drawn so far, once the write carrying it is stored
+     */
+    public long currentRevision() {
+        revisionLock.lock();
+        try {
+            return mongoDBService.currentRevision();
+        } finally {
+            revisionLock.unlock();
+        }
+    }
+
     public void saveOrUpdate(FddbData dataToPersist) {
         saveToMongoDbIfEnabled(dataToPersist);
         saveToInfluxDbIfEnabled(dataToPersist);
     }
 
+    /**
+     * Writes a batch of imported entries in a single bulk write, leaving out the ones stored exactly
+     * like this already: re-importing a download rewrites nothing and moves no revision, so the
+     * changes feed only reports what the import actually changed.
+     *
+     * @param entries the entries to write, at most one per date
+     * @return the number of entries inserted or changed
+     */
+    public int importEntries(List<FddbData> entries) {
+        Map<LocalDate, FddbData> stored = new HashMap<>();
+        mongoDBService.findByDates(entries.stream().map(FddbData::getDate).toList())
+                .forEach(entry -> stored.put(entry.getDate(), entry));
+        List<FddbData> changed = entries.stream()
+                .filter(entry -> !entry.equals(stored.get(entry.getDate())))
+                .toList();
+        if (changed.isEmpty()) {
+            return 0;
+        }
+
+        revisionLock.lock();
+        try {
+            // one counter update for the whole batch, handed out in the order of the file
+            long revision = mongoDBService.nextRevisions(changed.size()) - changed.size();
+            Instant now = Instant.now();
+            for (FddbData entry : changed) {
+                entry.setLastModified(now);
+                entry.setRevision(++revision);
+            }
+            mongoDBService.bulkUpsert(changed);
+        } finally {
+            revisionLock.unlock();
+        }
+        changed.forEach(this::saveToInfluxDbIfEnabled);
+        log.info("imported {} of {} entries, the others were stored like this already", changed.size(),
+                entries.size());
+        return changed.size();
+    }
+
     private void saveToInfluxDbIfEnabled(FddbData dataToPersist) {
         if (properties.getPersistence().getInfluxdb().isEnabled()) {
             log.info("writing point to influxdb: {}", dataToPersist.toDailyTotalsString());
@@ -116,7 +200,7 @@ public class PersistenceService {
                 log.debug("updating existing database entry for {}", dataToPersist.getDate());
                 updateDataIfNotIdentical(dataToPersist, existingFddbData);
             } else {
-                FddbData savedEntry = fddbDataRepository.save(dataToPersist);
+                FddbData savedEntry = saveWithRevision(dataToPersist);
                 log.info("created entry in database: {}", savedEntry);
             }
         }
@@ -125,11 +209,26 @@ public class PersistenceService {
     private void updateDataIfNotIdentical(FddbData dataToPersist, FddbData existingFddbData) {
         if (!dataToPersist.equals(existingFddbData)) {
             fddbDataMapper.updateFddbData(existingFddbData, dataToPersist);
-            FddbData updatedEntry = fddbDataRepository.save(existingFddbData);
+            FddbData updatedEntry = saveWithRevision(existingFddbData);
             log.info("updated entry: {}", updatedEntry);
         } else {
             log.info("entry already exported, skipping: {}", dataToPersist);
         }
     }
 
+    /**
+     * Stamps an entry with the time and a new revision, which the changes feed reads it back by,
+     * and saves it. Unchanged entries are not written and keep theirs.
+     */
+    private FddbData saveWithRevision(FddbData entry) {
+        revisionLock.lock();
+        try {
+            entry.setLastModified(Instant.now());
+            entry.setRevision(mongoDBService.nextRevision());
+            return fddbDataRepository.save(entry);
+        } finally {
+            revisionLock.unlock();
+        }
+    }
+
 }
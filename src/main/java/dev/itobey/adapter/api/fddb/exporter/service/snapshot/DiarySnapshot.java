@@ -0,0 +1,271 @@
+package dev.itobey.adapter.api.fddb.exporter.service.snapshot;
+
+import dev.itobey.adapter.api.fddb.exporter.domain.FddbData;
+import dev.itobey.adapter.api.fddb.exporter.domain.Product;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The whole diary in a compact binary file, read through a memory mapping.
+ * <p>
+ * The file holds what the in-memory indexes are built from - the daily totals and which product
+ * was logged on which day with which macros - so they can be filled from it at startup instead of
+ * from a scan of the whole collection. It consists of four sections, all numbers big-endian:
+ * <ol>
+ *     <li>a header: magic, format version, the revision the diary was at, and the number of days,
+ *     occurrences and products</li>
+ *     <li>one fixed-size record per day, oldest first: the epoch day, the six totals and where its
+ *     occurrences start and how many there are</li>
+ *     <li>one fixed-size record per occurrence: the product id and its calories, fat, carbs and
+ *     protein</li>
+ *     <li>the dictionary: the name of each product id, as length-prefixed UTF-8</li>
+ * </ol>
+ * A product name is stored once however often it was logged, so a decade of diary is a few
+ * megabytes. The amounts and links are not kept; nothing built from the file reads them.
+ * <p>
+ * All reads are absolute, so one instance can be read from several threads.
+ */
+public final class DiarySnapshot {
+
+    // "FDDS"
+    static final int MAGIC = 0x46444453;
+    // 2: the dictionary holds the names only, 1 held a link after each
+    static final int FORMAT_VERSION = 2;
+
+    private static final int HEADER_SIZE = 28;
+    private static final int DAY_RECORD_SIZE = Integer.BYTES + 6 * Double.BYTES + 2 * Integer.BYTES;
+    private static final int OCCURRENCE_RECORD_SIZE = Integer.BYTES + 4 * Double.BYTES;
+
+    private final MappedByteBuffer buffer;
+    private final long revision;
+    private final int dayCount;
+    private final int occurrenceCount;
+    private final int productCount;
+
+    private DiarySnapshot(MappedByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a diary snapshot");
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Unsupported diary snapshot format " + buffer.getInt(4));
+        }
+        this.buffer = buffer;
+        this.revision = buffer.getLong(8);
+        this.dayCount = buffer.getInt(16);
+        this.occurrenceCount = buffer.getInt(20);
+        this.productCount = buffer.getInt(24);
+        if (buffer.capacity() < dictionaryOffset()) {
+            throw new IOException("Truncated diary snapshot");
+        }
+    }
+
+    /**
+     * Maps a snapshot file. The mapping outlives the channel, and the file can be replaced while it
+     * is mapped - the mapping keeps the content it had.
+     *
+     * @param file the snapshot file
+     * @return the mapped snapshot
+     * @throws IOException if the file cannot be read or is not a complete snapshot
+     */
+    public static DiarySnapshot map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new DiarySnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes the entries to a snapshot file. The file is written in one go at the end, so the
+     * entries can come from a cursor; what is buffered until then is the compact form.
+     *
+     * @param file     the file to write, replaced if it exists
+     * @param revision the revision the diary was at before the entries were read
+     * @param entries  the entries, oldest first
+     * @throws IOException if writing fails
+     */
+    public static void write(Path file, long revision, Iterator<FddbData> entries) throws IOException {
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        ByteArrayOutputStream days = new ByteArrayOutputStream();
+        ByteArrayOutputStream occurrences = new ByteArrayOutputStream();
+        DataOutputStream dayRecords = new DataOutputStream(days);
+        DataOutputStream occurrenceRecords = new DataOutputStream(occurrences);
+        int dayCount = 0;
+        int occurrenceCount = 0;
+
+        while (entries.hasNext()) {
+            FddbData entry = entries.next();
+            if (entry.getDate() == null) {
+                continue;
+            }
+            List<Product> products = entry.getProducts() == null ? List.of() : entry.getProducts().stream()
+                    .filter(product -> product != null && product.getName() != null)
+                    .toList();
+            dayRecords.writeInt(Math.toIntExact(entry.getDate().toEpochDay()));
+            dayRecords.writeDouble(entry.getTotalCalories());
+            dayRecords.writeDouble(entry.getTotalFat());
+            dayRecords.writeDouble(entry.getTotalCarbs());
+            dayRecords.writeDouble(entry.getTotalSugar());
+            dayRecords.writeDouble(entry.getTotalProtein());
+            dayRecords.writeDouble(entry.getTotalFibre());
+            dayRecords.writeInt(occurrenceCount);
+            dayRecords.writeInt(products.size());
+            for (Product product : products) {
+                Integer id = ids.computeIfAbsent(product.getName(), name -> {
+                    dictionary.add(name);
+                    return dictionary.size() - 1;
+                });
+                occurrenceRecords.writeInt(id);
+                occurrenceRecords.writeDouble(product.getCalories());
+                occurrenceRecords.writeDouble(product.getFat());
+                occurrenceRecords.writeDouble(product.getCarbs());
+                occurrenceRecords.writeDouble(product.getProtein());
+                occurrenceCount++;
+            }
+            dayCount++;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(revision);
+            out.writeInt(dayCount);
+            out.writeInt(occurrenceCount);
+            out.writeInt(dictionary.size());
+            days.writeTo(out);
+            occurrences.writeTo(out);
+            for (String name : dictionary) {
+                writeString(out, name);
+            }
+        }
+    }
+
+    /**
+     * @return the revision the diary was at when the snapshot was written; a diary at a later one
+     * may contain writes the snapshot does not
+     */
+    public long revision() {
+        return revision;
+    }
+
+    /**
+     * @return the number of days in the snapshot
+     */
+    public int dayCount() {
+        return dayCount;
+    }
+
+    /**
+     * @return the days with at least one calorie, oldest first - what the coverage index counts as
+     * logged
+     */
+    public List<LocalDate> loggedDates() {
+        List<LocalDate> loggedDates = new ArrayList<>();
+        for (int day = 0; day < dayCount; day++) {
+            int record = dayRecord(day);
+            if (buffer.getDouble(record + Integer.BYTES) > 0) {
+                loggedDates.add(LocalDate.ofEpochDay(buffer.getInt(record)));
+            }
+        }
+        return loggedDates;
+    }
+
+    /**
+     * @return every distinct product name, in the order they were first logged
+     */
+    public List<String> productNames() {
+        return readDictionary();
+    }
+
+    /**
+     * Decodes every day with its totals and products, oldest first. The products carry their name
+     * and macros but neither amount nor link; each name is a single instance shared by all its
+     * occurrences.
+     *
+     * @return the days of the snapshot
+     */
+    public List<FddbData> days() {
+        List<String> dictionary = readDictionary();
+        List<FddbData> days = new ArrayList<>(dayCount);
+        for (int day = 0; day < dayCount; day++) {
+            int record = dayRecord(day);
+            FddbData entry = new FddbData();
+            entry.setDate(LocalDate.ofEpochDay(buffer.getInt(record)));
+            int totals = record + Integer.BYTES;
+            entry.setTotalCalories(buffer.getDouble(totals));
+            entry.setTotalFat(buffer.getDouble(totals + Double.BYTES));
+            entry.setTotalCarbs(buffer.getDouble(totals + 2 * Double.BYTES));
+            entry.setTotalSugar(buffer.getDouble(totals + 3 * Double.BYTES));
+            entry.setTotalProtein(buffer.getDouble(totals + 4 * Double.BYTES));
+            entry.setTotalFibre(buffer.getDouble(totals + 5 * Double.BYTES));
+
+            int firstOccurrence = buffer.getInt(totals + 6 * Double.BYTES);
+            int occurrences = buffer.getInt(totals + 6 * Double.BYTES + Integer.BYTES);
+            List<Product> products = new ArrayList<>(occurrences);
+            for (int occurrence = firstOccurrence; occurrence < firstOccurrence + occurrences; occurrence++) {
+                int position = occurrenceRecord(occurrence);
+                int macros = position + Integer.BYTES;
+                products.add(new Product(dictionary.get(buffer.getInt(position)), null, buffer.getDouble(macros),
+                        buffer.getDouble(macros + Double.BYTES), buffer.getDouble(macros + 2 * Double.BYTES),
+                        buffer.getDouble(macros + 3 * Double.BYTES), null));
+            }
+            entry.setProducts(products);
+            days.add(entry);
+        }
+        return days;
+    }
+
+    /**
+     * Reads the name of every product id; the entries are variable-length, so this is one pass
+     * from the start of the dictionary.
+     */
+    private List<String> readDictionary() {
+        List<String> dictionary = new ArrayList<>(productCount);
+        int[] position = {dictionaryOffset()};
+        for (int id = 0; id < productCount; id++) {
+            dictionary.add(readString(position));
+        }
+        return dictionary;
+    }
+
+    private int dayRecord(int day) {
+        return HEADER_SIZE + day * DAY_RECORD_SIZE;
+    }
+
+    private int occurrenceRecord(int occurrence) {
+        return HEADER_SIZE + dayCount * DAY_RECORD_SIZE + occurrence * OCCURRENCE_RECORD_SIZE;
+    }
+
+    private int dictionaryOffset() {
+        return occurrenceRecord(occurrenceCount);
+    }
+
+    private String readString(int[] position) {
+        int length = buffer.getInt(position[0]);
+        position[0] += Integer.BYTES;
+        byte[] bytes = new byte[length];
+        buffer.get(position[0], bytes);
+        position[0] += length;
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,165 @@
+package dev.itobey.adapter.api.fddb.exporter.service.snapshot;
+
+import dev.itobey.adapter.api.fddb.exporter.config.FddbExporterProperties;
+import dev.itobey.adapter.api.fddb.exporter.domain.FddbData;
+import dev.itobey.adapter.api.fddb.exporter.service.ExportRunFinishedEvent;
+import dev.itobey.adapter.api.fddb.exporter.service.cache.DataVersion;
+import dev.itobey.adapter.api.fddb.exporter.service.index.CoverageIndex;
+import dev.itobey.adapter.api.fddb.exporter.service.index.ProductDictionary;
+import dev.itobey.adapter.api.fddb.exporter.service.index.ProductNameIndex;
+import dev.itobey.adapter.api.fddb.exporter.service.persistence.PersistenceService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Keeps a {@link DiarySnapshot} of the whole diary on disk and fills the in-memory indexes from it
+ * at startup, so the first statistics, rankings and product searches after a restart do not each
+ * start with a scan of the whole collection.
+ * <p>
+ * The snapshot is stamped with the revision the diary was at before it was read. At startup it is
+ * only used if the diary is still at that revision and holds as many days - two small queries
+ * instead of reading every document - otherwise the indexes are built from the database on first
+ * use as before. It is written again in the background after every export run, and after a
+ * startup that could not use it, to a temporary file that replaces the previous one atomically.
+ */
+@Service
+@ConditionalOnProperty(name = {"fddb-exporter.persistence.mongodb.enabled", "fddb-exporter.diary-snapshot.enabled"},
+        havingValue = "true")
+@Slf4j
+public class DiarySnapshotService {
+
+    private final PersistenceService persistenceService;
+    private final CoverageIndex coverageIndex;
+    private final ProductNameIndex productNameIndex;
+    private final ProductDictionary productDictionary;
+    private final DataVersion dataVersion;
+    private final Path file;
+
+    private final AtomicBoolean writePending = new AtomicBoolean();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("diary-snapshot").daemon().factory());
+
+    public DiarySnapshotService(PersistenceService persistenceService, CoverageIndex coverageIndex,
+                                ProductNameIndex productNameIndex, ProductDictionary productDictionary,
+                                DataVersion dataVersion, FddbExporterProperties properties) {
+        this.persistenceService = persistenceService;
+        this.coverageIndex = coverageIndex;
+        this.productNameIndex = productNameIndex;
+        this.productDictionary = productDictionary;
+        this.dataVersion = dataVersion;
+        this.file = Path.of(properties.getDiarySnapshot().getFile());
+    }
+
+    /**
+     * Fills the indexes from the snapshot if it is current, or queues writing one if it is not.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!load()) {
+            refresh();
+        }
+    }
+
+    /**
+     * Queues writing the snapshot on the background thread.
+     */
+    @EventListener(ExportRunFinishedEvent.class)
+    public void refresh() {
+        // one queued write at a time is enough: it reads whatever the diary holds when it starts
+        if (writePending.compareAndSet(false, true)) {
+            writer.execute(() -> {
+                writePending.set(false);
+                write();
+            });
+        }
+    }
+
+    /**
+     * Fills the indexes from the snapshot, on the calling thread.
+     *
+     * @return whether the snapshot was current and used
+     */
+    public boolean load() {
+        long version = dataVersion.current();
+        try {
+            DiarySnapshot snapshot = DiarySnapshot.map(file);
+            long revision = persistenceService.currentRevision();
+            long days = persistenceService.countAllEntries();
+            if (snapshot.revision() != revision || snapshot.dayCount() != days) {
+                log.info("the diary snapshot is outdated (revision {} with {} days, the diary is at {} with {}), "
+                        + "the indexes are built from the database", snapshot.revision(), snapshot.dayCount(),
+                        revision, days);
+                return false;
+            }
+            coverageIndex.buildIfAbsent(snapshot::loggedDates);
+            productNameIndex.buildIfAbsent(snapshot::productNames);
+            productDictionary.buildIfAbsent(snapshot::days);
+        } catch (NoSuchFileException e) {
+            log.info("no diary snapshot at {} yet, the indexes are built from the database", file);
+            return false;
+        } catch (IOException | RuntimeException e) {
+            log.warn("could not read the diary snapshot {}, the indexes are built from the database", file, e);
+            return false;
+        }
+        // a write while the indexes were filled may have been skipped by them, as they were not
+        // built yet - and is not in the snapshot either
+        if (dataVersion.current() != version) {
+            coverageIndex.invalidate();
+            productNameIndex.invalidate();
+            productDictionary.invalidate();
+            return false;
+        }
+        log.info("filled the indexes from the diary snapshot {}", file);
+        return true;
+    }
+
+    /**
+     * Writes the snapshot from the database, on the calling thread.
+     */
+    public void write() {
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary = null;
+        try {
+            Files.createDirectories(directory);
+            temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            // read before the entries, so a write while they are read leaves the snapshot outdated
+            // rather than claiming a revision it may not contain
+            long revision = persistenceService.currentRevision();
+            try (Stream<FddbData> entries = persistenceService.streamByDateBetween(null, null)) {
+                DiarySnapshot.write(temporary, revision, entries.iterator());
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            log.debug("wrote the diary snapshot {} at revision {} ({} bytes)", file, revision, Files.size(file));
+        } catch (IOException | RuntimeException e) {
+            // the next start builds the indexes from the database, as without a snapshot
+            log.warn("could not write the diary snapshot {}", file, e);
+        } finally {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException e) {
+                    log.debug("could not delete {}", temporary, e);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        writer.shutdownNow();
+    }
+}
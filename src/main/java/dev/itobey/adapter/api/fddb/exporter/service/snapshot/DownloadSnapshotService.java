@@ -0,0 +1,187 @@
+package dev.itobey.adapter.api.fddb.exporter.service.snapshot;
+
+import dev.itobey.adapter.api.fddb.exporter.config.FddbExporterProperties;
+import dev.itobey.adapter.api.fddb.exporter.dto.DownloadFormat;
+import dev.itobey.adapter.api.fddb.exporter.service.DataDownloadService;
+import dev.itobey.adapter.api.fddb.exporter.service.ExportRunFinishedEvent;
+import dev.itobey.adapter.api.fddb.exporter.service.cache.DataVersion;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps gzip-compressed copies of the full-history downloads on disk, so the download most people
+ * click - everything, as CSV or JSON - is a file read instead of a pass over the whole diary.
+ * <p>
+ * Every snapshot is stamped with the {@link DataVersion} it was rendered at and only handed out
+ * while nothing has been written since; a stale or missing one is never served, the download is
+ * then streamed from the database as before. They are rendered in the background after startup
+ * and after every export run - a single entry edited in between makes them stale until the next
+ * run, not wrong - one variant at a time on a single thread, to a temporary file that replaces the
+ * previous one atomically; a download that is reading the old file keeps reading it.
+ * <p>
+ * Only the variants that are rewritten are rendered again. A byte-level update is not possible: a
+ * re-export can change any day in the middle of the file, and the JSON is one array.
+ */
+@Service
+@ConditionalOnProperty(name = {"fddb-exporter.persistence.mongodb.enabled", "fddb-exporter.download-snapshots.enabled"},
+        havingValue = "true")
+@Slf4j
+public class DownloadSnapshotService {
+
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The variants the download view offers for the whole history. The decimal separator only
+     * matters for the CSV.
+     */
+    static final List<Variant> VARIANTS = List.of(
+            new Variant(DownloadFormat.CSV, false, ","),
+            new Variant(DownloadFormat.CSV, false, "."),
+            new Variant(DownloadFormat.CSV, true, ","),
+            new Variant(DownloadFormat.CSV, true, "."),
+            new Variant(DownloadFormat.JSON, false, "."),
+            new Variant(DownloadFormat.JSON, true, "."));
+
+    private final DataDownloadService dataDownloadService;
+    private final DataVersion dataVersion;
+    private final Path directory;
+
+    private final Map<Variant, Snapshot> snapshots = new ConcurrentHashMap<>();
+    private final AtomicBoolean refreshPending = new AtomicBoolean();
+    private final ExecutorService renderer = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("download-snapshots").daemon().factory());
+
+    public DownloadSnapshotService(DataDownloadService dataDownloadService, DataVersion dataVersion,
+                                   FddbExporterProperties properties) {
+        this.dataDownloadService = dataDownloadService;
+        this.dataVersion = dataVersion;
+        this.directory = Path.of(properties.getDownloadSnapshots().getDirectory());
+    }
+
+    /**
+     * Returns the current snapshot of a full-history download, if there is one.
+     *
+     * @param format           the download format
+     * @param includeProducts  whether the download includes the products
+     * @param decimalSeparator the decimal separator of a CSV (. or ,)
+     * @return the gzip-compressed download, or empty if this variant is not kept or the data has
+     * changed since it was rendered
+     */
+    public Optional<Snapshot> find(DownloadFormat format, boolean includeProducts, String decimalSeparator) {
+        Variant variant = new Variant(format, includeProducts, format == DownloadFormat.CSV ? decimalSeparator : ".");
+        if (!VARIANTS.contains(variant)) {
+            return Optional.empty();
+        }
+        Snapshot snapshot = snapshots.get(variant);
+        if (snapshot == null || snapshot.version() != dataVersion.current()) {
+            return Optional.empty();
+        }
+        return Optional.of(snapshot);
+    }
+
+    /**
+     * Queues a rendering of the stale snapshots on the background thread.
+     */
+    @EventListener({ApplicationReadyEvent.class, ExportRunFinishedEvent.class})
+    public void refresh() {
+        // one queued refresh at a time is enough: it renders whatever is stale when it starts
+        if (refreshPending.compareAndSet(false, true)) {
+            renderer.execute(() -> {
+                refreshPending.set(false);
+                renderStale();
+            });
+        }
+    }
+
+    /**
+     * Renders every snapshot that is missing or older than the data, on the calling thread.
+     */
+    public void renderStale() {
+        long version = dataVersion.current();
+        for (Variant variant : VARIANTS) {
+            Snapshot existing = snapshots.get(variant);
+            if (existing != null && existing.version() == version) {
+                continue;
+            }
+            try {
+                snapshots.put(variant, render(variant, version));
+            } catch (IOException | RuntimeException e) {
+                // the download falls back to streaming from the database until the next refresh
+                log.warn("could not render the download snapshot {}", variant.fileName(), e);
+            }
+        }
+    }
+
+    private Snapshot render(Variant variant, long version) throws IOException {
+        Files.createDirectories(directory);
+        Path target = directory.resolve(variant.fileName());
+        Path temporary = Files.createTempFile(directory, variant.fileName(), ".tmp");
+        try {
+            CRC32 checksum = new CRC32();
+            try (OutputStream file = new CheckedOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary)), checksum);
+                 GZIPOutputStream gzip = new GZIPOutputStream(file, GZIP_BUFFER_SIZE)) {
+                dataDownloadService.downloadData(null, null, variant.format(), variant.includeProducts(),
+                        variant.decimalSeparator(), gzip);
+            }
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            long size = Files.size(target);
+            // the same data renders to the same bytes, so the tag survives a restart
+            String eTag = "\"" + Long.toHexString(checksum.getValue()) + "-" + Long.toHexString(size) + "\"";
+            log.debug("rendered the download snapshot {} ({} bytes)", variant.fileName(), size);
+            return new Snapshot(target, size, eTag, version);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        renderer.shutdownNow();
+    }
+
+    /**
+     * @param format           the download format
+     * @param includeProducts  whether the products are included
+     * @param decimalSeparator the decimal separator, always . for JSON
+     */
+    record Variant(DownloadFormat format, boolean includeProducts, String decimalSeparator) {
+
+        String fileName() {
+            return "fddb-data-all"
+                    + (includeProducts ? "" : "-totals-only")
+                    + (format == DownloadFormat.CSV ? (",".equals(decimalSeparator) ? "-comma" : "-dot") : "")
+                    + format.getFileExtension() + ".gz";
+        }
+    }
+
+    /**
+     * @param file    the gzip-compressed download
+     * @param size    its size in bytes
+     * @param eTag    a strong entity tag of its content, quoted
+     * @param version the data version it was rendered at
+     */
+    public record Snapshot(Path file, long size, String eTag, long version) {
+    }
+}
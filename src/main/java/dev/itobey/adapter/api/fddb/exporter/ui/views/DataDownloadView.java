@@ -29,7 +29,7 @@ import static dev.itobey.adapter.api.fddb.exporter.ui.util.ViewUtils.*;
  * Vaadin view for downloading FDDB data in various formats.
  * Allows users to:
  * - Choose between all data or a specific date range
- * - Select download format (CSV or JSON)
+ * - Select download format (CSV, JSON or a ZIP of CSV tables)
  * - Include or exclude product details (daily totals only)
  */
 @Route(value = "download", layout = MainLayout.class)
@@ -59,7 +59,7 @@ public class DataDownloadView extends VerticalLayout {
         applyResponsivePadding(this);
 
         add(new H2("Data Download"));
-        add(new Paragraph("Download your FDDB nutrition data in CSV or JSON format."));
+        add(new Paragraph("Download your FDDB nutrition data as CSV, JSON or a ZIP of CSV tables for analysis tools."));
 
         if (!isMongoDbEnabled(properties)) {
             add(createMongoDbDisabledWarning("Data Download"));
@@ -0,0 +1,150 @@
+package dev.itobey.adapter.api.fddb.exporter.aspect;
+
+import dev.itobey.adapter.api.fddb.exporter.annotation.ETagByDataVersion;
+import dev.itobey.adapter.api.fddb.exporter.service.cache.DataVersion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DataVersionETagAspectTest {
+
+    private final DataVersion dataVersion = new DataVersion();
+    private final Endpoints target = new Endpoints();
+    private Endpoints endpoints;
+    private MockHttpServletRequest request;
+
+    @BeforeEach
+    void setUp() {
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.addAspect(new DataVersionETagAspect(dataVersion));
+        endpoints = factory.getProxy();
+        request = new MockHttpServletRequest("GET", "/api/v2/stats");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void shouldTagTheResponseWithTheDataVersion() {
+        ResponseEntity<?> response = endpoints.tagged();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("result 1", response.getBody());
+        assertTrue(response.getHeaders().getETag().startsWith("W/\""));
+        assertEquals(-1, response.getHeaders().getLastModified());
+    }
+
+    @Test
+    void shouldAnswerNotModifiedWithoutRunningTheEndpointWhileTheDataIsUnchanged() {
+        String eTag = endpoints.tagged().getHeaders().getETag();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+
+        ResponseEntity<?> response = endpoints.tagged();
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals(eTag, response.getHeaders().getETag());
+        assertNull(response.getBody());
+        assertEquals(1, target.calls);
+    }
+
+    @Test
+    void shouldAnswerInFullOnceTheDataChanged() {
+        String eTag = endpoints.tagged().getHeaders().getETag();
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+
+        dataVersion.bump();
+        ResponseEntity<?> response = endpoints.tagged();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("result 2", response.getBody());
+        assertNotEquals(eTag, response.getHeaders().getETag());
+    }
+
+    @Test
+    void shouldNotAnswerADateAloneWithNotModified() {
+        endpoints.tagged();
+        // a write in the same second as the first response could not be told apart by a date
+        request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, System.currentTimeMillis() + 60_000);
+
+        dataVersion.bump();
+        ResponseEntity<?> response = endpoints.tagged();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("result 2", response.getBody());
+    }
+
+    @Test
+    void shouldTellTheRepresentationsOfOneUrlApart() {
+        String json = endpoints.tagged().getHeaders().getETag();
+
+        // what the handler mapping sets for a mapping declaring produces, like the NDJSON /range
+        request.setAttribute(HandlerMapping.PRODUCIBLE_MEDIA_TYPES_ATTRIBUTE, Set.of(MediaType.APPLICATION_NDJSON));
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, json);
+        ResponseEntity<?> ndjson = endpoints.tagged();
+
+        assertEquals(HttpStatus.OK, ndjson.getStatusCode());
+        assertNotEquals(json, ndjson.getHeaders().getETag());
+        assertEquals(List.of(HttpHeaders.ACCEPT), ndjson.getHeaders().getVary());
+    }
+
+    @Test
+    void shouldVaryTheNotModifiedAnswerByAcceptToo() {
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, endpoints.tagged().getHeaders().getETag());
+
+        assertEquals(List.of(HttpHeaders.ACCEPT), endpoints.tagged().getHeaders().getVary());
+    }
+
+    @Test
+    void shouldNotTagAnError() {
+        ResponseEntity<?> response = endpoints.failing();
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertNull(response.getHeaders().getETag());
+    }
+
+    @Test
+    void shouldLeaveACallOutsideOfARequestAlone() {
+        RequestContextHolder.resetRequestAttributes();
+
+        ResponseEntity<?> response = endpoints.tagged();
+
+        assertNull(response.getHeaders().getETag());
+    }
+
+    /**
+     * Stands in for the resources: the aspect keys off the annotation, so anything carrying it
+     * exercises the same pointcut.
+     */
+    static class Endpoints {
+
+        private int calls;
+
+        @ETagByDataVersion
+        public ResponseEntity<String> tagged() {
+            calls++;
+            return ResponseEntity.ok("result " + calls);
+        }
+
+        @ETagByDataVersion
+        public ResponseEntity<String> failing() {
+            return ResponseEntity.badRequest().body("Date range is invalid");
+        }
+    }
+}
@@ -15,6 +15,7 @@ import org.springframework.boot.testcontainers.service.connection.ServiceConnect
 import org.springframework.context.annotation.Import;
 import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.DynamicPropertyRegistry;
@@ -127,6 +128,20 @@ class AggregationIT {
         assertThat(limited).hasSize(2);
     }
 
+    @Test
+    void findByProduct_shouldFilterByWeekdayBeforeLimiting() {
+        List<ProductWithDateDTO> mondays = fddbDataService.findByProduct(
+                "banane", List.of(DayOfWeek.MONDAY), null, null, null);
+        assertThat(mondays).extracting(ProductWithDateDTO::getDate)
+                .containsExactly(LocalDate.of(2024, 1, 8), LocalDate.of(2024, 1, 1));
+
+        // the newest Banane is a Monday, so limiting before filtering would lose the Saturday
+        List<ProductWithDateDTO> saturdays = fddbDataService.findByProduct(
+                "banane", List.of(DayOfWeek.SATURDAY), null, null, 1);
+        assertThat(saturdays).extracting(ProductWithDateDTO::getDate)
+                .containsExactly(LocalDate.of(2024, 1, 6));
+    }
+
     @Test
     void getTopProducts_shouldRankByFrequencyAndByCalories() {
         List<TopProductDTO> byFrequency = fddbDataService.getTopProducts(ProductRanking.FREQUENCY, null, null, 10);
@@ -167,6 +182,15 @@ class AggregationIT {
                 .containsEntry(DayOfWeek.TUESDAY, 1L);
     }
 
+    @Test
+    void getProductSummary_whenNothingMatches_shouldReturnAnEmptySummary() {
+        ProductSummaryDTO result = fddbDataService.getProductSummary("Rosenkohl", null, null);
+
+        assertThat(result.getTimesEaten()).isZero();
+        assertThat(result.getFirstDate()).isNull();
+        assertThat(result.getWeekdayDistribution()).isEmpty();
+    }
+
     @Test
     void findDistinctProductNames_shouldReturnSortedUniqueNames() {
         assertThat(fddbDataService.findDistinctProductNames(null, 100))
@@ -196,6 +220,17 @@ class AggregationIT {
                 .containsExactly(LocalDate.of(2024, 1, 2), LocalDate.of(2024, 1, 1));
     }
 
+    @Test
+    void extremeDayIndexes_shouldExistForEveryMetric() {
+        List<String> indexes = mongoTemplate.indexOps(FddbData.class).getIndexInfo().stream()
+                .map(IndexInfo::getName)
+                .toList();
+
+        for (NutrientMetric metric : NutrientMetric.values()) {
+            assertThat(indexes).contains(metric.getFieldName() + "_1_date_1");
+        }
+    }
+
     @Test
     void getTrend_shouldBucketByIsoWeek() {
         List<TrendPointDTO> result = fddbDataService.getTrend(NutrientMetric.CALORIES,
@@ -387,10 +387,21 @@ class McpServerIT {
 
         // one day returned, but both still counted - otherwise "on how many days?" is unanswerable
         assertThat(result).contains("\"dayCount\":1", "\"matchedDayCount\":2", "\"occurrenceCount\":2",
-                "\"truncated\":true", "\"date\":\"2024-01-02\"");
+                "\"truncated\":true", "\"date\":\"2024-01-02\"", "\"nextPageToken\":\"2024-01-02\"");
         assertThat(result).doesNotContain("\"date\":\"2024-01-01\"");
     }
 
+    @Test
+    void findDaysWithProducts_shouldContinueBehindThePageToken() {
+        String result = callTool("find_days_with_products",
+                Map.of("includeKeywords", List.of("hafer"), "limit", 1, "pageToken", "2024-01-02"));
+
+        // the older of the two oat days, counted from the token back
+        assertThat(result).contains("\"dayCount\":1", "\"matchedDayCount\":1", "\"truncated\":false",
+                "\"date\":\"2024-01-01\"");
+        assertThat(result).doesNotContain("\"date\":\"2024-01-02\"", "nextPageToken");
+    }
+
     @Test
     void findDaysWithProducts_shouldHonourTheExclusions() {
         String result = callTool("find_days_with_products", Map.of(
@@ -1,10 +1,19 @@
 package dev.itobey.adapter.api.fddb.exporter.mcp;
 
+import dev.itobey.adapter.api.fddb.exporter.dto.NutrientMetric;
 import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationDetail;
 import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationInputDto;
 import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationOutputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationScanInputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationScanOutputDto;
 import dev.itobey.adapter.api.fddb.exporter.dto.correlation.Correlations;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.NutrientCorrelationInputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.NutrientCorrelationOutputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.NutrientLagEffect;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.ProductCorrelation;
 import dev.itobey.adapter.api.fddb.exporter.dto.mcp.CorrelationResultDTO;
+import dev.itobey.adapter.api.fddb.exporter.dto.mcp.CorrelationScanResultDTO;
+import dev.itobey.adapter.api.fddb.exporter.dto.mcp.NutrientCorrelationResultDTO;
 import dev.itobey.adapter.api.fddb.exporter.service.CorrelationService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -15,6 +24,7 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -36,8 +46,12 @@ class FddbCorrelationToolsTest {
     @Test
     void correlateProductsWithDates_shouldReportBothRatiosNextToTheirDenominators() {
         // given: the product was eaten on 20 days, 3 of which were event days
+        CorrelationDetail eventDays = detail(3, 15.0, "2024-03-04", "2024-03-19", "2024-04-02");
+        eventDays.setBaselinePercentage(4.17);
+        eventDays.setLift(3.6);
+        eventDays.setFisherPValue(0.0123);
         when(correlationService.createCorrelation(any())).thenReturn(output(20,
-                detail(3, 15.0, "2024-03-04", "2024-03-19", "2024-04-02"),
+                eventDays,
                 detail(1, 5.0, "2024-04-10")));
 
         // when
@@ -56,6 +70,10 @@ class FddbCorrelationToolsTest {
         assertEquals(75.0, sameDay.getPercentageOfEvents());
         assertEquals(List.of(LocalDate.of(2024, 3, 4), LocalDate.of(2024, 3, 19),
                 LocalDate.of(2024, 4, 2)), sameDay.getMatchedDates());
+        assertEquals(4.2, sameDay.getBaselinePercentage());
+        assertEquals(3.6, sameDay.getLift());
+        assertEquals(0.0123, sameDay.getFisherPValue());
+        assertNull(result.getOneDayBefore().getLift());
 
         assertEquals(25.0, result.getOneDayBefore().getPercentageOfEvents());
         assertNotNull(result.getNote());
@@ -151,6 +169,105 @@ class FddbCorrelationToolsTest {
                 fddbCorrelationTools.correlateProductsWithDates(KEYWORDS, null, tooManyDates, null));
     }
 
+    @Test
+    void rankProductsByCorrelation_shouldCapTheLimitAndReportTheBaseline() {
+        // given
+        ProductCorrelation cheese = new ProductCorrelation();
+        cheese.setName("Gouda jung");
+        cheese.setDaysEaten(8);
+        cheese.setDaysInWindow(4);
+        cheese.setPercentage(50.0);
+        cheese.setLift(3.33);
+        CorrelationScanOutputDto output = new CorrelationScanOutputDto();
+        output.setEventDateCount(4);
+        output.setWindowDays(3);
+        output.setLoggedDays(200);
+        output.setBaselinePercentage(15.04);
+        output.setMatchingProducts(120);
+        output.setProducts(List.of(cheese));
+        when(correlationService.scanProducts(any())).thenReturn(output);
+
+        // when
+        CorrelationScanResultDTO result =
+                fddbCorrelationTools.rankProductsByCorrelation(EVENTS, null, null, 3, null, 500);
+
+        // then
+        ArgumentCaptor<CorrelationScanInputDto> input = ArgumentCaptor.forClass(CorrelationScanInputDto.class);
+        verify(correlationService).scanProducts(input.capture());
+        assertEquals(50, input.getValue().getLimit());
+        assertEquals(3, input.getValue().getWindowDays());
+        assertEquals(15.0, result.getBaselinePercentage());
+        assertEquals(120, result.getMatchingProductCount());
+        assertEquals("Gouda jung", result.getProducts().getFirst().getName());
+        assertEquals(3.33, result.getProducts().getFirst().getLift());
+        assertNotNull(result.getNote());
+        assertNull(result.getMessage());
+    }
+
+    @Test
+    void rankProductsByCorrelation_shouldSayNothingWasRankedRatherThanReturnAnEmptyList() {
+        // given
+        CorrelationScanOutputDto output = new CorrelationScanOutputDto();
+        output.setProducts(List.of());
+        when(correlationService.scanProducts(any())).thenReturn(output);
+
+        // when
+        CorrelationScanResultDTO result =
+                fddbCorrelationTools.rankProductsByCorrelation(EVENTS, null, null, null, null, null);
+
+        // then
+        assertNotNull(result.getMessage());
+        assertNull(result.getNote());
+        assertThrows(IllegalArgumentException.class, () ->
+                fddbCorrelationTools.rankProductsByCorrelation(List.of(), null, null, null, null, null));
+    }
+
+    @Test
+    void correlateNutrientsWithDates_shouldPassTheMetricsOnAndStateTheUnits() {
+        // given
+        NutrientLagEffect dayBefore = new NutrientLagEffect();
+        dayBefore.setLagDays(1);
+        dayBefore.setCorrelation(0.31);
+        NutrientCorrelationOutputDto output = new NutrientCorrelationOutputDto();
+        output.setEventDateCount(4);
+        output.setLoggedDays(120);
+        output.setMaxLagDays(3);
+        output.setWindowDays(1);
+        output.setEffects(Map.of(NutrientMetric.SUGAR, List.of(dayBefore)));
+        when(correlationService.correlateNutrients(any())).thenReturn(output);
+
+        // when
+        NutrientCorrelationResultDTO result = fddbCorrelationTools.correlateNutrientsWithDates(
+                EVENTS, null, null, null, List.of(NutrientMetric.SUGAR));
+
+        // then
+        ArgumentCaptor<NutrientCorrelationInputDto> input = ArgumentCaptor.forClass(NutrientCorrelationInputDto.class);
+        verify(correlationService).correlateNutrients(input.capture());
+        assertEquals(List.of(NutrientMetric.SUGAR), input.getValue().getMetrics());
+        assertEquals(4, input.getValue().getOccurrenceDates().size());
+        assertEquals("g", result.getUnits().get(NutrientMetric.SUGAR));
+        assertEquals(0.31, result.getEffects().get(NutrientMetric.SUGAR).getFirst().getCorrelation());
+        assertNotNull(result.getNote());
+        assertNull(result.getMessage());
+    }
+
+    @Test
+    void correlateNutrientsWithDates_whenNothingWasLogged_shouldSaySoInsteadOfReportingEmptyMeans() {
+        // given
+        NutrientCorrelationOutputDto output = new NutrientCorrelationOutputDto();
+        output.setEffects(Map.of());
+        when(correlationService.correlateNutrients(any())).thenReturn(output);
+
+        // when
+        NutrientCorrelationResultDTO result = fddbCorrelationTools.correlateNutrientsWithDates(
+                EVENTS, "2030-01-01", null, null, null);
+
+        // then
+        assertNotNull(result.getMessage());
+        assertNull(result.getEffects());
+        assertNull(result.getNote());
+    }
+
     private CorrelationOutputDto output(int daysWithProduct, CorrelationDetail sameDay,
                                         CorrelationDetail oneDayBefore) {
         Correlations correlations = new Correlations();
@@ -55,16 +55,18 @@ class FddbPromptsTest {
         // the whole reason this prompt exists rather than being typed by hand
         assertTrue(text.contains("control"), text);
         assertTrue(text.contains("co-occurrence, not causation"), text);
+        assertTrue(text.contains("correlate_nutrients_with_dates"), text);
     }
 
     @Test
-    void findTriggerFoods_shouldFallBackToTheMostEatenProductsWhenNoSuspectIsNamed() {
+    void findTriggerFoods_shouldFallBackToTheProductRankingWhenNoSuspectIsNamed() {
         // when
         McpSchema.GetPromptResult result =
                 fddbPrompts.findTriggerFoods("2024-04-02", null, "   ");
 
         // then
         String text = textOf(result);
+        assertTrue(text.contains("rank_products_by_correlation"), text);
         assertTrue(text.contains("list_top_products"), text);
         assertTrue(text.contains("the symptom"), text);
     }
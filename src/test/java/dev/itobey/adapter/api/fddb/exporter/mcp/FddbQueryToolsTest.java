@@ -250,6 +250,40 @@ class FddbQueryToolsTest {
         verifyNoInteractions(fddbDataService);
     }
 
+    @Test
+    void listProductPairs_shouldApplyTheDefaultThresholdsAndFlagTruncation() {
+        // given
+        when(fddbDataService.getProductPairs(null, null, null, 5, 0.0, 21)).thenReturn(productPairs(21));
+
+        // when
+        ProductPairsResultDTO result = fddbQueryTools.listProductPairs(null, null, null, null, null, null);
+
+        // then
+        assertEquals(5, result.getMinDaysTogether());
+        assertEquals(20, result.getLimit());
+        assertEquals(20, result.getResultCount());
+        assertTrue(result.isTruncated());
+    }
+
+    @Test
+    void listProductPairs_shouldClampTheConfidenceAndPassTheResolvedRange() {
+        // given
+        LocalDate from = LocalDate.of(2024, 1, 1);
+        LocalDate to = LocalDate.of(2024, 12, 31);
+        when(fddbDataService.getProductPairs(any(), any(), any(), anyInt(), anyDouble(), anyInt()))
+                .thenReturn(List.of());
+
+        // when
+        ProductPairsResultDTO result = fddbQueryTools.listProductPairs("kaffee", "2024-01-01", "2024-12-31",
+                10, 250.0, 9000);
+
+        // then
+        assertEquals(100.0, result.getMinConfidence());
+        assertEquals(100, result.getLimit());
+        assertFalse(result.isTruncated());
+        verify(fddbDataService).getProductPairs("kaffee", from, to, 10, 100.0, 101);
+    }
+
     @Test
     void getProductSummary_shouldPassTheResolvedRangeAndReturnTheSummary() {
         // given
@@ -322,69 +356,98 @@ class FddbQueryToolsTest {
         // given
         LocalDate first = LocalDate.of(2024, 1, 1);
         LocalDate second = LocalDate.of(2024, 1, 2);
-        when(fddbDataService.findDaysWithProducts(eq(List.of("hafer")), isNull(), isNull(), anyInt()))
-                .thenReturn(List.of(
-                        matchedDay(second, 1, "Haferdrink"),
-                        matchedDay(first, 2, "Haferflocken kernig")));
+        when(fddbDataService.findDaysWithProducts(eq(List.of("hafer")), isNull(), isNull(), isNull(), eq(100)))
+                .thenReturn(ProductDaysPageDTO.builder()
+                        .days(List.of(
+                                matchedDay(second, 1, "Haferdrink"),
+                                matchedDay(first, 2, "Haferflocken kernig")))
+                        .dayCount(2)
+                        .occurrenceCount(3)
+                        .build());
 
         // when
         DaysWithProductsResultDTO result =
-                fddbQueryTools.findDaysWithProducts(List.of("hafer"), null, null, null);
+                fddbQueryTools.findDaysWithProducts(List.of("hafer"), null, null, null, null);
 
         // then two portions on one day are one day, but still two occurrences
         assertEquals(2, result.getDayCount());
         assertEquals(2, result.getMatchedDayCount());
         assertEquals(3, result.getOccurrenceCount());
         assertFalse(result.isTruncated());
+        assertNull(result.getNextPageToken());
         assertEquals(second, result.getDays().getFirst().getDate());
         assertEquals(List.of("Haferdrink"), result.getDays().getFirst().getProducts());
         assertEquals(List.of("Haferflocken kernig"), result.getDays().getLast().getProducts());
-        // nothing was cut, so the totals are already known and cost no second query
-        verify(fddbDataService, never()).countDaysWithProducts(any(), any(), any());
     }
 
     @Test
     void findDaysWithProducts_shouldPassTheExclusionsAndTheResolvedStartDate() {
         // given
-        when(fddbDataService.findDaysWithProducts(any(), any(), any(), anyInt())).thenReturn(List.of());
+        when(fddbDataService.findDaysWithProducts(any(), any(), any(), any(), anyInt()))
+                .thenReturn(ProductDaysPageDTO.builder().days(List.of()).build());
 
         // when
         DaysWithProductsResultDTO result = fddbQueryTools.findDaysWithProducts(
-                List.of("hafer"), List.of("keks"), "2024-01-01", null);
+                List.of("hafer"), List.of("keks"), "2024-01-01", null, null);
 
-        // then: the cap goes into the query, one over the limit so an overflow is visible
+        // then: the cap goes into the query as it is, the totals reveal an overflow
         verify(fddbDataService).findDaysWithProducts(
-                List.of("hafer"), List.of("keks"), LocalDate.of(2024, 1, 1), 101);
+                List.of("hafer"), List.of("keks"), LocalDate.of(2024, 1, 1), null, 100);
         assertEquals(LocalDate.of(2024, 1, 1), result.getStartDate());
         assertEquals(List.of("keks"), result.getExcludeKeywords());
     }
 
     @Test
-    void findDaysWithProducts_shouldReportTheFullTotalsWhenItTruncates() {
-        // given: the store returns limit + 1, which is how truncation is detected
-        when(fddbDataService.findDaysWithProducts(any(), any(), any(), anyInt())).thenReturn(List.of(
-                matchedDay(LocalDate.of(2024, 1, 2), 1, "Haferflocken"),
-                matchedDay(LocalDate.of(2024, 1, 1), 1, "Haferflocken")));
-        when(fddbDataService.countDaysWithProducts(List.of("hafer"), null, null))
-                .thenReturn(ProductDayTotalsDTO.builder().dayCount(412).occurrenceCount(931).build());
+    void findDaysWithProducts_shouldReportTheFullTotalsAndAContinuationWhenItTruncates() {
+        // given: one page of the two newest days out of 412
+        when(fddbDataService.findDaysWithProducts(any(), any(), any(), any(), anyInt()))
+                .thenReturn(ProductDaysPageDTO.builder()
+                        .days(List.of(
+                                matchedDay(LocalDate.of(2024, 1, 2), 1, "Haferflocken"),
+                                matchedDay(LocalDate.of(2024, 1, 1), 1, "Haferflocken")))
+                        .dayCount(412)
+                        .occurrenceCount(931)
+                        .build());
 
         // when
         DaysWithProductsResultDTO result =
-                fddbQueryTools.findDaysWithProducts(List.of("hafer"), null, null, 1);
+                fddbQueryTools.findDaysWithProducts(List.of("hafer"), null, null, 2, null);
 
         // then: "on how many days did I eat this?" is answerable from a truncated response
         assertTrue(result.isTruncated());
-        assertEquals(1, result.getDayCount());
-        assertEquals(1, result.getDays().size());
+        assertEquals(2, result.getDayCount());
         assertEquals(412, result.getMatchedDayCount());
         assertEquals(931, result.getOccurrenceCount());
+        assertEquals("2024-01-01", result.getNextPageToken());
+        verify(fddbDataService, times(1)).findDaysWithProducts(any(), any(), any(), any(), anyInt());
+    }
+
+    @Test
+    void findDaysWithProducts_shouldContinueBeforeTheDayOfThePageToken() {
+        // given
+        when(fddbDataService.findDaysWithProducts(any(), any(), any(), any(), anyInt()))
+                .thenReturn(ProductDaysPageDTO.builder()
+                        .days(List.of(matchedDay(LocalDate.of(2023, 12, 30), 1, "Haferflocken")))
+                        .dayCount(1)
+                        .occurrenceCount(1)
+                        .build());
+
+        // when
+        DaysWithProductsResultDTO result =
+                fddbQueryTools.findDaysWithProducts(List.of("hafer"), null, null, 2, "2024-01-01");
+
+        // then
+        verify(fddbDataService).findDaysWithProducts(List.of("hafer"), null, null, LocalDate.of(2024, 1, 1), 2);
+        assertEquals("2024-01-01", result.getPageToken());
+        assertFalse(result.isTruncated());
+        assertNull(result.getNextPageToken());
     }
 
     @Test
     void findDaysWithProducts_shouldRefuseToMatchEverything() {
         // when / then without a keyword this would return the whole diary
         assertThrows(IllegalArgumentException.class,
-                () -> fddbQueryTools.findDaysWithProducts(List.of(), null, null, null));
+                () -> fddbQueryTools.findDaysWithProducts(List.of(), null, null, null, null));
         verifyNoInteractions(fddbDataService);
     }
 
@@ -426,4 +489,11 @@ class FddbQueryToolsTest {
                 .mapToObj(index -> TopProductDTO.builder().name("product " + index).timesEaten(amount - index).build())
                 .collect(Collectors.toCollection(ArrayList::new));
     }
+
+    private List<ProductPairDTO> productPairs(int amount) {
+        return IntStream.range(0, amount)
+                .mapToObj(index -> ProductPairDTO.builder().first("product " + index).second("other")
+                        .daysTogether(amount - index).build())
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
 }
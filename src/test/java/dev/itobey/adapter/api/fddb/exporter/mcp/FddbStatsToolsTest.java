@@ -232,6 +232,39 @@ class FddbStatsToolsTest {
         verify(fddbDataService).getTrend(NutrientMetric.SUGAR, date, date, TrendGranularity.MONTH);
     }
 
+    @Test
+    void getRollingAverages_shouldDefaultToAWeekOverEveryMetricAndCountTheAveragedPoints() {
+        // given
+        LocalDate from = LocalDate.of(2024, 1, 7);
+        LocalDate to = LocalDate.of(2024, 1, 8);
+        when(fddbDataService.getRollingAverageSeries(from, to, 7, null, null))
+                .thenReturn(List.of(
+                        RollingAveragePointDTO.builder().date(from).loggedDays(3).build(),
+                        RollingAveragePointDTO.builder().date(to).loggedDays(4)
+                                .averages(java.util.Map.of(NutrientMetric.CALORIES, 2100.0)).build()));
+
+        // when
+        RollingAverageSeriesResultDTO result =
+                fddbStatsTools.getRollingAverages("2024-01-07", "2024-01-08", null, null, null);
+
+        // then
+        assertEquals(7, result.getWindow());
+        assertEquals(4, result.getMinLoggedDays());
+        assertEquals(2, result.getPointCount());
+        // the first window rests on too few days and has to show up as such
+        assertEquals(1, result.getAveragedPoints());
+        assertEquals("kcal", result.getUnits().get(NutrientMetric.CALORIES));
+        assertEquals("g", result.getUnits().get(NutrientMetric.PROTEIN));
+    }
+
+    @Test
+    void getRollingAverages_shouldRejectARangeLongerThan366Days() {
+        // when / then
+        assertThrows(DateTimeException.class, () -> fddbStatsTools.getRollingAverages(
+                "2024-01-01", "2025-01-01", 7, List.of(NutrientMetric.CALORIES), null));
+        verifyNoInteractions(fddbDataService);
+    }
+
     @Test
     void getTrend_shouldRejectARangeThatWouldProduceMoreThan366Buckets() {
         // given: 367 days, which at DAY granularity is 367 buckets
@@ -314,6 +347,10 @@ class FddbStatsToolsTest {
         LocalDate to = LocalDate.of(2024, 1, 10);
         when(fddbDataService.getMissingDays(from, to))
                 .thenReturn(List.of(LocalDate.of(2024, 1, 3), LocalDate.of(2024, 1, 4)));
+        GapStatsDTO.Gap longestGap = GapStatsDTO.Gap.builder()
+                .fromDate(LocalDate.of(2024, 1, 3)).toDate(LocalDate.of(2024, 1, 4)).days(2).build();
+        when(fddbDataService.getGapStats(from, to))
+                .thenReturn(GapStatsDTO.builder().gapCount(1).longestGap(longestGap).months(List.of()).build());
 
         // when
         MissingDaysResultDTO result = fddbStatsTools.listMissingDays("2024-01-01", "2024-01-10");
@@ -323,6 +360,8 @@ class FddbStatsToolsTest {
         assertEquals(2, result.getMissingCount());
         assertEquals(8, result.getLoggedCount());
         assertEquals(2, result.getMissingDays().size());
+        assertEquals(1, result.getGapCount());
+        assertEquals(longestGap, result.getLongestGap());
         assertFalse(result.isTruncated());
         assertNull(result.getLimit());
     }
@@ -334,6 +373,7 @@ class FddbStatsToolsTest {
         LocalDate to = LocalDate.of(2023, 12, 31);
         List<LocalDate> gaps = from.datesUntil(to.plusDays(1)).toList();
         when(fddbDataService.getMissingDays(from, to)).thenReturn(gaps);
+        when(fddbDataService.getGapStats(from, to)).thenReturn(GapStatsDTO.builder().gapCount(1).build());
 
         // when
         MissingDaysResultDTO result = fddbStatsTools.listMissingDays("2019-01-01", "2023-12-31");
@@ -35,10 +35,11 @@ class McpToolRegistrationTest {
      * tool without describing it here fails loudly instead of silently shipping.
      */
     private static final List<String> EXPECTED_TOOL_NAMES = List.of("get_day", "get_days", "search_products",
-            "list_top_products", "get_product_summary", "list_distinct_products", "find_days_with_products",
-            "get_stats", "get_averages", "get_extreme_days", "get_trend", "get_weekday_breakdown",
+            "list_top_products", "list_product_pairs", "get_product_summary", "list_distinct_products", "find_days_with_products",
+            "get_stats", "get_averages", "get_extreme_days", "get_trend", "get_rolling_averages", "get_weekday_breakdown",
             "get_macro_split", "list_missing_days", "compare_periods", "check_goals",
-            "correlate_products_with_dates", "get_data_schema", "get_server_info");
+            "correlate_products_with_dates", "rank_products_by_correlation", "correlate_nutrients_with_dates",
+            "get_data_schema", "get_server_info");
 
     /**
      * The tools that scrape fddb.info and write, kept separate from the list above because their
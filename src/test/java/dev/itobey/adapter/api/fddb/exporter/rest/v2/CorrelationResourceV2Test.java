@@ -2,6 +2,9 @@ package dev.itobey.adapter.api.fddb.exporter.rest.v2;
 
 import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationInputDto;
 import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationOutputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationScanInputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.NutrientCorrelationInputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.NutrientCorrelationOutputDto;
 import dev.itobey.adapter.api.fddb.exporter.service.CorrelationService;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
@@ -9,6 +12,8 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.when;
@@ -37,5 +42,30 @@ class CorrelationResourceV2Test {
 
         assertEquals(expectedOutput, response);
     }
-}
 
+    @Test
+    void testScanProducts_whenTheServiceRejectsTheInput_shouldReturnBadRequest() {
+        CorrelationScanInputDto inputDto = new CorrelationScanInputDto();
+
+        when(correlationService.scanProducts(inputDto))
+                .thenThrow(new IllegalArgumentException("At least one occurrence date is required"));
+
+        ResponseEntity<?> response = correlationResourceV2.scanProducts(inputDto);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("At least one occurrence date is required", response.getBody());
+    }
+
+    @Test
+    void testCorrelateNutrients_shouldReturnTheServiceResult() {
+        NutrientCorrelationInputDto inputDto = new NutrientCorrelationInputDto();
+        NutrientCorrelationOutputDto outputDto = new NutrientCorrelationOutputDto();
+
+        when(correlationService.correlateNutrients(inputDto)).thenReturn(outputDto);
+
+        ResponseEntity<?> response = correlationResourceV2.correlateNutrients(inputDto);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(outputDto, response.getBody());
+    }
+}
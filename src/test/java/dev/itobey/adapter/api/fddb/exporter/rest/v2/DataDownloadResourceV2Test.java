@@ -1,22 +1,41 @@
 package dev.itobey.adapter.api.fddb.exporter.rest.v2;
 
+import dev.itobey.adapter.api.fddb.exporter.dto.DownloadCompression;
 import dev.itobey.adapter.api.fddb.exporter.dto.DownloadFormat;
 import dev.itobey.adapter.api.fddb.exporter.service.DataDownloadService;
+import dev.itobey.adapter.api.fddb.exporter.service.snapshot.DownloadSnapshotService;
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.stubbing.Answer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.*;
-import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
@@ -30,21 +49,27 @@ class DataDownloadResourceV2Test {
     @MockitoBean
     private DataDownloadService dataDownloadService;
 
+    @MockitoBean
+    private DownloadSnapshotService downloadSnapshotService;
+
+    @TempDir
+    private Path snapshotDirectory;
+
     @Test
     @SneakyThrows
     void downloadData_shouldReturnCsvWithAllParameters() {
         // given
         byte[] csvData = "Date;Calories\n2024-01-01;2000".getBytes(StandardCharsets.UTF_8);
-        when(dataDownloadService.downloadData(any(LocalDate.class), any(LocalDate.class),
-                eq(DownloadFormat.CSV), eq(false), eq(","))).thenReturn(csvData);
+        doAnswer(writes(csvData)).when(dataDownloadService).downloadData(any(LocalDate.class), any(LocalDate.class),
+                eq(DownloadFormat.CSV), eq(false), eq(","), any(OutputStream.class));
 
         // when & then
-        mockMvc.perform(get("/api/v2/fddbdata/download")
-                        .param("fromDate", "2024-01-01")
-                        .param("toDate", "2024-12-31")
-                        .param("format", "CSV")
-                        .param("includeProducts", "false")
-                        .param("decimalSeparator", "comma"))
+        download(get("/api/v2/fddbdata/download")
+                .param("fromDate", "2024-01-01")
+                .param("toDate", "2024-12-31")
+                .param("format", "CSV")
+                .param("includeProducts", "false")
+                .param("decimalSeparator", "comma"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType("text/csv; charset=UTF-8"))
                 .andExpect(header().exists("Content-Disposition"))
@@ -53,11 +78,12 @@ class DataDownloadResourceV2Test {
                 .andExpect(content().bytes(csvData));
 
         verify(dataDownloadService).downloadData(
-                LocalDate.of(2024, 1, 1),
-                LocalDate.of(2024, 12, 31),
-                DownloadFormat.CSV,
-                false,
-                ","
+                eq(LocalDate.of(2024, 1, 1)),
+                eq(LocalDate.of(2024, 12, 31)),
+                eq(DownloadFormat.CSV),
+                eq(false),
+                eq(","),
+                any(OutputStream.class)
         );
     }
 
@@ -66,27 +92,28 @@ class DataDownloadResourceV2Test {
     void downloadData_shouldReturnJsonWithAllParameters() {
         // given
         byte[] jsonData = "[{\"date\":\"2024-01-01\",\"totalCalories\":2000}]".getBytes(StandardCharsets.UTF_8);
-        when(dataDownloadService.downloadData(any(LocalDate.class), any(LocalDate.class),
-                eq(DownloadFormat.JSON), eq(true), eq("."))).thenReturn(jsonData);
+        doAnswer(writes(jsonData)).when(dataDownloadService).downloadData(any(LocalDate.class), any(LocalDate.class),
+                eq(DownloadFormat.JSON), eq(true), eq("."), any(OutputStream.class));
 
         // when & then
-        mockMvc.perform(get("/api/v2/fddbdata/download")
-                        .param("fromDate", "2024-01-01")
-                        .param("toDate", "2024-12-31")
-                        .param("format", "JSON")
-                        .param("includeProducts", "true")
-                        .param("decimalSeparator", "dot"))
+        download(get("/api/v2/fddbdata/download")
+                .param("fromDate", "2024-01-01")
+                .param("toDate", "2024-12-31")
+                .param("format", "JSON")
+                .param("includeProducts", "true")
+                .param("decimalSeparator", "dot"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON))
                 .andExpect(header().exists("Content-Disposition"))
                 .andExpect(content().bytes(jsonData));
 
         verify(dataDownloadService).downloadData(
-                LocalDate.of(2024, 1, 1),
-                LocalDate.of(2024, 12, 31),
-                DownloadFormat.JSON,
-                true,
-                "."
+                eq(LocalDate.of(2024, 1, 1)),
+                eq(LocalDate.of(2024, 12, 31)),
+                eq(DownloadFormat.JSON),
+                eq(true),
+                eq("."),
+                any(OutputStream.class)
         );
     }
 
@@ -95,16 +122,17 @@ class DataDownloadResourceV2Test {
     void downloadData_shouldUseDefaultValues() {
         // given
         byte[] csvData = "Date;Calories\n2024-01-01;2000".getBytes(StandardCharsets.UTF_8);
-        when(dataDownloadService.downloadData(isNull(), isNull(),
-                eq(DownloadFormat.CSV), eq(false), eq(","))).thenReturn(csvData);
+        doAnswer(writes(csvData)).when(dataDownloadService).downloadData(isNull(), isNull(),
+                eq(DownloadFormat.CSV), eq(false), eq(","), any(OutputStream.class));
 
         // when & then
-        mockMvc.perform(get("/api/v2/fddbdata/download")
-                        .param("format", "CSV"))
+        download(get("/api/v2/fddbdata/download")
+                .param("format", "CSV"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType("text/csv; charset=UTF-8"));
 
-        verify(dataDownloadService).downloadData(null, null, DownloadFormat.CSV, false, ",");
+        verify(dataDownloadService).downloadData(isNull(), isNull(), eq(DownloadFormat.CSV), eq(false), eq(","),
+                any(OutputStream.class));
     }
 
     @Test
@@ -112,19 +140,20 @@ class DataDownloadResourceV2Test {
     void downloadData_shouldHandleNullDates() {
         // given
         byte[] csvData = "Date;Calories\n2024-01-01;2000".getBytes(StandardCharsets.UTF_8);
-        when(dataDownloadService.downloadData(isNull(), isNull(),
-                eq(DownloadFormat.CSV), eq(true), eq(","))).thenReturn(csvData);
+        doAnswer(writes(csvData)).when(dataDownloadService).downloadData(isNull(), isNull(),
+                eq(DownloadFormat.CSV), eq(true), eq(","), any(OutputStream.class));
 
         // when & then
-        mockMvc.perform(get("/api/v2/fddbdata/download")
-                        .param("format", "CSV")
-                        .param("includeProducts", "true")
-                        .param("decimalSeparator", "comma"))
+        download(get("/api/v2/fddbdata/download")
+                .param("format", "CSV")
+                .param("includeProducts", "true")
+                .param("decimalSeparator", "comma"))
                 .andExpect(status().isOk())
                 .andExpect(header().string("Content-Disposition",
                         "form-data; name=\"attachment\"; filename=\"fddb-data-all.csv\""));
 
-        verify(dataDownloadService).downloadData(null, null, DownloadFormat.CSV, true, ",");
+        verify(dataDownloadService).downloadData(isNull(), isNull(), eq(DownloadFormat.CSV), eq(true), eq(","),
+                any(OutputStream.class));
     }
 
     @Test
@@ -136,6 +165,7 @@ class DataDownloadResourceV2Test {
                         .param("toDate", "2024-01-01")
                         .param("format", "CSV"))
                 .andExpect(status().isBadRequest());
+        verifyNoInteractions(dataDownloadService);
     }
 
     @Test
@@ -146,21 +176,28 @@ class DataDownloadResourceV2Test {
                         .param("format", "CSV")
                         .param("decimalSeparator", "invalid"))
                 .andExpect(status().isBadRequest());
+        verifyNoInteractions(dataDownloadService);
     }
 
     @Test
     @SneakyThrows
-    void downloadData_shouldSetCorrectContentLengthHeader() {
+    void downloadData_shouldStreamTheBodyWithoutAContentLength() {
         // given
         byte[] csvData = "Date;Calories\n2024-01-01;2000".getBytes(StandardCharsets.UTF_8);
-        when(dataDownloadService.downloadData(isNull(), isNull(),
-                eq(DownloadFormat.CSV), eq(false), eq(","))).thenReturn(csvData);
+        doAnswer(writes(csvData)).when(dataDownloadService).downloadData(isNull(), isNull(),
+                eq(DownloadFormat.CSV), eq(false), eq(","), any(OutputStream.class));
 
-        // when & then
-        mockMvc.perform(get("/api/v2/fddbdata/download")
+        // when
+        MvcResult result = mockMvc.perform(get("/api/v2/fddbdata/download")
                         .param("format", "CSV"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // then - the headers go out before the first byte of the body is written
+        mockMvc.perform(asyncDispatch(result))
                 .andExpect(status().isOk())
-                .andExpect(header().longValue("Content-Length", csvData.length));
+                .andExpect(header().doesNotExist("Content-Length"))
+                .andExpect(content().bytes(csvData));
     }
 
     @Test
@@ -168,16 +205,16 @@ class DataDownloadResourceV2Test {
     void downloadData_shouldSetCorrectFilenameForDateRange() {
         // given
         byte[] csvData = "Date;Calories\n2024-01-01;2000".getBytes(StandardCharsets.UTF_8);
-        when(dataDownloadService.downloadData(any(LocalDate.class), any(LocalDate.class),
-                eq(DownloadFormat.CSV), eq(false), eq(","))).thenReturn(csvData);
+        doAnswer(writes(csvData)).when(dataDownloadService).downloadData(any(LocalDate.class), any(LocalDate.class),
+                eq(DownloadFormat.CSV), eq(false), eq(","), any(OutputStream.class));
 
         // when & then
-        mockMvc.perform(get("/api/v2/fddbdata/download")
-                        .param("fromDate", "2024-01-01")
-                        .param("toDate", "2024-12-31")
-                        .param("format", "CSV")
-                        .param("includeProducts", "false")
-                        .param("decimalSeparator", "comma"))
+        download(get("/api/v2/fddbdata/download")
+                .param("fromDate", "2024-01-01")
+                .param("toDate", "2024-12-31")
+                .param("format", "CSV")
+                .param("includeProducts", "false")
+                .param("decimalSeparator", "comma"))
                 .andExpect(status().isOk())
                 .andExpect(header().string("Content-Disposition",
                         "form-data; name=\"attachment\"; filename=\"fddb-data-2024-01-01-to-2024-12-31-totals-only.csv\""));
@@ -188,16 +225,16 @@ class DataDownloadResourceV2Test {
     void downloadData_shouldSetCorrectFilenameWithProducts() {
         // given
         byte[] jsonData = "[{\"date\":\"2024-01-01\"}]".getBytes(StandardCharsets.UTF_8);
-        when(dataDownloadService.downloadData(any(LocalDate.class), any(LocalDate.class),
-                eq(DownloadFormat.JSON), eq(true), eq("."))).thenReturn(jsonData);
+        doAnswer(writes(jsonData)).when(dataDownloadService).downloadData(any(LocalDate.class), any(LocalDate.class),
+                eq(DownloadFormat.JSON), eq(true), eq("."), any(OutputStream.class));
 
         // when & then
-        mockMvc.perform(get("/api/v2/fddbdata/download")
-                        .param("fromDate", "2024-01-01")
-                        .param("toDate", "2024-12-31")
-                        .param("format", "JSON")
-                        .param("includeProducts", "true")
-                        .param("decimalSeparator", "dot"))
+        download(get("/api/v2/fddbdata/download")
+                .param("fromDate", "2024-01-01")
+                .param("toDate", "2024-12-31")
+                .param("format", "JSON")
+                .param("includeProducts", "true")
+                .param("decimalSeparator", "dot"))
                 .andExpect(status().isOk())
                 .andExpect(header().string("Content-Disposition",
                         "form-data; name=\"attachment\"; filename=\"fddb-data-2024-01-01-to-2024-12-31.json\""));
@@ -212,7 +249,281 @@ class DataDownloadResourceV2Test {
                         .param("format", "CSV"))
                 .andExpect(status().isBadRequest());
     }
-}
 
+    @Test
+    @SneakyThrows
+    void downloadData_whenTheClientAcceptsGzip_shouldEncodeTheTransfer() {
+        // given
+        byte[] csvData = "Date;Calories\n2024-01-01;2000".getBytes(StandardCharsets.UTF_8);
+        doAnswer(writes(csvData)).when(dataDownloadService).downloadData(isNull(), isNull(),
+                eq(DownloadFormat.CSV), eq(true), eq(","), any(OutputStream.class));
 
+        // when
+        MvcResult result = download(get("/api/v2/fddbdata/download")
+                .param("format", "CSV")
+                .param("includeProducts", "true")
+                .header(HttpHeaders.ACCEPT_ENCODING, "br;q=1.0, gzip;q=0.8, *;q=0.1"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv; charset=UTF-8"))
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andExpect(header().string("Content-Disposition",
+                        "form-data; name=\"attachment\"; filename=\"fddb-data-all.csv\""))
+                .andReturn();
+
+        // then - the file itself stays a plain CSV, the encoding only applies to the transfer
+        assertThat(gunzip(result.getResponse().getContentAsByteArray())).isEqualTo(csvData);
+    }
 
+    @Test
+    @SneakyThrows
+    void downloadData_whenTheClientRefusesGzip_shouldNotEncodeTheTransfer() {
+        // given
+        byte[] csvData = "Date;Calories\n2024-01-01;2000".getBytes(StandardCharsets.UTF_8);
+        doAnswer(writes(csvData)).when(dataDownloadService).downloadData(isNull(), isNull(),
+                eq(DownloadFormat.CSV), eq(false), eq(","), any(OutputStream.class));
+
+        // when & then
+        download(get("/api/v2/fddbdata/download")
+                .param("format", "CSV")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, *"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().bytes(csvData));
+    }
+
+    @Test
+    @SneakyThrows
+    void downloadData_whenGzipIsRequested_shouldReturnAGzipFile() {
+        // given
+        byte[] jsonData = "[{\"date\":\"2024-01-01\"}]".getBytes(StandardCharsets.UTF_8);
+        doAnswer(writes(jsonData)).when(dataDownloadService).downloadData(isNull(), isNull(),
+                eq(DownloadFormat.JSON), eq(false), eq(","), any(OutputStream.class));
+
+        // when
+        MvcResult result = download(get("/api/v2/fddbdata/download")
+                .param("format", "JSON")
+                .param("compression", "GZIP"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/gzip"))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(header().string("Content-Disposition",
+                        "form-data; name=\"attachment\"; filename=\"fddb-data-all-totals-only.json.gz\""))
+                .andReturn();
+
+        // then
+        assertThat(gunzip(result.getResponse().getContentAsByteArray())).isEqualTo(jsonData);
+    }
+
+    @Test
+    @SneakyThrows
+    void downloadData_whenNoCompressionIsRequested_shouldIgnoreTheAcceptEncoding() {
+        // given
+        byte[] csvData = "Date;Calories\n2024-01-01;2000".getBytes(StandardCharsets.UTF_8);
+        doAnswer(writes(csvData)).when(dataDownloadService).downloadData(isNull(), isNull(),
+                eq(DownloadFormat.CSV), eq(false), eq(","), any(OutputStream.class));
+
+        // when & then
+        download(get("/api/v2/fddbdata/download")
+                .param("format", "CSV")
+                .param("compression", DownloadCompression.NONE.name())
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().bytes(csvData));
+    }
+
+    @Test
+    @SneakyThrows
+    void downloadData_whenFormatIsTables_shouldNotEncodeTheZipAgain() {
+        // given
+        byte[] zipData = {'P', 'K', 3, 4};
+        doAnswer(writes(zipData)).when(dataDownloadService).downloadData(isNull(), isNull(),
+                eq(DownloadFormat.TABLES), eq(true), eq(","), any(OutputStream.class));
+
+        // when & then
+        download(get("/api/v2/fddbdata/download")
+                .param("format", "TABLES")
+                .param("includeProducts", "true")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/zip"))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().bytes(zipData));
+    }
+
+    @Test
+    @SneakyThrows
+    void downloadData_whenASnapshotIsCurrent_shouldServeTheFile() {
+        // given
+        byte[] compressed = givenSnapshot(DownloadFormat.CSV, false, "\"1a2b-40\"");
+
+        // when & then: read from disk, so unlike a streamed download it has a length
+        mockMvc.perform(get("/api/v2/fddbdata/download")
+                        .param("format", "CSV")
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"1a2b-40\""))
+                .andExpect(header().longValue(HttpHeaders.CONTENT_LENGTH, compressed.length))
+                .andExpect(content().contentType("text/csv; charset=UTF-8"))
+                .andExpect(content().bytes(compressed));
+        verify(downloadSnapshotService).find(DownloadFormat.CSV, false, ",");
+        verifyNoInteractions(dataDownloadService);
+    }
+
+    @Test
+    @SneakyThrows
+    void downloadData_whenTheSnapshotMatchesIfNoneMatch_shouldReturnNotModified() {
+        // given
+        givenSnapshot(DownloadFormat.JSON, true, "\"1a2b-40\"");
+
+        // when & then
+        mockMvc.perform(get("/api/v2/fddbdata/download")
+                        .param("format", "JSON")
+                        .param("includeProducts", "true")
+                        .param("compression", "GZIP")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"1a2b-40\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    @SneakyThrows
+    void downloadData_whenARangeOfTheSnapshotIsRequested_shouldReturnThePart() {
+        // given
+        byte[] compressed = givenSnapshot(DownloadFormat.JSON, false, "\"1a2b-40\"");
+
+        // when & then: a broken-off download resumes where it stopped
+        mockMvc.perform(get("/api/v2/fddbdata/download")
+                        .param("format", "JSON")
+                        .param("compression", "GZIP")
+                        .header(HttpHeaders.RANGE, "bytes=10-"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE,
+                        "bytes 10-" + (compressed.length - 1) + "/" + compressed.length))
+                .andExpect(content().bytes(Arrays.copyOfRange(compressed, 10, compressed.length)));
+    }
+
+    @Test
+    @SneakyThrows
+    void downloadData_forADateRange_shouldNotLookForASnapshot() {
+        // given
+        doAnswer(writes(new byte[0])).when(dataDownloadService).downloadData(any(LocalDate.class), isNull(),
+                eq(DownloadFormat.CSV), eq(false), eq(","), any(OutputStream.class));
+
+        // when & then
+        download(get("/api/v2/fddbdata/download")
+                .param("fromDate", "2024-01-01")
+                .param("format", "CSV")
+                .param("compression", "GZIP"))
+                .andExpect(status().isOk());
+        verifyNoInteractions(downloadSnapshotService);
+    }
+
+    @Test
+    @SneakyThrows
+    void downloadData_shouldReturnNdjson() {
+        // given
+        byte[] ndjsonData = "{\"date\":\"2024-01-01\"}\n{\"date\":\"2024-01-02\"}\n".getBytes(StandardCharsets.UTF_8);
+        doAnswer(writes(ndjsonData)).when(dataDownloadService).downloadData(isNull(), isNull(),
+                eq(DownloadFormat.NDJSON), eq(false), eq(","), any(OutputStream.class));
+
+        // when & then
+        download(get("/api/v2/fddbdata/download")
+                .param("format", "NDJSON"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(header().string("Content-Disposition",
+                        "form-data; name=\"attachment\"; filename=\"fddb-data-all-totals-only.ndjson\""))
+                .andExpect(content().bytes(ndjsonData));
+    }
+
+    @Test
+    @SneakyThrows
+    void downloadChanges_shouldStreamNdjsonSinceTheRevision() {
+        // given
+        byte[] ndjson = "{\"date\":\"2024-01-01\",\"revision\":42}\n".getBytes(StandardCharsets.UTF_8);
+        doAnswer(invocation -> {
+            invocation.getArgument(1, OutputStream.class).write(ndjson);
+            return null;
+        }).when(dataDownloadService).downloadChanges(eq(41L), any(OutputStream.class));
+
+        // when & then
+        download(get("/api/v2/fddbdata/changes")
+                .param("sinceRevision", "41"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(content().bytes(ndjson));
+    }
+
+    @Test
+    @SneakyThrows
+    void downloadChanges_withoutARevision_shouldStreamEverythingAndEncodeItIfAccepted() {
+        // given
+        byte[] ndjson = "{\"date\":\"2024-01-01\"}\n".getBytes(StandardCharsets.UTF_8);
+        doAnswer(invocation -> {
+            invocation.getArgument(1, OutputStream.class).write(ndjson);
+            return null;
+        }).when(dataDownloadService).downloadChanges(isNull(), any(OutputStream.class));
+
+        // when
+        MvcResult result = download(get("/api/v2/fddbdata/changes")
+                .header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn();
+
+        // then
+        assertThat(gunzip(result.getResponse().getContentAsByteArray())).isEqualTo(ndjson);
+    }
+
+    @Test
+    @SneakyThrows
+    void downloadChanges_shouldReturnBadRequest_whenRevisionIsNegative() {
+        // when & then
+        mockMvc.perform(get("/api/v2/fddbdata/changes")
+                        .param("sinceRevision", "-1"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(dataDownloadService);
+    }
+
+    @SneakyThrows
+    private byte[] givenSnapshot(DownloadFormat format, boolean includeProducts, String eTag) {
+        byte[] compressed = new byte[64];
+        for (int i = 0; i < compressed.length; i++) {
+            compressed[i] = (byte) i;
+        }
+        Path file = Files.write(snapshotDirectory.resolve("snapshot.gz"), compressed);
+        when(downloadSnapshotService.find(eq(format), eq(includeProducts), anyString()))
+                .thenReturn(Optional.of(new DownloadSnapshotService.Snapshot(file, compressed.length, eTag, 0)));
+        return compressed;
+    }
+
+    @SneakyThrows
+    private static byte[] gunzip(byte[] data) {
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(data))) {
+            return gzip.readAllBytes();
+        }
+    }
+
+    /**
+     * Performs a download and waits for its streamed body, which is written after the handler
+     * returned.
+     */
+    @SneakyThrows
+    private ResultActions download(MockHttpServletRequestBuilder requestBuilder) {
+        MvcResult result = mockMvc.perform(requestBuilder)
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        return mockMvc.perform(asyncDispatch(result));
+    }
+
+    private static Answer<Void> writes(byte[] data) {
+        return invocation -> {
+            invocation.getArgument(5, OutputStream.class).write(data);
+            return null;
+        };
+    }
+}
@@ -0,0 +1,126 @@
+package dev.itobey.adapter.api.fddb.exporter.rest.v2;
+
+import dev.itobey.adapter.api.fddb.exporter.dto.DownloadFormat;
+import dev.itobey.adapter.api.fddb.exporter.dto.ImportResultDTO;
+import dev.itobey.adapter.api.fddb.exporter.exception.ExportInProgressException;
+import dev.itobey.adapter.api.fddb.exporter.service.DataImportService;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.webmvc.test.autoconfigure.WebMvcTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@WebMvcTest(DataImportResourceV2.class)
+@ActiveProfiles("test")
+class DataImportResourceV2Test {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private DataImportService dataImportService;
+
+    @Test
+    @SneakyThrows
+    void importData_shouldReturnWhatWasImported() {
+        // given
+        when(dataImportService.importData(eq(DownloadFormat.CSV), any(InputStream.class))).thenAnswer(invocation -> {
+            String body = new String(invocation.getArgument(1, InputStream.class).readAllBytes(),
+                    StandardCharsets.UTF_8);
+            return new ImportResultDTO(body.length(), 2, body.length() - 2, LocalDate.of(2024, 1, 1),
+                    LocalDate.of(2024, 1, 31));
+        });
+
+        // when & then - the file is handed over as the request body, not as a form
+        mockMvc.perform(post("/api/v2/fddbdata/import")
+                        .param("format", "CSV")
+                        .contentType("text/csv")
+                        .content("0123456789"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.importedDays").value(10))
+                .andExpect(jsonPath("$.writtenDays").value(2))
+                .andExpect(jsonPath("$.unchangedDays").value(8))
+                .andExpect(jsonPath("$.fromDate").value("2024-01-01"))
+                .andExpect(jsonPath("$.toDate").value("2024-01-31"));
+    }
+
+    @Test
+    @SneakyThrows
+    void importData_withoutAContentType_shouldReadTheBodyAsTheFile() {
+        // given
+        when(dataImportService.importData(eq(DownloadFormat.CSV), any(InputStream.class))).thenAnswer(invocation ->
+                new ImportResultDTO(invocation.getArgument(1, InputStream.class).readAllBytes().length, 0, 0,
+                        null, null));
+
+        // when & then - what curl --data-binary sends with an octet-stream header, or none at all
+        mockMvc.perform(post("/api/v2/fddbdata/import")
+                        .param("format", "CSV")
+                        .content("0123456789"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.importedDays").value(10));
+    }
+
+    @Test
+    @SneakyThrows
+    void importData_asAForm_shouldReturnUnsupportedMediaType() {
+        // when & then - curl --data-binary without a content type header posts a form
+        mockMvc.perform(post("/api/v2/fddbdata/import?format=CSV")
+                        .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                        .content("2024-01-01;Kaffee"))
+                .andExpect(status().isUnsupportedMediaType());
+        verifyNoInteractions(dataImportService);
+    }
+
+    @Test
+    @SneakyThrows
+    void importData_whenTheFileIsNotADownload_shouldReturnBadRequestWithTheReason() {
+        // given
+        when(dataImportService.importData(eq(DownloadFormat.JSON), any(InputStream.class)))
+                .thenThrow(new IllegalArgumentException("Not a JSON download: Unexpected character"));
+
+        // when & then
+        mockMvc.perform(post("/api/v2/fddbdata/import")
+                        .param("format", "JSON")
+                        .content("date;calories"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Not a JSON download: Unexpected character"));
+    }
+
+    @Test
+    @SneakyThrows
+    void importData_whileAnExportIsRunning_shouldReturnConflict() {
+        // given
+        when(dataImportService.importData(eq(DownloadFormat.NDJSON), any(InputStream.class)))
+                .thenThrow(new ExportInProgressException("An export is already running"));
+
+        // when & then
+        mockMvc.perform(post("/api/v2/fddbdata/import")
+                        .param("format", "NDJSON")
+                        .content("{}"))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    @SneakyThrows
+    void importData_withoutAFormat_shouldReturnBadRequest() {
+        // when & then
+        mockMvc.perform(post("/api/v2/fddbdata/import")
+                        .content("{}"))
+                .andExpect(status().isBadRequest());
+        verifyNoInteractions(dataImportService);
+    }
+}
@@ -1,6 +1,7 @@
 package dev.itobey.adapter.api.fddb.exporter.rest.v2;
 
 import dev.itobey.adapter.api.fddb.exporter.dto.*;
+import dev.itobey.adapter.api.fddb.exporter.service.DataDownloadService;
 import dev.itobey.adapter.api.fddb.exporter.service.FddbDataService;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
@@ -8,9 +9,16 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.util.Arrays;
@@ -18,6 +26,12 @@ import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 /**
@@ -30,6 +44,9 @@ class FddbDataQueryResourceV2Test {
     @Mock
     private FddbDataService fddbDataService;
 
+    @Mock
+    private DataDownloadService dataDownloadService;
+
     @InjectMocks
     private FddbDataQueryResourceV2 fddbDataQueryResourceV2;
 
@@ -50,7 +67,7 @@ class FddbDataQueryResourceV2Test {
         FddbDataDTO mockData = new FddbDataDTO();
         when(fddbDataService.findByDate(validDate)).thenReturn(Optional.of(mockData));
 
-        ResponseEntity<?> response = fddbDataQueryResourceV2.findByDate(validDate);
+        ResponseEntity<?> response = fddbDataQueryResourceV2.findByDate(validDate, webRequest());
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(Optional.of(mockData), response.getBody());
@@ -60,7 +77,7 @@ class FddbDataQueryResourceV2Test {
     void testFindByDate_InvalidDate() {
         String invalidDate = "2023-1-1";
 
-        ResponseEntity<?> response = fddbDataQueryResourceV2.findByDate(invalidDate);
+        ResponseEntity<?> response = fddbDataQueryResourceV2.findByDate(invalidDate, webRequest());
 
         assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
         assertEquals("Date must be in the format YYYY-MM-DD", response.getBody());
@@ -71,11 +88,54 @@ class FddbDataQueryResourceV2Test {
         String validDate = "2023-01-01";
         when(fddbDataService.findByDate(validDate)).thenReturn(Optional.empty());
 
-        ResponseEntity<?> response = fddbDataQueryResourceV2.findByDate(validDate);
+        ResponseEntity<?> response = fddbDataQueryResourceV2.findByDate(validDate, webRequest());
 
         assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
     }
 
+    @Test
+    void testFindByDate_ShouldTagTheEntryWithItsRevision() {
+        String validDate = "2023-01-01";
+        FddbDataDTO mockData = new FddbDataDTO();
+        mockData.setRevision(42L);
+        when(fddbDataService.findByDate(validDate)).thenReturn(Optional.of(mockData));
+
+        ResponseEntity<?> response = fddbDataQueryResourceV2.findByDate(validDate, webRequest());
+
+        assertEquals("W/\"r42\"", response.getHeaders().getETag());
+    }
+
+    @Test
+    void testFindByDate_WhenTheClientHasTheRevision_ShouldAnswerNotModified() {
+        String validDate = "2023-01-01";
+        FddbDataDTO mockData = new FddbDataDTO();
+        mockData.setRevision(42L);
+        when(fddbDataService.findByDate(validDate)).thenReturn(Optional.of(mockData));
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v2/fddbdata/" + validDate);
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "W/\"r42\"");
+
+        ResponseEntity<?> response = fddbDataQueryResourceV2.findByDate(validDate, new ServletWebRequest(request));
+
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertNull(response.getBody());
+    }
+
+    @Test
+    void testFindByDate_WhenTheEntryHasNoRevision_ShouldTagItByItsContent() {
+        String validDate = "2023-01-01";
+        FddbDataDTO before = new FddbDataDTO();
+        before.setTotalCalories(2000);
+        FddbDataDTO after = new FddbDataDTO();
+        after.setTotalCalories(2100);
+        when(fddbDataService.findByDate(validDate)).thenReturn(Optional.of(before), Optional.of(before),
+                Optional.of(after));
+
+        String eTag = fddbDataQueryResourceV2.findByDate(validDate, webRequest()).getHeaders().getETag();
+
+        assertEquals(eTag, fddbDataQueryResourceV2.findByDate(validDate, webRequest()).getHeaders().getETag());
+        assertNotEquals(eTag, fddbDataQueryResourceV2.findByDate(validDate, webRequest()).getHeaders().getETag());
+    }
+
     @Test
     void testFindByProduct() {
         String productName = "TestProduct";
@@ -131,6 +191,30 @@ class FddbDataQueryResourceV2Test {
         assertEquals(mockData, response.getBody());
     }
 
+    @Test
+    void testStreamByDateRange_ShouldStreamNdjsonBeyondTheRangeLimit() throws Exception {
+        LocalDate fromDate = LocalDate.of(2020, 1, 1);
+        LocalDate toDate = LocalDate.of(2024, 12, 31);
+
+        ResponseEntity<StreamingResponseBody> response =
+                fddbDataQueryResourceV2.streamByDateRange(fromDate, toDate, true);
+        response.getBody().writeTo(new ByteArrayOutputStream());
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType());
+        verify(dataDownloadService).downloadData(eq(fromDate), eq(toDate), eq(DownloadFormat.NDJSON), eq(true),
+                eq("."), any(OutputStream.class));
+    }
+
+    @Test
+    void testStreamByDateRange_InvertedRange() {
+        ResponseEntity<StreamingResponseBody> response = fddbDataQueryResourceV2.streamByDateRange(
+                LocalDate.of(2024, 12, 31), LocalDate.of(2024, 1, 1), false);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verifyNoInteractions(dataDownloadService);
+    }
+
     @Test
     void testGetTopProducts() {
         List<TopProductDTO> mockData = List.of(TopProductDTO.builder().name("Banana").timesEaten(12).build());
@@ -143,6 +227,19 @@ class FddbDataQueryResourceV2Test {
         assertEquals(mockData, response.getBody());
     }
 
+    @Test
+    void testGetProductPairs() {
+        List<ProductPairDTO> mockData = List.of(ProductPairDTO.builder()
+                .first("Kaffee").second("Milch").daysTogether(12).lift(1.4).build());
+        when(fddbDataService.getProductPairs("kaffee", null, null, 5, 50.0, 20)).thenReturn(mockData);
+
+        ResponseEntity<List<ProductPairDTO>> response =
+                fddbDataQueryResourceV2.getProductPairs("kaffee", null, null, 5, 50.0, 20);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(mockData, response.getBody());
+    }
+
     @Test
     void testGetProductSummary() {
         ProductSummaryDTO mockData = ProductSummaryDTO.builder().searchTerm("Banana").timesEaten(3).build();
@@ -165,5 +262,8 @@ class FddbDataQueryResourceV2Test {
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(mockData, response.getBody());
     }
-}
 
+    private static ServletWebRequest webRequest() {
+        return new ServletWebRequest(new MockHttpServletRequest("GET", "/api/v2/fddbdata/2023-01-01"));
+    }
+}
@@ -88,6 +88,33 @@ class FddbDataStatsResourceV2Test {
         assertEquals(mockTrend, response.getBody());
     }
 
+    @Test
+    void testGetRollingAverageSeries() {
+        LocalDate fromDate = LocalDate.of(2024, 1, 1);
+        LocalDate toDate = LocalDate.of(2024, 12, 31);
+        List<RollingAveragePointDTO> mockSeries = List.of(RollingAveragePointDTO.builder().date(fromDate).build());
+        when(fddbDataService.getRollingAverageSeries(fromDate, toDate, 7, List.of(NutrientMetric.CALORIES), null))
+                .thenReturn(mockSeries);
+
+        ResponseEntity<?> response = fddbDataStatsResourceV2.getRollingAverageSeries(
+                fromDate, toDate, 7, List.of(NutrientMetric.CALORIES), null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(mockSeries, response.getBody());
+    }
+
+    @Test
+    void testGetRollingAverageSeries_InvalidWindow() {
+        LocalDate fromDate = LocalDate.of(2024, 1, 1);
+        LocalDate toDate = LocalDate.of(2024, 1, 31);
+        when(fddbDataService.getRollingAverageSeries(fromDate, toDate, 0, null, null))
+                .thenThrow(new IllegalArgumentException("The window must be between 1 and 90 days, but was 0"));
+
+        ResponseEntity<?> response = fddbDataStatsResourceV2.getRollingAverageSeries(fromDate, toDate, 0, null, null);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
     @Test
     void testGetWeekdayBreakdown() {
         List<WeekdayStatsDTO> mockBreakdown = List.of(
@@ -125,5 +152,17 @@ class FddbDataStatsResourceV2Test {
         assertEquals(HttpStatus.OK, response.getStatusCode());
         assertEquals(mockMissing, response.getBody());
     }
-}
 
+    @Test
+    void testGetGapStats_withInvalidRange_returnsBadRequest() {
+        LocalDate fromDate = LocalDate.of(2024, 2, 1);
+        LocalDate toDate = LocalDate.of(2024, 1, 1);
+        when(fddbDataService.getGapStats(fromDate, toDate))
+                .thenThrow(new IllegalArgumentException("The 'from' date cannot be after the 'to' date"));
+
+        ResponseEntity<?> response = fddbDataStatsResourceV2.getGapStats(fromDate, toDate);
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("The 'from' date cannot be after the 'to' date", response.getBody());
+    }
+}
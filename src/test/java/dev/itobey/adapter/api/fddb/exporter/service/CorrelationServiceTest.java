@@ -1,10 +1,19 @@
 package dev.itobey.adapter.api.fddb.exporter.service;
 
+import dev.itobey.adapter.api.fddb.exporter.domain.FddbData;
 import dev.itobey.adapter.api.fddb.exporter.domain.Product;
 import dev.itobey.adapter.api.fddb.exporter.domain.projection.ProductWithDate;
+import dev.itobey.adapter.api.fddb.exporter.dto.NutrientMetric;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationDetail;
 import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationInputDto;
 import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationOutputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationScanInputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.CorrelationScanOutputDto;
 import dev.itobey.adapter.api.fddb.exporter.dto.correlation.Correlations;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.NutrientCorrelationInputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.NutrientCorrelationOutputDto;
+import dev.itobey.adapter.api.fddb.exporter.dto.correlation.NutrientLagEffect;
+import dev.itobey.adapter.api.fddb.exporter.service.correlation.ProductDayMatrix;
 import dev.itobey.adapter.api.fddb.exporter.service.persistence.MongoDBService;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -13,13 +22,18 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
@@ -58,6 +72,7 @@ class CorrelationServiceTest {
                 anyList(),
                 any()
         )).thenReturn(mockProducts);
+        when(mongoDBService.getProductDayMatrix(null, null)).thenReturn(everyDayLogged(LocalDate.of(2024, 1, 1), 366));
 
         // When
         CorrelationOutputDto result = correlationService.createCorrelation(input);
@@ -126,6 +141,7 @@ class CorrelationServiceTest {
         input.setOccurrenceDates(Collections.singletonList("2024-03-15"));
 
         when(mongoDBService.findByProductsWithExclusions(anyList(), anyList(), eq(null))).thenReturn(Collections.emptyList());
+        when(mongoDBService.getProductDayMatrix(null, null)).thenReturn(everyDayLogged(LocalDate.of(2024, 3, 1), 30));
 
         // When
         CorrelationOutputDto result = correlationService.createCorrelation(input);
@@ -134,10 +150,171 @@ class CorrelationServiceTest {
         assertThat(result).isNotNull();
         assertThat(result.getCorrelations()).isNotNull();
         assertThat(result.getCorrelations().getSameDay().getPercentage()).isZero();
+        assertThat(result.getCorrelations().getSameDay().getLift()).isNull();
+        assertThat(result.getCorrelations().getSameDay().getFisherPValue()).isNull();
         assertThat(result.getCorrelations().getOneDayBefore().getPercentage()).isZero();
         assertThat(result.getCorrelations().getTwoDaysBefore().getPercentage()).isZero();
     }
 
+    @Test
+    void createCorrelation_withMaxLagDays_shouldReportEveryLag() {
+        // Given
+        CorrelationInputDto input = new CorrelationInputDto();
+        input.setInclusionKeywords(List.of("pizza"));
+        input.setExclusionKeywords(List.of());
+        input.setOccurrenceDates(List.of("2024-03-15", "2024-04-15"));
+        input.setMaxLagDays(5);
+
+        when(mongoDBService.findByProductsWithExclusions(anyList(), anyList(), eq(null)))
+                .thenReturn(createProductsWithDates("pizza", "2024-03-10", "2024-04-10", "2024-04-14"));
+        when(mongoDBService.getProductDayMatrix(null, null)).thenReturn(everyDayLogged(LocalDate.of(2024, 3, 1), 60));
+
+        // When
+        CorrelationOutputDto result = correlationService.createCorrelation(input);
+
+        // Then
+        Map<Integer, CorrelationDetail> byLag = result.getCorrelations().getByLag();
+        assertThat(byLag).containsOnlyKeys(0, 1, 2, 3, 4, 5);
+        assertThat(byLag.get(5).getMatchedDates()).containsExactly("2024-03-10", "2024-04-10");
+        assertThat(byLag.get(5).getPercentage()).isEqualTo(66.67);
+        assertThat(byLag.get(1).getMatchedDays()).isEqualTo(1);
+        assertThat(byLag.get(3).getMatchedDays()).isZero();
+    }
+
+    @Test
+    void createCorrelation_shouldMeasureEachWindowAgainstTheLoggedDays() {
+        // Given - 20 logged days, pizza on exactly the two event days
+        CorrelationInputDto input = new CorrelationInputDto();
+        input.setInclusionKeywords(List.of("pizza"));
+        input.setExclusionKeywords(List.of());
+        input.setOccurrenceDates(List.of("2024-03-05", "2024-03-15"));
+
+        when(mongoDBService.findByProductsWithExclusions(anyList(), anyList(), eq(null)))
+                .thenReturn(createProductsWithDates("pizza", "2024-03-05", "2024-03-15"));
+        when(mongoDBService.getProductDayMatrix(null, null)).thenReturn(everyDayLogged(LocalDate.of(2024, 3, 1), 20));
+
+        // When
+        Correlations correlations = correlationService.createCorrelation(input).getCorrelations();
+
+        // Then - both of two days out of 20 in a window of two: 1 in C(20, 2) by chance
+        assertThat(correlations.getSameDay().getBaselinePercentage()).isEqualTo(10.0);
+        assertThat(correlations.getSameDay().getLift()).isEqualTo(10.0);
+        assertThat(correlations.getSameDay().getFisherPValue()).isCloseTo(1.0 / 190, within(1e-12));
+        assertThat(correlations.getOneDayBefore().getLift()).isZero();
+        assertThat(correlations.getOneDayBefore().getFisherPValue()).isEqualTo(1.0);
+        assertThat(correlations.getAcross3Days().getBaselinePercentage()).isEqualTo(30.0);
+        assertThat(correlations.getAcross3Days().getLift()).isEqualTo(3.33);
+    }
+
+    @Test
+    void createCorrelation_whenMaxLagDaysIsOutOfRange_shouldThrow() {
+        // Given
+        CorrelationInputDto input = new CorrelationInputDto();
+        input.setMaxLagDays(CorrelationInputDto.MAX_LAG_DAYS + 1);
+
+        // When / Then
+        assertThatThrownBy(() -> correlationService.createCorrelation(input))
+                .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(mongoDBService);
+    }
+
+    @Test
+    void scanProducts_shouldApplyTheDefaultsAndRoundTheRates() {
+        // given - Gouda on the 1st and 3rd, both one day before an event; Brot on the 2nd
+        long[][] productDays = {{0b101L}, {0b010L}};
+        ProductDayMatrix matrix = new ProductDayMatrix(LocalDate.of(2024, 1, 1).toEpochDay(), 3,
+                List.of("Gouda", "Brot"), productDays, new long[]{0b111L});
+        when(mongoDBService.getProductDayMatrix(LocalDate.of(2024, 1, 1), null)).thenReturn(matrix);
+
+        CorrelationScanInputDto input = new CorrelationScanInputDto();
+        input.setOccurrenceDates(List.of("2024-01-02", "2024-01-04", "2024-01-04"));
+        input.setStartDate("2024-01-01");
+        input.setLagDays(1);
+        input.setMinDaysEaten(1);
+
+        // When
+        CorrelationScanOutputDto result = correlationService.scanProducts(input);
+
+        // Then
+        assertThat(result.getEventDateCount()).isEqualTo(2);
+        assertThat(result.getWindowDays()).isEqualTo(1);
+        assertThat(result.getBaselinePercentage()).isEqualTo(66.67);
+        assertThat(result.getProducts()).hasSize(1);
+        assertThat(result.getProducts().getFirst().getName()).isEqualTo("Gouda");
+        assertThat(result.getProducts().getFirst().getPercentage()).isEqualTo(100.0);
+        assertThat(result.getProducts().getFirst().getLift()).isEqualTo(1.5);
+    }
+
+    @Test
+    void scanProducts_whenTheWindowIsOutOfRange_shouldThrow() {
+        // Given
+        CorrelationScanInputDto input = new CorrelationScanInputDto();
+        input.setOccurrenceDates(List.of("2024-01-02"));
+        input.setLagDays(CorrelationInputDto.MAX_LAG_DAYS);
+        input.setWindowDays(2);
+
+        // When / Then
+        assertThatThrownBy(() -> correlationService.scanProducts(input))
+                .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(mongoDBService);
+    }
+
+    @Test
+    void correlateNutrients_shouldReportEveryLagForTheRequestedMetrics() {
+        // Given - sugar is raised on the day before each event
+        List<FddbData> days = new ArrayList<>();
+        for (int day = 1; day <= 10; day++) {
+            FddbData entry = new FddbData();
+            entry.setDate(LocalDate.of(2024, 3, day));
+            entry.setTotalCalories(2000);
+            entry.setTotalSugar(day == 4 || day == 8 ? 90 : 30);
+            days.add(entry);
+        }
+        when(mongoDBService.findDailyTotals(LocalDate.of(2024, 3, 1), null)).thenReturn(days);
+        when(mongoDBService.getProductDayMatrix(LocalDate.of(2024, 3, 1), null))
+                .thenReturn(everyDayLogged(LocalDate.of(2024, 3, 1), 10));
+
+        NutrientCorrelationInputDto input = new NutrientCorrelationInputDto();
+        input.setOccurrenceDates(List.of("2024-03-05", "2024-03-09"));
+        input.setStartDate("2024-03-01");
+        input.setMetrics(List.of(NutrientMetric.SUGAR, NutrientMetric.SUGAR));
+
+        // When
+        NutrientCorrelationOutputDto result = correlationService.correlateNutrients(input);
+
+        // Then - the default lags are the event day and the three days before it
+        assertThat(result.getLoggedDays()).isEqualTo(10);
+        assertThat(result.getMaxLagDays()).isEqualTo(3);
+        assertThat(result.getWindowDays()).isEqualTo(1);
+        assertThat(result.getEffects()).containsOnlyKeys(NutrientMetric.SUGAR);
+        List<NutrientLagEffect> sugar = result.getEffects().get(NutrientMetric.SUGAR);
+        assertThat(sugar).hasSize(4);
+        assertThat(sugar.get(1).getMeanInWindow()).isEqualTo(90.0);
+        assertThat(sugar.get(1).getMeanOtherDays()).isEqualTo(30.0);
+        assertThat(sugar.get(1).getCorrelation()).isEqualTo(1.0);
+        assertThat(sugar.get(0).getCorrelation()).isEqualTo(-0.25);
+    }
+
+    @Test
+    void correlateNutrients_withoutOccurrenceDates_shouldThrow() {
+        // Given
+        NutrientCorrelationInputDto input = new NutrientCorrelationInputDto();
+        input.setOccurrenceDates(List.of());
+
+        // When / Then
+        assertThatThrownBy(() -> correlationService.correlateNutrients(input))
+                .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(mongoDBService);
+    }
+
+    private static ProductDayMatrix everyDayLogged(LocalDate firstDay, int days) {
+        long[] loggedDays = new long[ProductDayMatrix.wordCount(days)];
+        for (int day = 0; day < days; day++) {
+            loggedDays[day / Long.SIZE] |= 1L << day;
+        }
+        return new ProductDayMatrix(firstDay.toEpochDay(), days, List.of(), new long[0][], loggedDays);
+    }
+
     private List<ProductWithDate> createProductsWithDates(String productName, String... dates) {
         return Arrays.stream(dates)
                 .map(date -> {
@@ -0,0 +1,108 @@
+package dev.itobey.adapter.api.fddb.exporter.service;
+
+import dev.itobey.adapter.api.fddb.exporter.service.index.CoverageIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CoverageIndexTest {
+
+    private static final LocalDate DAY_1 = LocalDate.of(2024, 1, 1);
+
+    private CoverageIndex coverageIndex;
+
+    @BeforeEach
+    void setUp() {
+        coverageIndex = new CoverageIndex();
+        // logged: 1st-3rd and 5th-6th, so the 4th and the 7th are gaps
+        coverageIndex.buildIfAbsent(() -> List.of(
+                day(1), day(2), day(3), day(5), day(6)));
+    }
+
+    @Test
+    void queries_shouldBeReadOffTheRuns() {
+        assertThat(coverageIndex.countLogged(day(1), day(7))).isEqualTo(5);
+        assertThat(coverageIndex.missingDays(day(1), day(7))).containsExactly(day(4), day(7));
+        assertThat(coverageIndex.lastMissingDay(day(1), day(6))).isEqualTo(day(4));
+        assertThat(coverageIndex.longestStreak(day(1), day(7))).isEqualTo(3);
+        // today (the 7th) is not logged yet, so the streak still counts from the 6th
+        assertThat(coverageIndex.currentStreak(day(1), day(7))).isEqualTo(2);
+    }
+
+    @Test
+    void queries_shouldBeClippedToTheRange() {
+        assertThat(coverageIndex.countLogged(day(2), day(5))).isEqualTo(3);
+        assertThat(coverageIndex.longestStreak(day(2), day(6))).isEqualTo(2);
+        assertThat(coverageIndex.currentStreak(day(6), day(7))).isEqualTo(1);
+        assertThat(coverageIndex.lastMissingDay(day(5), day(6))).isNull();
+    }
+
+    @Test
+    void gaps_shouldBeCountedAsRunsOfMissingDays() {
+        // when
+        coverageIndex.record(day(9), true);
+
+        // then - the 4th, the 7th-8th and the 10th
+        assertThat(coverageIndex.countGaps(day(1), day(10))).isEqualTo(3);
+        assertThat(coverageIndex.longestGap(day(1), day(10)))
+                .isEqualTo(new CoverageIndex.Gap(day(7), day(8)));
+        assertThat(coverageIndex.longestGap(day(1), day(3))).isNull();
+    }
+
+    @Test
+    void queries_shouldTreatDaysBeforeTheEpochAsMissing() {
+        LocalDate beforeEpoch = LocalDate.of(1969, 12, 30);
+        coverageIndex.record(LocalDate.EPOCH, true);
+
+        assertThat(coverageIndex.missingDays(beforeEpoch, LocalDate.EPOCH))
+                .containsExactly(beforeEpoch, beforeEpoch.plusDays(1));
+        assertThat(coverageIndex.countGaps(beforeEpoch, LocalDate.EPOCH.plusDays(1))).isEqualTo(2);
+    }
+
+    @Test
+    void buildIfAbsent_shouldIgnoreDaysPastTheLastDay() {
+        // when
+        coverageIndex.invalidate();
+        coverageIndex.buildIfAbsent(() -> List.of(day(1), CoverageIndex.LAST_DAY.plusDays(1), LocalDate.MAX));
+        coverageIndex.record(LocalDate.MAX, true);
+
+        // then
+        assertThat(coverageIndex.countLogged(day(1), CoverageIndex.LAST_DAY)).isEqualTo(1);
+        assertThat(coverageIndex.lastMissingDay(day(1), CoverageIndex.LAST_DAY)).isEqualTo(CoverageIndex.LAST_DAY);
+    }
+
+    @Test
+    void record_shouldMergeAndSplitRuns() {
+        // when - filling the gap joins both runs
+        coverageIndex.record(day(4), true);
+
+        // then
+        assertThat(coverageIndex.longestStreak(day(1), day(7))).isEqualTo(6);
+        assertThat(coverageIndex.missingDays(day(1), day(7))).containsExactly(day(7));
+
+        // when - a day without calories splits the run again
+        coverageIndex.record(day(2), false);
+
+        // then
+        assertThat(coverageIndex.missingDays(day(1), day(7))).containsExactly(day(2), day(7));
+        assertThat(coverageIndex.longestStreak(day(1), day(7))).isEqualTo(4);
+    }
+
+    @Test
+    void invalidate_shouldRebuildOnTheNextBuild() {
+        // when
+        coverageIndex.invalidate();
+        coverageIndex.buildIfAbsent(() -> List.of(day(7)));
+
+        // then
+        assertThat(coverageIndex.missingDays(day(1), day(7))).hasSize(6);
+    }
+
+    private static LocalDate day(int dayOfMonth) {
+        return DAY_1.withDayOfMonth(dayOfMonth);
+    }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import dev.itobey.adapter.api.fddb.exporter.domain.FddbData;
+import dev.itobey.adapter.api.fddb.exporter.domain.Product;
 import dev.itobey.adapter.api.fddb.exporter.dto.DownloadFormat;
 import dev.itobey.adapter.api.fddb.exporter.dto.FddbDataDTO;
 import dev.itobey.adapter.api.fddb.exporter.mapper.FddbDataMapper;
@@ -13,16 +14,28 @@ import lombok.SneakyThrows;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mapstruct.factory.Mappers;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -35,8 +48,8 @@ class DataDownloadServiceTest {
     @Mock
     private PersistenceService persistenceService;
 
-    @Mock
-    private FddbDataMapper fddbDataMapper;
+    @Spy
+    private FddbDataMapper fddbDataMapper = Mappers.getMapper(FddbDataMapper.class);
 
     @Mock
     private ObjectMapper objectMapper;
@@ -45,7 +58,6 @@ class DataDownloadServiceTest {
     private DataDownloadService dataDownloadService;
 
     private List<FddbData> testFddbData;
-    private List<FddbDataDTO> testFddbDataDTO;
 
     @BeforeEach
     void setUp() {
@@ -61,44 +73,35 @@ class DataDownloadServiceTest {
 
         // Load test data from JSON fixtures
         testFddbData = TestDataLoader.loadListFromJson(TEST_DATA_PATH + "fddb-data-input.json", FddbData.class);
-        testFddbDataDTO = TestDataLoader.loadListFromJson(TEST_DATA_PATH + "fddb-data-dto-input.json", FddbDataDTO.class);
     }
 
     @Test
     @SneakyThrows
     void downloadData_whenIncludeProductsIsFalse_shouldReturnCsvWithTotalsOnly() {
         // given
-        when(persistenceService.findAllEntries()).thenReturn(testFddbData);
-        when(fddbDataMapper.toFddbDataDTO(anyList())).thenReturn(testFddbDataDTO);
-
-        List<FddbDataDTO> totalsOnly = TestDataLoader.loadListFromJson(
-                TEST_DATA_PATH + "fddb-data-dto-totals-only.json", FddbDataDTO.class);
-        when(fddbDataMapper.toFddbDataDTOWithoutProducts(anyList())).thenReturn(totalsOnly);
+        stubDailyTotals(null, null, testFddbData);
 
         // when
-        byte[] result = dataDownloadService.downloadData(null, null, DownloadFormat.CSV, false, ".");
+        String csv = download(null, null, DownloadFormat.CSV, false, ".");
 
         // then
-        String csv = new String(result, StandardCharsets.UTF_8);
         assertThat(csv).contains("\"Date\";\"Calories\";\"Fat\";\"Carbs\";\"Sugar\";\"Protein\";\"Fibre\"");
         assertThat(csv).contains("\"2024-01-01\";\"2000.0\";\"70.0\";\"250.0\";\"50.0\";\"100.0\";\"30.0\"");
         assertThat(csv).contains("\"2024-01-02\";\"2100.0\";\"75.0\";\"260.0\";\"55.0\";\"110.0\";\"35.0\"");
         assertThat(csv).contains("\"2024-01-03\";\"1900.0\";\"65.0\";\"240.0\";\"45.0\";\"95.0\";\"28.0\"");
-        verify(fddbDataMapper).toFddbDataDTOWithoutProducts(anyList());
+        assertThat(csv).doesNotContain("Banana");
     }
 
     @Test
     @SneakyThrows
     void downloadData_whenIncludeProductsIsTrue_shouldReturnCsvWithProducts() {
         // given
-        when(persistenceService.findAllEntries()).thenReturn(testFddbData);
-        when(fddbDataMapper.toFddbDataDTO(anyList())).thenReturn(testFddbDataDTO);
+        stubEntries(null, null, testFddbData);
 
         // when
-        byte[] result = dataDownloadService.downloadData(null, null, DownloadFormat.CSV, true, ".");
+        String csv = download(null, null, DownloadFormat.CSV, true, ".");
 
         // then
-        String csv = new String(result, StandardCharsets.UTF_8);
         assertThat(csv).contains("\"Date\";\"Product Name\";\"Amount\";\"Calories\";\"Fat\";\"Carbs\";\"Protein\";\"Link\"");
         assertThat(csv).contains("Banana");
         assertThat(csv).contains("100 g");
@@ -110,18 +113,13 @@ class DataDownloadServiceTest {
     @SneakyThrows
     void downloadData_whenDecimalSeparatorIsComma_shouldUseCommaSeparator() {
         // given
-        when(persistenceService.findAllEntries()).thenReturn(testFddbData);
-        when(fddbDataMapper.toFddbDataDTO(anyList())).thenReturn(testFddbDataDTO);
-
-        List<FddbDataDTO> totalsOnly = TestDataLoader.loadListFromJson(
-                TEST_DATA_PATH + "fddb-data-dto-decimal-test.json", FddbDataDTO.class);
-        when(fddbDataMapper.toFddbDataDTOWithoutProducts(anyList())).thenReturn(totalsOnly);
+        stubDailyTotals(null, null, TestDataLoader.loadListFromJson(
+                TEST_DATA_PATH + "fddb-data-dto-decimal-test.json", FddbData.class));
 
         // when
-        byte[] result = dataDownloadService.downloadData(null, null, DownloadFormat.CSV, false, ",");
+        String csv = download(null, null, DownloadFormat.CSV, false, ",");
 
         // then
-        String csv = new String(result, StandardCharsets.UTF_8);
         assertThat(csv).contains("2000,5");
         assertThat(csv).contains("70,3");
         assertThat(csv).contains("250,2");
@@ -131,18 +129,13 @@ class DataDownloadServiceTest {
     @SneakyThrows
     void downloadData_whenDecimalSeparatorIsDot_shouldUseDotSeparator() {
         // given
-        when(persistenceService.findAllEntries()).thenReturn(testFddbData);
-        when(fddbDataMapper.toFddbDataDTO(anyList())).thenReturn(testFddbDataDTO);
-
-        List<FddbDataDTO> totalsOnly = TestDataLoader.loadListFromJson(
-                TEST_DATA_PATH + "fddb-data-dto-decimal-test.json", FddbDataDTO.class);
-        when(fddbDataMapper.toFddbDataDTOWithoutProducts(anyList())).thenReturn(totalsOnly);
+        stubDailyTotals(null, null, TestDataLoader.loadListFromJson(
+                TEST_DATA_PATH + "fddb-data-dto-decimal-test.json", FddbData.class));
 
         // when
-        byte[] result = dataDownloadService.downloadData(null, null, DownloadFormat.CSV, false, ".");
+        String csv = download(null, null, DownloadFormat.CSV, false, ".");
 
         // then
-        String csv = new String(result, StandardCharsets.UTF_8);
         assertThat(csv).contains("2000.5");
         assertThat(csv).contains("70.3");
         assertThat(csv).contains("250.2");
@@ -152,19 +145,12 @@ class DataDownloadServiceTest {
     @SneakyThrows
     void downloadData_whenIncludeProductsIsFalse_shouldReturnJsonWithTotalsOnly() {
         // given
-        when(persistenceService.findAllEntries()).thenReturn(testFddbData);
-        when(fddbDataMapper.toFddbDataDTO(anyList())).thenReturn(testFddbDataDTO);
-
-        List<FddbDataDTO> totalsOnly = TestDataLoader.loadListFromJson(
-                TEST_DATA_PATH + "fddb-data-dto-single-day.json", FddbDataDTO.class);
-        when(fddbDataMapper.toFddbDataDTOWithoutProducts(anyList())).thenReturn(totalsOnly);
-
+        stubDailyTotals(null, null, testFddbData.subList(0, 1));
 
         // when
-        byte[] result = dataDownloadService.downloadData(null, null, DownloadFormat.JSON, false, ".");
+        String json = download(null, null, DownloadFormat.JSON, false, ".");
 
         // then
-        String json = new String(result, StandardCharsets.UTF_8);
         assertThat(json).contains("\"date\" : \"2024-01-01\"");
         assertThat(json).contains("\"totalCalories\" : 2000.0");
         // The products field is present but null when not included
@@ -175,18 +161,17 @@ class DataDownloadServiceTest {
     @SneakyThrows
     void downloadData_whenIncludeProductsIsTrue_shouldReturnJsonWithProducts() {
         // given
-        when(persistenceService.findAllEntries()).thenReturn(testFddbData);
-        when(fddbDataMapper.toFddbDataDTO(anyList())).thenReturn(testFddbDataDTO);
-
+        stubEntries(null, null, testFddbData);
 
         // when
-        byte[] result = dataDownloadService.downloadData(null, null, DownloadFormat.JSON, true, ".");
+        String json = download(null, null, DownloadFormat.JSON, true, ".");
 
-        // then
-        String json = new String(result, StandardCharsets.UTF_8);
-        assertThat(json).contains("\"date\" : \"2024-01-01\"");
+        // then - one array holding every day, however many were streamed into it
+        assertThat(json).startsWith("[").endsWith("]");
+        assertThat(json).contains("\"date\" : \"2024-01-01\"", "\"date\" : \"2024-01-03\"");
         assertThat(json).contains("\"products\"");
         assertThat(json).contains("\"name\" : \"Banana\"");
+        assertThat(new ObjectMapper().readTree(json).size()).isEqualTo(3);
     }
 
     @Test
@@ -195,20 +180,13 @@ class DataDownloadServiceTest {
         // given
         LocalDate fromDate = LocalDate.of(2024, 1, 2);
         LocalDate toDate = LocalDate.of(2024, 1, 2);
-        when(persistenceService.findByDateBetween(fromDate, toDate)).thenReturn(testFddbData);
-        when(fddbDataMapper.toFddbDataDTO(anyList())).thenReturn(testFddbDataDTO);
-
-        List<FddbDataDTO> totalsOnly = TestDataLoader.loadListFromJson(
-                TEST_DATA_PATH + "fddb-data-dto-date-range-filter.json", FddbDataDTO.class);
-        when(fddbDataMapper.toFddbDataDTOWithoutProducts(anyList())).thenReturn(totalsOnly);
+        stubDailyTotals(fromDate, toDate, testFddbData.subList(1, 2));
 
         // when
-        byte[] result = dataDownloadService.downloadData(fromDate, toDate, DownloadFormat.CSV, false, ".");
-
-        verify(persistenceService).findByDateBetween(fromDate, toDate);
-        verify(persistenceService, never()).findAllEntries();
+        String csv = download(fromDate, toDate, DownloadFormat.CSV, false, ".");
 
-        String csv = new String(result, StandardCharsets.UTF_8);
+        // then
+        verify(persistenceService).streamByDateBetween(fromDate, toDate);
         assertThat(csv).doesNotContain("2024-01-01");
         assertThat(csv).contains("2024-01-02");
         assertThat(csv).doesNotContain("2024-01-03");
@@ -218,47 +196,224 @@ class DataDownloadServiceTest {
     @SneakyThrows
     void downloadData_whenProductsListEmpty_shouldHandleEmptyProductsList() {
         // given
-        List<FddbData> emptyProductsData = TestDataLoader.loadListFromJson(
-                TEST_DATA_PATH + "fddb-data-empty-products.json", FddbData.class);
-        List<FddbDataDTO> emptyProductsDTOData = TestDataLoader.loadListFromJson(
-                TEST_DATA_PATH + "fddb-data-empty-products.json", FddbDataDTO.class);
-
-        when(persistenceService.findAllEntries()).thenReturn(emptyProductsData);
-        when(fddbDataMapper.toFddbDataDTO(anyList())).thenReturn(emptyProductsDTOData);
+        stubEntries(null, null, TestDataLoader.loadListFromJson(
+                TEST_DATA_PATH + "fddb-data-empty-products.json", FddbData.class));
 
         // when
-        byte[] result = dataDownloadService.downloadData(null, null, DownloadFormat.CSV, true, ".");
+        String csv = download(null, null, DownloadFormat.CSV, true, ".");
 
         // then
-        String csv = new String(result, StandardCharsets.UTF_8);
         assertThat(csv).contains("2024-01-01");
         assertThat(csv).contains("2000.0");
     }
 
     @Test
     @SneakyThrows
-    void downloadData_whenUnsorted_shouldSortByDate() {
+    void downloadData_whenIncludeProductsIsFalse_shouldNotReadTheProducts() {
         // given
-        List<FddbData> unsortedData = TestDataLoader.loadListFromJson(
-                TEST_DATA_PATH + "fddb-data-unsorted.json", FddbData.class);
-        List<FddbDataDTO> unsortedDTOData = TestDataLoader.loadListFromJson(
-                TEST_DATA_PATH + "fddb-data-unsorted.json", FddbDataDTO.class);
+        stubDailyTotals(null, null, testFddbData);
 
-        when(persistenceService.findAllEntries()).thenReturn(unsortedData);
-        when(fddbDataMapper.toFddbDataDTO(anyList())).thenReturn(unsortedDTOData);
+        // when
+        String json = download(null, null, DownloadFormat.JSON, false, ".");
 
-        List<FddbDataDTO> totalsOnly = TestDataLoader.loadListFromJson(
-                TEST_DATA_PATH + "fddb-data-dto-totals-only.json", FddbDataDTO.class);
-        when(fddbDataMapper.toFddbDataDTOWithoutProducts(anyList())).thenReturn(totalsOnly);
+        // then - the totals come from the cursor without products, mapped once
+        assertThat(json).contains("\"totalCalories\" : 2100.0");
+        verify(persistenceService, never()).streamByDateBetween(any(), any());
+        verify(fddbDataMapper, never()).toFddbDataDTO(any(FddbData.class));
+        verify(fddbDataMapper, never()).toFddbDataDTOWithoutProducts(any(FddbDataDTO.class));
+    }
+
+    @Test
+    @SneakyThrows
+    void downloadData_shouldWriteTheDaysInTheOrderOfTheCursorAndCloseIt() {
+        // given - the cursor is sorted by the date index, so its order is the order of the file
+        AtomicBoolean closed = new AtomicBoolean();
+        when(persistenceService.streamDailyTotals(null, null))
+                .thenAnswer(invocation -> testFddbData.stream().onClose(() -> closed.set(true)));
 
         // when
-        byte[] result = dataDownloadService.downloadData(null, null, DownloadFormat.CSV, false, ".");
+        String csv = download(null, null, DownloadFormat.CSV, false, ".");
 
         // then
-        String csv = new String(result, StandardCharsets.UTF_8);
         String[] lines = csv.split("\n");
         assertThat(lines[1]).contains("2024-01-01");
         assertThat(lines[2]).contains("2024-01-02");
         assertThat(lines[3]).contains("2024-01-03");
+        assertThat(closed).isTrue();
+    }
+
+    @Test
+    @SneakyThrows
+    void downloadData_shouldLeaveTheCallersStreamOpen() {
+        // given
+        stubDailyTotals(null, null, testFddbData);
+        OutputStream outputStream = mock(OutputStream.class);
+
+        // when
+        dataDownloadService.downloadData(null, null, DownloadFormat.JSON, false, ".", outputStream);
+
+        // then - the response stream belongs to the servlet container
+        verify(outputStream, never()).close();
+    }
+
+    @Test
+    @SneakyThrows
+    void downloadData_whenFormatIsTables_shouldWriteNormalizedTablesWithAProductDictionary() {
+        // given - banana again on the third day, with a different amount
+        testFddbData.get(2).getProducts().add(new Product("Banana", "200 g", 178, 0.6, 46, 2.2, "http://link1"));
+        stubEntries(null, null, testFddbData);
+
+        // when
+        Map<String, String> tables = downloadTables(true);
+
+        // then - the large table is streamed first, the small ones follow
+        assertThat(tables.keySet()).containsExactly("occurrences.csv", "days.csv", "products.csv");
+        assertThat(tables.get("occurrences.csv").split("\n")).containsExactly(
+                "date,product_id,amount,calories,fat,carbs,protein",
+                "2024-01-01,0,100 g,89.0,0.3,23.0,1.1",
+                "2024-01-02,1,150 g,78.0,0.2,21.0,0.5",
+                "2024-01-03,0,200 g,178.0,0.6,46.0,2.2");
+        assertThat(tables.get("days.csv").split("\n")).containsExactly(
+                "date,calories,fat,carbs,sugar,protein,fibre",
+                "2024-01-01,2000.0,70.0,250.0,50.0,100.0,30.0",
+                "2024-01-02,2100.0,75.0,260.0,55.0,110.0,35.0",
+                "2024-01-03,1900.0,65.0,240.0,45.0,95.0,28.0");
+        assertThat(tables.get("products.csv").split("\n")).containsExactly(
+                "product_id,name,link",
+                "0,Banana,http://link1",
+                "1,Apple,http://link2");
+    }
+
+    @Test
+    @SneakyThrows
+    void downloadData_whenFormatIsTablesWithoutProducts_shouldOnlyWriteTheDays() {
+        // given
+        stubDailyTotals(null, null, testFddbData);
+
+        // when
+        Map<String, String> tables = downloadTables(false);
+
+        // then
+        assertThat(tables.keySet()).containsExactly("days.csv");
+        assertThat(tables.get("days.csv").split("\n")).hasSize(4);
+    }
+
+    @Test
+    @SneakyThrows
+    void downloadData_whenFormatIsTables_shouldQuoteOnlyTheFieldsThatNeedIt() {
+        // given
+        testFddbData.get(0).getProducts().getFirst().setName("Brot, \"Vollkorn\"");
+        stubEntries(null, null, testFddbData);
+
+        // when
+        Map<String, String> tables = downloadTables(true);
+
+        // then
+        assertThat(tables.get("products.csv")).contains("0,\"Brot, \"\"Vollkorn\"\"\",http://link1");
+    }
+
+    @Test
+    @SneakyThrows
+    void downloadData_whenFormatIsTables_shouldLeaveTheCallersStreamOpen() {
+        // given
+        stubEntries(null, null, testFddbData);
+        OutputStream outputStream = mock(OutputStream.class);
+
+        // when
+        dataDownloadService.downloadData(null, null, DownloadFormat.TABLES, true, ".", outputStream);
+
+        // then
+        verify(outputStream, never()).close();
+    }
+
+    @Test
+    @SneakyThrows
+    void downloadData_whenFormatIsNdjson_shouldWriteOneDayPerLine() {
+        // given
+        stubEntries(null, null, testFddbData);
+        stubDailyTotals(null, null, testFddbData);
+
+        // when
+        String withProducts = download(null, null, DownloadFormat.NDJSON, true, ".");
+        String totalsOnly = download(null, null, DownloadFormat.NDJSON, false, ".");
+
+        // then - not indented, so every line is a complete day
+        assertThat(withProducts.split("\n")).hasSize(3)
+                .allSatisfy(line -> assertThat(line).startsWith("{").endsWith("}"));
+        assertThat(withProducts.split("\n")[0]).contains("\"date\":\"2024-01-01\"", "\"name\":\"Banana\"");
+        assertThat(totalsOnly.split("\n")).hasSize(3);
+        assertThat(totalsOnly).contains("\"totalCalories\":2100.0").doesNotContain("Banana");
+    }
+
+    @Test
+    @SneakyThrows
+    void downloadChanges_shouldWriteOneEntryPerLineWithItsRevision() {
+        // given
+        testFddbData.get(0).setRevision(5L);
+        testFddbData.get(0).setLastModified(Instant.parse("2024-01-02T03:00:00Z"));
+        testFddbData.get(1).setRevision(6L);
+        when(persistenceService.streamChangedSince(4L)).thenAnswer(invocation -> testFddbData.subList(0, 2).stream());
+
+        // when
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        dataDownloadService.downloadChanges(4L, outputStream);
+
+        // then
+        String ndjson = outputStream.toString(StandardCharsets.UTF_8);
+        assertThat(ndjson).endsWith("\n");
+        String[] lines = ndjson.split("\n");
+        assertThat(lines).hasSize(2);
+        assertThat(lines[0]).startsWith("{\"id\":\"1\",\"date\":\"2024-01-01\"")
+                .contains("\"name\":\"Banana\"")
+                .contains("\"lastModified\":\"2024-01-02T03:00:00Z\"")
+                .endsWith("\"revision\":5}");
+        assertThat(lines[1]).contains("\"date\":\"2024-01-02\"").endsWith("\"revision\":6}");
+    }
+
+    private void stubEntries(LocalDate fromDate, LocalDate toDate, List<FddbData> entries) {
+        when(persistenceService.streamByDateBetween(fromDate, toDate)).thenAnswer(invocation -> entries.stream());
+    }
+
+    /**
+     * Stubs the cursor of the totals-only downloads, which reads the entries without their
+     * products, as the projection of the query would.
+     */
+    private void stubDailyTotals(LocalDate fromDate, LocalDate toDate, List<FddbData> entries) {
+        when(persistenceService.streamDailyTotals(fromDate, toDate)).thenAnswer(invocation -> entries.stream()
+                .map(entry -> {
+                    FddbData totals = new FddbData();
+                    totals.setId(entry.getId());
+                    totals.setDate(entry.getDate());
+                    totals.setTotalCalories(entry.getTotalCalories());
+                    totals.setTotalFat(entry.getTotalFat());
+                    totals.setTotalCarbs(entry.getTotalCarbs());
+                    totals.setTotalSugar(entry.getTotalSugar());
+                    totals.setTotalProtein(entry.getTotalProtein());
+                    totals.setTotalFibre(entry.getTotalFibre());
+                    return totals;
+                }));
+    }
+
+    @SneakyThrows
+    private String download(LocalDate fromDate, LocalDate toDate, DownloadFormat format, boolean includeProducts,
+                            String decimalSeparator) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        dataDownloadService.downloadData(fromDate, toDate, format, includeProducts, decimalSeparator, outputStream);
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
+
+    @SneakyThrows
+    private Map<String, String> downloadTables(boolean includeProducts) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        // the separator is ignored, the tables always use a dot
+        dataDownloadService.downloadData(null, null, DownloadFormat.TABLES, includeProducts, ",", outputStream);
+
+        Map<String, String> tables = new LinkedHashMap<>();
+        try (ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+            for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                tables.put(entry.getName(), new String(zip.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return tables;
     }
 }
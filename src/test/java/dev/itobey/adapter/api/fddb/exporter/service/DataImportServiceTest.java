@@ -0,0 +1,250 @@
+package dev.itobey.adapter.api.fddb.exporter.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.itobey.adapter.api.fddb.exporter.domain.FddbData;
+import dev.itobey.adapter.api.fddb.exporter.domain.Product;
+import dev.itobey.adapter.api.fddb.exporter.dto.DownloadFormat;
+import dev.itobey.adapter.api.fddb.exporter.dto.ImportResultDTO;
+import dev.itobey.adapter.api.fddb.exporter.mapper.FddbDataMapper;
+import dev.itobey.adapter.api.fddb.exporter.service.persistence.PersistenceService;
+import dev.itobey.adapter.api.fddb.exporter.testutil.TestDataLoader;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.mapstruct.factory.Mappers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class DataImportServiceTest {
+
+    @Mock
+    private PersistenceService persistenceService;
+    @Mock
+    private FddbDataService fddbDataService;
+
+    private final FddbDataMapper fddbDataMapper = Mappers.getMapper(FddbDataMapper.class);
+
+    private DataImportService dataImportService;
+    private DataDownloadService dataDownloadService;
+    private List<FddbData> testFddbData;
+    private final List<List<FddbData>> batches = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        dataImportService = new DataImportService(persistenceService, fddbDataMapper, fddbDataService,
+                new ObjectMapper());
+        dataImportService.initEntryReader();
+        // the files to import are written by the download itself
+        dataDownloadService = new DataDownloadService(persistenceService, fddbDataMapper, new ObjectMapper());
+        dataDownloadService.initJsonExportMapper();
+
+        testFddbData = TestDataLoader.loadListFromJson("testdata/download-service/fddb-data-input.json",
+                FddbData.class);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+            "CSV, ',', false",
+            "CSV, '.', true",
+            "JSON, '.', false",
+            "NDJSON, '.', true"
+    })
+    @SneakyThrows
+    void importData_shouldReadBackWhatTheDownloadWrote(DownloadFormat format, String decimalSeparator,
+                                                        boolean gzip) {
+        // given
+        byte[] download = download(format, decimalSeparator);
+        stubImport();
+
+        // when
+        ImportResultDTO result = dataImportService.importData(format,
+                new ByteArrayInputStream(gzip ? gzip(download) : download));
+
+        // then - equal but for the id, which belongs to the instance the download came from
+        assertThat(batches).hasSize(1);
+        assertThat(batches.getFirst()).containsExactlyElementsOf(testFddbData);
+        assertThat(batches.getFirst()).extracting(FddbData::getId).containsOnlyNulls();
+        assertThat(result.getImportedDays()).isEqualTo(3);
+        assertThat(result.getWrittenDays()).isEqualTo(3);
+        assertThat(result.getUnchangedDays()).isZero();
+        assertThat(result.getFromDate()).isEqualTo(LocalDate.of(2024, 1, 1));
+        assertThat(result.getToDate()).isEqualTo(LocalDate.of(2024, 1, 3));
+    }
+
+    @Test
+    @SneakyThrows
+    void importData_shouldWriteInBatches() {
+        // given
+        StringBuilder csv = new StringBuilder(String.join(";", DataDownloadService.FULL_DATA_CSV_HEADER)).append('\n');
+        LocalDate day = LocalDate.of(2020, 1, 1);
+        for (int i = 0; i < DataImportService.BATCH_SIZE + 1; i++) {
+            // a product spanning two rows must not be split across batches
+            csv.append(day.plusDays(i)).append(";Kaffee;1 Tasse;2,0;0,1;0,3;0,3;;2000;70;250;50;100;30\n");
+            csv.append(day.plusDays(i)).append(";Brot;1 Scheibe;120;1;22;4;/db/brot;2000;70;250;50;100;30\n");
+        }
+        stubImport();
+
+        // when
+        ImportResultDTO result = dataImportService.importData(DownloadFormat.CSV,
+                new ByteArrayInputStream(csv.toString().getBytes(StandardCharsets.UTF_8)));
+
+        // then
+        assertThat(batches).extracting(List::size).containsExactly(DataImportService.BATCH_SIZE, 1);
+        FddbData last = batches.getLast().getFirst();
+        assertThat(last.getDate()).isEqualTo(day.plusDays(DataImportService.BATCH_SIZE));
+        assertThat(last.getProducts()).containsExactly(
+                new Product("Kaffee", "1 Tasse", 2.0, 0.1, 0.3, 0.3, null),
+                new Product("Brot", "1 Scheibe", 120, 1, 22, 4, "/db/brot"));
+        assertThat(last.getTotalCalories()).isEqualTo(2000);
+        assertThat(result.getImportedDays()).isEqualTo(DataImportService.BATCH_SIZE + 1);
+    }
+
+    @Test
+    @SneakyThrows
+    void importData_shouldReportTheDaysStoredLikeThisAlready() {
+        // given
+        byte[] download = download(DownloadFormat.JSON, ".");
+        when(fddbDataService.withExportLock(any())).thenAnswer(invocation ->
+                invocation.<Supplier<?>>getArgument(0).get());
+        when(persistenceService.importEntries(anyList())).thenReturn(1);
+
+        // when
+        ImportResultDTO result = dataImportService.importData(DownloadFormat.JSON,
+                new ByteArrayInputStream(download));
+
+        // then
+        assertThat(result.getWrittenDays()).isEqualTo(1);
+        assertThat(result.getUnchangedDays()).isEqualTo(2);
+    }
+
+    @Test
+    @SneakyThrows
+    void importData_whenADateComesUpTwice_shouldCountItOnce() {
+        // given - the first day once more at the end
+        String ndjson = new String(download(DownloadFormat.NDJSON, "."), StandardCharsets.UTF_8);
+        String repeated = ndjson + ndjson.substring(0, ndjson.indexOf('\n') + 1);
+        stubImport();
+
+        // when
+        ImportResultDTO result = dataImportService.importData(DownloadFormat.NDJSON,
+                new ByteArrayInputStream(repeated.getBytes(StandardCharsets.UTF_8)));
+
+        // then
+        assertThat(batches.getFirst()).hasSize(3);
+        assertThat(result.getImportedDays()).isEqualTo(3);
+        assertThat(result.getWrittenDays()).isEqualTo(3);
+        assertThat(result.getUnchangedDays()).isZero();
+    }
+
+    @Test
+    @SneakyThrows
+    void importData_whenTheCsvHasNoProducts_shouldRefuseIt() {
+        // given
+        byte[] download = download(DownloadFormat.CSV, ",", false);
+        when(fddbDataService.withExportLock(any())).thenAnswer(invocation ->
+                invocation.<Supplier<?>>getArgument(0).get());
+
+        // when / then - it would strip the products off every day in it
+        assertThatThrownBy(() -> dataImportService.importData(DownloadFormat.CSV, new ByteArrayInputStream(download)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("totals-only");
+        verify(persistenceService, never()).importEntries(anyList());
+    }
+
+    @Test
+    @SneakyThrows
+    void importData_whenTheJsonHasNoProducts_shouldRefuseIt() {
+        // given
+        byte[] download = download(DownloadFormat.NDJSON, ".", false);
+        when(fddbDataService.withExportLock(any())).thenAnswer(invocation ->
+                invocation.<Supplier<?>>getArgument(0).get());
+
+        // when / then
+        assertThatThrownBy(() -> dataImportService.importData(DownloadFormat.NDJSON, new ByteArrayInputStream(download)))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("2024-01-01");
+        verify(persistenceService, never()).importEntries(anyList());
+    }
+
+    @Test
+    @SneakyThrows
+    void importData_whenARowIsBroken_shouldNameTheLine() {
+        // given
+        String csv = String.join(";", DataDownloadService.FULL_DATA_CSV_HEADER) + "\n"
+                + "2024-01-01;Kaffee;1 Tasse;viel;0;0;0;;2;0;0;0;0;0\n";
+        when(fddbDataService.withExportLock(any())).thenAnswer(invocation ->
+                invocation.<Supplier<?>>getArgument(0).get());
+
+        // when / then
+        assertThatThrownBy(() -> dataImportService.importData(DownloadFormat.CSV,
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8))))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("Line 2: not a number: viel");
+    }
+
+    @Test
+    void importData_whenTheFormatIsTables_shouldRefuseItWithoutTakingTheLock() {
+        // when / then
+        assertThatThrownBy(() -> dataImportService.importData(DownloadFormat.TABLES,
+                new ByteArrayInputStream(new byte[0])))
+                .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(fddbDataService, persistenceService);
+    }
+
+    private void stubImport() {
+        when(fddbDataService.withExportLock(any())).thenAnswer(invocation ->
+                invocation.<Supplier<?>>getArgument(0).get());
+        when(persistenceService.importEntries(anyList())).thenAnswer(invocation -> {
+            List<FddbData> batch = invocation.getArgument(0);
+            batches.add(List.copyOf(batch));
+            return batch.size();
+        });
+    }
+
+    private byte[] download(DownloadFormat format, String decimalSeparator) {
+        return download(format, decimalSeparator, true);
+    }
+
+    @SneakyThrows
+    private byte[] download(DownloadFormat format, String decimalSeparator, boolean includeProducts) {
+        if (includeProducts) {
+            when(persistenceService.streamByDateBetween(null, null)).thenAnswer(invocation -> testFddbData.stream());
+        } else {
+            when(persistenceService.streamDailyTotals(null, null)).thenAnswer(invocation -> testFddbData.stream());
+        }
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        dataDownloadService.downloadData(null, null, format, includeProducts, decimalSeparator, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    @SneakyThrows
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(data);
+        }
+        return compressed.toByteArray();
+    }
+}
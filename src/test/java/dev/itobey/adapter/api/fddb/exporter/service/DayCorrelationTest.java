@@ -0,0 +1,75 @@
+package dev.itobey.adapter.api.fddb.exporter.service;
+
+import dev.itobey.adapter.api.fddb.exporter.service.correlation.DayCorrelation;
+import org.junit.jupiter.api.Test;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DayCorrelationTest {
+
+    private static final LocalDate EVENT = LocalDate.of(2024, 3, 10);
+
+    @Test
+    void matchedAt_shouldReturnTheProductDaysTheLagBeforeAnEvent() {
+        // given
+        DayCorrelation days = new DayCorrelation(
+                List.of(EVENT, EVENT.minusDays(1), EVENT.minusDays(30), EVENT.plusDays(1)),
+                List.of(EVENT));
+
+        // then - a day after the event is no lag at all
+        assertThat(days.toDates(days.matchedAt(0))).containsExactly(EVENT);
+        assertThat(days.toDates(days.matchedAt(1))).containsExactly(EVENT.minusDays(1));
+        assertThat(days.toDates(days.matchedAt(30))).containsExactly(EVENT.minusDays(30));
+        assertThat(days.matchedAt(2).isEmpty()).isTrue();
+        assertThat(days.matchedAt(400).isEmpty()).isTrue();
+        assertThat(days.productDayCount()).isEqualTo(4);
+    }
+
+    @Test
+    void countEpisodes_shouldCollapseConsecutiveDaysWithinTheWindow() {
+        // given - eaten on the three days up to one event, and two days before another
+        LocalDate secondEvent = EVENT.plusDays(10);
+        DayCorrelation days = new DayCorrelation(
+                List.of(EVENT.minusDays(2), EVENT.minusDays(1), EVENT, secondEvent.minusDays(2)),
+                List.of(EVENT, secondEvent));
+
+        // when
+        BitSet within3Days = days.matchedWithin(3);
+        BitSet within2Days = days.matchedWithin(2);
+
+        // then
+        assertThat(days.toDates(within3Days)).hasSize(4);
+        assertThat(days.countEpisodes(within3Days, 3)).isEqualTo(2);
+        assertThat(days.toDates(within2Days)).containsExactly(EVENT.minusDays(1), EVENT);
+        assertThat(days.countEpisodes(within2Days, 2)).isEqualTo(1);
+    }
+
+    @Test
+    void matchedAt_whenLagIsNegative_shouldThrow() {
+        DayCorrelation days = new DayCorrelation(List.of(EVENT), List.of(EVENT));
+
+        assertThatThrownBy(() -> days.matchedAt(-1)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void constructor_whenTheDaysLieTooFarApart_shouldThrowBeforeAllocating() {
+        assertThatThrownBy(() -> new DayCorrelation(List.of(LocalDate.MIN), List.of(LocalDate.MAX)))
+                .isInstanceOf(DateTimeException.class);
+        assertThatThrownBy(() -> new DayCorrelation(List.of(EVENT, LocalDate.of(999_999, 1, 1)), List.of()))
+                .isInstanceOf(DateTimeException.class);
+    }
+
+    @Test
+    void matchedAt_whenNothingWasEaten_shouldMatchNothing() {
+        DayCorrelation days = new DayCorrelation(List.of(), List.of(EVENT));
+
+        assertThat(days.matchedAt(0).isEmpty()).isTrue();
+        assertThat(days.productDayCount()).isZero();
+    }
+}
@@ -0,0 +1,207 @@
+package dev.itobey.adapter.api.fddb.exporter.service;
+
+import dev.itobey.adapter.api.fddb.exporter.config.FddbExporterProperties;
+import dev.itobey.adapter.api.fddb.exporter.domain.FddbData;
+import dev.itobey.adapter.api.fddb.exporter.domain.Product;
+import dev.itobey.adapter.api.fddb.exporter.dto.ProductRanking;
+import dev.itobey.adapter.api.fddb.exporter.dto.TopProductDTO;
+import dev.itobey.adapter.api.fddb.exporter.service.cache.DataVersion;
+import dev.itobey.adapter.api.fddb.exporter.service.index.CoverageIndex;
+import dev.itobey.adapter.api.fddb.exporter.service.index.ProductDictionary;
+import dev.itobey.adapter.api.fddb.exporter.service.index.ProductNameIndex;
+import dev.itobey.adapter.api.fddb.exporter.service.persistence.PersistenceService;
+import dev.itobey.adapter.api.fddb.exporter.service.snapshot.DiarySnapshot;
+import dev.itobey.adapter.api.fddb.exporter.service.snapshot.DiarySnapshotService;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class DiarySnapshotServiceTest {
+
+    private static final LocalDate DAY = LocalDate.of(2024, 1, 1);
+
+    @Mock
+    private PersistenceService persistenceService;
+
+    @TempDir
+    private Path directory;
+
+    private final CoverageIndex coverageIndex = new CoverageIndex();
+    private final ProductNameIndex productNameIndex = new ProductNameIndex();
+    private final ProductDictionary productDictionary = new ProductDictionary();
+    private final DataVersion dataVersion = new DataVersion();
+    private Path file;
+    private DiarySnapshotService diarySnapshotService;
+    private List<FddbData> entries;
+
+    @BeforeEach
+    void setUp() {
+        file = directory.resolve("snapshots").resolve("diary.snapshot");
+        FddbExporterProperties.DiarySnapshot diarySnapshot = new FddbExporterProperties.DiarySnapshot();
+        diarySnapshot.setEnabled(true);
+        diarySnapshot.setFile(file.toString());
+        FddbExporterProperties properties = new FddbExporterProperties();
+        properties.setDiarySnapshot(diarySnapshot);
+        diarySnapshotService = new DiarySnapshotService(persistenceService, coverageIndex, productNameIndex,
+                productDictionary, dataVersion, properties);
+
+        entries = List.of(
+                entry(DAY, 2000, new Product("Kaffee", "1 Tasse", 2, 0.1, 0.3, 0.3, null),
+                        new Product("Brötchen", "1 Stück", 150, 1, 30, 5, "/db/broetchen")),
+                // an empty export: stored, but not logged
+                entry(DAY.plusDays(1), 0),
+                entry(DAY.plusDays(2), 1800, new Product("Kaffee", "2 Tassen", 4, 0.2, 0.6, 0.6, null)));
+    }
+
+    @Test
+    @SneakyThrows
+    void write_shouldStoreTheDiaryCompactlyAndReadItBack() {
+        // given
+        givenTheDiaryAtRevision(42);
+
+        // when
+        diarySnapshotService.write();
+
+        // then
+        DiarySnapshot snapshot = DiarySnapshot.map(file);
+        assertThat(snapshot.revision()).isEqualTo(42);
+        assertThat(snapshot.dayCount()).isEqualTo(3);
+        assertThat(snapshot.loggedDates()).containsExactly(DAY, DAY.plusDays(2));
+        // each name once, in the order first logged
+        assertThat(snapshot.productNames()).containsExactly("Kaffee", "Brötchen");
+
+        List<FddbData> days = snapshot.days();
+        assertThat(days).extracting(FddbData::getDate, FddbData::getTotalCalories)
+                .containsExactly(tuple(DAY, 2000.0), tuple(DAY.plusDays(1), 0.0), tuple(DAY.plusDays(2), 1800.0));
+        assertThat(days.getFirst().getProducts()).containsExactly(
+                new Product("Kaffee", null, 2, 0.1, 0.3, 0.3, null),
+                new Product("Brötchen", null, 150, 1, 30, 5, null));
+        assertThat(days.get(1).getProducts()).isEmpty();
+
+        try (var files = Files.list(file.getParent())) {
+            assertThat(files).containsExactly(file);
+        }
+    }
+
+    @Test
+    void load_whenTheDiaryIsStillAtTheRevision_shouldFillTheIndexesWithoutReadingIt() {
+        // given
+        givenTheDiaryAtRevision(42);
+        diarySnapshotService.write();
+        when(persistenceService.countAllEntries()).thenReturn(3L);
+
+        // when
+        boolean loaded = diarySnapshotService.load();
+
+        // then - answered by the indexes, which were filled from the file alone
+        assertThat(loaded).isTrue();
+        assertThat(coverageIndex.countLogged(DAY, DAY.plusDays(2))).isEqualTo(2);
+        assertThat(productNameIndex.resolve("kaffee")).isEqualTo(Set.of("Kaffee"));
+        List<TopProductDTO> topProducts = productDictionary.topProducts(ProductRanking.FREQUENCY, null, null, 10);
+        assertThat(topProducts).extracting(TopProductDTO::getName, TopProductDTO::getTimesEaten)
+                .containsExactly(tuple("Kaffee", 2L), tuple("Brötchen", 1L));
+        coverageIndex.buildIfAbsent(() -> {
+            throw new AssertionError("the index should be built already");
+        });
+        verify(persistenceService).streamByDateBetween(null, null);
+    }
+
+    @Test
+    void load_whenTheDiaryWasWrittenSince_shouldLeaveTheIndexesToTheDatabase() {
+        // given
+        givenTheDiaryAtRevision(42);
+        diarySnapshotService.write();
+        when(persistenceService.currentRevision()).thenReturn(43L);
+        when(persistenceService.countAllEntries()).thenReturn(3L);
+
+        // when / then
+        assertThat(diarySnapshotService.load()).isFalse();
+        assertIndexesNotBuilt();
+    }
+
+    @Test
+    void load_whenADayWasDeletedSince_shouldLeaveTheIndexesToTheDatabase() {
+        // given - a delete does not move the revision
+        givenTheDiaryAtRevision(42);
+        diarySnapshotService.write();
+        when(persistenceService.countAllEntries()).thenReturn(2L);
+
+        // when / then
+        assertThat(diarySnapshotService.load()).isFalse();
+        assertIndexesNotBuilt();
+    }
+
+    @Test
+    @SneakyThrows
+    void load_whenTheFileIsMissingOrBroken_shouldLeaveTheIndexesToTheDatabase() {
+        // when / then
+        assertThat(diarySnapshotService.load()).isFalse();
+
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, "date;totalCalories\n");
+        assertThat(diarySnapshotService.load()).isFalse();
+        assertIndexesNotBuilt();
+    }
+
+    @Test
+    @SneakyThrows
+    void load_whenTheFileHasAnOlderFormat_shouldLeaveTheIndexesToTheDatabase() {
+        // given - the header of a version 1 file, whose dictionary still held the links
+        Files.createDirectories(file.getParent());
+        ByteBuffer header = ByteBuffer.allocate(28).putInt(0x46444453).putInt(1).putLong(42).putInt(0).putInt(0).putInt(0);
+        Files.write(file, header.array());
+
+        // when / then
+        assertThat(diarySnapshotService.load()).isFalse();
+        assertIndexesNotBuilt();
+    }
+
+    private void givenTheDiaryAtRevision(long revision) {
+        when(persistenceService.currentRevision()).thenReturn(revision);
+        when(persistenceService.streamByDateBetween(null, null)).thenAnswer(invocation -> entries.stream());
+    }
+
+    private void assertIndexesNotBuilt() {
+        List<String> built = new ArrayList<>();
+        coverageIndex.buildIfAbsent(() -> {
+            built.add("coverage");
+            return List.of();
+        });
+        productNameIndex.buildIfAbsent(() -> {
+            built.add("names");
+            return List.of();
+        });
+        productDictionary.buildIfAbsent(() -> {
+            built.add("dictionary");
+            return List.of();
+        });
+        assertThat(built).containsExactly("coverage", "names", "dictionary");
+    }
+
+    private static FddbData entry(LocalDate date, double totalCalories, Product... products) {
+        FddbData entry = new FddbData();
+        entry.setDate(date);
+        entry.setTotalCalories(totalCalories);
+        entry.setProducts(new ArrayList<>(Stream.of(products).toList()));
+        return entry;
+    }
+}
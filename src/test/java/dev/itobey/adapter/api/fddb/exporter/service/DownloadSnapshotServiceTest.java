@@ -0,0 +1,151 @@
+package dev.itobey.adapter.api.fddb.exporter.service;
+
+import dev.itobey.adapter.api.fddb.exporter.config.FddbExporterProperties;
+import dev.itobey.adapter.api.fddb.exporter.dto.DownloadFormat;
+import dev.itobey.adapter.api.fddb.exporter.service.cache.DataVersion;
+import dev.itobey.adapter.api.fddb.exporter.service.snapshot.DownloadSnapshotService;
+import lombok.SneakyThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DownloadSnapshotServiceTest {
+
+    @Mock
+    private DataDownloadService dataDownloadService;
+
+    @TempDir
+    private Path directory;
+
+    private final DataVersion dataVersion = new DataVersion();
+    private DownloadSnapshotService downloadSnapshotService;
+
+    @BeforeEach
+    void setUp() {
+        FddbExporterProperties.DownloadSnapshots snapshots = new FddbExporterProperties.DownloadSnapshots();
+        snapshots.setEnabled(true);
+        snapshots.setDirectory(directory.toString());
+        FddbExporterProperties properties = new FddbExporterProperties();
+        properties.setDownloadSnapshots(snapshots);
+        downloadSnapshotService = new DownloadSnapshotService(dataDownloadService, dataVersion, properties);
+    }
+
+    @Test
+    @SneakyThrows
+    void renderStale_shouldWriteEveryVariantCompressed() {
+        // given: each variant writes what it was asked for
+        doAnswer(invocation -> {
+            String content = invocation.getArgument(2) + " " + invocation.getArgument(3) + " "
+                    + invocation.getArgument(4);
+            invocation.getArgument(5, OutputStream.class).write(content.getBytes(StandardCharsets.UTF_8));
+            return null;
+        }).when(dataDownloadService).downloadData(isNull(), isNull(), any(DownloadFormat.class), anyBoolean(),
+                anyString(), any(OutputStream.class));
+
+        // when
+        downloadSnapshotService.renderStale();
+
+        // then
+        DownloadSnapshotService.Snapshot csv = downloadSnapshotService.find(DownloadFormat.CSV, false, ",")
+                .orElseThrow();
+        assertThat(csv.file()).hasFileName("fddb-data-all-totals-only-comma.csv.gz");
+        assertThat(gunzip(csv.file())).isEqualTo("CSV false ,");
+        assertThat(csv.size()).isEqualTo(Files.size(csv.file()));
+        assertThat(csv.eTag()).startsWith("\"").endsWith("-" + Long.toHexString(csv.size()) + "\"");
+
+        // the decimal separator means nothing to the JSON
+        DownloadSnapshotService.Snapshot json = downloadSnapshotService.find(DownloadFormat.JSON, true, ",")
+                .orElseThrow();
+        assertThat(json.file()).hasFileName("fddb-data-all.json.gz");
+        assertThat(gunzip(json.file())).isEqualTo("JSON true .");
+
+        // six variants, and no temporary file left behind
+        try (var files = Files.list(directory)) {
+            assertThat(files).hasSize(6).allMatch(file -> file.toString().endsWith(".gz"));
+        }
+    }
+
+    @Test
+    void find_whenTheDataChanged_shouldNotServeTheSnapshotUntilItIsRenderedAgain() {
+        // given
+        downloadSnapshotService.renderStale();
+        assertThat(downloadSnapshotService.find(DownloadFormat.CSV, true, ".")).isPresent();
+
+        // when
+        dataVersion.bump();
+
+        // then
+        assertThat(downloadSnapshotService.find(DownloadFormat.CSV, true, ".")).isEmpty();
+        downloadSnapshotService.renderStale();
+        assertThat(downloadSnapshotService.find(DownloadFormat.CSV, true, ".")).isPresent();
+        verify(dataDownloadService, times(12)).downloadData(isNull(), isNull(), any(DownloadFormat.class),
+                anyBoolean(), anyString(), any(OutputStream.class));
+    }
+
+    @Test
+    void renderStale_shouldOnlyRenderWhatIsStale() {
+        // given
+        downloadSnapshotService.renderStale();
+
+        // when - nothing was written in between
+        downloadSnapshotService.renderStale();
+
+        // then
+        verify(dataDownloadService, times(6)).downloadData(isNull(), isNull(), any(DownloadFormat.class),
+                anyBoolean(), anyString(), any(OutputStream.class));
+    }
+
+    @Test
+    @SneakyThrows
+    void renderStale_whenAVariantFails_shouldKeepTheOthersAndLeaveNoTemporaryFile() {
+        // given
+        doAnswer(invocation -> {
+            if (invocation.getArgument(2) == DownloadFormat.JSON && invocation.<Boolean>getArgument(3)) {
+                throw new UncheckedIOException(new IOException("cursor closed"));
+            }
+            return null;
+        }).when(dataDownloadService).downloadData(isNull(), isNull(), any(DownloadFormat.class), anyBoolean(),
+                anyString(), any(OutputStream.class));
+
+        // when
+        downloadSnapshotService.renderStale();
+
+        // then
+        assertThat(downloadSnapshotService.find(DownloadFormat.JSON, true, ".")).isEmpty();
+        assertThat(downloadSnapshotService.find(DownloadFormat.JSON, false, ".")).isPresent();
+        try (var files = Files.list(directory)) {
+            assertThat(files).hasSize(5).noneMatch(file -> file.toString().endsWith(".tmp"));
+        }
+    }
+
+    @Test
+    void find_shouldNotServeAVariantThatIsNotKept() {
+        // when / then: the ZIP is compressed already, NDJSON is for ranges and syncs
+        assertThat(downloadSnapshotService.find(DownloadFormat.TABLES, true, ".")).isEmpty();
+        assertThat(downloadSnapshotService.find(DownloadFormat.NDJSON, false, ".")).isEmpty();
+    }
+
+    @SneakyThrows
+    private static String gunzip(Path file) {
+        try (InputStream gzip = new GZIPInputStream(Files.newInputStream(file))) {
+            return new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
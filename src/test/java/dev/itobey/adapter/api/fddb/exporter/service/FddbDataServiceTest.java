@@ -7,6 +7,8 @@ import dev.itobey.adapter.api.fddb.exporter.dto.*;
 import dev.itobey.adapter.api.fddb.exporter.exception.ExportInProgressException;
 import dev.itobey.adapter.api.fddb.exporter.exception.ParseException;
 import dev.itobey.adapter.api.fddb.exporter.mapper.FddbDataMapper;
+import dev.itobey.adapter.api.fddb.exporter.service.cache.DataVersion;
+import dev.itobey.adapter.api.fddb.exporter.service.cache.ResultCache;
 import dev.itobey.adapter.api.fddb.exporter.service.persistence.PersistenceService;
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.BeforeEach;
@@ -17,7 +19,9 @@ import org.junit.jupiter.params.provider.CsvSource;
 import org.mockito.Answers;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
 
 import java.time.DateTimeException;
 import java.time.LocalDate;
@@ -44,6 +48,11 @@ class FddbDataServiceTest {
     private FddbDataMapper fddbDataMapper;
     @Mock(answer = Answers.RETURNS_DEEP_STUBS)
     private FddbExporterProperties properties;
+    private final DataVersion dataVersion = new DataVersion();
+    @Spy
+    private ResultCache resultCache = new ResultCache(dataVersion);
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
 
     private FddbData mockFddbData;
     private FddbDataDTO mockFddbDataDTO;
@@ -255,8 +264,9 @@ class FddbDataServiceTest {
         ExportResultDTO result = fddbDataService.withExportLock(() ->
                 fddbDataService.exportForTimerange(new DateRangeDTO("2024-01-01", "2024-01-01")));
 
-        // then
+        // then: the nested run is part of the outer one, which finishes once
         assertEquals(List.of("2024-01-01"), result.getSuccessfulDays());
+        verify(eventPublisher, times(1)).publishEvent(any(ExportRunFinishedEvent.class));
     }
 
     @Test
@@ -268,6 +278,8 @@ class FddbDataServiceTest {
 
         // when / then: a failed export must not lock the application out of exporting for good
         assertEquals("fine", fddbDataService.withExportLock(() -> "fine"));
+        // and what the failed run did store is picked up all the same
+        verify(eventPublisher, times(2)).publishEvent(any(ExportRunFinishedEvent.class));
     }
 
     @Test
@@ -380,6 +392,26 @@ class FddbDataServiceTest {
         assertEquals(summary, result);
     }
 
+    @Test
+    void getProductSummary_shouldServeTheCachedResultUntilTheDataChanges() {
+        // given
+        ProductSummaryDTO summary = ProductSummaryDTO.builder().searchTerm("hafer").timesEaten(5).build();
+        LocalDate from = LocalDate.of(2024, 1, 1);
+        LocalDate to = LocalDate.of(2024, 1, 31);
+        when(persistenceService.getProductSummary("hafer", from, to)).thenReturn(summary);
+
+        // when
+        fddbDataService.getProductSummary("hafer", from, to);
+        fddbDataService.getProductSummary("hafer", from, to);
+        fddbDataService.getProductSummary("banane", from, to);
+        dataVersion.bump();
+        fddbDataService.getProductSummary("hafer", from, to);
+
+        // then - once for the first call, once for the other name, once after the write
+        verify(persistenceService, times(2)).getProductSummary("hafer", from, to);
+        verify(persistenceService).getProductSummary("banane", from, to);
+    }
+
     @Test
     void getProductSummary_whenRangeInverted_shouldThrowException() {
         assertThrows(DateTimeException.class, () -> fddbDataService.getProductSummary(
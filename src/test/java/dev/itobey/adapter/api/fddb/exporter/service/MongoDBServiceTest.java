@@ -2,29 +2,44 @@ package dev.itobey.adapter.api.fddb.exporter.service;
 
 import dev.itobey.adapter.api.fddb.exporter.domain.FddbData;
 import dev.itobey.adapter.api.fddb.exporter.domain.Product;
+import dev.itobey.adapter.api.fddb.exporter.domain.projection.ProductOccurrenceSummary;
 import dev.itobey.adapter.api.fddb.exporter.domain.projection.ProductWithDate;
+import dev.itobey.adapter.api.fddb.exporter.dto.ProductPairDTO;
 import dev.itobey.adapter.api.fddb.exporter.dto.ProductRanking;
 import dev.itobey.adapter.api.fddb.exporter.dto.ProductSummaryDTO;
 import dev.itobey.adapter.api.fddb.exporter.dto.TopProductDTO;
 import dev.itobey.adapter.api.fddb.exporter.repository.FddbDataRepository;
+import dev.itobey.adapter.api.fddb.exporter.service.index.ProductDictionary;
+import dev.itobey.adapter.api.fddb.exporter.service.index.ProductNameIndex;
 import dev.itobey.adapter.api.fddb.exporter.service.persistence.MongoDBService;
 import org.bson.Document;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -37,6 +52,10 @@ class MongoDBServiceTest {
     private FddbDataRepository fddbDataRepository;
     @Mock
     private MongoTemplate mongoTemplate;
+    @Spy
+    private ProductNameIndex productNameIndex = new ProductNameIndex();
+    @Spy
+    private ProductDictionary productDictionary = new ProductDictionary();
 
     @InjectMocks
     private MongoDBService mongoDBService;
@@ -58,20 +77,180 @@ class MongoDBServiceTest {
     }
 
     @Test
-    void findByProduct_shouldApplyWeekdayFilterAndLimit() {
-        // given - a Monday, a Saturday and another Monday
-        stubProductOccurrences(List.of(
-                occurrence(LocalDate.of(2024, 1, 1), "Banana", 100),
-                occurrence(LocalDate.of(2024, 1, 6), "Banana", 110),
-                occurrence(LocalDate.of(2024, 1, 8), "Banana", 120)));
+    void streamByDateBetween_shouldReadTheRangeFromACursorSortedByDate() {
+        // given
+        LocalDate fromDate = LocalDate.of(2024, 1, 1);
+        when(mongoTemplate.stream(any(Query.class), eq(FddbData.class), eq(COLLECTION_NAME)))
+                .thenAnswer(invocation -> Stream.of(new FddbData()));
+
+        // when
+        try (Stream<FddbData> result = mongoDBService.streamByDateBetween(fromDate, null)) {
+            assertThat(result).hasSize(1);
+        }
+
+        // then
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).stream(query.capture(), eq(FddbData.class), eq(COLLECTION_NAME));
+        assertThat(query.getValue().getQueryObject()).isEqualTo(new Document("date", new Document("$gte", fromDate)));
+        assertThat(query.getValue().getSortObject()).isEqualTo(new Document("date", 1));
+    }
+
+    @Test
+    void streamDailyTotals_shouldLeaveTheProductsOutOfTheQuery() {
+        // given
+        LocalDate toDate = LocalDate.of(2024, 12, 31);
+        when(mongoTemplate.stream(any(Query.class), eq(FddbData.class), eq(COLLECTION_NAME)))
+                .thenAnswer(invocation -> Stream.of(new FddbData()));
+
+        // when
+        try (Stream<FddbData> result = mongoDBService.streamDailyTotals(null, toDate)) {
+            assertThat(result).hasSize(1);
+        }
+
+        // then
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).stream(query.capture(), eq(FddbData.class), eq(COLLECTION_NAME));
+        assertThat(query.getValue().getQueryObject()).isEqualTo(new Document("date", new Document("$lte", toDate)));
+        assertThat(query.getValue().getFieldsObject()).isEqualTo(new Document("products", 0));
+        assertThat(query.getValue().getSortObject()).isEqualTo(new Document("date", 1));
+    }
+
+    @Test
+    void streamChangedSince_shouldReadTheLaterRevisionsInRevisionOrder() {
+        // given
+        when(mongoTemplate.stream(any(Query.class), eq(FddbData.class), eq(COLLECTION_NAME)))
+                .thenAnswer(invocation -> Stream.of(new FddbData()));
+
+        // when
+        try (Stream<FddbData> result = mongoDBService.streamChangedSince(41L, 50L)) {
+            assertThat(result).hasSize(1);
+        }
+
+        // then
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).stream(query.capture(), eq(FddbData.class), eq(COLLECTION_NAME));
+        assertThat(query.getValue().getQueryObject())
+                .isEqualTo(new Document("revision", new Document("$gt", 41L).append("$lte", 50L)));
+        assertThat(query.getValue().getSortObject()).isEqualTo(new Document("revision", 1).append("date", 1));
+    }
+
+    @Test
+    void streamChangedSince_withoutARevision_shouldKeepTheEntriesWrittenBeforeRevisions() {
+        // given
+        when(mongoTemplate.stream(any(Query.class), eq(FddbData.class), eq(COLLECTION_NAME)))
+                .thenAnswer(invocation -> Stream.of(new FddbData()));
+
+        // when
+        try (Stream<FddbData> result = mongoDBService.streamChangedSince(null, 50L)) {
+            assertThat(result).hasSize(1);
+        }
+
+        // then
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).stream(query.capture(), eq(FddbData.class), eq(COLLECTION_NAME));
+        assertThat(query.getValue().getQueryObject())
+                .isEqualTo(new Document("revision", new Document("$not", new Document("$gt", 50L))));
+    }
+
+    @Test
+    void nextRevision_shouldIncrementTheCounterAtomically() {
+        // given
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(Document.class), eq("counters")))
+                .thenReturn(new Document("_id", "fddb-revision").append("value", 7L));
+
+        // when
+        long revision = mongoDBService.nextRevision();
+
+        // then
+        assertThat(revision).isEqualTo(7L);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        ArgumentCaptor<FindAndModifyOptions> options = ArgumentCaptor.forClass(FindAndModifyOptions.class);
+        verify(mongoTemplate).findAndModify(any(Query.class), update.capture(), options.capture(),
+                eq(Document.class), eq("counters"));
+        assertThat(update.getValue().getUpdateObject()).isEqualTo(new Document("$inc", new Document("value", 1L)));
+        assertThat(options.getValue().isUpsert()).isTrue();
+        assertThat(options.getValue().isReturnNew()).isTrue();
+    }
+
+    @Test
+    void nextRevisions_shouldDrawTheWholeBlockInOneIncrement() {
+        // given
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(Document.class), eq("counters")))
+                .thenReturn(new Document("_id", "fddb-revision").append("value", 507L));
+
+        // when
+        long revision = mongoDBService.nextRevisions(500);
+
+        // then
+        assertThat(revision).isEqualTo(507L);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).findAndModify(any(Query.class), update.capture(), any(FindAndModifyOptions.class),
+                eq(Document.class), eq("counters"));
+        assertThat(update.getValue().getUpdateObject()).isEqualTo(new Document("$inc", new Document("value", 500L)));
+    }
+
+    @Test
+    void currentRevision_shouldReadTheCounterWithoutMovingIt() {
+        // given
+        when(mongoTemplate.findById("fddb-revision", Document.class, "counters"))
+                .thenReturn(new Document("_id", "fddb-revision").append("value", 507L));
+
+        // when / then
+        assertThat(mongoDBService.currentRevision()).isEqualTo(507L);
+        verify(mongoTemplate, never()).findAndModify(any(Query.class), any(Update.class),
+                any(FindAndModifyOptions.class), eq(Document.class), eq("counters"));
+    }
+
+    @Test
+    void currentRevision_whenNothingWasWrittenYet_shouldBeZero() {
+        // when / then
+        assertThat(mongoDBService.currentRevision()).isZero();
+    }
+
+    @Test
+    void bulkUpsert_shouldReplaceByDateInOneBulkWrite() {
+        // given
+        BulkOperations bulkOperations = mock(BulkOperations.class);
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, FddbData.class, COLLECTION_NAME))
+                .thenReturn(bulkOperations);
+        FddbData first = new FddbData();
+        first.setDate(LocalDate.of(2024, 1, 1));
+        FddbData second = new FddbData();
+        second.setDate(LocalDate.of(2024, 1, 2));
+
+        // when
+        mongoDBService.bulkUpsert(List.of(first, second));
+
+        // then
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<FindAndReplaceOptions> options = ArgumentCaptor.forClass(FindAndReplaceOptions.class);
+        verify(bulkOperations, times(2)).replaceOne(queries.capture(), any(FddbData.class), options.capture());
+        assertThat(queries.getAllValues()).extracting(Query::getQueryObject).containsExactly(
+                new Document("date", LocalDate.of(2024, 1, 1)),
+                new Document("date", LocalDate.of(2024, 1, 2)));
+        assertThat(options.getAllValues()).allMatch(FindAndReplaceOptions::isUpsert);
+        verify(bulkOperations).execute();
+    }
+
+    @Test
+    void findByProduct_shouldApplyWeekdayFilterAndLimitInThePipeline() {
+        // given
+        stubProductOccurrences(List.of(occurrence(LocalDate.of(2024, 1, 1), "Banana", 100)));
 
         // when
         List<ProductWithDate> result = mongoDBService.findByProduct(
-                "banana", List.of(DayOfWeek.MONDAY), null, null, 1);
+                "banana", List.of(DayOfWeek.MONDAY, DayOfWeek.SUNDAY), null, null, 1);
 
         // then
         assertThat(result).hasSize(1);
-        assertThat(result.getFirst().getDate()).isEqualTo(LocalDate.of(2024, 1, 1));
+        ArgumentCaptor<Aggregation> aggregation = ArgumentCaptor.forClass(Aggregation.class);
+        verify(mongoTemplate).aggregateStream(aggregation.capture(), eq(COLLECTION_NAME), eq(ProductWithDate.class));
+        List<Document> pipeline = aggregation.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT);
+        assertThat(pipeline).anySatisfy(stage -> assertThat(stage.toJson()).contains("$isoDayOfWeek"));
+        assertThat(pipeline).contains(new Document("$match", new Document("weekday", new Document("$in", List.of(1, 7)))));
+        assertThat(pipeline).anySatisfy(stage -> assertThat(stage.get("$limit")).isEqualTo(1L));
     }
 
     @Test
@@ -89,12 +268,18 @@ class MongoDBServiceTest {
     }
 
     @Test
-    void getProductSummary_shouldAggregateOccurrences() {
-        // given - 2024-01-01 is a Monday, 2024-01-06 a Saturday, 2024-01-08 a Monday
-        stubProductOccurrences(List.of(
-                occurrence(LocalDate.of(2024, 1, 1), "Haferflocken kernig", 300),
-                occurrence(LocalDate.of(2024, 1, 6), "Haferflocken zart", 250),
-                occurrence(LocalDate.of(2024, 1, 8), "Haferflocken kernig", 350)));
+    void getProductSummary_shouldShapeTheFacetResult() {
+        // given - the facet groups names in no particular order and counts weekdays by ISO number
+        ProductOccurrenceSummary.Totals totals = new ProductOccurrenceSummary.Totals();
+        totals.setTimesEaten(3);
+        totals.setMatchedProductNames(List.of("Haferflocken zart", "Haferflocken kernig"));
+        totals.setFirstDate(LocalDate.of(2024, 1, 1));
+        totals.setLastDate(LocalDate.of(2024, 1, 8));
+        totals.setTotalCalories(900.04);
+        ProductOccurrenceSummary summary = new ProductOccurrenceSummary();
+        summary.setTotals(List.of(totals));
+        summary.setWeekdays(List.of(weekdayCount(1, 2), weekdayCount(6, 1)));
+        stubProductSummary(summary);
 
         // when
         ProductSummaryDTO result = mongoDBService.getProductSummary("hafer", null, null);
@@ -110,13 +295,17 @@ class MongoDBServiceTest {
                 .containsExactly("Haferflocken kernig", "Haferflocken zart");
         assertThat(result.getWeekdayDistribution())
                 .containsEntry(DayOfWeek.MONDAY, 2L)
-                .containsEntry(DayOfWeek.SATURDAY, 1L);
+                .containsEntry(DayOfWeek.SATURDAY, 1L)
+                .hasSize(2);
     }
 
     @Test
     void getProductSummary_whenNothingMatches_shouldReturnEmptySummary() {
-        // given
-        stubProductOccurrences(List.of());
+        // given - $facet still returns one document, with empty branches
+        ProductOccurrenceSummary summary = new ProductOccurrenceSummary();
+        summary.setTotals(List.of());
+        summary.setWeekdays(List.of());
+        stubProductSummary(summary);
 
         // when
         ProductSummaryDTO result = mongoDBService.getProductSummary("nothing", null, null);
@@ -129,29 +318,74 @@ class MongoDBServiceTest {
         assertThat(result.getWeekdayDistribution()).isEmpty();
     }
 
+    @Test
+    void findByProduct_shouldResolveTheKeywordAgainstTheProductNamesOnce() {
+        // given
+        when(mongoTemplate.findDistinct(any(Query.class), eq("products.name"), eq(COLLECTION_NAME), eq(String.class)))
+                .thenReturn(List.of("Haferflocken kernig", "Banane"));
+        stubProductOccurrences(List.of());
+
+        // when
+        mongoDBService.findByProduct("hafer");
+        mongoDBService.findByProduct("banane");
+
+        // then
+        verify(mongoTemplate, times(1)).findDistinct(any(Query.class), eq("products.name"), eq(COLLECTION_NAME), eq(String.class));
+        assertThat(productNameIndex.resolve("hafer")).containsExactly("Haferflocken kernig");
+    }
+
     @Test
     void getTopProducts_shouldRoundTheAggregatedTotals() {
         // given
-        TopProductDTO aggregated = TopProductDTO.builder()
-                .name("Banana")
-                .timesEaten(3)
-                .totalCalories(300.06)
-                .totalFat(1.24)
-                .averageCalories(100.02)
-                .build();
-        when(mongoTemplate.aggregate(any(Aggregation.class), eq(COLLECTION_NAME), eq(TopProductDTO.class)))
-                .thenReturn(new AggregationResults<>(List.of(aggregated), new Document()));
+        when(mongoTemplate.find(any(Query.class), eq(FddbData.class), eq(COLLECTION_NAME))).thenReturn(List.of(
+                dayWith(LocalDate.of(2024, 1, 1), new Product("Banana", "1 Stück", 100.02, 0.41, 22, 1, null)),
+                dayWith(LocalDate.of(2024, 1, 2), new Product("Banana", "1 Stück", 100.02, 0.41, 22, 1, null)),
+                dayWith(LocalDate.of(2024, 1, 3), new Product("Banana", "1 Stück", 100.02, 0.42, 22, 1, null))));
 
         // when
         List<TopProductDTO> result = mongoDBService.getTopProducts(ProductRanking.FREQUENCY, null, null, 20);
 
         // then
         assertThat(result).hasSize(1);
+        assertThat(result.getFirst().getTimesEaten()).isEqualTo(3);
         assertThat(result.getFirst().getTotalCalories()).isEqualTo(300.1);
         assertThat(result.getFirst().getTotalFat()).isEqualTo(1.2);
         assertThat(result.getFirst().getAverageCalories()).isEqualTo(100.0);
     }
 
+    @Test
+    void getTopProducts_shouldLoadTheDaysOnlyOnce() {
+        // given
+        when(mongoTemplate.find(any(Query.class), eq(FddbData.class), eq(COLLECTION_NAME))).thenReturn(List.of(
+                dayWith(LocalDate.of(2024, 1, 1), new Product("Banana", "1 Stück", 100, 0, 22, 1, null))));
+
+        // when
+        mongoDBService.getTopProducts(ProductRanking.FREQUENCY, null, null, 20);
+        mongoDBService.getTopProducts(ProductRanking.CALORIES, LocalDate.of(2024, 1, 1), null, 20);
+
+        // then
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(FddbData.class), eq(COLLECTION_NAME));
+    }
+
+    @Test
+    void getProductPairs_shouldResolveTheProductLikeAProductSearch() {
+        // given
+        LocalDate day = LocalDate.of(2024, 1, 1);
+        when(mongoTemplate.find(any(Query.class), eq(FddbData.class), eq(COLLECTION_NAME))).thenReturn(List.of(
+                dayWith(day, product("Kaffee"), product("Milch"), product("Brötchen")),
+                dayWith(day.plusDays(1), product("Kaffee"), product("Hafermilch"), product("Brötchen"))));
+        when(mongoTemplate.findDistinct(any(Query.class), eq("products.name"), eq(COLLECTION_NAME), eq(String.class)))
+                .thenReturn(List.of("Kaffee", "Milch", "Brötchen", "Hafermilch"));
+
+        // when - a regex, just as the product search accepts
+        List<ProductPairDTO> result = mongoDBService.getProductPairs("^(MILCH|hafer)", null, null, 1, 0, 10);
+
+        // then
+        assertThat(result).extracting(ProductPairDTO::getFirst).containsOnly("Milch", "Hafermilch");
+        assertThat(result).extracting(ProductPairDTO::getSecond)
+                .containsExactlyInAnyOrder("Kaffee", "Brötchen", "Kaffee", "Brötchen");
+    }
+
     @Test
     void findDistinctProductNames_shouldUnwrapTheGroupedIds() {
         // given
@@ -167,9 +401,32 @@ class MongoDBServiceTest {
         assertThat(result).containsExactly("Haferflocken kernig", "Haferflocken zart");
     }
 
+    private void stubProductSummary(ProductOccurrenceSummary summary) {
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(COLLECTION_NAME), eq(ProductOccurrenceSummary.class)))
+                .thenReturn(new AggregationResults<>(List.of(summary), new Document()));
+    }
+
+    private ProductOccurrenceSummary.WeekdayCount weekdayCount(int weekday, long count) {
+        ProductOccurrenceSummary.WeekdayCount weekdayCount = new ProductOccurrenceSummary.WeekdayCount();
+        weekdayCount.setWeekday(weekday);
+        weekdayCount.setCount(count);
+        return weekdayCount;
+    }
+
     private void stubProductOccurrences(List<ProductWithDate> occurrences) {
-        when(mongoTemplate.aggregate(any(Aggregation.class), eq(COLLECTION_NAME), eq(ProductWithDate.class)))
-                .thenReturn(new AggregationResults<>(occurrences, new Document()));
+        when(mongoTemplate.aggregateStream(any(Aggregation.class), eq(COLLECTION_NAME), eq(ProductWithDate.class)))
+                .thenAnswer(invocation -> occurrences.stream());
+    }
+
+    private FddbData dayWith(LocalDate date, Product... products) {
+        FddbData entry = new FddbData();
+        entry.setDate(date);
+        entry.setProducts(List.of(products));
+        return entry;
+    }
+
+    private Product product(String name) {
+        return new Product(name, "1 Portion", 100, 1, 10, 1, null);
     }
 
     private ProductWithDate occurrence(LocalDate date, String name, double calories) {
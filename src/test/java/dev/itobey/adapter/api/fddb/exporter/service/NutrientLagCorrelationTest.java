@@ -0,0 +1,123 @@
+package dev.itobey.adapter.api.fddb.exporter.service;
+
+import dev.itobey.adapter.api.fddb.exporter.domain.FddbData;
+import dev.itobey.adapter.api.fddb.exporter.dto.NutrientMetric;
+import dev.itobey.adapter.api.fddb.exporter.service.correlation.NutrientLagCorrelation;
+import dev.itobey.adapter.api.fddb.exporter.service.correlation.ProductDayMatrix;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class NutrientLagCorrelationTest {
+
+    private static final LocalDate DAY_1 = LocalDate.of(2024, 1, 1);
+
+    @Test
+    void effects_shouldFindTheLagAtWhichTheTotalIsRaised() {
+        // given - ten logged days at 20 g sugar, except 100 g on days 3 and 7; day 12 has no products
+        List<FddbData> days = new ArrayList<>();
+        for (int day = 0; day < 10; day++) {
+            days.add(day(DAY_1.plusDays(day), 2000, day == 3 || day == 7 ? 100 : 20));
+        }
+        days.add(day(DAY_1.plusDays(12), 2000, 50));
+        NutrientLagCorrelation correlation = new NutrientLagCorrelation(days, loggedOn(0, 1, 2, 3, 4, 5, 6, 7, 8, 9),
+                List.of(NutrientMetric.SUGAR, NutrientMetric.CALORIES));
+
+        // when - events on the day after each sugar-heavy day
+        Map<NutrientMetric, List<NutrientLagCorrelation.LagEffect>> effects =
+                correlation.effects(List.of(DAY_1.plusDays(4), DAY_1.plusDays(8)), 2, 1);
+
+        // then
+        assertThat(correlation.loggedDays()).isEqualTo(10);
+        assertThat(effects).containsOnlyKeys(NutrientMetric.SUGAR, NutrientMetric.CALORIES);
+        List<NutrientLagCorrelation.LagEffect> sugar = effects.get(NutrientMetric.SUGAR);
+        assertThat(sugar).extracting(NutrientLagCorrelation.LagEffect::lagDays).containsExactly(0, 1, 2);
+        assertThat(sugar.get(1).daysInWindow()).isEqualTo(2);
+        assertThat(sugar.get(1).meanInWindow()).isEqualTo(100.0);
+        assertThat(sugar.get(1).meanOtherDays()).isEqualTo(20.0);
+        assertThat(sugar.get(1).correlation()).isCloseTo(1.0, within(1e-9));
+        assertThat(sugar.get(0).correlation()).isCloseTo(-0.25, within(1e-9));
+        // the same every day, so there is nothing to correlate
+        assertThat(effects.get(NutrientMetric.CALORIES).get(1).correlation()).isNull();
+    }
+
+    @Test
+    void effects_shouldCountADayInTheWindowsOfTwoEventsOnce() {
+        // given
+        List<FddbData> days = new ArrayList<>();
+        for (int day = 0; day < 10; day++) {
+            days.add(day(DAY_1.plusDays(day), 2000, 10 * day));
+        }
+        NutrientLagCorrelation correlation = new NutrientLagCorrelation(days, loggedOn(0, 1, 2, 3, 4, 5, 6, 7, 8, 9),
+                List.of(NutrientMetric.SUGAR));
+
+        // when - the 3-day windows of days 4 and 5 overlap on days 3 and 4
+        NutrientLagCorrelation.LagEffect sameDay = correlation.effects(
+                List.of(DAY_1.plusDays(4), DAY_1.plusDays(5)), 0, 3).get(NutrientMetric.SUGAR).getFirst();
+
+        // then - days 2 to 5
+        assertThat(sameDay.daysInWindow()).isEqualTo(4);
+        assertThat(sameDay.meanInWindow()).isEqualTo(35.0);
+    }
+
+    @Test
+    void effects_whenTheWindowMissesTheDiary_shouldLeaveTheWindowEmpty() {
+        // given
+        NutrientLagCorrelation correlation = new NutrientLagCorrelation(
+                List.of(day(DAY_1, 2000, 20), day(DAY_1.plusDays(1), 2500, 40)), loggedOn(0, 1),
+                List.of(NutrientMetric.SUGAR));
+
+        // when
+        NutrientLagCorrelation.LagEffect effect = correlation.effects(
+                List.of(DAY_1.minusDays(30)), 0, 1).get(NutrientMetric.SUGAR).getFirst();
+
+        // then
+        assertThat(effect.daysInWindow()).isZero();
+        assertThat(effect.meanInWindow()).isNull();
+        assertThat(effect.meanOtherDays()).isEqualTo(30.0);
+        assertThat(effect.correlation()).isNull();
+    }
+
+    @Test
+    void loggedDays_shouldBeTheDaysTheProductMatrixCountsAsLogged() {
+        // given - day 1 has products without calories, day 2 has totals but no products
+        List<FddbData> days = List.of(day(DAY_1, 2000, 20), day(DAY_1.plusDays(1), 0, 0),
+                day(DAY_1.plusDays(2), 1800, 30));
+
+        // when
+        NutrientLagCorrelation correlation = new NutrientLagCorrelation(days, loggedOn(0, 1),
+                List.of(NutrientMetric.SUGAR));
+
+        // then - the same days the product correlations measure against
+        assertThat(correlation.loggedDays()).isEqualTo(2);
+        assertThat(correlation.effects(List.of(DAY_1.plusDays(1)), 0, 1).get(NutrientMetric.SUGAR).getFirst()
+                .meanOtherDays()).isEqualTo(20.0);
+    }
+
+    /**
+     * A matrix without products that counts the given days after {@link #DAY_1} as logged.
+     */
+    private static ProductDayMatrix loggedOn(int... dayIndexes) {
+        int dayCount = Arrays.stream(dayIndexes).max().orElse(-1) + 1;
+        long[] loggedDays = new long[ProductDayMatrix.wordCount(dayCount)];
+        for (int day : dayIndexes) {
+            loggedDays[day / Long.SIZE] |= 1L << day;
+        }
+        return new ProductDayMatrix(DAY_1.toEpochDay(), dayCount, List.of(), new long[0][], loggedDays);
+    }
+
+    private static FddbData day(LocalDate date, double calories, double sugar) {
+        FddbData entry = new FddbData();
+        entry.setDate(date);
+        entry.setTotalCalories(calories);
+        entry.setTotalSugar(sugar);
+        return entry;
+    }
+}
@@ -20,8 +20,16 @@ import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
@@ -97,6 +105,8 @@ class PersistenceServiceTest {
 
         verify(mongoDBService).findByDate(existingData.getDate());
         verify(fddbDataRepository, never()).save(any(FddbData.class));
+        // nothing was written, so the entry keeps its revision and stays out of the changes feed
+        verify(mongoDBService, never()).nextRevision();
         verify(influxDBService).saveToInfluxDB(testFddbData);
     }
 
@@ -110,6 +120,7 @@ class PersistenceServiceTest {
 
         when(mongoDBService.findByDate(existingData.getDate())).thenReturn(Optional.of(existingData));
         when(fddbDataRepository.save(existingData)).thenReturn(existingData);
+        when(mongoDBService.nextRevision()).thenReturn(42L);
         when(properties.getPersistence().getInfluxdb().isEnabled()).thenReturn(true);
         when(properties.getPersistence().getMongodb().isEnabled()).thenReturn(true);
 
@@ -117,6 +128,8 @@ class PersistenceServiceTest {
 
         verify(fddbDataMapper).updateFddbData(existingData, testFddbData);
         verify(fddbDataRepository).save(existingData);
+        assertEquals(42L, existingData.getRevision());
+        assertNotNull(existingData.getLastModified());
         verify(influxDBService).saveToInfluxDB(testFddbData);
     }
 
@@ -124,16 +137,90 @@ class PersistenceServiceTest {
     void saveOrUpdate_shouldCreateNewEntry() {
         when(mongoDBService.findByDate(testFddbData.getDate())).thenReturn(Optional.empty());
         when(fddbDataRepository.save(testFddbData)).thenReturn(testFddbData);
+        when(mongoDBService.nextRevision()).thenReturn(1L);
         when(properties.getPersistence().getInfluxdb().isEnabled()).thenReturn(true);
         when(properties.getPersistence().getMongodb().isEnabled()).thenReturn(true);
 
         persistenceService.saveOrUpdate(testFddbData);
 
         verify(fddbDataRepository).save(testFddbData);
+        assertEquals(1L, testFddbData.getRevision());
+        assertNotNull(testFddbData.getLastModified());
         verify(fddbDataMapper, never()).updateFddbData(any(), any());
         verify(influxDBService).saveToInfluxDB(testFddbData);
     }
 
+    @Test
+    void importEntries_shouldBulkWriteOnlyTheChangedEntriesWithConsecutiveRevisions() {
+        FddbData unchanged = entry(LocalDate.of(2024, 1, 1), 2000);
+        FddbData changed = entry(LocalDate.of(2024, 1, 2), 2100);
+        FddbData added = entry(LocalDate.of(2024, 1, 3), 1900);
+        FddbData stored = entry(LocalDate.of(2024, 1, 2), 1800);
+        stored.setId("stored");
+
+        when(mongoDBService.findByDates(List.of(unchanged.getDate(), changed.getDate(), added.getDate())))
+                .thenReturn(List.of(entry(LocalDate.of(2024, 1, 1), 2000), stored));
+        when(mongoDBService.nextRevisions(2)).thenReturn(11L);
+        when(properties.getPersistence().getInfluxdb().isEnabled()).thenReturn(false);
+
+        int written = persistenceService.importEntries(List.of(unchanged, changed, added));
+
+        assertEquals(2, written);
+        verify(mongoDBService).bulkUpsert(List.of(changed, added));
+        assertEquals(10L, changed.getRevision());
+        assertEquals(11L, added.getRevision());
+        assertNotNull(added.getLastModified());
+        assertNull(unchanged.getRevision());
+        verify(influxDBService, never()).saveToInfluxDB(any(FddbData.class));
+    }
+
+    @Test
+    void importEntries_whenEverythingIsStoredLikeThis_shouldWriteNothing() {
+        FddbData entry = entry(LocalDate.of(2024, 1, 1), 2000);
+        when(mongoDBService.findByDates(List.of(entry.getDate()))).thenReturn(List.of(entry(entry.getDate(), 2000)));
+
+        int written = persistenceService.importEntries(List.of(entry));
+
+        assertEquals(0, written);
+        verify(mongoDBService, never()).nextRevisions(anyInt());
+        verify(mongoDBService, never()).bulkUpsert(anyList());
+    }
+
+    @Test
+    void streamChangedSince_shouldStopAtTheCurrentRevision() {
+        when(mongoDBService.currentRevision()).thenReturn(50L);
+        when(mongoDBService.streamChangedSince(41L, 50L)).thenAnswer(invocation -> Stream.of(testFddbData));
+
+        try (Stream<FddbData> changes = persistenceService.streamChangedSince(41L)) {
+            assertEquals(List.of(testFddbData), changes.toList());
+        }
+    }
+
+    @Test
+    void currentRevision_whileAWriteIsUnderWay_shouldWaitForItToBeStored() throws Exception {
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch stored = new CountDownLatch(1);
+        when(mongoDBService.findByDate(testFddbData.getDate())).thenReturn(Optional.empty());
+        when(mongoDBService.nextRevision()).thenReturn(7L);
+        when(mongoDBService.currentRevision()).thenReturn(7L);
+        when(fddbDataRepository.save(testFddbData)).thenAnswer(invocation -> {
+            saving.countDown();
+            stored.await();
+            return testFddbData;
+        });
+        when(properties.getPersistence().getMongodb().isEnabled()).thenReturn(true);
+
+        CompletableFuture<Void> write = CompletableFuture.runAsync(() -> persistenceService.saveOrUpdate(testFddbData));
+        assertTrue(saving.await(5, TimeUnit.SECONDS));
+        // revision 7 is drawn but not stored yet, so a feed or snapshot must not be told about it
+        CompletableFuture<Long> revision = CompletableFuture.supplyAsync(persistenceService::currentRevision);
+        assertThrows(TimeoutException.class, () -> revision.get(200, TimeUnit.MILLISECONDS));
+
+        stored.countDown();
+        write.get(5, TimeUnit.SECONDS);
+        assertEquals(7L, revision.get(5, TimeUnit.SECONDS));
+    }
+
     @Test
     void countAllEntries_shouldReturnCount() {
         long expectedCount = 10L;
@@ -155,4 +242,11 @@ class PersistenceServiceTest {
         assertEquals(expectedCount, actualCount);
         verify(influxDBService).getDataPointCount();
     }
+
+    private static FddbData entry(LocalDate date, double totalCalories) {
+        FddbData entry = new FddbData();
+        entry.setDate(date);
+        entry.setTotalCalories(totalCalories);
+        return entry;
+    }
 }
@@ -0,0 +1,104 @@
+package dev.itobey.adapter.api.fddb.exporter.service;
+
+import dev.itobey.adapter.api.fddb.exporter.domain.FddbData;
+import dev.itobey.adapter.api.fddb.exporter.domain.Product;
+import dev.itobey.adapter.api.fddb.exporter.service.correlation.ProductCooccurrence;
+import dev.itobey.adapter.api.fddb.exporter.service.correlation.ProductDayMatrix;
+import dev.itobey.adapter.api.fddb.exporter.service.index.ProductDictionary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ProductCooccurrenceTest {
+
+    private static final LocalDate DAY_1 = LocalDate.of(2024, 1, 1);
+
+    private ProductDayMatrix matrix;
+
+    @BeforeEach
+    void setUp() {
+        // 20 logged days: coffee every day, milk on the even days, cheese on days 5, 10, 15 and 19,
+        // and wine on days 5, 10 and 15 - always with the cheese
+        List<FddbData> days = new ArrayList<>();
+        for (int day = 0; day < 20; day++) {
+            List<Product> products = new ArrayList<>();
+            products.add(product("Kaffee"));
+            if (day % 2 == 0) {
+                products.add(product("Milch"));
+            }
+            if (day == 5 || day == 10 || day == 15 || day == 19) {
+                products.add(product("Gouda"));
+            }
+            if (day == 5 || day == 10 || day == 15) {
+                products.add(product("Wein"));
+            }
+            days.add(day(DAY_1.plusDays(day), products));
+        }
+        ProductDictionary productDictionary = new ProductDictionary();
+        productDictionary.buildIfAbsent(() -> days);
+        matrix = productDictionary.incidenceMatrix(null, null);
+    }
+
+    @Test
+    void pairs_shouldOrderBySharedDaysAndThenByLift() {
+        // when
+        ProductCooccurrence.Result result = ProductCooccurrence.pairs(matrix, null, 3, 0, 10);
+
+        // then - the pairs with milk and wine share a single day and stay below the threshold
+        assertThat(result.loggedDays()).isEqualTo(20);
+        assertThat(result.pairs()).extracting(pair -> pair.first() + "+" + pair.second())
+                .containsExactly("Kaffee+Milch", "Kaffee+Gouda", "Gouda+Wein", "Kaffee+Wein");
+
+        // coffee is on every day, so sharing ten of them with milk is no association at all
+        assertThat(result.pairs().getFirst().lift()).isEqualTo(1.0);
+        ProductCooccurrence.Pair cheeseAndWine = result.pairs().get(2);
+        assertThat(cheeseAndWine.daysTogether()).isEqualTo(3);
+        assertThat(cheeseAndWine.confidence()).isEqualTo(0.75);
+        assertThat(cheeseAndWine.reverseConfidence()).isEqualTo(1.0);
+        assertThat(cheeseAndWine.lift()).isEqualTo(5.0);
+    }
+
+    @Test
+    void pairs_withAProduct_shouldOnlyListItsPairsAndReportItFirst() {
+        // when
+        ProductCooccurrence.Result result = ProductCooccurrence.pairs(matrix, Set.of("Wein"), 1, 0, 10);
+
+        // then
+        assertThat(result.pairs()).extracting(ProductCooccurrence.Pair::first).containsOnly("Wein");
+        assertThat(result.pairs()).extracting(ProductCooccurrence.Pair::second)
+                .containsExactly("Gouda", "Kaffee", "Milch");
+        // one shared day where chance would give 1.5: the two avoid each other
+        assertThat(result.pairs().getLast().lift()).isCloseTo(2.0 / 3, within(1e-12));
+    }
+
+    @Test
+    void pairs_shouldApplyTheConfidenceInEitherDirectionAndTheLimit() {
+        // when - milk has coffee on all of its days, but cheese or wine on a tenth of them at most
+        ProductCooccurrence.Result confident = ProductCooccurrence.pairs(matrix, Set.of("Milch"), 1, 0.6, 10);
+        ProductCooccurrence.Result limited = ProductCooccurrence.pairs(matrix, null, 3, 0, 2);
+
+        // then
+        assertThat(confident.pairs()).extracting(ProductCooccurrence.Pair::second).containsExactly("Kaffee");
+        assertThat(confident.pairs().getFirst().confidence()).isEqualTo(1.0);
+        assertThat(limited.matchingPairs()).isEqualTo(4);
+        assertThat(limited.pairs()).hasSize(2);
+    }
+
+    private static FddbData day(LocalDate date, List<Product> products) {
+        FddbData entry = new FddbData();
+        entry.setDate(date);
+        entry.setProducts(products);
+        return entry;
+    }
+
+    private static Product product(String name) {
+        return new Product(name, "1 Portion", 100, 1, 10, 1, null);
+    }
+}
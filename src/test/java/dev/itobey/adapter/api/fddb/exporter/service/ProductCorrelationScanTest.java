@@ -0,0 +1,103 @@
+package dev.itobey.adapter.api.fddb.exporter.service;
+
+import dev.itobey.adapter.api.fddb.exporter.domain.FddbData;
+import dev.itobey.adapter.api.fddb.exporter.domain.Product;
+import dev.itobey.adapter.api.fddb.exporter.service.correlation.ProductCorrelationScan;
+import dev.itobey.adapter.api.fddb.exporter.service.correlation.ProductDayMatrix;
+import dev.itobey.adapter.api.fddb.exporter.service.index.ProductDictionary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ProductCorrelationScanTest {
+
+    private static final LocalDate DAY_1 = LocalDate.of(2024, 1, 1);
+
+    private ProductDayMatrix matrix;
+
+    @BeforeEach
+    void setUp() {
+        // 20 logged days: coffee every day, cheese on days 5, 10, 15 and 19, bread on the even days
+        List<FddbData> days = new ArrayList<>();
+        for (int day = 0; day < 20; day++) {
+            List<Product> products = new ArrayList<>();
+            products.add(product("Kaffee"));
+            if (day == 5 || day == 10 || day == 15 || day == 19) {
+                products.add(product("Gouda"));
+            }
+            if (day % 2 == 0) {
+                products.add(product("Brot"));
+            }
+            days.add(day(DAY_1.plusDays(day), products));
+        }
+        ProductDictionary productDictionary = new ProductDictionary();
+        productDictionary.buildIfAbsent(() -> days);
+        matrix = productDictionary.incidenceMatrix(null, null);
+    }
+
+    @Test
+    void scan_shouldRankByLiftAgainstTheBaseline() {
+        // when - events the day after each cheese day, so cheese is eaten one day before every one
+        ProductCorrelationScan.Result result = ProductCorrelationScan.scan(matrix,
+                List.of(DAY_1.plusDays(6), DAY_1.plusDays(11), DAY_1.plusDays(16), DAY_1.plusDays(20)), 1, 1, 2, 10);
+
+        // then - every window falls on a logged day: 4 of 20
+        assertThat(result.loggedDays()).isEqualTo(20);
+        assertThat(result.loggedDaysInWindow()).isEqualTo(4);
+        assertThat(result.baselineRate()).isEqualTo(0.2);
+        assertThat(result.products()).extracting(ProductCorrelationScan.RankedProduct::name)
+                .containsExactly("Gouda", "Kaffee", "Brot");
+
+        ProductCorrelationScan.RankedProduct cheese = result.products().getFirst();
+        assertThat(cheese.daysEaten()).isEqualTo(4);
+        assertThat(cheese.daysInWindow()).isEqualTo(4);
+        assertThat(cheese.lift()).isEqualTo(5.0);
+        // all four of its days in a window of four out of 20: 1 in C(20, 4)
+        assertThat(cheese.pValue()).isCloseTo(1.0 / 4845, within(1e-12));
+        // eaten every day, so it lines up with every event and still has no lift at all
+        ProductCorrelationScan.RankedProduct coffee = result.products().get(1);
+        assertThat(coffee.daysInWindow()).isEqualTo(4);
+        assertThat(coffee.lift()).isEqualTo(1.0);
+        assertThat(coffee.pValue()).isEqualTo(1.0);
+    }
+
+    @Test
+    void scan_shouldLeaveOutRareProductsAndApplyTheLimit() {
+        // when
+        ProductCorrelationScan.Result result = ProductCorrelationScan.scan(matrix,
+                List.of(DAY_1.plusDays(4), DAY_1.plusDays(10)), 0, 1, 5, 1);
+
+        // then - cheese was eaten on 4 days only, leaving bread and coffee, of which the limit keeps one
+        assertThat(result.matchingProducts()).isEqualTo(2);
+        assertThat(result.products()).extracting(ProductCorrelationScan.RankedProduct::name)
+                .containsExactly("Brot");
+    }
+
+    @Test
+    void scan_whenTheWindowMissesTheDiary_shouldRankNothing() {
+        // when
+        ProductCorrelationScan.Result result = ProductCorrelationScan.scan(matrix,
+                List.of(DAY_1.minusDays(30)), 0, 3, 1, 10);
+
+        // then
+        assertThat(result.loggedDaysInWindow()).isZero();
+        assertThat(result.products()).isEmpty();
+    }
+
+    private static FddbData day(LocalDate date, List<Product> products) {
+        FddbData entry = new FddbData();
+        entry.setDate(date);
+        entry.setProducts(products);
+        return entry;
+    }
+
+    private static Product product(String name) {
+        return new Product(name, "1 Portion", 100, 1, 10, 1, null);
+    }
+}
@@ -0,0 +1,123 @@
+package dev.itobey.adapter.api.fddb.exporter.service;
+
+import dev.itobey.adapter.api.fddb.exporter.domain.FddbData;
+import dev.itobey.adapter.api.fddb.exporter.domain.Product;
+import dev.itobey.adapter.api.fddb.exporter.dto.ProductRanking;
+import dev.itobey.adapter.api.fddb.exporter.dto.TopProductDTO;
+import dev.itobey.adapter.api.fddb.exporter.service.correlation.ProductDayMatrix;
+import dev.itobey.adapter.api.fddb.exporter.service.index.ProductDictionary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+class ProductDictionaryTest {
+
+    private ProductDictionary productDictionary;
+
+    @BeforeEach
+    void setUp() {
+        productDictionary = new ProductDictionary();
+        productDictionary.buildIfAbsent(() -> List.of(
+                day(1, product("Banane", 90, 1), product("Pizza Salami", 600, 20)),
+                day(2, product("Banane", 90, 1)),
+                day(3, product("Banane", 90, 1), product("Apfel", 50, 0))));
+    }
+
+    @Test
+    void topProducts_shouldRankByFrequencyAndBreakTiesByName() {
+        // when
+        List<TopProductDTO> result = productDictionary.topProducts(ProductRanking.FREQUENCY, null, null, 10);
+
+        // then
+        assertThat(result).extracting(TopProductDTO::getName).containsExactly("Banane", "Apfel", "Pizza Salami");
+        assertThat(result.getFirst().getTimesEaten()).isEqualTo(3);
+        assertThat(result.getFirst().getTotalCalories()).isEqualTo(270);
+        assertThat(result.getFirst().getAverageCalories()).isEqualTo(90);
+    }
+
+    @Test
+    void topProducts_shouldRankByNutrientWithinTheRange() {
+        // when
+        List<TopProductDTO> result = productDictionary.topProducts(ProductRanking.CALORIES, day(2).getDate(), null, 1);
+
+        // then
+        assertThat(result).extracting(TopProductDTO::getName).containsExactly("Banane");
+        assertThat(result.getFirst().getTotalCalories()).isEqualTo(180);
+    }
+
+    @Test
+    void record_shouldReplaceTheDayAndKeepTheIds() {
+        // given
+        int bananaId = idOf("Banane");
+
+        // when
+        productDictionary.record(day(1, product("Apfel", 50, 0)));
+
+        // then
+        assertThat(idOf("Banane")).isEqualTo(bananaId);
+        assertThat(productDictionary.topProducts(ProductRanking.FREQUENCY, null, null, 10))
+                .extracting(TopProductDTO::getName, TopProductDTO::getTimesEaten)
+                .containsExactly(
+                        tuple("Apfel", 2L),
+                        tuple("Banane", 2L));
+    }
+
+    @Test
+    void invalidate_shouldRebuildOnTheNextBuildWithStableIds() {
+        // given
+        int pizzaId = idOf("Pizza Salami");
+
+        // when
+        productDictionary.invalidate();
+        productDictionary.buildIfAbsent(() -> List.of(day(4, product("Pizza Salami", 600, 20))));
+
+        // then
+        assertThat(idOf("Pizza Salami")).isEqualTo(pizzaId);
+        assertThat(productDictionary.topProducts(ProductRanking.FREQUENCY, null, null, 10))
+                .extracting(TopProductDTO::getName).containsExactly("Pizza Salami");
+    }
+
+    @Test
+    void incidenceMatrix_whenTheDaysLieTooFarApart_shouldThrow() {
+        // given - a day far past the others, as a typo in an import would leave it
+        FddbData typo = day(1, product("Banane", 90, 1));
+        typo.setDate(LocalDate.of(999_999, 1, 1));
+        productDictionary.record(typo);
+
+        // then - the caller answers 400 rather than failing to size the bitmaps
+        assertThatThrownBy(() -> productDictionary.incidenceMatrix(null, null))
+                .isInstanceOf(DateTimeException.class);
+        assertThat(productDictionary.incidenceMatrix(null, day(3).getDate()).productCount()).isEqualTo(3);
+    }
+
+    /**
+     * The id of a product, as the correlation scans see it: its index in the matrix.
+     */
+    private int idOf(String name) {
+        ProductDayMatrix matrix = productDictionary.incidenceMatrix(null, null);
+        for (int id = 0; id < matrix.productCount(); id++) {
+            if (matrix.nameOf(id).equals(name)) {
+                return id;
+            }
+        }
+        return -1;
+    }
+
+    private static FddbData day(int dayOfMonth, Product... products) {
+        FddbData entry = new FddbData();
+        entry.setDate(LocalDate.of(2024, 1, dayOfMonth));
+        entry.setProducts(List.of(products));
+        return entry;
+    }
+
+    private static Product product(String name, double calories, double fat) {
+        return new Product(name, "1 Portion", calories, fat, 0, 0, "https://fddb.info/" + name);
+    }
+}
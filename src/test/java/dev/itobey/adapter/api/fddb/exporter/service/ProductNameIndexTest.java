@@ -0,0 +1,62 @@
+package dev.itobey.adapter.api.fddb.exporter.service;
+
+import dev.itobey.adapter.api.fddb.exporter.service.index.ProductNameIndex;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ProductNameIndexTest {
+
+    private ProductNameIndex productNameIndex;
+
+    @BeforeEach
+    void setUp() {
+        productNameIndex = new ProductNameIndex();
+        productNameIndex.buildIfAbsent(() -> List.of(
+                "Haferflocken kernig", "Haferflocken zart", "Banane", "Vollmilch 3,5%", "Hafermilch"));
+    }
+
+    @Test
+    void resolve_shouldMatchSubstringsCaseInsensitively() {
+        assertThat(productNameIndex.resolve("FLOCKEN"))
+                .containsExactlyInAnyOrder("Haferflocken kernig", "Haferflocken zart");
+        assertThat(productNameIndex.resolve("milch")).containsExactlyInAnyOrder("Vollmilch 3,5%", "Hafermilch");
+        assertThat(productNameIndex.resolve("kakao")).isEmpty();
+    }
+
+    @Test
+    void resolve_shouldNotTrustTheTrigramsAlone() {
+        // "ban" and "ane" are both trigrams of "Banane", "banane" contains them but "banxane" does not
+        assertThat(productNameIndex.resolve("ane")).containsExactly("Banane");
+        assertThat(productNameIndex.resolve("ban ane")).isEmpty();
+    }
+
+    @Test
+    void resolve_shouldMatchKeywordsTooShortForATrigram() {
+        assertThat(productNameIndex.resolve("ml")).isEmpty();
+        assertThat(productNameIndex.resolve("mi")).containsExactlyInAnyOrder("Vollmilch 3,5%", "Hafermilch");
+    }
+
+    @Test
+    void resolve_shouldStillAcceptRegularExpressions() {
+        assertThat(productNameIndex.resolve("^hafer.*(kernig|milch)$"))
+                .containsExactlyInAnyOrder("Haferflocken kernig", "Hafermilch");
+        assertThatThrownBy(() -> productNameIndex.resolve("hafer("))
+                .isInstanceOf(PatternSyntaxException.class);
+    }
+
+    @Test
+    void record_shouldAddNewNamesOnceBuilt() {
+        // when
+        productNameIndex.record(List.of("Kakao", "Banane"));
+
+        // then
+        assertThat(productNameIndex.resolve("kakao")).containsExactly("Kakao");
+        assertThat(productNameIndex.resolveAny(List.of("kakao", "banane"))).containsExactlyInAnyOrder("Kakao", "Banane");
+    }
+}
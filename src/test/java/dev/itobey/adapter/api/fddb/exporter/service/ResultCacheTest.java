@@ -0,0 +1,43 @@
+package dev.itobey.adapter.api.fddb.exporter.service;
+
+import dev.itobey.adapter.api.fddb.exporter.service.cache.DataVersion;
+import dev.itobey.adapter.api.fddb.exporter.service.cache.ResultCache;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ResultCacheTest {
+
+    private final DataVersion dataVersion = new DataVersion();
+    private final ResultCache resultCache = new ResultCache(dataVersion);
+
+    @Test
+    void get_shouldComputeOncePerArgumentsAndDataVersion() {
+        AtomicInteger computations = new AtomicInteger();
+        LocalDate day = LocalDate.of(2024, 1, 1);
+
+        resultCache.get("query", computations::incrementAndGet, day, null);
+        assertThat((Integer) resultCache.get("query", computations::incrementAndGet, day, null)).isEqualTo(1);
+
+        // different arguments are a different result
+        resultCache.get("query", computations::incrementAndGet, day.plusDays(1), null);
+        assertThat(computations).hasValue(2);
+
+        // a write makes every earlier result stale
+        dataVersion.bump();
+        assertThat((Integer) resultCache.get("query", computations::incrementAndGet, day, null)).isEqualTo(3);
+    }
+
+    @Test
+    void get_shouldNotCacheAFailedQuery() {
+        assertThatThrownBy(() -> resultCache.get("query", () -> {
+            throw new IllegalArgumentException("invalid");
+        })).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat((String) resultCache.get("query", () -> "computed")).isEqualTo("computed");
+    }
+}
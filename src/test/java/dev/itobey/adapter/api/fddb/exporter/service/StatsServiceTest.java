@@ -2,11 +2,13 @@ package dev.itobey.adapter.api.fddb.exporter.service;
 
 import dev.itobey.adapter.api.fddb.exporter.domain.FddbData;
 import dev.itobey.adapter.api.fddb.exporter.dto.*;
+import dev.itobey.adapter.api.fddb.exporter.service.index.CoverageIndex;
 import org.bson.Document;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
@@ -29,6 +31,9 @@ class StatsServiceTest {
     @Mock
     private MongoTemplate mongoTemplate;
 
+    @Spy
+    private CoverageIndex coverageIndex = new CoverageIndex();
+
     @InjectMocks
     private StatsService statsService;
 
@@ -265,6 +270,54 @@ class StatsServiceTest {
         assertThat(result).extracting(TrendPointDTO::getBucket).containsExactly("2024-01", "2024-02");
     }
 
+    @Test
+    void getRollingAverageSeries_shouldSlideTheWindowAndSkipUnloggedDays() {
+        // given - the 2nd is not logged; the window of the 3rd reaches back to the 1st
+        when(mongoTemplate.find(any(Query.class), eq(FddbData.class), eq(StatsService.COLLECTION_NAME)))
+                .thenReturn(List.of(
+                        entry(LocalDate.of(2024, 1, 1), 1000),
+                        entry(LocalDate.of(2024, 1, 3), 2000),
+                        entry(LocalDate.of(2024, 1, 4), 3000),
+                        entry(LocalDate.of(2024, 1, 5), 4000)));
+
+        // when
+        List<RollingAveragePointDTO> result = statsService.getRollingAverageSeries(LocalDate.of(2024, 1, 3),
+                LocalDate.of(2024, 1, 5), 3, List.of(NutrientMetric.CALORIES), 2);
+
+        // then
+        assertThat(result).extracting(RollingAveragePointDTO::getDate).containsExactly(
+                LocalDate.of(2024, 1, 3), LocalDate.of(2024, 1, 4), LocalDate.of(2024, 1, 5));
+        assertThat(result).extracting(RollingAveragePointDTO::getLoggedDays).containsExactly(2, 2, 3);
+        // the unlogged 2nd is left out rather than averaged in as zero
+        assertThat(result.get(0).getAverages()).containsEntry(NutrientMetric.CALORIES, 1500.0);
+        assertThat(result.get(1).getAverages()).containsEntry(NutrientMetric.CALORIES, 2500.0);
+        assertThat(result.get(2).getAverages()).containsEntry(NutrientMetric.CALORIES, 3000.0);
+    }
+
+    @Test
+    void getRollingAverageSeries_shouldLeaveWindowsBelowTheMinimumWithoutAverages() {
+        // given
+        when(mongoTemplate.find(any(Query.class), eq(FddbData.class), eq(StatsService.COLLECTION_NAME)))
+                .thenReturn(List.of(entry(LocalDate.of(2024, 1, 7), 2000)));
+
+        // when
+        List<RollingAveragePointDTO> result = statsService.getRollingAverageSeries(LocalDate.of(2024, 1, 7),
+                LocalDate.of(2024, 1, 7), 7, List.of(NutrientMetric.CALORIES, NutrientMetric.PROTEIN), 4);
+
+        // then a single logged day is not reported as a 7-day average
+        assertThat(result).hasSize(1);
+        assertThat(result.getFirst().getLoggedDays()).isEqualTo(1);
+        assertThat(result.getFirst().getAverages()).isNull();
+    }
+
+    @Test
+    void getRollingAverageSeries_whenMinimumExceedsTheWindow_shouldThrowException() {
+        assertThatThrownBy(() -> statsService.getRollingAverageSeries(LocalDate.of(2024, 1, 1),
+                LocalDate.of(2024, 1, 31), 7, List.of(NutrientMetric.CALORIES), 8))
+                .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(mongoTemplate);
+    }
+
     @Test
     void getWeekdayBreakdown_shouldGroupByDayOfWeekStartingWithMonday() {
         // given - 2024-01-01 and 2024-01-08 are Mondays, 2024-01-06 is a Saturday
@@ -344,12 +397,60 @@ class StatsServiceTest {
         assertThat(result).isEmpty();
     }
 
+    @Test
+    void getMissingDays_shouldBuildTheIndexOnceAndKeepItAcrossCalls() {
+        // given
+        when(mongoTemplate.find(any(Query.class), eq(FddbData.class), eq(StatsService.COLLECTION_NAME)))
+                .thenReturn(List.of(entry(LocalDate.of(2024, 1, 2), 2000)));
+        statsService.getMissingDays(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 3));
+
+        // when - a later save is recorded instead of reloading every date
+        coverageIndex.record(LocalDate.of(2024, 1, 3), true);
+        List<LocalDate> result = statsService.getMissingDays(LocalDate.of(2024, 1, 1), LocalDate.of(2024, 1, 3));
+
+        // then
+        assertThat(result).containsExactly(LocalDate.of(2024, 1, 1));
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(FddbData.class), eq(StatsService.COLLECTION_NAME));
+    }
+
+    @Test
+    void getGapStats_shouldDescribeTheGapsOverallAndPerMonth() {
+        // given - logged: Jan 30th and Feb 2nd, so Jan 31st and Feb 1st form one gap across the month boundary
+        when(mongoTemplate.find(any(Query.class), eq(FddbData.class), eq(StatsService.COLLECTION_NAME)))
+                .thenReturn(List.of(
+                        entry(LocalDate.of(2024, 1, 30), 2000),
+                        entry(LocalDate.of(2024, 2, 2), 2000)));
+
+        // when
+        GapStatsDTO result = statsService.getGapStats(LocalDate.of(2024, 1, 29), LocalDate.of(2024, 2, 3));
+
+        // then
+        assertThat(result.getDaysChecked()).isEqualTo(6);
+        assertThat(result.getMissingCount()).isEqualTo(4);
+        assertThat(result.getGapCount()).isEqualTo(3);
+        assertThat(result.getLongestGap().getFromDate()).isEqualTo(LocalDate.of(2024, 1, 31));
+        assertThat(result.getLongestGap().getDays()).isEqualTo(2);
+        assertThat(result.getMonths()).extracting(GapStatsDTO.Month::getMonth).containsExactly("2024-01", "2024-02");
+        assertThat(result.getMonths()).extracting(GapStatsDTO.Month::getMissingCount).containsExactly(2L, 2L);
+        assertThat(result.getMonths()).extracting(GapStatsDTO.Month::getGapCount).containsExactly(2, 2);
+    }
+
     @Test
     void getMissingDays_whenFromIsAfterTo_shouldThrowException() {
         assertThatThrownBy(() -> statsService.getMissingDays(LocalDate.of(2024, 2, 1), LocalDate.of(2024, 1, 1)))
                 .isInstanceOf(IllegalArgumentException.class);
     }
 
+    @Test
+    void getMissingDays_whenToIsPastTheCoverageIndex_shouldThrowException() {
+        LocalDate from = LocalDate.of(2024, 1, 1);
+
+        assertThatThrownBy(() -> statsService.getMissingDays(from, LocalDate.MAX))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> statsService.getGapStats(from, CoverageIndex.LAST_DAY.plusDays(1)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
     private FddbData entry(LocalDate date, double calories) {
         FddbData data = new FddbData();
         data.setDate(date);